@@ -43,12 +43,8 @@ JNIEXPORT jbyteArray JNICALL Java_monero_common_MoneroUtils_jsonToBinaryJni(JNIE
      return NULL; // out of memory error thrown
   }
 
-  // fill a temp structure to use to populate the java byte array
-  jbyte fill[bin_str.length()];
-  for (int i = 0; i < bin_str.length(); i++) {
-     fill[i] = bin_str[i];
-  }
-  env->SetByteArrayRegion(result, 0, bin_str.length(), fill);
+  // populate the java byte array directly from the binary string
+  env->SetByteArrayRegion(result, 0, bin_str.length(), reinterpret_cast<const jbyte*>(bin_str.data()));
   return result;
 }
 
@@ -59,6 +55,7 @@ JNIEXPORT jstring JNICALL Java_monero_common_MoneroUtils_binaryToJsonJni(JNIEnv
   jboolean is_copy;
   jbyte* jbytes = env->GetByteArrayElements(bin, &is_copy);
   string bin_str = string((char*) jbytes, binLength);
+  env->ReleaseByteArrayElements(bin, jbytes, JNI_ABORT);
 
   // convert monero's portable storage binary format to json
   string json_str;
@@ -75,6 +72,7 @@ JNIEXPORT jstring JNICALL Java_monero_common_MoneroUtils_binaryBlocksToJsonJni(J
   jboolean is_copy;
   jbyte* jbytes = env->GetByteArrayElements(blocks_bin, &is_copy);
   string bin_str = string((char*) jbytes, binLength);
+  env->ReleaseByteArrayElements(blocks_bin, jbytes, JNI_ABORT);
 
   // convert monero's portable storage binary format to json
   string json_str;
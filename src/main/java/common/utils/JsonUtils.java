@@ -1,5 +1,6 @@
 package common.utils;
 
+import java.io.InputStream;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
@@ -105,6 +106,24 @@ public class JsonUtils {
     }
   }
 
+  /**
+   * Deserializes JSON read from a stream to a parameterized type without
+   * buffering the stream to a string.
+   * 
+   * @param <T> the map, list, object, etc to deserialize
+   * @param mapper is the jackson object mapper to use
+   * @param json is the stream to read JSON from
+   * @param type is the parameterized type to deserialize to (e.g. new TypeReference&lt;Map&lt;String, Object&gt;&gt;(){})
+   * @return T is the object deserialized from JSON to the given parameterized type
+   */
+  public static <T> T deserialize(ObjectMapper mapper, InputStream json, TypeReference<T> type) {
+    try {
+      return mapper.readValue(json, type);
+    } catch (Exception e) {
+      throw new JsonException("Error deserializing json to type " + type.getType(), e);
+    }
+  }
+
   /**
    * Converts a JSON string to a map.
    * 
@@ -126,6 +145,17 @@ public class JsonUtils {
     return deserialize(mapper, json, new TypeReference<Map<String, Object>>(){});
   }
   
+  /**
+   * Converts JSON read from a stream to a map.
+   * 
+   * @param mapper is the jackson object mapper to use
+   * @param json is the stream to read JSON from
+   * @return the JSON converted to a map
+   */
+  public static Map<String, Object> toMap(ObjectMapper mapper, InputStream json) {
+    return deserialize(mapper, json, new TypeReference<Map<String, Object>>(){});
+  }
+  
   /**
    * Converts an object to a map.
    * 
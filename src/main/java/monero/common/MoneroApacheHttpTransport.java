@@ -0,0 +1,208 @@
+package monero.common;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequests;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Sends requests with Apache httpclient5 over pooled HTTP/1.1 connections.
+ *
+ * This is the default transport and runs on Java 8.  Blocking requests use
+ * the classic client; asynchronous requests use an asynchronous client which
+ * is started on first use.
+ */
+public class MoneroApacheHttpTransport implements MoneroRpcTransport {
+
+  public static final MoneroRpcTransport.Factory FACTORY = new MoneroRpcTransport.Factory() {
+    @Override
+    public MoneroRpcTransport create(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
+      return new MoneroApacheHttpTransport(uri, username, password, config);
+    }
+  };
+
+  private String uri;
+  private MoneroRpcConnectionConfig config;
+  private CloseableHttpClient client;
+  private volatile CloseableHttpAsyncClient asyncClient; // started on first async request
+  private BasicCredentialsProvider credentialsProvider;
+  private MoneroRpcAuthCache authCache; // authenticates requests preemptively if configured
+  private Map<Long, RequestConfig> requestConfigs = new ConcurrentHashMap<Long, RequestConfig>(); // by response timeout
+  private Map<String, ContentType> contentTypes = new ConcurrentHashMap<String, ContentType>();
+
+  public MoneroApacheHttpTransport(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
+    this.uri = uri == null ? null : uri.toString();
+    this.config = config;
+
+    // build client with pooled connections and default request config
+    HttpClientBuilder builder = HttpClients.custom()
+        .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(config.getMaxConnections())
+            .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+            .setValidateAfterInactivity(TimeValue.ofMilliseconds(config.getValidateAfterInactivity()))
+            .setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(Timeout.ofMilliseconds(config.getResponseTimeout())).setTcpNoDelay(true).build())
+            .build())
+        .setDefaultRequestConfig(buildRequestConfig(config.getResponseTimeout()))
+        .disableContentCompression() // negotiated and decoded by the connection to count bytes on the wire
+        .disableAutomaticRetries(); // retried by the connection only if the method is idempotent
+    if (config.getIdleEvictionTime() > 0) builder.evictIdleConnections(TimeValue.ofMilliseconds(config.getIdleEvictionTime()));
+    if (username != null) {
+      credentialsProvider = new BasicCredentialsProvider();
+      credentialsProvider.setCredentials(new AuthScope(uri.getHost(), uri.getPort()), new UsernamePasswordCredentials(username, password.toCharArray()));
+      builder.setDefaultCredentialsProvider(credentialsProvider);
+      if (config.getPreemptiveAuth()) authCache = new MoneroRpcAuthCache();
+    }
+    this.client = builder.build();
+  }
+
+  @Override
+  public Response send(Request request) throws IOException {
+    HttpPost post = new HttpPost(uri + "/" + request.getPath());
+    if (request.getBody() != null) post.setEntity(new ByteArrayEntity(request.getBody(), request.getOffset(), request.getLength(), getContentType(request.getContentType()), request.getContentEncoding()));
+    if (request.getAcceptEncoding() != null) post.setHeader(HttpHeaders.ACCEPT_ENCODING, request.getAcceptEncoding());
+    if (request.getTimeout() > 0) post.setConfig(getRequestConfig(request.getTimeout()));
+    CloseableHttpResponse resp;
+    if (authCache == null) resp = client.execute(post);
+    else {
+      HttpClientContext context = authCache.createContext();
+      resp = client.execute(post, context);
+      authCache.update(context);
+    }
+    HttpEntity entity = resp.getEntity();
+    return new Response(resp.getCode(), resp.getReasonPhrase(), entity == null ? null : entity.getContentEncoding(), entity == null ? null : entity.getContent(), resp);
+  }
+
+  @Override
+  public CompletableFuture<Response> sendAsync(Request request) {
+    CompletableFuture<Response> future = new CompletableFuture<Response>();
+    SimpleHttpRequest httpRequest = SimpleHttpRequests.post(uri + "/" + request.getPath());
+    if (request.getBody() != null) {
+      byte[] body = request.getBody();
+      if (request.getOffset() != 0 || request.getLength() != body.length) {
+        body = new byte[request.getLength()];
+        System.arraycopy(request.getBody(), request.getOffset(), body, 0, body.length);
+      }
+      httpRequest.setBody(body, getContentType(request.getContentType()));
+      if (request.getContentEncoding() != null) httpRequest.setHeader(HttpHeaders.CONTENT_ENCODING, request.getContentEncoding());
+    }
+    if (request.getAcceptEncoding() != null) httpRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, request.getAcceptEncoding());
+    if (request.getTimeout() > 0) httpRequest.setConfig(getRequestConfig(request.getTimeout()));
+    HttpClientContext context = authCache == null ? HttpClientContext.create() : authCache.createContext();
+    getAsyncClient().execute(httpRequest, context, new FutureCallback<SimpleHttpResponse>() {
+
+      @Override
+      public void completed(SimpleHttpResponse resp) {
+        if (authCache != null) authCache.update(context);
+        Header encoding = resp.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        future.complete(new Response(resp.getCode(), resp.getReasonPhrase(), encoding == null ? null : encoding.getValue(), resp.getBodyBytes()));
+      }
+
+      @Override
+      public void failed(Exception e) {
+        future.completeExceptionally(e);
+      }
+
+      @Override
+      public void cancelled() {
+        future.cancel(false);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Closes pooled connections and stops background eviction.
+   */
+  @Override
+  public void close() throws IOException {
+    client.close(CloseMode.GRACEFUL);
+    if (asyncClient != null) asyncClient.close(CloseMode.GRACEFUL);
+  }
+
+  private ContentType getContentType(String contentType) {
+    ContentType parsed = contentTypes.get(contentType);
+    if (parsed == null) {
+      parsed = ContentType.parse(contentType);
+      contentTypes.put(contentType, parsed);
+    }
+    return parsed;
+  }
+
+  private RequestConfig getRequestConfig(long responseTimeout) {
+    RequestConfig requestConfig = requestConfigs.get(responseTimeout);
+    if (requestConfig == null) {
+      requestConfig = buildRequestConfig(responseTimeout);
+      requestConfigs.put(responseTimeout, requestConfig);
+    }
+    return requestConfig;
+  }
+
+  private RequestConfig buildRequestConfig(long responseTimeout) {
+    return RequestConfig.custom()
+        .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout()))
+        .setConnectionRequestTimeout(Timeout.ofMilliseconds(config.getConnectionRequestTimeout()))
+        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
+        .setDefaultKeepAlive(config.getKeepAlive(), TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Get the asynchronous client, building and starting it on first use.
+   *
+   * @return the started asynchronous client
+   */
+  private CloseableHttpAsyncClient getAsyncClient() {
+    if (asyncClient == null) {
+      synchronized (this) {
+        if (asyncClient == null) {
+          HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+              .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                  .setMaxConnTotal(config.getMaxConnections())
+                  .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                  .build()) // not validated after inactivity since the reactor sees closed connections, so idle connections are evicted instead
+              .setIOReactorConfig(IOReactorConfig.custom().setSoTimeout(Timeout.ofMilliseconds(config.getResponseTimeout())).setTcpNoDelay(true).build())
+              .setDefaultRequestConfig(buildRequestConfig(config.getResponseTimeout()))
+              .setDefaultCredentialsProvider(credentialsProvider)
+              .disableAutomaticRetries();
+          if (config.getIdleEvictionTime() > 0) builder.evictIdleConnections(TimeValue.ofMilliseconds(config.getIdleEvictionTime()));
+          CloseableHttpAsyncClient client = builder.build();
+          client.start();
+          asyncClient = client;
+        }
+      }
+    }
+    return asyncClient;
+  }
+}
@@ -0,0 +1,302 @@
+package monero.common;
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import monero.daemon.model.MoneroBlock;
+import monero.daemon.model.MoneroKeyImage;
+import monero.daemon.model.MoneroOutput;
+import monero.daemon.model.MoneroTx;
+
+/**
+ * Parses blocks and transactions from the binary blobs monerod serializes
+ * them to, e.g. in the responses of get_blocks_by_height.bin.
+ *
+ * Fields are populated as they are when converted from monerod's JSON: ring
+ * output indices are the relative key offsets, amounts of RingCT outputs are
+ * 0, and the RingCT base is a map of the fields named as in the JSON.  The
+ * prunable RingCT data which follows the base is not parsed.
+ *
+ * Parsing a blob locally avoids requesting transactions decoded as JSON
+ * from monerod and parsing the JSON.
+ */
+public class MoneroBlobParser {
+
+  static final int TXIN_GEN = 0xff;
+  static final int TXIN_TO_KEY = 0x02;
+  static final int TXOUT_TO_KEY = 0x02;
+  static final int TXOUT_TO_TAGGED_KEY = 0x03;
+  static final int RCT_TYPE_NULL = 0;
+  static final int RCT_TYPE_SIMPLE = 2;
+  static final int RCT_TYPE_BULLETPROOF2 = 4;
+  static final int RCT_TYPE_BULLETPROOF_PLUS = 6;
+
+  private static final int KEY_SIZE = 32;
+  private static final int SIGNATURE_SIZE = 64;
+  private static final int TRUNCATED_AMOUNT_SIZE = 8;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * Parse a block's header, miner transaction, and transaction hashes.
+   *
+   * @param blob is the block blob
+   * @return the block whose miner tx is set
+   */
+  public static MoneroBlock parseBlock(byte[] blob) {
+    return parseBlock(ByteBuffer.wrap(blob));
+  }
+
+  /**
+   * Parse a block's header, miner transaction, and transaction hashes.
+   *
+   * @param buf is positioned at the block blob and is advanced past it
+   * @return the block whose miner tx is set
+   */
+  public static MoneroBlock parseBlock(ByteBuffer buf) {
+    return parseBlock(buf, new MoneroBlock());
+  }
+
+  /**
+   * Populate a block with its header, miner transaction, and transaction
+   * hashes parsed from its blob.
+   *
+   * @param buf is positioned at the block blob and is advanced past it
+   * @param block is the block to populate
+   * @return the same block whose miner tx is set
+   */
+  public static MoneroBlock parseBlock(ByteBuffer buf, MoneroBlock block) {
+    try {
+      block.setMajorVersion((int) readVarint(buf));
+      block.setMinorVersion((int) readVarint(buf));
+      block.setTimestamp(readVarint(buf));
+      block.setPrevHash(readHex(buf, KEY_SIZE));
+      block.setNonce(Integer.reverseBytes(buf.getInt())); // little endian
+      block.setMinerTx(readTx(buf, new MoneroTx().setIsMinerTx(true), false));
+      int numTxs = readCount(buf, KEY_SIZE);
+      List<String> txHashes = new ArrayList<String>(numTxs);
+      for (int i = 0; i < numTxs; i++) txHashes.add(readHex(buf, KEY_SIZE));
+      block.setTxHashes(txHashes);
+      return block;
+    } catch (BufferUnderflowException e) {
+      throw new MoneroError("Block blob is truncated");
+    }
+  }
+
+  /**
+   * Parse a transaction's prefix and signatures or RingCT base.
+   *
+   * @param blob is the full transaction blob
+   * @return the transaction
+   */
+  public static MoneroTx parseTx(byte[] blob) {
+    return parseTx(ByteBuffer.wrap(blob));
+  }
+
+  /**
+   * Parse a transaction's prefix and signatures or RingCT base.
+   *
+   * @param buf is positioned at the full transaction blob and is advanced past the RingCT base
+   * @return the transaction
+   */
+  public static MoneroTx parseTx(ByteBuffer buf) {
+    return parseTx(buf, new MoneroTx(), false);
+  }
+
+  /**
+   * Populate a transaction with its prefix and signatures or RingCT base
+   * parsed from its full or pruned blob.
+   *
+   * A pruned blob is the prefix and RingCT base without the signatures of
+   * version 1 transactions or the prunable RingCT data of version 2
+   * transactions, as monerod returns in pruned_as_hex.
+   *
+   * @param buf is positioned at the transaction blob and is advanced past the RingCT base
+   * @param tx is the transaction to populate
+   * @param isPruned specifies if the blob is pruned
+   * @return the same transaction
+   */
+  public static MoneroTx parseTx(ByteBuffer buf, MoneroTx tx, boolean isPruned) {
+    try {
+      return readTx(buf, tx, isPruned);
+    } catch (BufferUnderflowException e) {
+      throw new MoneroError("Transaction blob is truncated");
+    }
+  }
+
+  /**
+   * Parse a blob of consecutive varints, e.g. an output distribution
+   * compressed by monerod.
+   *
+   * @param blob is the blob of varints
+   * @return the values as unsigned longs
+   */
+  public static long[] parseVarints(byte[] blob) {
+    ByteBuffer buf = ByteBuffer.wrap(blob);
+    long[] values = new long[blob.length];
+    int numValues = 0;
+    try {
+      while (buf.hasRemaining()) values[numValues++] = readVarint(buf);
+    } catch (BufferUnderflowException e) {
+      throw new MoneroError("Varint blob is truncated");
+    }
+    return numValues == values.length ? values : Arrays.copyOf(values, numValues);
+  }
+
+  /**
+   * Decode a hex blob, e.g. a transaction's full or pruned hex or a block's
+   * hex.
+   *
+   * @param hex is the hex to decode
+   * @return the decoded bytes
+   */
+  public static byte[] hexToBytes(String hex) {
+    if (hex.length() % 2 != 0) throw new MoneroError("Hex has odd length: " + hex.length());
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(hex.charAt(i * 2), 16);
+      int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+      if (high == -1 || low == -1) throw new MoneroError("Invalid hex at index " + i * 2);
+      bytes[i] = (byte) (high << 4 | low);
+    }
+    return bytes;
+  }
+
+  /**
+   * Encode bytes as hex, e.g. a hash or key.
+   *
+   * @param bytes are the bytes to encode
+   * @return the bytes as lowercase hex
+   */
+  public static String bytesToHex(byte[] bytes) {
+    return readHex(ByteBuffer.wrap(bytes), bytes.length);
+  }
+
+  // ---------------------------- PRIVATE HELPERS -----------------------------
+
+  private static MoneroTx readTx(ByteBuffer buf, MoneroTx tx, boolean isPruned) {
+
+    // read prefix
+    long version = readVarint(buf);
+    if (version != 1 && version != 2) throw new MoneroError("Unsupported transaction version: " + version);
+    tx.setVersion((int) version);
+    tx.setUnlockTime(readVarint(buf));
+    int numInputs = readCount(buf, 1);
+    List<MoneroOutput> inputs = new ArrayList<MoneroOutput>(numInputs);
+    int[] ringSizes = new int[numInputs];
+    for (int i = 0; i < numInputs; i++) {
+      int type = buf.get() & 0xff;
+      if (type == TXIN_GEN) readVarint(buf); // height
+      else if (type == TXIN_TO_KEY) {
+        MoneroOutput input = new MoneroOutput().setTx(tx);
+        input.setAmount(toBigInteger(readVarint(buf)));
+        ringSizes[i] = readCount(buf, 1);
+        List<Integer> ringOutputIndices = new ArrayList<Integer>(ringSizes[i]);
+        for (int j = 0; j < ringSizes[i]; j++) ringOutputIndices.add((int) readVarint(buf));
+        input.setRingOutputIndices(ringOutputIndices);
+        input.setKeyImage(new MoneroKeyImage(readHex(buf, KEY_SIZE)));
+        inputs.add(input);
+      }
+      else throw new MoneroError("Unsupported transaction input type: " + type);
+    }
+    if (!inputs.isEmpty()) tx.setInputs(inputs); // miner input is ignored as when converted from json
+    int numOutputs = readCount(buf, 1);
+    List<MoneroOutput> outputs = new ArrayList<MoneroOutput>(numOutputs);
+    for (int i = 0; i < numOutputs; i++) {
+      MoneroOutput output = new MoneroOutput().setTx(tx);
+      output.setAmount(toBigInteger(readVarint(buf)));
+      int type = buf.get() & 0xff;
+      if (type != TXOUT_TO_KEY && type != TXOUT_TO_TAGGED_KEY) throw new MoneroError("Unsupported transaction output type: " + type);
+      output.setStealthPublicKey(readHex(buf, KEY_SIZE));
+      if (type == TXOUT_TO_TAGGED_KEY) buf.get(); // view tag
+      outputs.add(output);
+    }
+    tx.setOutputs(outputs);
+    int extraSize = readCount(buf, 1);
+    int[] extra = new int[extraSize];
+    for (int i = 0; i < extraSize; i++) extra[i] = buf.get() & 0xff;
+    tx.setExtra(extra);
+
+    // read ring signatures of version 1 or RingCT base of version 2
+    if (version == 1) {
+      if (isPruned) return tx;
+      List<String> signatures = new ArrayList<String>();
+      for (int ringSize : ringSizes) {
+        if (ringSize > 0) signatures.add(readHex(buf, ringSize * SIGNATURE_SIZE));
+      }
+      if (!signatures.isEmpty()) tx.setSignatures(signatures);
+    } else if (numInputs > 0) {
+      tx.setRctSignatures(readRctBase(buf, numInputs, numOutputs));
+    }
+    return tx;
+  }
+
+  private static Map<String, Object> readRctBase(ByteBuffer buf, int numInputs, int numOutputs) {
+    Map<String, Object> rctBase = new LinkedHashMap<String, Object>();
+    int type = buf.get() & 0xff;
+    rctBase.put("type", BigInteger.valueOf(type));
+    if (type == RCT_TYPE_NULL) return rctBase;
+    if (type > RCT_TYPE_BULLETPROOF_PLUS) throw new MoneroError("Unsupported RingCT type: " + type);
+    rctBase.put("txnFee", toBigInteger(readVarint(buf)));
+    if (type == RCT_TYPE_SIMPLE) {
+      List<String> pseudoOuts = new ArrayList<String>(numInputs);
+      for (int i = 0; i < numInputs; i++) pseudoOuts.add(readHex(buf, KEY_SIZE));
+      rctBase.put("pseudoOuts", pseudoOuts);
+    }
+    List<Map<String, Object>> ecdhInfo = new ArrayList<Map<String, Object>>(numOutputs);
+    for (int i = 0; i < numOutputs; i++) {
+      Map<String, Object> ecdhTuple = new LinkedHashMap<String, Object>();
+      if (type >= RCT_TYPE_BULLETPROOF2) ecdhTuple.put("amount", readHex(buf, TRUNCATED_AMOUNT_SIZE));
+      else {
+        ecdhTuple.put("mask", readHex(buf, KEY_SIZE));
+        ecdhTuple.put("amount", readHex(buf, KEY_SIZE));
+      }
+      ecdhInfo.add(ecdhTuple);
+    }
+    rctBase.put("ecdhInfo", ecdhInfo);
+    List<String> outPk = new ArrayList<String>(numOutputs);
+    for (int i = 0; i < numOutputs; i++) outPk.add(readHex(buf, KEY_SIZE));
+    rctBase.put("outPk", outPk);
+    return rctBase;
+  }
+
+  private static long readVarint(ByteBuffer buf) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = buf.get() & 0xff;
+      if (shift == 63 && b > 1) throw new MoneroError("Varint exceeds 64 bits");
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+  }
+
+  /**
+   * Read the number of elements of an array and check it against the bytes
+   * remaining to not allocate for a corrupt count.
+   */
+  private static int readCount(ByteBuffer buf, int minElementSize) {
+    long count = readVarint(buf);
+    if (count < 0 || count > buf.remaining() / minElementSize) throw new MoneroError("Blob array size exceeds remaining bytes: " + Long.toUnsignedString(count));
+    return (int) count;
+  }
+
+  private static String readHex(ByteBuffer buf, int length) {
+    if (buf.remaining() < length) throw new BufferUnderflowException();
+    char[] hex = new char[length * 2];
+    for (int i = 0; i < length; i++) {
+      int b = buf.get() & 0xff;
+      hex[i * 2] = HEX_DIGITS[b >>> 4];
+      hex[i * 2 + 1] = HEX_DIGITS[b & 0xf];
+    }
+    return new String(hex);
+  }
+
+  private static BigInteger toBigInteger(long unsigned) {
+    return unsigned >= 0 ? BigInteger.valueOf(unsigned) : new BigInteger(Long.toUnsignedString(unsigned));
+  }
+}
@@ -0,0 +1,780 @@
+package monero.common;
+
+import java.math.BigInteger;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+
+/**
+ * Routes requests across multiple connections to Monero RPC APIs.
+ *
+ * Each request is sent to the fastest available connection which is in sync
+ * with the highest known chain and fails over to the next connection on
+ * transport errors if the request is idempotent or was never sent.  Connections which fail repeatedly are skipped until
+ * their circuit breaker closes again, for longer each time they trip in
+ * quick succession.
+ *
+ * Connections are ranked by background health checks which request get_info
+ * from each connection; see startCheckingConnections().  The manager can be
+ * used anywhere a single MoneroRpcConnection is accepted.
+ */
+public class MoneroConnectionManager extends MoneroRpcConnection {
+
+  // logger
+  private static final Logger LOGGER = Logger.getLogger(MoneroConnectionManager.class.getName());
+
+  // connect timeout of the Java 11 transport, named since it is not available on Java 8
+  private static final String JDK_CONNECT_TIMEOUT_EXCEPTION = "java.net.http.HttpConnectTimeoutException";
+
+  // default configuration
+  public static final long DEFAULT_MAX_HEIGHT_LAG = 2;
+  public static final long DEFAULT_CHECK_TIMEOUT = 5000;
+  public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+  public static final long DEFAULT_CIRCUIT_OPEN_TIME = 10000;
+  public static final long DEFAULT_MAX_CIRCUIT_OPEN_TIME = 300000;
+  private static final double LATENCY_WEIGHT = 0.3; // weight of the latest latency in the moving average
+  private static final int UNAVAILABLE_RANK = 2;
+
+  // instance variables
+  private List<ConnectionHealth> connections = new CopyOnWriteArrayList<ConnectionHealth>();
+  private List<MoneroConnectionManagerListener> listeners = new CopyOnWriteArrayList<MoneroConnectionManagerListener>();
+  private volatile MoneroRpcConnection currentConnection;
+  private ScheduledExecutorService checker;
+  private ScheduledFuture<?> checkTask;
+  private long maxHeightLag = DEFAULT_MAX_HEIGHT_LAG;
+  private long checkTimeout = DEFAULT_CHECK_TIMEOUT;
+  private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+  private long circuitOpenTime = DEFAULT_CIRCUIT_OPEN_TIME;
+  private long maxCircuitOpenTime = DEFAULT_MAX_CIRCUIT_OPEN_TIME;
+
+  public MoneroConnectionManager(MoneroRpcConnection... connections) {
+    this(Arrays.asList(connections));
+  }
+
+  public MoneroConnectionManager(List<MoneroRpcConnection> connections) {
+    super();
+    for (MoneroRpcConnection connection : connections) addConnection(connection);
+  }
+
+  /**
+   * Add a connection to route requests to.
+   *
+   * @param connection is the connection to add
+   * @return this manager for chaining
+   */
+  public MoneroConnectionManager addConnection(MoneroRpcConnection connection) {
+    if (connection == null) throw new MoneroError("Connection cannot be null");
+    if (connection instanceof MoneroConnectionManager) throw new MoneroError("Cannot add a connection manager to a connection manager");
+    if (getHealth(connection) != null) throw new MoneroError("Connection is already managed: " + connection.getUri());
+    if (getMetricsListener() != null) connection.setMetricsListener(getMetricsListener());
+    connections.add(new ConnectionHealth(connection));
+    updateCurrentConnection();
+    return this;
+  }
+
+  /**
+   * Remove a connection.  The connection is not closed.
+   *
+   * @param connection is the connection to remove
+   * @return this manager for chaining
+   */
+  public MoneroConnectionManager removeConnection(MoneroRpcConnection connection) {
+    ConnectionHealth health = getHealth(connection);
+    if (health == null) throw new MoneroError("Connection is not managed: " + connection.getUri());
+    connections.remove(health);
+    updateCurrentConnection();
+    return this;
+  }
+
+  /**
+   * Get the managed connections.
+   *
+   * @return the managed connections
+   */
+  public List<MoneroRpcConnection> getConnections() {
+    List<MoneroRpcConnection> list = new ArrayList<MoneroRpcConnection>();
+    for (ConnectionHealth health : connections) list.add(health.connection);
+    return list;
+  }
+
+  /**
+   * Get the connection requests are currently routed to first.
+   *
+   * @return the currently selected connection or null if no connections are managed
+   */
+  public MoneroRpcConnection getConnection() {
+    return currentConnection;
+  }
+
+  /**
+   * Indicates if a managed connection responded to its last request or check
+   * and its circuit breaker is closed.
+   *
+   * @param connection is the managed connection to check
+   * @return true if the connection is healthy, false otherwise
+   */
+  public boolean isHealthy(MoneroRpcConnection connection) {
+    ConnectionHealth health = getHealth(connection);
+    if (health == null) throw new MoneroError("Connection is not managed: " + connection.getUri());
+    return health.isHealthy();
+  }
+
+  /**
+   * Get the chain height last reported by a managed connection.
+   *
+   * @param connection is the managed connection to get the height of
+   * @return the last reported height or null if the connection has not been checked
+   */
+  public Long getHeight(MoneroRpcConnection connection) {
+    ConnectionHealth health = getHealth(connection);
+    if (health == null) throw new MoneroError("Connection is not managed: " + connection.getUri());
+    return health.getHeight();
+  }
+
+  /**
+   * Get the moving average latency of health checks to a managed connection.
+   *
+   * @param connection is the managed connection to get the latency of
+   * @return the average latency in milliseconds or null if the connection has not been checked
+   */
+  public Long getLatency(MoneroRpcConnection connection) {
+    ConnectionHealth health = getHealth(connection);
+    if (health == null) throw new MoneroError("Connection is not managed: " + connection.getUri());
+    Long latencyNanos = health.getLatency();
+    return latencyNanos == null ? null : TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+  }
+
+  public void addListener(MoneroConnectionManagerListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(MoneroConnectionManagerListener listener) {
+    if (!listeners.remove(listener)) throw new MoneroError("Listener is not registered with connection manager");
+  }
+
+  public long getMaxHeightLag() {
+    return maxHeightLag;
+  }
+
+  /**
+   * Set how many blocks a connection may trail the highest known height and
+   * still be considered in sync.
+   *
+   * @param maxHeightLag is the maximum number of blocks behind
+   * @return this manager for chaining
+   */
+  public MoneroConnectionManager setMaxHeightLag(long maxHeightLag) {
+    this.maxHeightLag = maxHeightLag;
+    return this;
+  }
+
+  public long getCheckTimeout() {
+    return checkTimeout;
+  }
+
+  /**
+   * Set how long to wait for a health check before counting it as a failure.
+   *
+   * @param checkTimeout is the health check timeout in milliseconds
+   * @return this manager for chaining
+   */
+  public MoneroConnectionManager setCheckTimeout(long checkTimeout) {
+    this.checkTimeout = checkTimeout;
+    return this;
+  }
+
+  public int getFailureThreshold() {
+    return failureThreshold;
+  }
+
+  /**
+   * Set the number of consecutive failures which trip a connection's circuit
+   * breaker.
+   *
+   * @param failureThreshold is the number of consecutive failures
+   * @return this manager for chaining
+   */
+  public MoneroConnectionManager setFailureThreshold(int failureThreshold) {
+    if (failureThreshold < 1) throw new MoneroError("Failure threshold must be at least 1");
+    this.failureThreshold = failureThreshold;
+    return this;
+  }
+
+  public long getCircuitOpenTime() {
+    return circuitOpenTime;
+  }
+
+  /**
+   * Set how long a tripped connection is skipped before it is tried again.
+   *
+   * The time doubles each time the connection trips again soon after it was
+   * tried, up to the maximum circuit open time.
+   *
+   * @param circuitOpenTime is the initial time to skip a tripped connection in milliseconds
+   * @return this manager for chaining
+   */
+  public MoneroConnectionManager setCircuitOpenTime(long circuitOpenTime) {
+    this.circuitOpenTime = circuitOpenTime;
+    return this;
+  }
+
+  public long getMaxCircuitOpenTime() {
+    return maxCircuitOpenTime;
+  }
+
+  public MoneroConnectionManager setMaxCircuitOpenTime(long maxCircuitOpenTime) {
+    this.maxCircuitOpenTime = maxCircuitOpenTime;
+    return this;
+  }
+
+  /**
+   * Check the health, height, and latency of all connections concurrently
+   * and update the selected connection.
+   */
+  public void checkConnections() {
+
+    // request info from all connections at once
+    List<ConnectionHealth> checked = new ArrayList<ConnectionHealth>(connections);
+    List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<CompletableFuture<Map<String, Object>>>();
+    long startTime = System.nanoTime();
+    for (ConnectionHealth health : checked) futures.add(health.connection.sendJsonRequestAsync("get_info"));
+
+    // record results within the check timeout
+    long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(checkTimeout);
+    for (int i = 0; i < checked.size(); i++) {
+      ConnectionHealth health = checked.get(i);
+      try {
+        Map<String, Object> resp = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        health.onCheck(resp, System.nanoTime() - startTime);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        futures.get(i).cancel(true);
+        LOGGER.fine("Health check of " + health.connection.getUri() + " failed: " + (e instanceof ExecutionException ? e.getCause() : e));
+        health.onFailure();
+      }
+    }
+    updateCurrentConnection();
+  }
+
+  /**
+   * Start checking connections in the background.
+   *
+   * @param period is the time between checks in milliseconds
+   */
+  public synchronized void startCheckingConnections(long period) {
+    stopCheckingConnections();
+    if (checker == null) {
+      checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "MoneroConnectionManager");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    checkTask = checker.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          checkConnections();
+        } catch (Exception e) {
+          LOGGER.warning("Error checking connections: " + e.getMessage());
+        }
+      }
+    }, 0, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop checking connections in the background.
+   */
+  public synchronized void stopCheckingConnections() {
+    if (checkTask != null) {
+      checkTask.cancel(false);
+      checkTask = null;
+    }
+  }
+
+  /**
+   * Stops checking connections and closes all managed connections.
+   */
+  @Override
+  public synchronized void close() {
+    stopCheckingConnections();
+    if (checker != null) {
+      checker.shutdownNow();
+      checker = null;
+    }
+    for (ConnectionHealth health : connections) health.connection.close();
+  }
+
+  // --------------------------- ROUTED CONNECTION ----------------------------
+
+  @Override
+  public String getUri() {
+    MoneroRpcConnection connection = currentConnection;
+    return connection == null ? null : connection.getUri();
+  }
+
+  @Override
+  public String getUsername() {
+    MoneroRpcConnection connection = currentConnection;
+    return connection == null ? null : connection.getUsername();
+  }
+
+  @Override
+  public String getPassword() {
+    MoneroRpcConnection connection = currentConnection;
+    return connection == null ? null : connection.getPassword();
+  }
+
+  @Override
+  public MoneroRpcConnectionConfig getConfig() {
+    MoneroRpcConnection connection = currentConnection;
+    return connection == null ? super.getConfig() : connection.getConfig();
+  }
+
+  @Override
+  public boolean isBatchSupported() {
+    MoneroRpcConnection connection = currentConnection;
+    return connection == null || connection.isBatchSupported();
+  }
+
+  @Override
+  public Map<String, Object> sendJsonRequest(String method, Object params) {
+    return send(connection -> connection.sendJsonRequest(method, params), method);
+  }
+
+  @Override
+  public <T> T sendJsonRequest(String method, Object params, MoneroRpcResponseHandler<T> handler) {
+    return send(connection -> connection.sendJsonRequest(method, params, handler), method);
+  }
+
+  @Override
+  public <T> T sendJsonRequest(String method, Object params, Class<T> resultType) {
+    return send(connection -> connection.sendJsonRequest(method, params, resultType), method);
+  }
+
+  @Override
+  public List<Map<String, Object>> sendJsonRequests(List<MoneroRpcRequest> requests) {
+    return send(connection -> connection.sendJsonRequests(requests), getMethods(requests));
+  }
+
+  @Override
+  public <T> List<T> sendJsonRequests(List<MoneroRpcRequest> requests, Class<T> resultType) {
+    return send(connection -> connection.sendJsonRequests(requests, resultType), getMethods(requests));
+  }
+
+  @Override
+  public Map<String, Object> sendPathRequest(String path, Map<String, Object> params) {
+    return send(connection -> connection.sendPathRequest(path, params), path);
+  }
+
+  @Override
+  public <T> T sendPathRequest(String path, Map<String, Object> params, MoneroRpcResponseHandler<T> handler) {
+    return send(connection -> connection.sendPathRequest(path, params, handler), path);
+  }
+
+  @Override
+  public <T> T sendPathRequest(String path, Map<String, Object> params, Class<T> responseType) {
+    return send(connection -> connection.sendPathRequest(path, params, responseType), path);
+  }
+
+  @Override
+  public byte[] sendBinaryRequest(String path, Map<String, Object> params) {
+    return send(connection -> connection.sendBinaryRequest(path, params), path);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> sendJsonRequestAsync(String method, Object params) {
+    return sendAsync(connection -> connection.sendJsonRequestAsync(method, params), method);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendJsonRequestAsync(String method, Object params, MoneroRpcResponseHandler<T> handler) {
+    return sendAsync(connection -> connection.sendJsonRequestAsync(method, params, handler), method);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendJsonRequestAsync(String method, Object params, Class<T> resultType) {
+    return sendAsync(connection -> connection.sendJsonRequestAsync(method, params, resultType), method);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> sendPathRequestAsync(String path, Map<String, Object> params) {
+    return sendAsync(connection -> connection.sendPathRequestAsync(path, params), path);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendPathRequestAsync(String path, Map<String, Object> params, MoneroRpcResponseHandler<T> handler) {
+    return sendAsync(connection -> connection.sendPathRequestAsync(path, params, handler), path);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendPathRequestAsync(String path, Map<String, Object> params, Class<T> responseType) {
+    return sendAsync(connection -> connection.sendPathRequestAsync(path, params, responseType), path);
+  }
+
+  @Override
+  public CompletableFuture<byte[]> sendBinaryRequestAsync(String path, Map<String, Object> params) {
+    return sendAsync(connection -> connection.sendBinaryRequestAsync(path, params), path);
+  }
+
+  /**
+   * Set the metrics listener of this manager and all managed connections.
+   */
+  @Override
+  public void setMetricsListener(MoneroRpcMetricsListener metricsListener) {
+    super.setMetricsListener(metricsListener);
+    for (ConnectionHealth health : connections) health.connection.setMetricsListener(metricsListener);
+  }
+
+  @Override
+  public long getBytesSent() {
+    long sum = 0;
+    for (ConnectionHealth health : connections) sum += health.connection.getBytesSent();
+    return sum;
+  }
+
+  @Override
+  public long getUncompressedBytesSent() {
+    long sum = 0;
+    for (ConnectionHealth health : connections) sum += health.connection.getUncompressedBytesSent();
+    return sum;
+  }
+
+  @Override
+  public long getBytesReceived() {
+    long sum = 0;
+    for (ConnectionHealth health : connections) sum += health.connection.getBytesReceived();
+    return sum;
+  }
+
+  @Override
+  public long getUncompressedBytesReceived() {
+    long sum = 0;
+    for (ConnectionHealth health : connections) sum += health.connection.getUncompressedBytesReceived();
+    return sum;
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(this);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return this == obj;
+  }
+
+  // ------------------------------ PRIVATE -----------------------------------
+
+  private interface Request<T> {
+    T send(MoneroRpcConnection connection);
+  }
+
+  private interface AsyncRequest<T> {
+    CompletableFuture<T> send(MoneroRpcConnection connection);
+  }
+
+  /**
+   * Sends a request to each candidate connection in order until one responds.
+   *
+   * RPC errors are responses from a working connection so they are thrown
+   * without failing over.  HTTP status and transport errors fail over if the
+   * request's methods are idempotent or the request was never sent, since a
+   * connection which timed out may have already applied a transfer or relay.
+   */
+  private <T> T send(Request<T> request, String... methods) {
+    MoneroError lastError = null;
+    for (ConnectionHealth health : getCandidates()) {
+      try {
+        T result = request.send(health.connection);
+        onResponse(health);
+        return result;
+      } catch (MoneroError e) {
+        if (isResponseError(e)) {
+          onResponse(health);
+          throw e;
+        }
+        onFailure(health);
+        if (!isFailoverAllowed(health.connection, e, methods)) throw e;
+        LOGGER.fine("Request to " + health.connection.getUri() + " failed, failing over: " + e.getMessage());
+        lastError = e;
+      }
+    }
+    if (lastError != null) throw lastError;
+    throw new MoneroError("No connections to send request to");
+  }
+
+  private <T> CompletableFuture<T> sendAsync(AsyncRequest<T> request, String... methods) {
+    return sendAsync(request, methods, getCandidates().iterator(), null);
+  }
+
+  private <T> CompletableFuture<T> sendAsync(AsyncRequest<T> request, String[] methods, Iterator<ConnectionHealth> candidates, Throwable lastError) {
+    if (!candidates.hasNext()) {
+      CompletableFuture<T> future = new CompletableFuture<T>();
+      future.completeExceptionally(lastError == null ? new MoneroError("No connections to send request to") : lastError);
+      return future;
+    }
+    ConnectionHealth health = candidates.next();
+    CompletableFuture<T> future;
+    try {
+      future = request.send(health.connection);
+    } catch (Exception e) {
+      future = new CompletableFuture<T>();
+      future.completeExceptionally(e);
+    }
+    return future.handle((result, e) -> {
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      if (cause != null && !isResponseError(cause)) {
+        onFailure(health);
+        if (isFailoverAllowed(health.connection, cause, methods)) {
+          LOGGER.fine("Request to " + health.connection.getUri() + " failed, failing over: " + cause.getMessage());
+          return sendAsync(request, methods, candidates, cause);
+        }
+      } else {
+        onResponse(health);
+      }
+      CompletableFuture<T> completed = new CompletableFuture<T>();
+      if (cause == null) completed.complete(result);
+      else completed.completeExceptionally(cause);
+      return completed;
+    }).thenCompose(next -> next);
+  }
+
+  /**
+   * Indicates if an error was returned by the RPC method of a working
+   * connection, as opposed to an HTTP status or transport error.
+   */
+  private static boolean isResponseError(Throwable error) {
+    return error instanceof MoneroRpcError && !MoneroRpcMetrics.isHttpError((MoneroRpcError) error);
+  }
+
+  /**
+   * Indicates if a failed request may be sent to another connection, which
+   * is if all of its methods are idempotent or it failed before being sent.
+   */
+  private static boolean isFailoverAllowed(MoneroRpcConnection connection, Throwable error, String[] methods) {
+    if (isUnsent(error)) return true;
+    for (String method : methods) {
+      if (!connection.getConfig().isMethodIdempotent(method)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Indicates if a request failed before any of it was sent because its
+   * connection could not be opened.
+   */
+  private static boolean isUnsent(Throwable error) {
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException || cause instanceof ConnectTimeoutException) return true;
+      if (JDK_CONNECT_TIMEOUT_EXCEPTION.equals(cause.getClass().getName())) return true;
+    }
+    return false;
+  }
+
+  private static String[] getMethods(List<MoneroRpcRequest> requests) {
+    String[] methods = new String[requests.size()];
+    for (int i = 0; i < methods.length; i++) methods[i] = requests.get(i).getMethod();
+    return methods;
+  }
+
+  private void onResponse(ConnectionHealth health) {
+    if (health.onResponse()) updateCurrentConnection();
+  }
+
+  private void onFailure(ConnectionHealth health) {
+    if (health.onFailure()) updateCurrentConnection();
+  }
+
+  private ConnectionHealth getHealth(MoneroRpcConnection connection) {
+    for (ConnectionHealth health : connections) {
+      if (health.connection == connection) return health;
+    }
+    return null;
+  }
+
+  /**
+   * Get connections in the order to try them: available connections which
+   * are in sync by latency, then available connections which are behind, then
+   * tripped connections by when they are retried.
+   */
+  private List<ConnectionHealth> getCandidates() {
+
+    // get highest known height
+    long maxHeight = 0;
+    for (ConnectionHealth health : connections) {
+      Long height = health.getHeight();
+      if (height != null) maxHeight = Math.max(maxHeight, height);
+    }
+
+    // rank snapshots of connections so concurrent updates cannot reorder them mid-sort
+    long now = System.currentTimeMillis();
+    long minSyncedHeight = maxHeight - maxHeightLag;
+    List<Candidate> ranked = new ArrayList<Candidate>();
+    for (ConnectionHealth health : connections) ranked.add(health.getCandidate(now, minSyncedHeight));
+    Collections.sort(ranked, new Comparator<Candidate>() {
+      @Override
+      public int compare(Candidate c1, Candidate c2) {
+        int cmp = Integer.compare(c1.rank, c2.rank);
+        if (cmp != 0) return cmp;
+        if (c1.rank == UNAVAILABLE_RANK) return Long.compare(c1.retryTime, c2.retryTime);
+        return Long.compare(c1.latency, c2.latency);
+      }
+    });
+    List<ConnectionHealth> candidates = new ArrayList<ConnectionHealth>();
+    for (Candidate candidate : ranked) candidates.add(candidate.health);
+    return candidates;
+  }
+
+  private void updateCurrentConnection() {
+    List<ConnectionHealth> candidates = getCandidates();
+    MoneroRpcConnection best = candidates.isEmpty() ? null : candidates.get(0).connection;
+    MoneroRpcConnection previous;
+    synchronized (this) {
+      previous = currentConnection;
+      currentConnection = best;
+    }
+    if (previous == best) return;
+    LOGGER.fine("Switched connection to " + (best == null ? null : best.getUri()));
+    for (MoneroConnectionManagerListener listener : listeners) listener.onConnectionChanged(best);
+  }
+
+  /**
+   * Ranks a connection by its health at one point in time.
+   */
+  private static class Candidate {
+
+    private final ConnectionHealth health;
+    private final int rank;        // 0 if in sync, 1 if behind, UNAVAILABLE_RANK if tripped
+    private final long retryTime;
+    private final long latency;
+
+    private Candidate(ConnectionHealth health, int rank, long retryTime, long latency) {
+      this.health = health;
+      this.rank = rank;
+      this.retryTime = retryTime;
+      this.latency = latency;
+    }
+  }
+
+  /**
+   * Tracks the health, height, latency, and circuit breaker of a connection.
+   */
+  private class ConnectionHealth {
+
+    private MoneroRpcConnection connection;
+    private Long height;
+    private boolean synced = true;    // assumed until checked
+    private Long latency;             // moving average of check latencies in nanoseconds
+    private int numFailures;          // consecutive failures
+    private long retryTime;           // time when a tripped connection is retried, 0 if closed
+    private long lastTripTime;
+    private long openTime;
+
+    private ConnectionHealth(MoneroRpcConnection connection) {
+      this.connection = connection;
+    }
+
+    private synchronized Long getHeight() {
+      return height;
+    }
+
+    private synchronized Long getLatency() {
+      return latency;
+    }
+
+    private synchronized long getLatencyOrMax() {
+      return latency == null ? Long.MAX_VALUE : latency;
+    }
+
+    private synchronized boolean isHealthy() {
+      return numFailures == 0 && retryTime == 0;
+    }
+
+    /**
+     * Indicates if requests may be sent, either because the circuit is closed
+     * or because it is half open and the connection can be tried again.
+     */
+    private synchronized boolean isAvailable(long now) {
+      return retryTime == 0 || now >= retryTime;
+    }
+
+    private synchronized Candidate getCandidate(long now, long minSyncedHeight) {
+      int rank;
+      if (!isAvailable(now)) rank = UNAVAILABLE_RANK;
+      else rank = synced && (height == null || height >= minSyncedHeight) ? 0 : 1;
+      return new Candidate(this, rank, retryTime, getLatencyOrMax());
+    }
+
+    private synchronized void onCheck(Map<String, Object> resp, long latencyNanos) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> result = (Map<String, Object>) resp.get("result");
+      if (result == null || !"OK".equals(result.get("status"))) {
+        onFailure();
+        return;
+      }
+      height = ((BigInteger) result.get("height")).longValue();
+      Boolean isSynchronized = (Boolean) result.get("synchronized");
+      synced = isSynchronized == null || isSynchronized;
+      latency = latency == null ? latencyNanos : (long) (LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * latency);
+      onResponse();
+    }
+
+    /**
+     * Records a response and closes the circuit breaker.
+     *
+     * @return true if the circuit breaker was tripped
+     */
+    private synchronized boolean onResponse() {
+      boolean tripped = retryTime != 0;
+      numFailures = 0;
+      retryTime = 0;
+      return tripped;
+    }
+
+    /**
+     * Records a failure and trips the circuit breaker if the failure
+     * threshold is reached or the connection failed while half open.
+     *
+     * @return true if the circuit breaker tripped
+     */
+    private synchronized boolean onFailure() {
+      numFailures++;
+      long now = System.currentTimeMillis();
+      boolean halfOpen = retryTime != 0 && now >= retryTime;
+      if (!halfOpen && (retryTime != 0 || numFailures < failureThreshold)) return false;
+
+      // back off longer if the connection trips again soon after it was tried
+      boolean flapping = lastTripTime != 0 && now - lastTripTime < 2 * openTime + circuitOpenTime;
+      openTime = flapping ? Math.min(openTime * 2, maxCircuitOpenTime) : circuitOpenTime;
+      lastTripTime = now;
+      retryTime = now + openTime;
+      LOGGER.warning("Connection to " + connection.getUri() + " failed " + numFailures + " times, skipping for " + openTime + " ms");
+      return true;
+    }
+  }
+}
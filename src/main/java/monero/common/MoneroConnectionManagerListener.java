@@ -0,0 +1,15 @@
+package monero.common;
+
+/**
+ * Receives notifications as a connection manager changes its selected
+ * connection.
+ */
+public class MoneroConnectionManagerListener {
+
+  /**
+   * Called when the connection manager selects a different connection.
+   *
+   * @param connection is the newly selected connection or null if no connection is available
+   */
+  public void onConnectionChanged(MoneroRpcConnection connection) { }
+}
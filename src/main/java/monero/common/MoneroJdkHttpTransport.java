@@ -0,0 +1,50 @@
+package monero.common;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends requests with the JDK HTTP client on Java 11 or later.
+ *
+ * The multi-release jar replaces this class with its Java 11 implementation.
+ * On Java 8 the transport is unavailable and connections keep using
+ * MoneroApacheHttpTransport.
+ */
+public class MoneroJdkHttpTransport implements MoneroRpcTransport {
+
+  public static final MoneroRpcTransport.Factory FACTORY = new MoneroRpcTransport.Factory() {
+    @Override
+    public MoneroRpcTransport create(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
+      return new MoneroJdkHttpTransport(uri, username, password, config);
+    }
+  };
+
+  private static final String UNAVAILABLE_MESSAGE = "The JDK HTTP transport requires Java 11 or later";
+
+  public MoneroJdkHttpTransport(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
+    throw new MoneroError(UNAVAILABLE_MESSAGE);
+  }
+
+  /**
+   * Indicates if the transport is available on the running JVM.
+   *
+   * @return true on Java 11 or later, false otherwise
+   */
+  public static boolean isAvailable() {
+    return false;
+  }
+
+  @Override
+  public Response send(Request request) throws IOException {
+    throw new MoneroError(UNAVAILABLE_MESSAGE);
+  }
+
+  @Override
+  public CompletableFuture<Response> sendAsync(Request request) {
+    throw new MoneroError(UNAVAILABLE_MESSAGE);
+  }
+
+  @Override
+  public void close() throws IOException { }
+}
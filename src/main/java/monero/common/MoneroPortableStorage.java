@@ -0,0 +1,407 @@
+package monero.common;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes maps to and from epee's portable storage format, which monerod
+ * uses for the requests and responses of its binary (.bin) RPC methods.
+ *
+ * Values are written as monerod's JSON loader would store them: non-negative
+ * integers as uint64, negative integers as int64, decimals as double, strings
+ * and byte arrays as strings, booleans, maps as sections, and collections as
+ * typed arrays.  Null values and empty collections are omitted.
+ *
+ * Values are read as the JSON conversion of the native library returned them:
+ * integers as the smallest of Integer, Long, and BigInteger which fits, and
+ * strings as UTF-8 strings unless binary strings are requested, in which case
+ * they are byte arrays, e.g. to read hashes and blobs.
+ */
+public class MoneroPortableStorage {
+
+  public static final int SIGNATURE_A = 0x01011101;
+  public static final int SIGNATURE_B = 0x01020101;
+  public static final byte FORMAT_VERSION = 1;
+
+  static final int TYPE_INT64 = 1;
+  static final int TYPE_INT32 = 2;
+  static final int TYPE_INT16 = 3;
+  static final int TYPE_INT8 = 4;
+  static final int TYPE_UINT64 = 5;
+  static final int TYPE_UINT32 = 6;
+  static final int TYPE_UINT16 = 7;
+  static final int TYPE_UINT8 = 8;
+  static final int TYPE_DOUBLE = 9;
+  static final int TYPE_STRING = 10;
+  static final int TYPE_BOOL = 11;
+  static final int TYPE_OBJECT = 12;
+  static final int TYPE_ARRAY = 13;
+  static final int FLAG_ARRAY = 0x80;
+
+  private static final int MAX_DEPTH = 100; // same as epee
+  private static final int INITIAL_CAPACITY = 256;
+  private static final BigInteger UINT64_MAX = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+  /**
+   * Serialize a map to portable storage.
+   *
+   * @param map is the map to serialize
+   * @return the serialized map
+   */
+  public static byte[] serialize(Map<String, ?> map) {
+    Writer writer = new Writer(INITIAL_CAPACITY);
+    writer.writeHeader();
+    writer.writeSection(map, 0);
+    ByteBuffer buf = writer.buf;
+    byte[] bytes = new byte[buf.position()];
+    buf.flip();
+    buf.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Deserialize a map from portable storage.
+   *
+   * @param bytes are the bytes to deserialize
+   * @return the deserialized map
+   */
+  public static Map<String, Object> deserialize(byte[] bytes) {
+    return deserialize(ByteBuffer.wrap(bytes), false);
+  }
+
+  /**
+   * Deserialize a map from portable storage.
+   *
+   * @param buf is positioned at the serialized map and is advanced past it
+   * @param binaryStrings specifies if strings are read as byte arrays instead of UTF-8 strings
+   * @return the deserialized map
+   */
+  public static Map<String, Object> deserialize(ByteBuffer buf, boolean binaryStrings) {
+    ByteOrder order = buf.order();
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      if (buf.remaining() < 9 || buf.getInt() != SIGNATURE_A || buf.getInt() != SIGNATURE_B) throw new MoneroError("Invalid portable storage signature");
+      byte version = buf.get();
+      if (version != FORMAT_VERSION) throw new MoneroError("Unsupported portable storage version: " + version);
+      return new Reader(buf, binaryStrings).readSection(0);
+    } catch (BufferUnderflowException e) {
+      throw new MoneroError("Portable storage is truncated");
+    } finally {
+      buf.order(order);
+    }
+  }
+
+  // ---------------------------- PRIVATE HELPERS -----------------------------
+
+  /**
+   * Writes portable storage to a buffer which grows as needed.
+   */
+  private static class Writer {
+
+    private ByteBuffer buf;
+
+    private Writer(int capacity) {
+      buf = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void writeHeader() {
+      ensureRemaining(9);
+      buf.putInt(SIGNATURE_A);
+      buf.putInt(SIGNATURE_B);
+      buf.put(FORMAT_VERSION);
+    }
+
+    private void writeSection(Map<String, ?> map, int depth) {
+      if (depth > MAX_DEPTH) throw new MoneroError("Portable storage exceeds maximum depth of " + MAX_DEPTH);
+      int count = 0;
+      for (Object value : map.values()) if (isSerialized(value)) count++;
+      writeVarint(count);
+      for (Map.Entry<String, ?> entry : map.entrySet()) {
+        if (!isSerialized(entry.getValue())) continue;
+        byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        if (name.length > 255) throw new MoneroError("Portable storage name exceeds 255 bytes: " + entry.getKey());
+        ensureRemaining(1 + name.length);
+        buf.put((byte) name.length);
+        buf.put(name);
+        writeEntry(entry.getValue(), depth);
+      }
+    }
+
+    private void writeEntry(Object value, int depth) {
+      int type = getType(value);
+      if (type == TYPE_ARRAY) {
+        List<?> values = toList(value);
+        type = getArrayType(values);
+        ensureRemaining(1);
+        buf.put((byte) (type | FLAG_ARRAY));
+        writeArray(values, type, depth);
+      } else {
+        ensureRemaining(1);
+        buf.put((byte) type);
+        writeValue(value, type, depth);
+      }
+    }
+
+    private void writeArray(List<?> values, int type, int depth) {
+      writeVarint(values.size());
+      for (Object value : values) {
+        if (type == TYPE_ARRAY) writeEntry(value, depth + 1);
+        else writeValue(value, type, depth);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value, int type, int depth) {
+      switch (type) {
+        case TYPE_INT64:
+        case TYPE_UINT64:
+          ensureRemaining(8);
+          buf.putLong(((Number) value).longValue()); // two's complement of uint64 above Long.MAX_VALUE
+          break;
+        case TYPE_DOUBLE:
+          ensureRemaining(8);
+          buf.putDouble(((Number) value).doubleValue());
+          break;
+        case TYPE_BOOL:
+          ensureRemaining(1);
+          buf.put((byte) (((Boolean) value) ? 1 : 0));
+          break;
+        case TYPE_STRING:
+          byte[] bytes = value instanceof byte[] ? (byte[]) value : value.toString().getBytes(StandardCharsets.UTF_8);
+          writeVarint(bytes.length);
+          ensureRemaining(bytes.length);
+          buf.put(bytes);
+          break;
+        case TYPE_OBJECT:
+          writeSection((Map<String, ?>) value, depth + 1);
+          break;
+        default:
+          throw new MoneroError("Unsupported portable storage type: " + type);
+      }
+    }
+
+    private void writeVarint(long value) {
+      if (value < 0) throw new MoneroError("Portable storage varint is negative: " + value);
+      if (value <= 63) {
+        ensureRemaining(1);
+        buf.put((byte) (value << 2));
+      } else if (value <= 16383) {
+        ensureRemaining(2);
+        buf.putShort((short) ((value << 2) | 1));
+      } else if (value <= 1073741823) {
+        ensureRemaining(4);
+        buf.putInt((int) ((value << 2) | 2));
+      } else {
+        if (value > 4611686018427387903L) throw new MoneroError("Portable storage varint is too big: " + value);
+        ensureRemaining(8);
+        buf.putLong((value << 2) | 3);
+      }
+    }
+
+    private void ensureRemaining(int length) {
+      if (buf.remaining() >= length) return;
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + length)).order(ByteOrder.LITTLE_ENDIAN);
+      buf.flip();
+      grown.put(buf);
+      buf = grown;
+    }
+
+    private static boolean isSerialized(Object value) {
+      if (value == null) return false;
+      if (value instanceof Number || value instanceof String || value instanceof Boolean) return true;
+      if (value instanceof Collection) return !((Collection<?>) value).isEmpty();
+      if (value instanceof Object[]) return ((Object[]) value).length > 0;
+      return true;
+    }
+
+    private static List<?> toList(Object value) {
+      if (value instanceof List) return (List<?>) value;
+      if (value instanceof Collection) return new ArrayList<Object>((Collection<?>) value);
+      List<Object> list = new ArrayList<Object>();
+      for (Object element : (Object[]) value) list.add(element);
+      return list;
+    }
+
+    /**
+     * Get the type to write a value as, checking concrete classes before
+     * interfaces which are slower to check against.
+     */
+    private static int getType(Object value) {
+      if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) return ((Number) value).longValue() < 0 ? TYPE_INT64 : TYPE_UINT64;
+      if (value instanceof String || value instanceof byte[]) return TYPE_STRING;
+      if (value instanceof Boolean) return TYPE_BOOL;
+      if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) return TYPE_DOUBLE;
+      if (value instanceof BigInteger) {
+        BigInteger bigInt = (BigInteger) value;
+        if (bigInt.signum() >= 0) {
+          if (bigInt.compareTo(UINT64_MAX) > 0) throw new MoneroError("Integer exceeds uint64: " + value);
+          return TYPE_UINT64;
+        }
+        if (bigInt.bitLength() > 63) throw new MoneroError("Integer exceeds int64: " + value);
+        return TYPE_INT64;
+      }
+      if (value instanceof Map) return TYPE_OBJECT;
+      if (value instanceof Collection || value instanceof Object[]) return TYPE_ARRAY;
+      throw new MoneroError("Cannot serialize " + value.getClass().getName() + " to portable storage");
+    }
+
+    /**
+     * Get the element type of an array, which is int64 if any integer is
+     * negative, or uint64 if the array is empty, e.g. an empty array nested
+     * in an array, since an empty array has no elements to read as its type.
+     */
+    private static int getArrayType(List<?> values) {
+      int type = -1;
+      for (Object value : values) {
+        if (value == null) throw new MoneroError("Cannot serialize null array element to portable storage");
+        int valueType = getType(value);
+        if (type == -1 || (type == TYPE_UINT64 && valueType == TYPE_INT64)) type = valueType;
+        else if (type != valueType && !(type == TYPE_INT64 && valueType == TYPE_UINT64)) throw new MoneroError("Cannot serialize array of mixed types to portable storage");
+      }
+      return type == -1 ? TYPE_UINT64 : type;
+    }
+  }
+
+  /**
+   * Reads portable storage from a little endian buffer.
+   */
+  private static class Reader {
+
+    private ByteBuffer buf;
+    private boolean binaryStrings;
+
+    private Reader(ByteBuffer buf, boolean binaryStrings) {
+      this.buf = buf;
+      this.binaryStrings = binaryStrings;
+    }
+
+    private Map<String, Object> readSection(int depth) {
+      if (depth > MAX_DEPTH) throw new MoneroError("Portable storage exceeds maximum depth of " + MAX_DEPTH);
+      int count = readSize(2); // each entry has at least a name length and type
+      Map<String, Object> map = new LinkedHashMap<String, Object>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; i++) {
+        int nameLength = buf.get() & 0xff;
+        String name = readString(nameLength);
+        map.put(name, readEntry(buf.get() & 0xff, depth));
+      }
+      return map;
+    }
+
+    private Object readEntry(int type, int depth) {
+      if ((type & FLAG_ARRAY) == 0) return readValue(type, depth);
+      type &= ~FLAG_ARRAY;
+      int count = readSize(type == TYPE_OBJECT || type == TYPE_STRING || type == TYPE_ARRAY ? 1 : getSize(type));
+      List<Object> values = new ArrayList<Object>(count);
+      for (int i = 0; i < count; i++) {
+        if (type == TYPE_ARRAY) {
+          int elementType = buf.get() & 0xff;
+          if ((elementType & FLAG_ARRAY) == 0) throw new MoneroError("Portable storage array element is not an array");
+          values.add(readEntry(elementType, depth + 1));
+        } else {
+          values.add(readValue(type, depth));
+        }
+      }
+      return values;
+    }
+
+    private Object readValue(int type, int depth) {
+      switch (type) {
+        case TYPE_INT64: return toNumber(buf.getLong());
+        case TYPE_INT32: return buf.getInt();
+        case TYPE_INT16: return (int) buf.getShort();
+        case TYPE_INT8: return (int) buf.get();
+        case TYPE_UINT64: {
+          long value = buf.getLong();
+          return value >= 0 ? toNumber(value) : new BigInteger(Long.toUnsignedString(value));
+        }
+        case TYPE_UINT32: return toNumber(buf.getInt() & 0xffffffffL);
+        case TYPE_UINT16: return buf.getShort() & 0xffff;
+        case TYPE_UINT8: return buf.get() & 0xff;
+        case TYPE_DOUBLE: return buf.getDouble();
+        case TYPE_BOOL: return buf.get() != 0;
+        case TYPE_STRING: {
+          int length = readSize(1);
+          if (!binaryStrings) return readString(length);
+          byte[] bytes = new byte[length];
+          buf.get(bytes);
+          return bytes;
+        }
+        case TYPE_OBJECT: return readSection(depth + 1);
+        default: throw new MoneroError("Unsupported portable storage type: " + type);
+      }
+    }
+
+    private String readString(int length) {
+      if (length > buf.remaining()) throw new BufferUnderflowException();
+      String str;
+      if (buf.hasArray()) {
+        str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+      } else {
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        str = new String(bytes, StandardCharsets.UTF_8);
+      }
+      return str;
+    }
+
+    /**
+     * Read a count or length and check it against the remaining bytes before
+     * anything is allocated for it.
+     *
+     * @param minElementSize is the minimum size in bytes of each element
+     * @return the count or length
+     */
+    private int readSize(int minElementSize) {
+      long size = readVarint();
+      if (size > buf.remaining() / minElementSize) throw new MoneroError("Portable storage size exceeds remaining bytes: " + size);
+      return (int) size;
+    }
+
+    private long readVarint() {
+      if (!buf.hasRemaining()) throw new BufferUnderflowException();
+      int first = buf.get(buf.position()) & 0xff;
+      switch (first & 3) {
+        case 0: return (buf.get() & 0xff) >>> 2;
+        case 1: return (buf.getShort() & 0xffff) >>> 2;
+        case 2: return (buf.getInt() & 0xffffffffL) >>> 2;
+        default: return buf.getLong() >>> 2;
+      }
+    }
+
+    private static int getSize(int type) {
+      switch (type) {
+        case TYPE_INT64:
+        case TYPE_UINT64:
+        case TYPE_DOUBLE:
+          return 8;
+        case TYPE_INT32:
+        case TYPE_UINT32:
+          return 4;
+        case TYPE_INT16:
+        case TYPE_UINT16:
+          return 2;
+        case TYPE_INT8:
+        case TYPE_UINT8:
+        case TYPE_BOOL:
+          return 1;
+        default:
+          throw new MoneroError("Unsupported portable storage type: " + type);
+      }
+    }
+
+    private static Number toNumber(long value) {
+      if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int) value;
+      return value;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package monero.common;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hc.client5.http.auth.AuthCache;
+import org.apache.hc.client5.http.auth.AuthChallenge;
+import org.apache.hc.client5.http.auth.AuthExchange;
+import org.apache.hc.client5.http.auth.AuthScheme;
+import org.apache.hc.client5.http.auth.AuthenticationException;
+import org.apache.hc.client5.http.auth.CredentialsProvider;
+import org.apache.hc.client5.http.auth.MalformedChallengeException;
+import org.apache.hc.client5.http.impl.auth.DigestScheme;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+/**
+ * Caches the authentication scheme of each host across requests of a
+ * connection so requests authenticate preemptively instead of first taking a
+ * 401 challenge round trip.
+ *
+ * The client only caches stateless schemes such as basic auth, so digest
+ * schemes are cached by update() after a challenge succeeds.  A cached digest
+ * scheme reuses the server's nonce with an incrementing nonce count until the
+ * server challenges again, e.g. when the nonce goes stale.
+ */
+class MoneroRpcAuthCache implements AuthCache {
+
+  private Map<HttpHost, AuthScheme> schemes = new ConcurrentHashMap<HttpHost, AuthScheme>();
+
+  /**
+   * Create a context which authenticates a request with the cached schemes.
+   *
+   * @return the context to execute the request with
+   */
+  HttpClientContext createContext() {
+    HttpClientContext context = HttpClientContext.create();
+    context.setAuthCache(this);
+    return context;
+  }
+
+  /**
+   * Cache the digest schemes which succeeded during a request.
+   *
+   * @param context is the context the request was executed with
+   */
+  void update(HttpClientContext context) {
+    for (Map.Entry<HttpHost, AuthExchange> entry : context.getAuthExchanges().entrySet()) {
+      AuthExchange exchange = entry.getValue();
+      if (exchange.getState() == AuthExchange.State.SUCCESS && exchange.getAuthScheme() instanceof DigestScheme) {
+        schemes.put(entry.getKey(), new SharedAuthScheme(exchange.getAuthScheme()));
+      }
+    }
+  }
+
+  @Override
+  public void put(HttpHost host, AuthScheme authScheme) {
+    if (host != null && authScheme != null) schemes.put(host, authScheme);
+  }
+
+  @Override
+  public AuthScheme get(HttpHost host) {
+    return schemes.get(host);
+  }
+
+  @Override
+  public void remove(HttpHost host) {
+    if (host != null) schemes.remove(host);
+  }
+
+  @Override
+  public void clear() {
+    schemes.clear();
+  }
+
+  /**
+   * Serializes use of a scheme by concurrent requests so each request takes
+   * the next nonce count.
+   */
+  private static class SharedAuthScheme implements AuthScheme {
+
+    private AuthScheme scheme;
+
+    private SharedAuthScheme(AuthScheme scheme) {
+      this.scheme = scheme;
+    }
+
+    @Override
+    public String getName() {
+      return scheme.getName();
+    }
+
+    @Override
+    public boolean isConnectionBased() {
+      return scheme.isConnectionBased();
+    }
+
+    @Override
+    public void processChallenge(AuthChallenge authChallenge, HttpContext context) throws MalformedChallengeException {
+      synchronized (scheme) {
+        scheme.processChallenge(authChallenge, context);
+      }
+    }
+
+    @Override
+    public boolean isChallengeComplete() {
+      synchronized (scheme) {
+        return scheme.isChallengeComplete();
+      }
+    }
+
+    @Override
+    public String getRealm() {
+      synchronized (scheme) {
+        return scheme.getRealm();
+      }
+    }
+
+    @Override
+    public boolean isResponseReady(HttpHost host, CredentialsProvider credentialsProvider, HttpContext context) throws AuthenticationException {
+      synchronized (scheme) {
+        return scheme.isResponseReady(host, credentialsProvider, context);
+      }
+    }
+
+    @Override
+    public Principal getPrincipal() {
+      synchronized (scheme) {
+        return scheme.getPrincipal();
+      }
+    }
+
+    @Override
+    public String generateAuthResponse(HttpHost host, HttpRequest request, HttpContext context) throws AuthenticationException {
+      synchronized (scheme) {
+        return scheme.generateAuthResponse(host, request, context);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return scheme.toString();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package monero.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Coalesces identical requests of a connection so concurrent callers share
+ * one request in flight and, within an optional freshness window, its
+ * result.
+ *
+ * Callers sharing a request receive the same result object, which must not
+ * be modified.
+ */
+class MoneroRpcCoalescer {
+
+  private static final ObjectWriter KEY_WRITER = MoneroRpcConnection.MAPPER.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+  private long windowNanos;
+  private ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+  /**
+   * @param window is how long a result is shared after its request completes in milliseconds
+   */
+  MoneroRpcCoalescer(long window) {
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+  }
+
+  /**
+   * Build the key which identifies identical requests.
+   *
+   * @param kind distinguishes the endpoint and response binding of the request
+   * @param method is the JSON-RPC method or path requested
+   * @param params are the request parameters
+   * @return the key of the request
+   */
+  static String getKey(String kind, String method, Object params) {
+    try {
+      return kind + ' ' + method + ' ' + (params == null ? "" : KEY_WRITER.writeValueAsString(params));
+    } catch (JsonProcessingException e) {
+      throw new MoneroError(e);
+    }
+  }
+
+  /**
+   * Send a request or share the result of an identical request.
+   *
+   * @param key identifies identical requests
+   * @param request sends the request if no identical request is shared
+   * @param listener is notified if the request is coalesced (optional)
+   * @param method is the JSON-RPC method or path requested
+   * @return the result of the request
+   */
+  @SuppressWarnings("unchecked")
+  <T> T coalesce(String key, Supplier<T> request, MoneroRpcMetricsListener listener, String method) {
+    Flight flight = new Flight();
+    Flight shared = join(key, flight);
+    if (shared != null) {
+      if (listener != null) listener.onRequestCoalesced(method);
+      try {
+        return (T) shared.future.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof MoneroError) throw (MoneroError) e.getCause();
+        throw new MoneroError(e.getCause());
+      }
+    }
+    T result;
+    try {
+      result = request.get();
+    } catch (RuntimeException e) {
+      flights.remove(key, flight);
+      flight.future.completeExceptionally(e);
+      throw e;
+    }
+    land(key, flight, result);
+    return result;
+  }
+
+  /**
+   * Send an asynchronous request or share the result of an identical request.
+   *
+   * @param key identifies identical requests
+   * @param request sends the request if no identical request is shared
+   * @param listener is notified if the request is coalesced (optional)
+   * @param method is the JSON-RPC method or path requested
+   * @return a future which completes with the result of the request
+   */
+  @SuppressWarnings("unchecked")
+  <T> CompletableFuture<T> coalesceAsync(String key, Supplier<CompletableFuture<T>> request, MoneroRpcMetricsListener listener, String method) {
+    Flight flight = new Flight();
+    Flight shared = join(key, flight);
+    if (shared != null) {
+      if (listener != null) listener.onRequestCoalesced(method);
+      return shared.future.thenApply(result -> (T) result);
+    }
+    CompletableFuture<T> future;
+    try {
+      future = request.get();
+    } catch (RuntimeException e) {
+      flights.remove(key, flight);
+      flight.future.completeExceptionally(e);
+      throw e;
+    }
+    future.whenComplete((result, e) -> {
+      if (e == null) land(key, flight, result);
+      else {
+        flights.remove(key, flight);
+        flight.future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+      }
+    });
+    return flight.future.thenApply(result -> (T) result);
+  }
+
+  /**
+   * Registers a new flight or gets the shared flight of an identical request.
+   *
+   * @return the shared flight or null if the new flight is registered and must be sent
+   */
+  private Flight join(String key, Flight flight) {
+    while (true) {
+      Flight shared = flights.putIfAbsent(key, flight);
+      if (shared == null) return null;
+      if (shared.isFresh(windowNanos)) return shared;
+      flights.remove(key, shared); // expired
+    }
+  }
+
+  /**
+   * Completes a flight and removes it when its result is no longer fresh.
+   */
+  private void land(String key, Flight flight, Object result) {
+    if (windowNanos > 0) {
+      flight.completedTime = System.nanoTime();
+      MoneroRpcScheduler.getTimer().schedule(() -> { flights.remove(key, flight); }, windowNanos, TimeUnit.NANOSECONDS);
+    } else {
+      flights.remove(key, flight);
+    }
+    flight.future.complete(result);
+  }
+
+  int getNumFlights() {
+    return flights.size();
+  }
+
+  /**
+   * A request in flight or its recently completed result.
+   */
+  private static class Flight {
+
+    private CompletableFuture<Object> future = new CompletableFuture<Object>();
+    private volatile long completedTime; // 0 while in flight
+
+    private boolean isFresh(long windowNanos) {
+      long time = completedTime;
+      return time == 0 || System.nanoTime() - time <= windowNanos;
+    }
+  }
+}
@@ -1,25 +1,34 @@
 package monero.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-
-import org.apache.hc.client5.http.auth.AuthScope;
-import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
-import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
-import org.apache.hc.core5.http.io.entity.StringEntity;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -32,6 +41,15 @@ public class MoneroRpcConnection {
 
   // logger
   private static final Logger LOGGER = Logger.getLogger(MoneroRpcConnection.class.getName());
+  
+  // content encodings
+  private static final String GZIP = "gzip";
+  private static final String DEFLATE = "deflate";
+  private static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+  
+  // content types
+  private static final String JSON = "application/json; charset=UTF-8";
+  private static final String BINARY = "application/octet-stream";
 
   // custom mapper to deserialize integers to BigIntegers
   public static ObjectMapper MAPPER;
@@ -43,7 +61,17 @@ public class MoneroRpcConnection {
 
   // instance variables
   private String uri;
-  private CloseableHttpClient client;
+  private MoneroRpcTransport transport;
+  private MoneroRpcConnectionConfig config;
+  private volatile boolean batchSupported = true; // cleared if the server rejects batch arrays
+  private LongAdder bytesSent = new LongAdder();
+  private LongAdder uncompressedBytesSent = new LongAdder();
+  private LongAdder bytesReceived = new LongAdder();
+  private LongAdder uncompressedBytesReceived = new LongAdder();
+  private volatile MoneroRpcMetricsListener metricsListener;
+  private MoneroRpcScheduler scheduler; // limits requests if configured
+  private RetryBudget retryBudget;
+  private MoneroRpcCoalescer coalescer; // shares identical requests if configured
   private String username;
   private String password;
   
@@ -60,20 +88,39 @@ public class MoneroRpcConnection {
   }
   
   public MoneroRpcConnection(URI uri, String username, String password) {
+    this(uri, username, password, null);
+  }
+  
+  public MoneroRpcConnection(String uri, String username, String password, MoneroRpcConnectionConfig config) {
+    this(uri == null ? null : MoneroUtils.parseUri(uri), username, password, config);
+  }
+  
+  public MoneroRpcConnection(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
     this.uri = uri == null ? null : uri.toString();
     this.username = username;
     this.password = password;
+    this.config = config == null ? new MoneroRpcConnectionConfig() : config.copy();
+    this.retryBudget = new RetryBudget(this.config.getRetryBudgetRatio());
+    if (this.config.getMaxRequestsPerSecond() > 0 || this.config.getMaxInFlight() > 0) {
+      scheduler = new MoneroRpcScheduler(this.config.getMaxRequestsPerSecond(), this.config.getRequestBurst(), this.config.getMaxInFlight());
+    }
+    if (this.config.getRequestCoalescing()) coalescer = new MoneroRpcCoalescer(this.config.getCoalescingWindow());
     if (username != null || password != null) {
       if (username == null) throw new MoneroError("username cannot be null because password is not null");
       if (password == null) throw new MoneroError("password cannot be null because username is not null");
-      BasicCredentialsProvider creds = new BasicCredentialsProvider();
-      creds.setCredentials(new AuthScope(uri.getHost(), uri.getPort()), new UsernamePasswordCredentials(username, password.toCharArray()));
-      this.client = HttpClients.custom().setDefaultCredentialsProvider(creds).build();
-    } else {
-      this.client = HttpClients.createDefault();
     }
+    this.transport = this.config.getTransportFactory().create(uri, username, password, this.config);
   }
-  
+
+  /**
+   * Constructs a connection without its own transport for subclasses which
+   * route requests to other connections.
+   */
+  protected MoneroRpcConnection() {
+    this.config = new MoneroRpcConnectionConfig();
+    this.retryBudget = new RetryBudget(this.config.getRetryBudgetRatio());
+  }
+
   public String getUri() {
     return uri;
   }
@@ -86,6 +133,28 @@ public class MoneroRpcConnection {
     return password;
   }
   
+  /**
+   * Get a copy of the transport configuration of this connection.
+   * 
+   * @return the connection's transport configuration
+   */
+  public MoneroRpcConnectionConfig getConfig() {
+    return config.copy();
+  }
+  
+  /**
+   * Closes the connection's transport, e.g. its pooled connections.
+   * 
+   * The connection cannot be used after it is closed.
+   */
+  public void close() {
+    try {
+      transport.close();
+    } catch (Exception e) {
+      throw new MoneroError(e);
+    }
+  }
+  
   /**
    * Sends a request to the RPC API.
    * 
@@ -104,44 +173,136 @@ public class MoneroRpcConnection {
    * @return the RPC API response as a map
    */
   public Map<String, Object> sendJsonRequest(String method, Object params) {
-    CloseableHttpResponse resp = null;
+    if (!isCoalesced(method)) return sendJsonRequestAux(method, params);
+    return coalescer.coalesce(MoneroRpcCoalescer.getKey("json_rpc", method, params), () -> sendJsonRequestAux(method, params), metricsListener, method);
+  }
+  
+  private Map<String, Object> sendJsonRequestAux(String method, Object params) {
+    Call call = startCall(method);
+    MoneroRpcTransport.Response resp = null;
     try {
 
-      // build request body
-      Map<String, Object> body = new HashMap<String, Object>();
-      body.put("jsonrpc", "2.0");
-      body.put("id", "0");
-      body.put("method", method);
-      if (params != null) body.put("params", params);
-      //System.out.println("Sending json request with method '" + method + "' and body: " + JsonUtils.serialize(body));
-
       // send http request and validate response
-      HttpPost post = new HttpPost(uri.toString() + "/json_rpc");
-      HttpEntity entity = new StringEntity(JsonUtils.serialize(body));
-      post.setEntity(entity);
-      resp = client.execute(post);
+      resp = execute(toRequest("json_rpc", RequestBuffer.get().writeJsonRpcRequest(method, params)), method, call);
       validateHttpResponse(resp);
 
-      // deserialize response
-      Map<String, Object> respMap = JsonUtils.toMap(MAPPER, EntityUtils.toString(resp.getEntity(), "UTF-8"));
-      EntityUtils.consume(resp.getEntity());
+      // deserialize response from the body stream
+      Map<String, Object> respMap = JsonUtils.toMap(MAPPER, resp.getBody());
+      consume(resp.getBody());
 
       // check RPC response for errors
       //System.out.println("Received response: " + respMap);
       validateRpcResponse(respMap, method, params);
       return respMap;
     } catch (MoneroRpcError e1) {
-      throw e1;
+      throw call.setError(e1);
     } catch (Exception e2) {
       //e3.printStackTrace();
-      throw new MoneroError(e2);
+      throw call.setError(new MoneroError(e2));
+    } finally {
+      call.end();
+      try {
+        resp.close();
+      } catch (Exception e) {}
+    }
+  }
+  
+  /**
+   * Sends a request to the RPC API and reads its result with the given
+   * handler while the response is streamed from the connection.
+   * 
+   * @param <T> the type built by the handler
+   * @param method specifies the method to request
+   * @param params specifies input parameters (supports &lt;Map&lt;String, Object&gt;, List&lt;Object&gt;&lt;/code&gt;, String, etc)
+   * @param handler reads the response's result starting at its first token
+   * @return the value built by the handler or null if the response has no result
+   */
+  public <T> T sendJsonRequest(String method, Object params, MoneroRpcResponseHandler<T> handler) {
+    Call call = startCall(method);
+    MoneroRpcTransport.Response resp = null;
+    try {
+      
+      // send http request and validate response
+      resp = execute(toRequest("json_rpc", RequestBuffer.get().writeJsonRpcRequest(method, params)), method, call);
+      validateHttpResponse(resp);
+      
+      // stream envelope and hand result to handler
+      JsonParser parser = MAPPER.getFactory().createParser(resp.getBody());
+      try {
+        if (parser.nextToken() != JsonToken.START_OBJECT) throw new MoneroError("Response to '" + method + "' is not a JSON object");
+        return readJsonRpcResponse(parser, handler).getResult(method, params);
+      } finally {
+        parser.close();
+      }
+    } catch (MoneroError e1) {
+      throw call.setError(e1);
+    } catch (Exception e2) {
+      throw call.setError(new MoneroError(e2));
     } finally {
+      call.end();
       try {
         resp.close();
       } catch (Exception e) {}
     }
   }
   
+  /**
+   * Sends a request to the RPC API and binds its result to the given type.
+   * 
+   * @param <T> the type to bind the result to
+   * @param method specifies the method to request
+   * @param params specifies input parameters (supports &lt;Map&lt;String, Object&gt;, List&lt;Object&gt;&lt;/code&gt;, String, etc)
+   * @param resultType is the type to bind the result to
+   * @return the result bound to the given type
+   */
+  public <T> T sendJsonRequest(String method, Object params, Class<T> resultType) {
+    if (!isCoalesced(method)) return sendJsonRequest(method, params, getTypeHandler(resultType));
+    return coalescer.coalesce(MoneroRpcCoalescer.getKey("json_rpc " + resultType.getName(), method, params), () -> sendJsonRequest(method, params, getTypeHandler(resultType)), metricsListener, method);
+  }
+  
+  /**
+   * Sends multiple requests to the RPC API in one JSON-RPC 2.0 batch.
+   * 
+   * Errors of individual requests do not fail the batch; each response map
+   * contains either a "result" or an "error" which can be checked with
+   * validateRpcResponse().  If the server does not support batch requests,
+   * the requests are sent concurrently as individual requests instead.
+   * 
+   * @param requests are the methods and parameters to request
+   * @return the RPC API responses in the same order as the requests
+   */
+  public List<Map<String, Object>> sendJsonRequests(List<MoneroRpcRequest> requests) {
+    List<Map<String, Object>> respMaps = new ArrayList<Map<String, Object>>();
+    for (JsonRpcResponse<Map<String, Object>> resp : sendJsonRequestsAux(requests, MAP_HANDLER)) respMaps.add(resp.toMap());
+    return respMaps;
+  }
+  
+  /**
+   * Sends multiple requests to the RPC API in one JSON-RPC 2.0 batch and binds
+   * their results to the given type.
+   * 
+   * @param <T> the type to bind the results to
+   * @param requests are the methods and parameters to request
+   * @param resultType is the type to bind the results to
+   * @return the results in the same order as the requests
+   * @throws MoneroRpcError if any request fails
+   */
+  public <T> List<T> sendJsonRequests(List<MoneroRpcRequest> requests, Class<T> resultType) {
+    List<JsonRpcResponse<T>> resps = sendJsonRequestsAux(requests, getTypeHandler(resultType));
+    List<T> results = new ArrayList<T>();
+    for (int i = 0; i < resps.size(); i++) results.add(resps.get(i).getResult(requests.get(i).getMethod(), requests.get(i).getParams()));
+    return results;
+  }
+  
+  /**
+   * Indicates if the server has accepted batch requests so far.
+   * 
+   * @return false if a batch request was rejected by the server, true otherwise
+   */
+  public boolean isBatchSupported() {
+    return batchSupported;
+  }
+  
   /**
    * Sends a RPC request to the given path and with the given paramters.
    * 
@@ -164,43 +325,100 @@ public class MoneroRpcConnection {
    * @return the request's deserialized response
    */
   public Map<String, Object> sendPathRequest(String path, Map<String, Object> params) {
+    if (!isCoalesced(path)) return sendPathRequestAux(path, params);
+    return coalescer.coalesce(MoneroRpcCoalescer.getKey("path", path, params), () -> sendPathRequestAux(path, params), metricsListener, path);
+  }
+  
+  private Map<String, Object> sendPathRequestAux(String path, Map<String, Object> params) {
     //System.out.println("sendPathRequest(" + path + ", " + JsonUtils.serialize(params) + ")");
     
-    CloseableHttpResponse resp = null;
+    Call call = startCall(path);
+    MoneroRpcTransport.Response resp = null;
     try {
       
       // build request
-      HttpPost post = new HttpPost(uri.toString() + "/" + path);
-      if (params != null) {
-        HttpEntity entity = new StringEntity(JsonUtils.serialize(params));
-        post.setEntity(entity);
-      }
-      //System.out.println("Sending path request with path '" + path + "' and params: " + JsonUtils.serialize(params));
+      MoneroRpcTransport.Request request = params == null ? new MoneroRpcTransport.Request(path) : toRequest(path, RequestBuffer.get().writeJson(params));
       
       // send request and validate response
-      resp = client.execute(post);
+      resp = execute(request, path, call);
       validateHttpResponse(resp);
       
-      // deserialize response
-      Map<String, Object> respMap = JsonUtils.toMap(MAPPER, EntityUtils.toString(resp.getEntity(), "UTF-8"));
-      EntityUtils.consume(resp.getEntity());
+      // deserialize response from the body stream
+      Map<String, Object> respMap = JsonUtils.toMap(MAPPER, resp.getBody());
+      consume(resp.getBody());
 
       // check RPC response for errors
       //System.out.println("Received response: " + respMap);
       validateRpcResponse(respMap, path, params);
       return respMap;
     } catch (MoneroRpcError e1) {
-      throw e1;
+      throw call.setError(e1);
     } catch (Exception e2) {
       e2.printStackTrace();
-      throw new MoneroError(e2);
+      throw call.setError(new MoneroError(e2));
+    } finally {
+      call.end();
+      try {
+        resp.close();
+      } catch (Exception e) {}
+    }
+  }
+  
+  /**
+   * Sends a RPC request to the given path and reads the response with the
+   * given handler while it is streamed from the connection.
+   * 
+   * @param <T> the type built by the handler
+   * @param path is the url path of the request to invoke
+   * @param params are request parameters sent in the body
+   * @param handler reads the response starting at its START_OBJECT
+   * @return the value built by the handler
+   */
+  public <T> T sendPathRequest(String path, Map<String, Object> params, MoneroRpcResponseHandler<T> handler) {
+    Call call = startCall(path);
+    MoneroRpcTransport.Response resp = null;
+    try {
+      
+      // send request and validate response
+      MoneroRpcTransport.Request request = params == null ? new MoneroRpcTransport.Request(path) : toRequest(path, RequestBuffer.get().writeJson(params));
+      resp = execute(request, path, call);
+      validateHttpResponse(resp);
+      
+      // hand response to handler
+      JsonParser parser = MAPPER.getFactory().createParser(resp.getBody());
+      try {
+        if (parser.nextToken() != JsonToken.START_OBJECT) throw new MoneroError("Response to '" + path + "' is not a JSON object");
+        return handler.handle(parser);
+      } finally {
+        parser.close();
+      }
+    } catch (MoneroError e1) {
+      throw call.setError(e1);
+    } catch (Exception e2) {
+      throw call.setError(new MoneroError(e2));
     } finally {
+      call.end();
       try {
         resp.close();
       } catch (Exception e) {}
     }
   }
   
+  /**
+   * Sends a RPC request to the given path and binds the response to the given
+   * type.
+   * 
+   * @param <T> the type to bind the response to
+   * @param path is the url path of the request to invoke
+   * @param params are request parameters sent in the body
+   * @param responseType is the type to bind the response to
+   * @return the response bound to the given type
+   */
+  public <T> T sendPathRequest(String path, Map<String, Object> params, Class<T> responseType) {
+    if (!isCoalesced(path)) return sendPathRequest(path, params, getTypeHandler(responseType));
+    return coalescer.coalesce(MoneroRpcCoalescer.getKey("path " + responseType.getName(), path, params), () -> sendPathRequest(path, params, getTypeHandler(responseType)), metricsListener, path);
+  }
+  
   /**
    * Sends a binary RPC request.
    * 
@@ -212,40 +430,267 @@ public class MoneroRpcConnection {
     
     // serialize params to monero's portable binary storage format
     byte[] paramsBin = MoneroUtils.mapToBinary(params);
-    CloseableHttpResponse resp = null;
+    Call call = startCall(path);
+    MoneroRpcTransport.Response resp = null;
     try {
       
       // build request
-      HttpPost post = new HttpPost(uri.toString() + "/" + path);
-      if (paramsBin != null) {
-        HttpEntity entity = new ByteArrayEntity(paramsBin, ContentType.DEFAULT_BINARY);
-        post.setEntity(entity);
-      }
-      LOGGER.fine("Sending binary request with path '" + path + "' and params: " + JsonUtils.serialize(params));
+      MoneroRpcTransport.Request request = paramsBin == null ? new MoneroRpcTransport.Request(path) : toRequest(path, paramsBin, paramsBin.length, BINARY);
+      if (LOGGER.isLoggable(Level.FINE)) LOGGER.fine("Sending binary request with path '" + path + "' and params: " + JsonUtils.serialize(params));
       
       // send request and validate response
-      resp = client.execute(post);
+      resp = execute(request, path, call);
       validateHttpResponse(resp);
       
       // deserialize response
-      return EntityUtils.toByteArray(resp.getEntity());
-      
-//    // send request and store binary response as Uint8Array
-//    let resp = await this._throttledRequest(opts);
-//    if (resp.error) throw new MoneroRpcError(resp.error.code, resp.error.message, opts);
-//    return new Uint8Array(resp, 0, resp.length);
+      return resp.getBodyBytes();
     } catch (MoneroRpcError e1) {
-      throw e1;
+      throw call.setError(e1);
     } catch (Exception e2) {
       e2.printStackTrace();
-      throw new MoneroError(e2);
+      throw call.setError(new MoneroError(e2));
     } finally {
+      call.end();
       try {
         resp.close();
       } catch (Exception e) {}
     }
   }
   
+  /**
+   * Sends a request to the RPC API without blocking the calling thread.
+   * 
+   * @param method specifies the method to request
+   * @return a future which completes with the RPC API response as a map
+   */
+  public CompletableFuture<Map<String, Object>> sendJsonRequestAsync(String method) {
+    return sendJsonRequestAsync(method, null);
+  }
+  
+  /**
+   * Sends a request to the RPC API without blocking the calling thread.
+   * 
+   * @param method specifies the method to request
+   * @param params specifies input parameters (supports &lt;Map&lt;String, Object&gt;, List&lt;Object&gt;&lt;/code&gt;, String, etc)
+   * @return a future which completes with the RPC API response as a map or exceptionally with a MoneroError
+   */
+  public CompletableFuture<Map<String, Object>> sendJsonRequestAsync(String method, Object params) {
+    if (!isCoalesced(method)) return sendJsonRequestAsyncMap(method, params);
+    try {
+      return coalescer.coalesceAsync(MoneroRpcCoalescer.getKey("json_rpc", method, params), () -> sendJsonRequestAsyncMap(method, params), metricsListener, method);
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  private CompletableFuture<Map<String, Object>> sendJsonRequestAsyncMap(String method, Object params) {
+    try {
+      byte[] body = RequestBuffer.get().writeJsonRpcRequest(method, params).toByteArray();
+      Call call = startCall(method);
+      return call.end(executeAsync("json_rpc", method, body, JSON, call).thenApply(resp -> {
+        Map<String, Object> respMap = JsonUtils.toMap(MAPPER, resp.getBody());
+        validateRpcResponse(respMap, method, params);
+        return respMap;
+      }));
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Sends a request to the RPC API without blocking the calling thread and
+   * reads its result with the given handler.
+   * 
+   * @param <T> the type built by the handler
+   * @param method specifies the method to request
+   * @param params specifies input parameters (supports &lt;Map&lt;String, Object&gt;, List&lt;Object&gt;&lt;/code&gt;, String, etc)
+   * @param handler reads the response's result starting at its first token
+   * @return a future which completes with the value built by the handler or exceptionally with a MoneroError
+   */
+  public <T> CompletableFuture<T> sendJsonRequestAsync(String method, Object params, MoneroRpcResponseHandler<T> handler) {
+    return sendJsonRequestAsyncAux(method, params, handler).thenApply(resp -> resp.getResult(method, params));
+  }
+  
+  /**
+   * Sends a request to the RPC API without blocking the calling thread and
+   * binds its result to the given type.
+   * 
+   * @param <T> the type to bind the result to
+   * @param method specifies the method to request
+   * @param params specifies input parameters (supports &lt;Map&lt;String, Object&gt;, List&lt;Object&gt;&lt;/code&gt;, String, etc)
+   * @param resultType is the type to bind the result to
+   * @return a future which completes with the bound result or exceptionally with a MoneroError
+   */
+  public <T> CompletableFuture<T> sendJsonRequestAsync(String method, Object params, Class<T> resultType) {
+    if (!isCoalesced(method)) return sendJsonRequestAsync(method, params, getTypeHandler(resultType));
+    try {
+      return coalescer.coalesceAsync(MoneroRpcCoalescer.getKey("json_rpc " + resultType.getName(), method, params), () -> sendJsonRequestAsync(method, params, getTypeHandler(resultType)), metricsListener, method);
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Sends a RPC request to the given path without blocking the calling thread.
+   * 
+   * @param path is the url path of the request to invoke
+   * @return a future which completes with the request's deserialized response
+   */
+  public CompletableFuture<Map<String, Object>> sendPathRequestAsync(String path) {
+    return sendPathRequestAsync(path, null);
+  }
+  
+  /**
+   * Sends a RPC request to the given path without blocking the calling thread.
+   * 
+   * @param path is the url path of the request to invoke
+   * @param params are request parameters sent in the body
+   * @return a future which completes with the request's deserialized response or exceptionally with a MoneroError
+   */
+  public CompletableFuture<Map<String, Object>> sendPathRequestAsync(String path, Map<String, Object> params) {
+    if (!isCoalesced(path)) return sendPathRequestAsyncMap(path, params);
+    try {
+      return coalescer.coalesceAsync(MoneroRpcCoalescer.getKey("path", path, params), () -> sendPathRequestAsyncMap(path, params), metricsListener, path);
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  private CompletableFuture<Map<String, Object>> sendPathRequestAsyncMap(String path, Map<String, Object> params) {
+    try {
+      byte[] body = params == null ? null : RequestBuffer.get().writeJson(params).toByteArray();
+      Call call = startCall(path);
+      return call.end(executeAsync(path, path, body, JSON, call).thenApply(resp -> {
+        Map<String, Object> respMap = JsonUtils.toMap(MAPPER, resp.getBody());
+        validateRpcResponse(respMap, path, params);
+        return respMap;
+      }));
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Sends a RPC request to the given path without blocking the calling thread
+   * and reads the response with the given handler.
+   * 
+   * @param <T> the type built by the handler
+   * @param path is the url path of the request to invoke
+   * @param params are request parameters sent in the body
+   * @param handler reads the response starting at its START_OBJECT
+   * @return a future which completes with the value built by the handler or exceptionally with a MoneroError
+   */
+  public <T> CompletableFuture<T> sendPathRequestAsync(String path, Map<String, Object> params, MoneroRpcResponseHandler<T> handler) {
+    try {
+      byte[] body = params == null ? null : RequestBuffer.get().writeJson(params).toByteArray();
+      Call call = startCall(path);
+      return call.end(executeAsync(path, path, body, JSON, call).thenApply(resp -> {
+        try (JsonParser parser = MAPPER.getFactory().createParser(resp.getBodyBytes())) {
+          if (parser.nextToken() != JsonToken.START_OBJECT) throw new MoneroError("Response to '" + path + "' is not a JSON object");
+          return handler.handle(parser);
+        } catch (IOException e) {
+          throw new MoneroError(e);
+        }
+      }));
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Sends a RPC request to the given path without blocking the calling thread
+   * and binds the response to the given type.
+   * 
+   * @param <T> the type to bind the response to
+   * @param path is the url path of the request to invoke
+   * @param params are request parameters sent in the body
+   * @param responseType is the type to bind the response to
+   * @return a future which completes with the bound response or exceptionally with a MoneroError
+   */
+  public <T> CompletableFuture<T> sendPathRequestAsync(String path, Map<String, Object> params, Class<T> responseType) {
+    if (!isCoalesced(path)) return sendPathRequestAsync(path, params, getTypeHandler(responseType));
+    try {
+      return coalescer.coalesceAsync(MoneroRpcCoalescer.getKey("path " + responseType.getName(), path, params), () -> sendPathRequestAsync(path, params, getTypeHandler(responseType)), metricsListener, path);
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Sends a binary RPC request without blocking the calling thread.
+   * 
+   * @param path is the path of the binary RPC method to invoke
+   * @param params are the request parameters
+   * @return a future which completes with the binary response or exceptionally with a MoneroError
+   */
+  public CompletableFuture<byte[]> sendBinaryRequestAsync(String path, Map<String, Object> params) {
+    try {
+      byte[] paramsBin = MoneroUtils.mapToBinary(params);
+      Call call = startCall(path);
+      return call.end(executeAsync(path, path, paramsBin, BINARY, call).thenApply(resp -> {
+        try {
+          return resp.getBodyBytes();
+        } catch (IOException e) {
+          throw new MoneroError(e);
+        }
+      }));
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Set the listener which is notified as each request starts and completes,
+   * e.g. a MoneroRpcMetrics to aggregate per-method metrics.
+   * 
+   * @param metricsListener is the listener to notify or null to stop notifying
+   */
+  public void setMetricsListener(MoneroRpcMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+  
+  public MoneroRpcMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+  
+  /**
+   * Get the number of request body bytes sent on the wire, after any
+   * compression.
+   * 
+   * @return the number of request body bytes sent
+   */
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+  
+  /**
+   * Get the number of request body bytes sent before compression.
+   * 
+   * @return the number of uncompressed request body bytes sent
+   */
+  public long getUncompressedBytesSent() {
+    return uncompressedBytesSent.sum();
+  }
+  
+  /**
+   * Get the number of response body bytes received on the wire, before
+   * decompression.
+   * 
+   * @return the number of response body bytes received
+   */
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+  
+  /**
+   * Get the number of response body bytes received after decompression.
+   * 
+   * @return the number of decompressed response body bytes received
+   */
+  public long getUncompressedBytesReceived() {
+    return uncompressedBytesReceived.sum();
+  }
+  
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -274,23 +719,774 @@ public class MoneroRpcConnection {
     return true;
   }
   
+  // ------------------------------ PRIVATE HELPERS ---------------------------
+  
+  /**
+   * A JSON-RPC response envelope with its result read by a handler.
+   */
+  private static class JsonRpcResponse<T> {
+    
+    private String id;
+    private T result;
+    private Map<String, Object> error;
+    
+    private T getResult(String method, Object params) {
+      if (error != null) validateRpcResponse(toMap(), method, params);
+      return result;
+    }
+    
+    private Map<String, Object> toMap() {
+      Map<String, Object> respMap = new HashMap<String, Object>();
+      respMap.put("id", id);
+      respMap.put("jsonrpc", "2.0");
+      if (result != null) respMap.put("result", result);
+      if (error != null) respMap.put("error", error);
+      return respMap;
+    }
+  }
+  
+  /**
+   * Per-thread buffer which request bodies are serialized into directly so
+   * they are sent without intermediate maps, strings, or copies.
+   * 
+   * The buffer is reused by the thread's next request, so its entity must be
+   * sent before then.
+   */
+  private static class RequestBuffer extends ByteArrayOutputStream {
+    
+    private static final int INITIAL_SIZE = 512;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024; // larger buffers are released after use
+    private static final ThreadLocal<RequestBuffer> BUFFERS = new ThreadLocal<RequestBuffer>();
+    
+    private RequestBuffer() {
+      super(INITIAL_SIZE);
+    }
+    
+    private static RequestBuffer get() {
+      RequestBuffer buffer = BUFFERS.get();
+      if (buffer == null || buffer.buf.length > MAX_RETAINED_SIZE) {
+        buffer = new RequestBuffer();
+        BUFFERS.set(buffer);
+      }
+      buffer.reset();
+      return buffer;
+    }
+    
+    private RequestBuffer writeJson(Object value) throws IOException {
+      MAPPER.writeValue(this, value);
+      return this;
+    }
+    
+    private RequestBuffer writeJsonRpcRequest(String method, Object params) throws IOException {
+      JsonGenerator generator = MAPPER.getFactory().createGenerator(this);
+      writeJsonRpcRequest(generator, "0", method, params);
+      generator.close();
+      return this;
+    }
+    
+    private RequestBuffer writeJsonRpcBatch(List<MoneroRpcRequest> requests) throws IOException {
+      JsonGenerator generator = MAPPER.getFactory().createGenerator(this);
+      generator.writeStartArray();
+      for (int i = 0; i < requests.size(); i++) writeJsonRpcRequest(generator, Integer.toString(i), requests.get(i).getMethod(), requests.get(i).getParams());
+      generator.writeEndArray();
+      generator.close();
+      return this;
+    }
+    
+    private static void writeJsonRpcRequest(JsonGenerator generator, String id, String method, Object params) throws IOException {
+      generator.writeStartObject();
+      generator.writeStringField("jsonrpc", "2.0");
+      generator.writeStringField("id", id);
+      generator.writeStringField("method", method);
+      if (params != null) {
+        generator.writeFieldName("params");
+        MAPPER.writeValue(generator, params);
+      }
+      generator.writeEndObject();
+    }
+    
+    /**
+     * Get the buffer's backing array without copying it.
+     * 
+     * @return the backing array whose first size() bytes are buffered
+     */
+    private byte[] getBytes() {
+      return buf;
+    }
+  }
+  
+  /**
+   * Decompresses a response body as it is read and counts its bytes before
+   * and after decompression.  The decoder is created on first read since it
+   * reads the body's header.
+   */
+  private class DecodingInputStream extends InputStream {
+    
+    private InputStream body;
+    private String encoding;
+    private LongAdder callBytesReceived;
+    private InputStream content;
+    
+    private DecodingInputStream(InputStream body, String encoding, LongAdder callBytesReceived) {
+      this.body = body;
+      this.encoding = encoding;
+      this.callBytesReceived = callBytesReceived;
+    }
+    
+    private InputStream getContent() throws IOException {
+      if (content == null) {
+        if (encoding == null) content = new CountingInputStream(body, bytesReceived, uncompressedBytesReceived, callBytesReceived);
+        else content = new CountingInputStream(decode(new CountingInputStream(body, bytesReceived, callBytesReceived), encoding), uncompressedBytesReceived);
+      }
+      return content;
+    }
+    
+    @Override
+    public int read() throws IOException {
+      return getContent().read();
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return getContent().read(b, off, len);
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+      return getContent().skip(n);
+    }
+    
+    @Override
+    public int available() throws IOException {
+      return content == null ? 0 : content.available();
+    }
+    
+    @Override
+    public void close() throws IOException {
+      if (content == null) body.close();
+      else content.close();
+    }
+  }
+  
+  /**
+   * Adds the number of bytes read from a stream to counters.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    
+    private LongAdder[] counters;
+    
+    private CountingInputStream(InputStream in, LongAdder... counters) {
+      super(in);
+      this.counters = counters;
+    }
+    
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) count(1);
+      return b;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) count(n);
+      return n;
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      if (skipped > 0) count(skipped);
+      return skipped;
+    }
+    
+    private void count(long n) {
+      for (LongAdder counter : counters) counter.add(n);
+    }
+  }
+  
+  private boolean isCoalesced(String method) {
+    return coalescer != null && config.isMethodCoalesced(method);
+  }
+  
+  private Call startCall(String method) {
+    retryBudget.deposit();
+    return new Call(method, config.isMethodIdempotent(method), metricsListener);
+  }
+  
+  /**
+   * Get the time to wait before retrying a failed attempt of a request.
+   * 
+   * @param call is the request which failed
+   * @param error is the error of the failed attempt
+   * @return the time to wait in milliseconds or -1 if the request is not retried
+   */
+  private long getRetryBackoff(Call call, Throwable error) {
+    if (!call.idempotent || call.numRetries >= config.getMaxRetries() || !isRetryable(error) || !retryBudget.withdraw()) return -1;
+    call.numRetries++;
+    long maxBackoff = Math.min(config.getMaxRetryBackoff(), config.getRetryBackoff() << Math.min(call.numRetries - 1, 20));
+    long backoff = ThreadLocalRandom.current().nextLong(maxBackoff + 1); // full jitter
+    LOGGER.fine("Retrying '" + call.method + "' in " + backoff + " ms after error: " + error.getMessage());
+    if (call.listener != null) call.listener.onRetry(call.method, call.numRetries, error instanceof MoneroError ? (MoneroError) error : new MoneroError(error));
+    return backoff;
+  }
+  
+  /**
+   * Limits retries to a ratio of requests beyond a small reserve.
+   */
+  private static class RetryBudget {
+    
+    private static final double RESERVE = 10; // retries allowed before any requests are sent
+    
+    private double ratio;
+    private double balance = RESERVE;
+    
+    private RetryBudget(double ratio) {
+      this.ratio = ratio;
+    }
+    
+    private synchronized void deposit() {
+      balance = Math.min(RESERVE, balance + ratio);
+    }
+    
+    private synchronized boolean withdraw() {
+      if (balance < 1) return false;
+      balance--;
+      return true;
+    }
+  }
+  
+  /**
+   * Records the timing, size, and outcome of one request and reports them to
+   * the metrics listener when the request ends.
+   * 
+   * A request starts when the scheduler admits it, or when it is executed if
+   * requests are not limited, so time waiting for admission is reported as
+   * queue time instead of network time.  Network time lasts until the
+   * response headers are received, or until the whole body is received for
+   * asynchronous requests.  Parse time is the rest of the request, including
+   * reading a body which is streamed to the parser.
+   */
+  private static class Call {
+    
+    private String method;
+    private boolean idempotent;
+    private int numRetries;
+    private MoneroRpcMetricsListener listener;
+    private long queueTime;
+    private long startTime;
+    private boolean started;
+    private long responseTime;
+    private long bytesSent;
+    private LongAdder bytesReceived = new LongAdder();
+    private MoneroError error;
+    private volatile MoneroRpcScheduler scheduler; // set when admitted by a scheduler to release on end
+    
+    private Call(String method, boolean idempotent, MoneroRpcMetricsListener listener) {
+      this.method = method;
+      this.idempotent = idempotent;
+      this.listener = listener;
+      this.queueTime = System.nanoTime();
+    }
+    
+    /**
+     * Starts the request once it is admitted to be sent.
+     * 
+     * @param scheduler is the scheduler which admitted the request or null if requests are not limited
+     */
+    private void start(MoneroRpcScheduler scheduler) {
+      this.scheduler = scheduler;
+      startTime = System.nanoTime();
+      started = true;
+      if (listener == null) return;
+      if (scheduler != null) listener.onRequestAdmitted(method, startTime - queueTime);
+      listener.onRequestStarted(method);
+    }
+    
+    private void onResponse() {
+      responseTime = System.nanoTime();
+    }
+    
+    private <E extends MoneroError> E setError(E error) {
+      this.error = error;
+      return error;
+    }
+    
+    private void end() {
+      if (scheduler != null) {
+        scheduler.release();
+        scheduler = null;
+      }
+      if (listener == null) return;
+      if (!started) start(null); // report requests which failed before being admitted with no network time
+      long endTime = System.nanoTime();
+      long networkTime = (responseTime == 0 ? endTime : responseTime) - startTime;
+      long parseTime = responseTime == 0 ? 0 : endTime - responseTime;
+      listener.onRequestCompleted(method, networkTime, parseTime, bytesSent, bytesReceived.sum(), error);
+    }
+    
+    /**
+     * Ends the call when the future completes.
+     * 
+     * @param future is the future of the request's result
+     * @return a future which completes like the given future after the call is ended
+     */
+    private <T> CompletableFuture<T> end(CompletableFuture<T> future) {
+      return future.whenComplete((result, e) -> {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause != null) setError(cause instanceof MoneroError ? (MoneroError) cause : new MoneroError(cause));
+        end();
+      });
+    }
+  }
+  
+  private static final MoneroRpcResponseHandler<Map<String, Object>> MAP_HANDLER = new MoneroRpcResponseHandler<Map<String, Object>>() {
+    @Override
+    public Map<String, Object> handle(JsonParser parser) throws IOException {
+      return MAPPER.readValue(parser, new TypeReference<Map<String, Object>>(){});
+    }
+  };
+  
+  /**
+   * Executes a request with the timeouts configured for the given method,
+   * retrying transient failures if the method is idempotent.
+   * 
+   * @param request is the request to execute
+   * @param method is the JSON-RPC method or path being requested
+   * @param call records the request's metrics
+   * @return the response with its body decoded which must be closed by the caller
+   */
+  private MoneroRpcTransport.Response execute(MoneroRpcTransport.Request request, String method, Call call) throws Exception {
+    prepareRequest(request, method);
+    call.bytesSent = request.getLength();
+    if (scheduler != null) scheduler.acquire(config.getMethodPriority(method), config.getConnectionRequestTimeout());
+    call.start(scheduler);
+    MoneroRpcTransport.Response resp;
+    while (true) {
+      Exception error;
+      try {
+        resp = transport.send(request);
+        if (!isRetryableStatus(resp.getCode())) break;
+        error = new MoneroRpcError(getStatusLine(resp.getCode(), resp.getReasonPhrase()), resp.getCode(), null, null);
+        long backoff = getRetryBackoff(call, error);
+        if (backoff < 0) break;
+        consume(resp.getBody());
+        resp.close();
+        Thread.sleep(backoff);
+      } catch (IOException e) {
+        long backoff = getRetryBackoff(call, e);
+        if (backoff < 0) throw e;
+        Thread.sleep(backoff);
+      }
+    }
+    call.onResponse();
+    return new MoneroRpcTransport.Response(resp.getCode(), resp.getReasonPhrase(), null, new DecodingInputStream(resp.getBody(), resp.getContentEncoding(), call.bytesReceived), resp);
+  }
+  
+  /**
+   * Sets the timeout and accepted encodings of a request to the given method.
+   */
+  private void prepareRequest(MoneroRpcTransport.Request request, String method) {
+    Long timeout = config.getMethodTimeouts().get(method);
+    if (timeout != null) request.setTimeout(timeout);
+    if (config.getResponseCompression()) request.setAcceptEncoding(ACCEPT_ENCODING);
+  }
+  
+  private MoneroRpcTransport.Request toRequest(String path, RequestBuffer buffer) throws IOException {
+    return toRequest(path, buffer.getBytes(), buffer.size(), JSON);
+  }
+  
+  /**
+   * Builds a request, compressing its body if configured, and counts its
+   * bytes.
+   * 
+   * @param path is the url path of the request
+   * @param bytes is the array holding the body
+   * @param length is the length of the body
+   * @param contentType is the content type of the body
+   * @return the request
+   */
+  private MoneroRpcTransport.Request toRequest(String path, byte[] bytes, int length, String contentType) throws IOException {
+    MoneroRpcTransport.Request request = new MoneroRpcTransport.Request(path);
+    uncompressedBytesSent.add(length);
+    if (!isCompressRequest(length)) {
+      bytesSent.add(length);
+      return request.setBody(bytes, 0, length, contentType);
+    }
+    byte[] compressed = gzip(bytes, length);
+    bytesSent.add(compressed.length);
+    return request.setBody(compressed, 0, compressed.length, contentType).setContentEncoding(GZIP);
+  }
+  
+  private boolean isCompressRequest(int length) {
+    return config.getRequestCompression() && length >= config.getRequestCompressionThreshold();
+  }
+  
+  /**
+   * Executes a request on the asynchronous client once the scheduler admits
+   * it, if requests are limited.
+   * 
+   * @param path is the url path of the request
+   * @param method is the JSON-RPC method or path being requested
+   * @param body is the request body (optional)
+   * @param contentType is the content type of the request body
+   * @param call records the request's metrics
+   * @return a future which completes with a successful http response or exceptionally with a MoneroError
+   */
+  private CompletableFuture<MoneroRpcTransport.Response> executeAsync(String path, String method, byte[] body, String contentType, Call call) {
+    if (scheduler == null) {
+      call.start(null);
+      return executeAsyncWithRetries(path, method, body, contentType, call);
+    }
+    return scheduler.acquireAsync(config.getMethodPriority(method)).thenCompose(admitted -> {
+      call.start(scheduler);
+      return executeAsyncWithRetries(path, method, body, contentType, call);
+    });
+  }
+  
+  private CompletableFuture<MoneroRpcTransport.Response> executeAsyncWithRetries(String path, String method, byte[] body, String contentType, Call call) {
+    return executeAsyncAux(path, method, body, contentType, call).handle((resp, e) -> {
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      long backoff = cause == null ? -1 : getRetryBackoff(call, cause);
+      if (backoff < 0) {
+        CompletableFuture<MoneroRpcTransport.Response> completed = new CompletableFuture<MoneroRpcTransport.Response>();
+        if (cause == null) completed.complete(resp);
+        else completed.completeExceptionally(cause);
+        return completed;
+      }
+      CompletableFuture<MoneroRpcTransport.Response> retried = new CompletableFuture<MoneroRpcTransport.Response>();
+      MoneroRpcScheduler.getTimer().schedule(new Runnable() {
+        @Override
+        public void run() {
+          executeAsyncWithRetries(path, method, body, contentType, call).whenComplete((retriedResp, retriedError) -> {
+            if (retriedError == null) retried.complete(retriedResp);
+            else retried.completeExceptionally(retriedError instanceof CompletionException && retriedError.getCause() != null ? retriedError.getCause() : retriedError);
+          });
+        }
+      }, backoff, TimeUnit.MILLISECONDS);
+      return retried;
+    }).thenCompose(next -> next);
+  }
+  
+  private CompletableFuture<MoneroRpcTransport.Response> executeAsyncAux(String path, String method, byte[] body, String contentType, Call call) {
+    MoneroRpcTransport.Request request = new MoneroRpcTransport.Request(path);
+    if (body != null) {
+      uncompressedBytesSent.add(body.length);
+      if (isCompressRequest(body.length)) {
+        try {
+          body = gzip(body, body.length);
+        } catch (IOException e) {
+          return failedFuture(e);
+        }
+        request.setContentEncoding(GZIP);
+      }
+      bytesSent.add(body.length);
+      call.bytesSent = body.length;
+      request.setBody(body, 0, body.length, contentType);
+    }
+    prepareRequest(request, method);
+    CompletableFuture<MoneroRpcTransport.Response> future = new CompletableFuture<MoneroRpcTransport.Response>();
+    transport.sendAsync(request).whenComplete((resp, e) -> {
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof CancellationException) future.cancel(false);
+      else if (cause != null) future.completeExceptionally(cause instanceof MoneroError ? cause : new MoneroError(cause));
+      else {
+        try {
+          MoneroRpcTransport.Response decoded = decodeBody(resp, call);
+          call.onResponse();
+          validateHttpResponse(decoded);
+          future.complete(decoded);
+        } catch (Exception e2) {
+          future.completeExceptionally(e2);
+        }
+      }
+    });
+    return future;
+  }
+  
+  /**
+   * Decompresses and counts the body of a buffered asynchronous response.
+   * 
+   * @param resp is the response to decode
+   * @param call records the request's metrics
+   * @return the response with its decoded body
+   */
+  private MoneroRpcTransport.Response decodeBody(MoneroRpcTransport.Response resp, Call call) throws IOException {
+    byte[] body = resp.getBodyBytes();
+    bytesReceived.add(body.length);
+    call.bytesReceived.add(body.length);
+    if (resp.getContentEncoding() != null) {
+      InputStream decoded = decode(new ByteArrayInputStream(body), resp.getContentEncoding());
+      ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+      byte[] buf = new byte[8192];
+      for (int n; (n = decoded.read(buf)) != -1; ) out.write(buf, 0, n);
+      body = out.toByteArray();
+    }
+    uncompressedBytesReceived.add(body.length);
+    return new MoneroRpcTransport.Response(resp.getCode(), resp.getReasonPhrase(), null, body);
+  }
+  
+  /**
+   * Sends requests in one batch or pipelines them if batches are unsupported.
+   * 
+   * @param requests are the requests to send
+   * @param handler reads the result of each response
+   * @return the responses in request order
+   */
+  private <T> List<JsonRpcResponse<T>> sendJsonRequestsAux(List<MoneroRpcRequest> requests, MoneroRpcResponseHandler<T> handler) {
+    if (requests.isEmpty()) return new ArrayList<JsonRpcResponse<T>>();
+    if (requests.size() > 1 && batchSupported) {
+      List<JsonRpcResponse<T>> resps = sendJsonBatch(requests, handler);
+      if (resps != null) return resps;
+      batchSupported = false;
+    }
+    
+    // pipeline individual requests
+    List<CompletableFuture<JsonRpcResponse<T>>> futures = new ArrayList<CompletableFuture<JsonRpcResponse<T>>>();
+    for (MoneroRpcRequest request : requests) futures.add(sendJsonRequestAsyncAux(request.getMethod(), request.getParams(), handler));
+    List<JsonRpcResponse<T>> resps = new ArrayList<JsonRpcResponse<T>>();
+    try {
+      for (CompletableFuture<JsonRpcResponse<T>> future : futures) resps.add(future.join());
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof MoneroError) throw (MoneroError) e.getCause();
+      throw new MoneroError(e.getCause());
+    }
+    return resps;
+  }
+  
+  private <T> CompletableFuture<JsonRpcResponse<T>> sendJsonRequestAsyncAux(String method, Object params, MoneroRpcResponseHandler<T> handler) {
+    try {
+      byte[] body = RequestBuffer.get().writeJsonRpcRequest(method, params).toByteArray();
+      Call call = startCall(method);
+      return call.end(executeAsync("json_rpc", method, body, JSON, call).thenApply(resp -> {
+        try (JsonParser parser = MAPPER.getFactory().createParser(resp.getBodyBytes())) {
+          if (parser.nextToken() != JsonToken.START_OBJECT) throw new MoneroError("Response to '" + method + "' is not a JSON object");
+          JsonRpcResponse<T> jsonRpcResp = readJsonRpcResponse(parser, handler);
+          if (jsonRpcResp.error != null) {
+            try {
+              validateRpcResponse(jsonRpcResp.toMap(), method, params);
+            } catch (MoneroRpcError e) {
+              call.setError(e); // recorded without failing other requests of the batch
+            }
+          }
+          return jsonRpcResp;
+        } catch (IOException e) {
+          throw new MoneroError(e);
+        }
+      }));
+    } catch (Exception e) {
+      return failedFuture(e);
+    }
+  }
+  
+  /**
+   * Sends requests as a JSON-RPC 2.0 batch array.
+   * 
+   * @param requests are the requests to send
+   * @param handler reads the result of each response
+   * @return the responses in request order or null if the server does not accept batch requests
+   */
+  private <T> List<JsonRpcResponse<T>> sendJsonBatch(List<MoneroRpcRequest> requests, MoneroRpcResponseHandler<T> handler) {
+    Call call = startCall(requests.get(0).getMethod() + " (batch)");
+    call.idempotent = true;
+    for (MoneroRpcRequest request : requests) call.idempotent &= config.isMethodIdempotent(request.getMethod());
+    MoneroRpcTransport.Response resp = null;
+    try {
+      
+      // send http request with ids as request indices
+      resp = execute(toRequest("json_rpc", RequestBuffer.get().writeJsonRpcBatch(requests)), requests.get(0).getMethod(), call);
+      try {
+        validateHttpResponse(resp);
+      } catch (MoneroRpcError e) {
+        if (e.getCode() != null && e.getCode() >= 400 && e.getCode() < 500 && e.getCode() != 401) return null; // batch rejected
+        throw e;
+      }
+      
+      // a single object instead of an array indicates batches are unsupported (e.g. parse error)
+      JsonParser parser = MAPPER.getFactory().createParser(resp.getBody());
+      try {
+        if (parser.nextToken() != JsonToken.START_ARRAY) return null;
+        
+        // read responses and order by id
+        List<JsonRpcResponse<T>> resps = new ArrayList<JsonRpcResponse<T>>();
+        for (int i = 0; i < requests.size(); i++) resps.add(null);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          JsonRpcResponse<T> jsonRpcResp = readJsonRpcResponse(parser, handler);
+          resps.set(getBatchIndex(jsonRpcResp, resps, requests), jsonRpcResp);
+        }
+        for (int i = 0; i < resps.size(); i++) {
+          if (resps.get(i) == null) throw new MoneroError("Batch response is missing response to '" + requests.get(i).getMethod() + "' at index " + i);
+        }
+        return resps;
+      } finally {
+        parser.close();
+      }
+    } catch (MoneroError e1) {
+      throw call.setError(e1);
+    } catch (Exception e2) {
+      throw call.setError(new MoneroError(e2));
+    } finally {
+      call.end();
+      try {
+        resp.close();
+      } catch (Exception e) {}
+    }
+  }
+  
+  /**
+   * Get the index of the request which a batch response answers from its id.
+   * 
+   * @param resp is a response of the batch
+   * @param resps are the responses read so far by request index
+   * @param requests are the batch's requests
+   * @return the index of the request answered by the response
+   */
+  private static int getBatchIndex(JsonRpcResponse<?> resp, List<?> resps, List<MoneroRpcRequest> requests) {
+    
+    // an error without an id cannot be matched to a request, e.g. an invalid request
+    if (resp.id == null) {
+      if (resp.error == null) throw new MoneroError("Batch response is missing an id");
+      Object code = resp.error.get("code");
+      throw new MoneroRpcError("Batch response has an error without an id: " + resp.error.get("message"), code instanceof Number ? ((Number) code).intValue() : null, requests.get(0).getMethod() + " (batch)", null);
+    }
+    
+    // ids are request indices
+    int idx;
+    try {
+      idx = Integer.parseInt(resp.id);
+    } catch (NumberFormatException e) {
+      idx = -1;
+    }
+    if (idx < 0 || idx >= resps.size()) throw new MoneroError("Batch response has unknown id: " + resp.id);
+    if (resps.get(idx) != null) throw new MoneroError("Batch response has duplicate id: " + resp.id);
+    return idx;
+  }
+  
   // ------------------------------ STATIC UTILITIES --------------------------
+  
+  private static byte[] gzip(byte[] bytes, int length) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(bytes, 0, length);
+    gzip.close();
+    return out.toByteArray();
+  }
+  
+  /**
+   * Wraps a stream with a decoder of the given content encoding.
+   * 
+   * @param in is the encoded stream
+   * @param encoding is the content encoding of the stream
+   * @return the decoded stream
+   */
+  private static InputStream decode(InputStream in, String encoding) throws IOException {
+    String normalized = encoding.trim().toLowerCase();
+    if (normalized.equals(GZIP) || normalized.equals("x-gzip")) return new GZIPInputStream(in);
+    if (normalized.equals(DEFLATE)) return new InflaterInputStream(in);
+    if (normalized.equals("identity")) return in;
+    throw new MoneroError("Unsupported content encoding: " + encoding);
+  }
 
-  private static void validateHttpResponse(CloseableHttpResponse resp) {
+  private static boolean isRetryableStatus(int code) {
+    return code == 502 || code == 503 || code == 504;
+  }
+  
+  /**
+   * Indicates if an error is transient: a connection failure or timeout, or a
+   * 502, 503, or 504 response.  RPC errors and other HTTP errors are not.
+   */
+  private static boolean isRetryable(Throwable error) {
+    if (error instanceof MoneroRpcError) {
+      Integer code = ((MoneroRpcError) error).getCode();
+      return ((MoneroRpcError) error).getRpcMethod() == null && code != null && isRetryableStatus(code);
+    }
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof IOException) return true;
+    }
+    return false;
+  }
+  
+  private static void validateHttpResponse(MoneroRpcTransport.Response resp) {
     int code = resp.getCode();
     if (code < 200 || code > 299) {
       String content = null;
       try {
-        content = EntityUtils.toString(resp.getEntity(), "UTF-8");
+        content = new String(resp.getBodyBytes(), StandardCharsets.UTF_8);
       } catch (Exception e) {
         // could not get content
       }
-      throw new MoneroRpcError(code + " " + resp.getReasonPhrase() + (content == null || content.isEmpty() ? "" : (": " + content)), code, null, null);
+      validateHttpResponse(code, resp.getReasonPhrase(), content);
+    }
+  }
+  
+  private static void validateHttpResponse(int code, String reasonPhrase, String content) {
+    if (code < 200 || code > 299) {
+      throw new MoneroRpcError(getStatusLine(code, reasonPhrase) + (content == null || content.isEmpty() ? "" : (": " + content)), code, null, null);
+    }
+  }
+  
+  private static String getStatusLine(int code, String reasonPhrase) {
+    return reasonPhrase == null || reasonPhrase.isEmpty() ? Integer.toString(code) : code + " " + reasonPhrase;
+  }
+  
+  /**
+   * Reads the rest of a body and closes it so its connection can be reused.
+   */
+  private static void consume(InputStream body) {
+    try {
+      byte[] buf = new byte[8192];
+      while (body.read(buf) != -1);
+      body.close();
+    } catch (IOException e) {
+      // already closed, e.g. by the parser
+    }
+  }
+  
+  /**
+   * Reads a JSON-RPC response envelope, handing its result to the handler.
+   * 
+   * @param parser is positioned at the START_OBJECT of the envelope
+   * @param handler reads the result
+   * @return the response envelope
+   */
+  private static <T> JsonRpcResponse<T> readJsonRpcResponse(JsonParser parser, MoneroRpcResponseHandler<T> handler) throws IOException {
+    JsonRpcResponse<T> resp = new JsonRpcResponse<T>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      parser.nextToken();
+      if ("result".equals(field)) resp.result = handler.handle(parser);
+      else if ("error".equals(field)) resp.error = MAPPER.readValue(parser, new TypeReference<Map<String, Object>>(){});
+      else if ("id".equals(field)) resp.id = parser.getValueAsString();
+      else parser.skipChildren();
     }
+    return resp;
+  }
+  
+  private static <T> MoneroRpcResponseHandler<T> getTypeHandler(Class<T> type) {
+    return new MoneroRpcResponseHandler<T>() {
+      @Override
+      public T handle(JsonParser parser) throws IOException {
+        return MAPPER.readValue(parser, type);
+      }
+    };
+  }
+  
+  private static <T> CompletableFuture<T> failedFuture(Exception e) {
+    CompletableFuture<T> future = new CompletableFuture<T>();
+    future.completeExceptionally(e instanceof MoneroError ? e : new MoneroError(e));
+    return future;
   }
 
+  /**
+   * Throws a MoneroRpcError if the given RPC response contains an error.
+   * 
+   * @param respMap is the RPC response to validate
+   * @param method is the requested method
+   * @param params are the request parameters
+   */
   @SuppressWarnings("unchecked")
-  private static void validateRpcResponse(Map<String, Object> respMap, String method, Object params) {
+  public static void validateRpcResponse(Map<String, Object> respMap, String method, Object params) {
     Map<String, Object> error = (Map<String, Object>) respMap.get("error");
     if (error == null) return;
     String msg = (String) error.get("message");
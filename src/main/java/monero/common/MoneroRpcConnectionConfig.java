@@ -0,0 +1,613 @@
+package monero.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configures the HTTP transport of a MoneroRpcConnection.
+ *
+ * All durations are in milliseconds.  A timeout of 0 waits indefinitely.
+ */
+public class MoneroRpcConnectionConfig {
+
+  // default configuration
+  public static final int DEFAULT_MAX_CONNECTIONS = 100;
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+  public static final long DEFAULT_CONNECT_TIMEOUT = 15000;
+  public static final long DEFAULT_RESPONSE_TIMEOUT = 120000;
+  public static final long DEFAULT_CONNECTION_REQUEST_TIMEOUT = 30000;
+  public static final long DEFAULT_KEEP_ALIVE = 30000;
+  public static final long DEFAULT_IDLE_EVICTION_TIME = 20000;
+  public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+  public static final boolean DEFAULT_RESPONSE_COMPRESSION = true;
+  public static final boolean DEFAULT_REQUEST_COMPRESSION = false;
+  public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 4096;
+  public static final double DEFAULT_MAX_REQUESTS_PER_SECOND = 0;
+  public static final int DEFAULT_REQUEST_BURST = 0;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 0;
+  public static final int DEFAULT_MAX_RETRIES = 2;
+  public static final long DEFAULT_RETRY_BACKOFF = 100;
+  public static final long DEFAULT_MAX_RETRY_BACKOFF = 2000;
+  public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.1;
+  public static final boolean DEFAULT_REQUEST_COALESCING = false;
+  public static final long DEFAULT_COALESCING_WINDOW = 0;
+  public static final boolean DEFAULT_PREEMPTIVE_AUTH = true;
+  public static final MoneroRpcTransport.Factory DEFAULT_TRANSPORT_FACTORY = MoneroApacheHttpTransport.FACTORY;
+  public static final List<String> DEFAULT_IDEMPOTENT_METHODS = Arrays.asList("incoming_transfers", "query_key", "sync_info", "hard_fork_info", "on_get_block_hash", "getblockcount", "getblocktemplate", "getinfo", "getheight", "getlastblockheader", "getblockheaderbyhash", "getblockheaderbyheight", "validate_address", "check_tx_key", "check_tx_proof", "check_spend_proof", "check_reserve_proof", "verify", "split_integrated_address", "make_uri", "parse_uri");
+  public static final List<String> DEFAULT_COALESCED_METHODS = Arrays.asList("get_info", "get_height", "get_block_count", "get_last_block_header", "get_block_header_by_hash", "get_block_header_by_height", "get_block_headers_range", "get_block", "on_get_block_hash", "get_fee_estimate", "hard_fork_info", "sync_info", "get_version", "get_transactions", "get_transaction_pool", "get_transaction_pool_stats", "get_output_histogram", "get_coinbase_tx_sum", "is_key_image_spent", "get_alt_blocks_hashes", "get_alternate_chains");
+  public static final List<String> DEFAULT_BULK_METHODS = Arrays.asList("get_blocks.bin", "get_blocks_by_height.bin", "get_hashes.bin", "get_o_indexes.bin", "get_outs.bin", "get_output_distribution.bin", "get_output_distribution", "get_output_histogram", "get_block_headers_range", "is_key_image_spent");
+
+  private int maxConnections;
+  private int maxConnectionsPerRoute;
+  private long connectTimeout;
+  private long responseTimeout;
+  private long connectionRequestTimeout;
+  private long keepAlive;
+  private long idleEvictionTime;
+  private long validateAfterInactivity;
+  private boolean responseCompression;
+  private boolean requestCompression;
+  private int requestCompressionThreshold;
+  private double maxRequestsPerSecond;
+  private int requestBurst;
+  private int maxInFlight;
+  private int maxRetries;
+  private long retryBackoff;
+  private long maxRetryBackoff;
+  private double retryBudgetRatio;
+  private boolean requestCoalescing;
+  private long coalescingWindow;
+  private boolean preemptiveAuth;
+  private MoneroRpcTransport.Factory transportFactory;
+  private Map<String, Long> methodTimeouts;
+  private Map<String, MoneroRpcPriority> methodPriorities;
+  private Map<String, Boolean> methodIdempotency;
+  private Map<String, Boolean> methodCoalescing;
+
+  public MoneroRpcConnectionConfig() {
+    this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+    this.maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    this.responseTimeout = DEFAULT_RESPONSE_TIMEOUT;
+    this.connectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+    this.keepAlive = DEFAULT_KEEP_ALIVE;
+    this.idleEvictionTime = DEFAULT_IDLE_EVICTION_TIME;
+    this.validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    this.responseCompression = DEFAULT_RESPONSE_COMPRESSION;
+    this.requestCompression = DEFAULT_REQUEST_COMPRESSION;
+    this.requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+    this.maxRequestsPerSecond = DEFAULT_MAX_REQUESTS_PER_SECOND;
+    this.requestBurst = DEFAULT_REQUEST_BURST;
+    this.maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    this.maxRetries = DEFAULT_MAX_RETRIES;
+    this.retryBackoff = DEFAULT_RETRY_BACKOFF;
+    this.maxRetryBackoff = DEFAULT_MAX_RETRY_BACKOFF;
+    this.retryBudgetRatio = DEFAULT_RETRY_BUDGET_RATIO;
+    this.requestCoalescing = DEFAULT_REQUEST_COALESCING;
+    this.coalescingWindow = DEFAULT_COALESCING_WINDOW;
+    this.preemptiveAuth = DEFAULT_PREEMPTIVE_AUTH;
+    this.transportFactory = DEFAULT_TRANSPORT_FACTORY;
+    this.methodTimeouts = new HashMap<String, Long>();
+    this.methodPriorities = new HashMap<String, MoneroRpcPriority>();
+    for (String method : DEFAULT_BULK_METHODS) methodPriorities.put(method, MoneroRpcPriority.BULK);
+    this.methodIdempotency = new HashMap<String, Boolean>();
+    for (String method : DEFAULT_IDEMPOTENT_METHODS) methodIdempotency.put(method, true);
+    this.methodCoalescing = new HashMap<String, Boolean>();
+    for (String method : DEFAULT_COALESCED_METHODS) methodCoalescing.put(method, true);
+  }
+
+  public MoneroRpcConnectionConfig(MoneroRpcConnectionConfig config) {
+    this.maxConnections = config.maxConnections;
+    this.maxConnectionsPerRoute = config.maxConnectionsPerRoute;
+    this.connectTimeout = config.connectTimeout;
+    this.responseTimeout = config.responseTimeout;
+    this.connectionRequestTimeout = config.connectionRequestTimeout;
+    this.keepAlive = config.keepAlive;
+    this.idleEvictionTime = config.idleEvictionTime;
+    this.validateAfterInactivity = config.validateAfterInactivity;
+    this.responseCompression = config.responseCompression;
+    this.requestCompression = config.requestCompression;
+    this.requestCompressionThreshold = config.requestCompressionThreshold;
+    this.maxRequestsPerSecond = config.maxRequestsPerSecond;
+    this.requestBurst = config.requestBurst;
+    this.maxInFlight = config.maxInFlight;
+    this.maxRetries = config.maxRetries;
+    this.retryBackoff = config.retryBackoff;
+    this.maxRetryBackoff = config.maxRetryBackoff;
+    this.retryBudgetRatio = config.retryBudgetRatio;
+    this.requestCoalescing = config.requestCoalescing;
+    this.coalescingWindow = config.coalescingWindow;
+    this.preemptiveAuth = config.preemptiveAuth;
+    this.transportFactory = config.transportFactory;
+    this.methodTimeouts = new HashMap<String, Long>(config.methodTimeouts);
+    this.methodPriorities = new HashMap<String, MoneroRpcPriority>(config.methodPriorities);
+    this.methodIdempotency = new HashMap<String, Boolean>(config.methodIdempotency);
+    this.methodCoalescing = new HashMap<String, Boolean>(config.methodCoalescing);
+  }
+
+  public MoneroRpcConnectionConfig copy() {
+    return new MoneroRpcConnectionConfig(this);
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Set the maximum number of pooled connections across all routes.
+   *
+   * @param maxConnections is the maximum number of pooled connections
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMaxConnections(int maxConnections) {
+    if (maxConnections <= 0) throw new MoneroError("Max connections must be greater than 0");
+    this.maxConnections = maxConnections;
+    return this;
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * Set the maximum number of pooled connections to a single host.
+   *
+   * @param maxConnectionsPerRoute is the maximum number of pooled connections per route
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    if (maxConnectionsPerRoute <= 0) throw new MoneroError("Max connections per route must be greater than 0");
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    return this;
+  }
+
+  public long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public MoneroRpcConnectionConfig setConnectTimeout(long connectTimeout) {
+    this.connectTimeout = connectTimeout;
+    return this;
+  }
+
+  public long getResponseTimeout() {
+    return responseTimeout;
+  }
+
+  /**
+   * Set the default time to wait for response data before failing a request.
+   *
+   * @param responseTimeout is the default response timeout in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setResponseTimeout(long responseTimeout) {
+    this.responseTimeout = responseTimeout;
+    return this;
+  }
+
+  public long getConnectionRequestTimeout() {
+    return connectionRequestTimeout;
+  }
+
+  /**
+   * Set the time to wait for a connection to be leased from the pool.
+   *
+   * @param connectionRequestTimeout is the connection lease timeout in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setConnectionRequestTimeout(long connectionRequestTimeout) {
+    this.connectionRequestTimeout = connectionRequestTimeout;
+    return this;
+  }
+
+  public long getKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * Set how long an idle connection is kept alive if the server does not
+   * specify a keep-alive duration.
+   *
+   * @param keepAlive is the default keep-alive duration in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setKeepAlive(long keepAlive) {
+    this.keepAlive = keepAlive;
+    return this;
+  }
+
+  public long getIdleEvictionTime() {
+    return idleEvictionTime;
+  }
+
+  /**
+   * Set how long a connection can sit idle in the pool before it is closed
+   * by a background evictor (0 disables eviction).
+   *
+   * @param idleEvictionTime is the maximum idle time in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setIdleEvictionTime(long idleEvictionTime) {
+    this.idleEvictionTime = idleEvictionTime;
+    return this;
+  }
+
+  public long getValidateAfterInactivity() {
+    return validateAfterInactivity;
+  }
+
+  /**
+   * Set the period of inactivity after which a pooled connection is checked
+   * for staleness before being reused.
+   *
+   * @param validateAfterInactivity is the inactivity period in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setValidateAfterInactivity(long validateAfterInactivity) {
+    this.validateAfterInactivity = validateAfterInactivity;
+    return this;
+  }
+
+  public boolean getResponseCompression() {
+    return responseCompression;
+  }
+
+  /**
+   * Set whether to accept gzip or deflate compressed responses, which are
+   * decompressed as they are read.
+   *
+   * @param responseCompression specifies if compressed responses are accepted
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setResponseCompression(boolean responseCompression) {
+    this.responseCompression = responseCompression;
+    return this;
+  }
+
+  public boolean getRequestCompression() {
+    return requestCompression;
+  }
+
+  /**
+   * Set whether to gzip request bodies at or above the request compression
+   * threshold.
+   *
+   * monerod and monero-wallet-rpc do not decode compressed requests, so only
+   * enable this behind a proxy which does.
+   *
+   * @param requestCompression specifies if large request bodies are compressed
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setRequestCompression(boolean requestCompression) {
+    this.requestCompression = requestCompression;
+    return this;
+  }
+
+  public int getRequestCompressionThreshold() {
+    return requestCompressionThreshold;
+  }
+
+  /**
+   * Set the minimum size of a request body to compress.
+   *
+   * @param requestCompressionThreshold is the minimum body size in bytes
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setRequestCompressionThreshold(int requestCompressionThreshold) {
+    this.requestCompressionThreshold = requestCompressionThreshold;
+    return this;
+  }
+
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  /**
+   * Limit the rate of requests with a token bucket.  Requests over the limit
+   * wait for a token, interactive requests first.  Synchronous requests wait
+   * up to the connection request timeout.
+   *
+   * @param maxRequestsPerSecond is the maximum sustained request rate or 0 for no limit
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    return this;
+  }
+
+  public int getRequestBurst() {
+    return requestBurst;
+  }
+
+  /**
+   * Set the number of requests which may be sent at once above the rate
+   * limit after a quiet period, i.e. the token bucket size.
+   *
+   * @param requestBurst is the token bucket size or 0 for one second of requests
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setRequestBurst(int requestBurst) {
+    this.requestBurst = requestBurst;
+    return this;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Limit the number of requests in flight.  Requests over the limit wait
+   * until a request completes, interactive requests first.
+   *
+   * @param maxInFlight is the maximum number of requests in flight or 0 for no limit
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Set the maximum number of times to retry a request to an idempotent
+   * method after a connection failure or a 502, 503, or 504 response.
+   *
+   * @param maxRetries is the maximum number of retries per request or 0 to not retry
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+    return this;
+  }
+
+  public long getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  /**
+   * Set the base backoff before retrying.  The backoff doubles with each
+   * retry of a request and a random time up to the backoff is waited.
+   *
+   * @param retryBackoff is the base backoff in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setRetryBackoff(long retryBackoff) {
+    this.retryBackoff = retryBackoff;
+    return this;
+  }
+
+  public long getMaxRetryBackoff() {
+    return maxRetryBackoff;
+  }
+
+  public MoneroRpcConnectionConfig setMaxRetryBackoff(long maxRetryBackoff) {
+    this.maxRetryBackoff = maxRetryBackoff;
+    return this;
+  }
+
+  public double getRetryBudgetRatio() {
+    return retryBudgetRatio;
+  }
+
+  /**
+   * Limit retries to a ratio of requests, beyond a small reserve, so retries
+   * cannot multiply the load on a server which is failing.
+   *
+   * @param retryBudgetRatio is the number of retries allowed per request sent
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setRetryBudgetRatio(double retryBudgetRatio) {
+    this.retryBudgetRatio = retryBudgetRatio;
+    return this;
+  }
+
+  public boolean getRequestCoalescing() {
+    return requestCoalescing;
+  }
+
+  /**
+   * Set whether concurrent identical requests of coalesced methods share one
+   * request in flight, e.g. when many threads poll the daemon's height.  See
+   * isMethodCoalesced().
+   *
+   * Coalesced callers receive the same response object, which must not be
+   * modified.  Requests read with a response handler are never coalesced.
+   *
+   * @param requestCoalescing specifies if identical idempotent requests are coalesced
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setRequestCoalescing(boolean requestCoalescing) {
+    this.requestCoalescing = requestCoalescing;
+    return this;
+  }
+
+  public long getCoalescingWindow() {
+    return coalescingWindow;
+  }
+
+  /**
+   * Set how long the response of a coalesced request is shared with identical
+   * requests after it completes.
+   *
+   * @param coalescingWindow is the time in milliseconds a response stays fresh or 0 to share requests in flight only
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setCoalescingWindow(long coalescingWindow) {
+    this.coalescingWindow = coalescingWindow;
+    return this;
+  }
+
+  public boolean getPreemptiveAuth() {
+    return preemptiveAuth;
+  }
+
+  /**
+   * Set whether authenticated requests reuse the server's last digest
+   * challenge with an incrementing nonce count, so they take one round trip
+   * instead of first receiving a 401 challenge.
+   *
+   * @param preemptiveAuth specifies if requests authenticate preemptively
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setPreemptiveAuth(boolean preemptiveAuth) {
+    this.preemptiveAuth = preemptiveAuth;
+    return this;
+  }
+
+  public MoneroRpcTransport.Factory getTransportFactory() {
+    return transportFactory;
+  }
+
+  /**
+   * Set the factory of the transport which sends a connection's HTTP
+   * requests, e.g. MoneroJdkHttpTransport.FACTORY on Java 11 or later.
+   *
+   * @param transportFactory creates the transport of each connection
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setTransportFactory(MoneroRpcTransport.Factory transportFactory) {
+    this.transportFactory = transportFactory;
+    return this;
+  }
+
+  public Map<String, Boolean> getMethodIdempotency() {
+    return methodIdempotency;
+  }
+
+  public MoneroRpcConnectionConfig setMethodIdempotency(Map<String, Boolean> methodIdempotency) {
+    this.methodIdempotency = methodIdempotency == null ? new HashMap<String, Boolean>() : new HashMap<String, Boolean>(methodIdempotency);
+    return this;
+  }
+
+  /**
+   * Set whether requests to a method are safe to repeat and so may be
+   * retried.
+   *
+   * @param method is the JSON-RPC method or path (e.g. "get_transactions")
+   * @param idempotent specifies if the method's requests may be retried
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMethodIdempotent(String method, boolean idempotent) {
+    methodIdempotency.put(method, idempotent);
+    return this;
+  }
+
+  /**
+   * Indicates if requests to a method may be retried.  Methods default to
+   * idempotent if they only read state, i.e. "get*" and "is_*" methods and
+   * the read-only methods in DEFAULT_IDEMPOTENT_METHODS.  Methods which
+   * transfer, relay, submit, or otherwise change state are never retried
+   * unless configured otherwise.
+   *
+   * @param method is the JSON-RPC method or path
+   * @return true if the method's requests may be retried, false otherwise
+   */
+  public boolean isMethodIdempotent(String method) {
+    Boolean idempotent = methodIdempotency.get(method);
+    if (idempotent != null) return idempotent;
+    return method.startsWith("get") || method.startsWith("is_");
+  }
+
+  public Map<String, Boolean> getMethodCoalescing() {
+    return methodCoalescing;
+  }
+
+  public MoneroRpcConnectionConfig setMethodCoalescing(Map<String, Boolean> methodCoalescing) {
+    this.methodCoalescing = methodCoalescing == null ? new HashMap<String, Boolean>() : new HashMap<String, Boolean>(methodCoalescing);
+    return this;
+  }
+
+  /**
+   * Set whether identical requests to a method may share one response when
+   * request coalescing is enabled.
+   *
+   * @param method is the JSON-RPC method or path (e.g. "get_info")
+   * @param coalesced specifies if the method's identical requests may share a response
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMethodCoalesced(String method, boolean coalesced) {
+    methodCoalescing.put(method, coalesced);
+    return this;
+  }
+
+  /**
+   * Indicates if identical requests to a method may share one response when
+   * request coalescing is enabled.  Only the daemon's read-only methods in
+   * DEFAULT_COALESCED_METHODS are coalesced unless configured otherwise,
+   * since a method may be safe to retry yet return a distinct result to each
+   * caller, e.g. make_integrated_address with a random payment id.
+   *
+   * @param method is the JSON-RPC method or path
+   * @return true if the method's identical requests may share a response, false otherwise
+   */
+  public boolean isMethodCoalesced(String method) {
+    Boolean coalesced = methodCoalescing.get(method);
+    return coalesced != null && coalesced;
+  }
+
+  public Map<String, MoneroRpcPriority> getMethodPriorities() {
+    return methodPriorities;
+  }
+
+  public MoneroRpcConnectionConfig setMethodPriorities(Map<String, MoneroRpcPriority> methodPriorities) {
+    this.methodPriorities = methodPriorities == null ? new HashMap<String, MoneroRpcPriority>() : new HashMap<String, MoneroRpcPriority>(methodPriorities);
+    return this;
+  }
+
+  /**
+   * Set the priority of a specific RPC method or path when requests are
+   * limited.  Methods fetching chain data in bulk default to BULK and all
+   * other methods to INTERACTIVE.
+   *
+   * @param method is the JSON-RPC method or path (e.g. "get_blocks_by_height.bin")
+   * @param priority is the priority of the method's requests
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMethodPriority(String method, MoneroRpcPriority priority) {
+    methodPriorities.put(method, priority);
+    return this;
+  }
+
+  public MoneroRpcPriority getMethodPriority(String method) {
+    MoneroRpcPriority priority = methodPriorities.get(method);
+    return priority == null ? MoneroRpcPriority.INTERACTIVE : priority;
+  }
+
+  public Map<String, Long> getMethodTimeouts() {
+    return methodTimeouts;
+  }
+
+  public MoneroRpcConnectionConfig setMethodTimeouts(Map<String, Long> methodTimeouts) {
+    this.methodTimeouts = methodTimeouts == null ? new HashMap<String, Long>() : new HashMap<String, Long>(methodTimeouts);
+    return this;
+  }
+
+  /**
+   * Override the response timeout of a specific RPC method or path.
+   *
+   * @param method is the JSON-RPC method or path (e.g. "get_block" or "get_blocks_by_height.bin")
+   * @param responseTimeout is the response timeout in milliseconds
+   * @return this config for chaining
+   */
+  public MoneroRpcConnectionConfig setMethodTimeout(String method, long responseTimeout) {
+    methodTimeouts.put(method, responseTimeout);
+    return this;
+  }
+
+  /**
+   * Get the response timeout of a method, falling back to the default
+   * response timeout.
+   *
+   * @param method is the JSON-RPC method or path
+   * @return the method's response timeout in milliseconds
+   */
+  public long getMethodTimeout(String method) {
+    Long timeout = methodTimeouts.get(method);
+    return timeout == null ? responseTimeout : timeout;
+  }
+}
@@ -0,0 +1,303 @@
+package monero.common;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates per-method request metrics in memory without locking.
+ *
+ * Register with MoneroRpcConnection.setMetricsListener() and read the
+ * metrics of each method at any time, e.g. to export them to a monitoring
+ * system.
+ */
+public class MoneroRpcMetrics extends MoneroRpcMetricsListener {
+
+  private Map<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+  @Override
+  public void onRequestAdmitted(String method, long queueTime) {
+    getOrCreate(method).queueTimes.record(queueTime);
+  }
+
+  @Override
+  public void onRequestStarted(String method) {
+    getOrCreate(method).inFlight.increment();
+  }
+
+  @Override
+  public void onRequestCompleted(String method, long networkTime, long parseTime, long bytesSent, long bytesReceived, MoneroError error) {
+    MethodMetrics metrics = getOrCreate(method);
+    metrics.inFlight.decrement();
+    metrics.numRequests.increment();
+    metrics.networkTimes.record(networkTime);
+    metrics.parseTimes.record(parseTime);
+    metrics.bytesSent.add(bytesSent);
+    metrics.bytesReceived.add(bytesReceived);
+    if (error == null) return;
+    if (isHttpError(error)) metrics.numHttpErrors.increment();
+    else if (error instanceof MoneroRpcError) metrics.numRpcErrors.increment();
+    else metrics.numTransportErrors.increment();
+  }
+
+  @Override
+  public void onRetry(String method, int numRetry, MoneroError error) {
+    getOrCreate(method).numRetries.increment();
+  }
+
+  @Override
+  public void onRequestCoalesced(String method) {
+    getOrCreate(method).numCoalesced.increment();
+  }
+
+  /**
+   * Get the metrics of a method.
+   *
+   * @param method is the JSON-RPC method or path
+   * @return the method's metrics or null if the method has not been requested
+   */
+  public MethodMetrics getMethodMetrics(String method) {
+    return methods.get(method);
+  }
+
+  /**
+   * Get the metrics of all requested methods.
+   *
+   * @return the metrics of each requested method sorted by method
+   */
+  public Map<String, MethodMetrics> getMethodMetrics() {
+    return Collections.unmodifiableMap(new TreeMap<String, MethodMetrics>(methods));
+  }
+
+  /**
+   * Reset all counters and histograms to zero.
+   *
+   * Requests in flight are still counted as in flight until they complete.
+   * Metrics recorded while resetting may be kept or cleared.
+   */
+  public void reset() {
+    for (MethodMetrics metrics : methods.values()) metrics.reset();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, MethodMetrics> entry : getMethodMetrics().entrySet()) sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+    return sb.toString();
+  }
+
+  private MethodMetrics getOrCreate(String method) {
+    MethodMetrics metrics = methods.get(method);
+    if (metrics == null) metrics = methods.computeIfAbsent(method, m -> new MethodMetrics());
+    return metrics;
+  }
+
+  /**
+   * HTTP errors are raised without the RPC method since the server did not
+   * reach the method's handler.
+   */
+  static boolean isHttpError(MoneroError error) {
+    return error instanceof MoneroRpcError && ((MoneroRpcError) error).getRpcMethod() == null && error.getCode() != null;
+  }
+
+  /**
+   * Metrics of one method.
+   */
+  public static class MethodMetrics {
+
+    private LongAdder numRequests = new LongAdder();
+    private LongAdder inFlight = new LongAdder();
+    private LongAdder numHttpErrors = new LongAdder();
+    private LongAdder numRpcErrors = new LongAdder();
+    private LongAdder numTransportErrors = new LongAdder();
+    private LongAdder numRetries = new LongAdder();
+    private LongAdder numCoalesced = new LongAdder();
+    private LongAdder bytesSent = new LongAdder();
+    private LongAdder bytesReceived = new LongAdder();
+    private LatencyHistogram queueTimes = new LatencyHistogram();
+    private LatencyHistogram networkTimes = new LatencyHistogram();
+    private LatencyHistogram parseTimes = new LatencyHistogram();
+
+    public long getNumRequests() {
+      return numRequests.sum();
+    }
+
+    public long getInFlight() {
+      return inFlight.sum();
+    }
+
+    public long getNumHttpErrors() {
+      return numHttpErrors.sum();
+    }
+
+    public long getNumRpcErrors() {
+      return numRpcErrors.sum();
+    }
+
+    /**
+     * Get the number of requests which failed without a response, e.g. on
+     * connection failures, timeouts, or unparsable responses.
+     *
+     * @return the number of transport errors
+     */
+    public long getNumTransportErrors() {
+      return numTransportErrors.sum();
+    }
+
+    public long getNumRetries() {
+      return numRetries.sum();
+    }
+
+    /**
+     * Get the number of requests which shared the response of an identical
+     * request instead of being sent.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getNumCoalesced() {
+      return numCoalesced.sum();
+    }
+
+    public long getNumErrors() {
+      return getNumHttpErrors() + getNumRpcErrors() + getNumTransportErrors();
+    }
+
+    public long getBytesSent() {
+      return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+      return bytesReceived.sum();
+    }
+
+    /**
+     * Get the distribution of the time requests waited to be admitted by the
+     * connection's request limits, which is empty if requests are not
+     * limited.
+     *
+     * @return the queue time histogram
+     */
+    public LatencyHistogram getQueueTimes() {
+      return queueTimes;
+    }
+
+    /**
+     * Get the distribution of the time until responses are received.
+     *
+     * @return the network time histogram
+     */
+    public LatencyHistogram getNetworkTimes() {
+      return networkTimes;
+    }
+
+    /**
+     * Get the distribution of the time to read and deserialize responses.
+     *
+     * @return the parse time histogram
+     */
+    public LatencyHistogram getParseTimes() {
+      return parseTimes;
+    }
+
+    private void reset() {
+      numRequests.reset();
+      numHttpErrors.reset();
+      numRpcErrors.reset();
+      numTransportErrors.reset();
+      numRetries.reset();
+      numCoalesced.reset();
+      bytesSent.reset();
+      bytesReceived.reset();
+      queueTimes.reset();
+      networkTimes.reset();
+      parseTimes.reset();
+    }
+
+    @Override
+    public String toString() {
+      return "requests=" + getNumRequests() + ", inFlight=" + getInFlight() + ", httpErrors=" + getNumHttpErrors() + ", rpcErrors=" + getNumRpcErrors() + ", transportErrors=" + getNumTransportErrors() + ", retries=" + getNumRetries() + ", coalesced=" + getNumCoalesced() +
+          ", bytesSent=" + getBytesSent() + ", bytesReceived=" + getBytesReceived() + ", queue={" + queueTimes + "}, network={" + networkTimes + "}, parse={" + parseTimes + "}";
+    }
+  }
+
+  /**
+   * Histogram of latencies with power of two microsecond buckets, so
+   * percentiles are accurate to within a factor of two.
+   */
+  public static class LatencyHistogram {
+
+    private static final int NUM_BUCKETS = 40; // bucket i counts latencies below 2^i microseconds
+
+    private AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private LongAdder count = new LongAdder();
+    private LongAdder totalTime = new LongAdder();
+
+    private void record(long nanos) {
+      long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+      buckets.incrementAndGet(Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+      count.increment();
+      totalTime.add(nanos);
+    }
+
+    private void reset() {
+      for (int i = 0; i < NUM_BUCKETS; i++) buckets.set(i, 0);
+      count.reset();
+      totalTime.reset();
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * Get the mean latency.
+     *
+     * @return the mean latency in microseconds or 0 if nothing is recorded
+     */
+    public long getMean() {
+      long count = getCount();
+      return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalTime.sum() / count);
+    }
+
+    /**
+     * Get the upper bound of the bucket containing the given percentile.
+     *
+     * @param percentile is the percentile to get between 0 and 100
+     * @return the percentile's upper bound in microseconds or 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+      long[] counts = getBucketCounts();
+      long total = 0;
+      for (long bucketCount : counts) total += bucketCount;
+      if (total == 0) return 0;
+      long rank = (long) Math.ceil(percentile / 100 * total);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) return 1L << i;
+      }
+      return 1L << (NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Get the count of each bucket, where bucket i counts latencies below 2^i
+     * microseconds and at least 2^(i-1) microseconds.
+     *
+     * @return the count of each bucket
+     */
+    public long[] getBucketCounts() {
+      long[] counts = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; i++) counts[i] = buckets.get(i);
+      return counts;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + getCount() + ", meanUs=" + getMean() + ", p50Us=" + getPercentile(50) + ", p99Us=" + getPercentile(99);
+    }
+  }
+}
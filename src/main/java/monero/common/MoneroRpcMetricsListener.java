@@ -0,0 +1,57 @@
+package monero.common;
+
+/**
+ * Receives notifications as a connection sends requests, e.g. to record
+ * per-method metrics.
+ *
+ * Notifications are made on the threads sending or completing requests, so
+ * implementations must be thread safe and return quickly.
+ */
+public class MoneroRpcMetricsListener {
+
+  /**
+   * Called when a request is admitted by the connection's request limits,
+   * before it is started.  Not called if requests are not limited.
+   *
+   * @param method is the JSON-RPC method or path requested
+   * @param queueTime is the time in nanoseconds the request waited to be admitted
+   */
+  public void onRequestAdmitted(String method, long queueTime) { }
+
+  /**
+   * Called when a request is started, after it is admitted by the
+   * connection's request limits.
+   *
+   * @param method is the JSON-RPC method or path requested
+   */
+  public void onRequestStarted(String method) { }
+
+  /**
+   * Called when a request is completed successfully or with an error.
+   *
+   * @param method is the JSON-RPC method or path requested
+   * @param networkTime is the time in nanoseconds until the response was received
+   * @param parseTime is the time in nanoseconds to read and deserialize the response
+   * @param bytesSent is the number of request body bytes sent
+   * @param bytesReceived is the number of response body bytes received
+   * @param error is the error the request failed with or null if successful
+   */
+  public void onRequestCompleted(String method, long networkTime, long parseTime, long bytesSent, long bytesReceived, MoneroError error) { }
+
+  /**
+   * Called when a failed attempt of a request is retried.
+   *
+   * @param method is the JSON-RPC method or path requested
+   * @param numRetry is the number of the retry starting at 1
+   * @param error is the error of the failed attempt
+   */
+  public void onRetry(String method, int numRetry, MoneroError error) { }
+
+  /**
+   * Called when a request shares the response of an identical request instead
+   * of being sent.
+   *
+   * @param method is the JSON-RPC method or path requested
+   */
+  public void onRequestCoalesced(String method) { }
+}
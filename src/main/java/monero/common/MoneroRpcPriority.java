@@ -0,0 +1,11 @@
+package monero.common;
+
+/**
+ * Priority classes of requests when a connection limits its request rate or
+ * concurrency.  Waiting interactive requests are always sent before waiting
+ * bulk requests.
+ */
+public enum MoneroRpcPriority {
+  INTERACTIVE,
+  BULK
+}
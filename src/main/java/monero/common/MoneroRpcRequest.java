@@ -0,0 +1,27 @@
+package monero.common;
+
+/**
+ * A JSON-RPC method and its parameters, e.g. as one entry of a batch request.
+ */
+public class MoneroRpcRequest {
+
+  private String method;
+  private Object params;
+
+  public MoneroRpcRequest(String method) {
+    this(method, null);
+  }
+
+  public MoneroRpcRequest(String method, Object params) {
+    this.method = method;
+    this.params = params;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public Object getParams() {
+    return params;
+  }
+}
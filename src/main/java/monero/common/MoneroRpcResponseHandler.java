@@ -0,0 +1,29 @@
+package monero.common;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Reads an RPC response incrementally from a JSON token stream.
+ * 
+ * Handlers let callers build models while the response is read from the
+ * connection instead of first materializing the whole response as a map.
+ * 
+ * @param <T> the type built from the response
+ */
+public interface MoneroRpcResponseHandler<T> {
+  
+  /**
+   * Reads a value from the parser.
+   * 
+   * The parser is positioned on the first token of the value (e.g. the
+   * START_OBJECT of a JSON-RPC result) and must be left on its last token
+   * (e.g. the matching END_OBJECT).
+   * 
+   * @param parser is the parser to read the value from
+   * @return the value built from the response
+   * @throws IOException if the response cannot be read
+   */
+  public T handle(JsonParser parser) throws IOException;
+}
@@ -0,0 +1,180 @@
+package monero.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Admits requests of a connection under a token bucket rate limit and a
+ * maximum number of requests in flight, admitting waiting requests in
+ * priority order.
+ */
+class MoneroRpcScheduler {
+
+  private static ScheduledExecutorService TIMER; // admits waiting requests as tokens refill and runs delayed retries
+
+  private double maxRequestsPerSecond;
+  private double burst;
+  private int maxInFlight;
+  private double tokens;
+  private long lastRefillTime;
+  private int inFlight;
+  private boolean dispatchScheduled;
+  private List<Deque<CompletableFuture<Void>>> queues; // waiting requests by priority
+
+  MoneroRpcScheduler(double maxRequestsPerSecond, int burst, int maxInFlight) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.burst = burst > 0 ? burst : Math.max(1, Math.ceil(maxRequestsPerSecond));
+    this.maxInFlight = maxInFlight;
+    this.tokens = this.burst;
+    this.lastRefillTime = System.nanoTime();
+    this.queues = new ArrayList<Deque<CompletableFuture<Void>>>();
+    for (int i = 0; i < MoneroRpcPriority.values().length; i++) queues.add(new ArrayDeque<CompletableFuture<Void>>());
+  }
+
+  /**
+   * Wait until a request may be sent.  The caller must call release() after
+   * the request completes.
+   *
+   * @param priority is the priority of the request
+   * @param timeout is the maximum time to wait in milliseconds
+   */
+  void acquire(MoneroRpcPriority priority, long timeout) {
+    CompletableFuture<Void> admission = acquireAsync(priority);
+    try {
+      if (timeout > 0) admission.get(timeout, TimeUnit.MILLISECONDS);
+      else admission.get();
+    } catch (TimeoutException e) {
+      if (!admission.cancel(false)) release(); // admitted while timing out
+      throw new MoneroError("Timed out after " + timeout + " ms waiting to send request");
+    } catch (InterruptedException e) {
+      if (!admission.cancel(false)) release();
+      Thread.currentThread().interrupt();
+      throw new MoneroError(e);
+    } catch (ExecutionException e) {
+      throw new MoneroError(e.getCause());
+    }
+  }
+
+  /**
+   * Get a future which completes when a request may be sent.  The caller must
+   * call release() after the request completes.
+   *
+   * @param priority is the priority of the request
+   * @return a future which completes when the request is admitted
+   */
+  CompletableFuture<Void> acquireAsync(MoneroRpcPriority priority) {
+    CompletableFuture<Void> admission = new CompletableFuture<Void>();
+    synchronized (this) {
+      queues.get(priority.ordinal()).add(admission);
+    }
+    dispatch();
+    return admission;
+  }
+
+  /**
+   * Release the admission of a completed request.
+   */
+  void release() {
+    synchronized (this) {
+      inFlight--;
+    }
+    dispatch();
+  }
+
+  synchronized int getNumWaiting() {
+    int numWaiting = 0;
+    for (Deque<CompletableFuture<Void>> queue : queues) numWaiting += queue.size();
+    return numWaiting;
+  }
+
+  synchronized int getNumInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Admits waiting requests while limits allow and schedules another
+   * dispatch when the next token refills.
+   */
+  private void dispatch() {
+    List<CompletableFuture<Void>> admitted = new ArrayList<CompletableFuture<Void>>();
+    synchronized (this) {
+      refill();
+      while (true) {
+        if (maxInFlight > 0 && inFlight >= maxInFlight) break;
+        Deque<CompletableFuture<Void>> queue = getFirstNonEmptyQueue();
+        if (queue == null) break;
+        if (maxRequestsPerSecond > 0 && tokens < 1) {
+          scheduleDispatch((long) Math.ceil((1 - tokens) / maxRequestsPerSecond * 1e9));
+          break;
+        }
+        CompletableFuture<Void> admission = queue.poll();
+        if (admission.isCancelled()) continue;
+        if (maxRequestsPerSecond > 0) tokens--;
+        inFlight++;
+        admitted.add(admission);
+      }
+    }
+
+    // complete admissions outside the lock since requests continue on this thread
+    for (CompletableFuture<Void> admission : admitted) {
+      if (!admission.complete(null)) release(); // cancelled concurrently
+    }
+  }
+
+  private Deque<CompletableFuture<Void>> getFirstNonEmptyQueue() {
+    for (Deque<CompletableFuture<Void>> queue : queues) {
+      while (!queue.isEmpty() && queue.peek().isCancelled()) queue.poll();
+      if (!queue.isEmpty()) return queue;
+    }
+    return null;
+  }
+
+  private void refill() {
+    if (maxRequestsPerSecond <= 0) return;
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - lastRefillTime) / 1e9 * maxRequestsPerSecond);
+    lastRefillTime = now;
+  }
+
+  private void scheduleDispatch(long delayNanos) {
+    if (dispatchScheduled) return;
+    dispatchScheduled = true;
+    getTimer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (MoneroRpcScheduler.this) {
+          dispatchScheduled = false;
+        }
+        dispatch();
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the timer shared by connections to run delayed tasks, e.g. retries.
+   *
+   * @return the shared timer
+   */
+  static synchronized ScheduledExecutorService getTimer() {
+    if (TIMER == null) {
+      TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "MoneroRpcScheduler");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return TIMER;
+  }
+}
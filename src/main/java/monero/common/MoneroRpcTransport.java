@@ -0,0 +1,248 @@
+package monero.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the HTTP requests of a connection to a Monero RPC server.
+ *
+ * A transport only exchanges request and response bodies and authenticates
+ * with the connection's credentials.  MoneroRpcConnection encodes JSON, path,
+ * and binary requests, compresses and decompresses bodies, limits and retries
+ * requests, and records metrics on top of it, so these behave the same on
+ * every transport.
+ *
+ * Connections use MoneroApacheHttpTransport unless another transport factory
+ * is configured with MoneroRpcConnectionConfig.setTransportFactory().
+ */
+public interface MoneroRpcTransport extends Closeable {
+
+  /**
+   * Sends a POST request and waits until the response headers are received.
+   *
+   * @param request is the request to send
+   * @return the response whose body is streamed and which must be closed by the caller
+   * @throws IOException if the request cannot be sent or the response cannot be received
+   */
+  public Response send(Request request) throws IOException;
+
+  /**
+   * Sends a POST request without blocking the calling thread.
+   *
+   * @param request is the request to send, whose body must not be modified until the future completes
+   * @return a future which completes with the response with its body buffered or exceptionally with the transport's error
+   */
+  public CompletableFuture<Response> sendAsync(Request request);
+
+  /**
+   * Creates the transport of a connection.
+   */
+  public interface Factory {
+
+    /**
+     * Create a transport to the given server.
+     *
+     * @param uri is the uri of the server
+     * @param username is the username to authenticate with (optional)
+     * @param password is the password to authenticate with (optional)
+     * @param config is the connection's configuration
+     * @return the transport
+     */
+    public MoneroRpcTransport create(URI uri, String username, String password, MoneroRpcConnectionConfig config);
+  }
+
+  /**
+   * A POST request to a path of the server.
+   */
+  public static class Request {
+
+    private String path;
+    private byte[] body;
+    private int offset;
+    private int length;
+    private String contentType;
+    private String contentEncoding;
+    private String acceptEncoding;
+    private long timeout;
+
+    /**
+     * @param path is the url path of the request relative to the server's uri
+     */
+    public Request(String path) {
+      this.path = path;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Get the array holding the request body.
+     *
+     * @return the array holding the body or null if the request has no body
+     */
+    public byte[] getBody() {
+      return body;
+    }
+
+    public int getOffset() {
+      return offset;
+    }
+
+    public int getLength() {
+      return length;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    /**
+     * Set the request body without copying it.
+     *
+     * @param body is the array holding the body
+     * @param offset is the offset of the body in the array
+     * @param length is the length of the body
+     * @param contentType is the content type of the body
+     * @return this request for chaining
+     */
+    public Request setBody(byte[] body, int offset, int length, String contentType) {
+      this.body = body;
+      this.offset = offset;
+      this.length = length;
+      this.contentType = contentType;
+      return this;
+    }
+
+    public String getContentEncoding() {
+      return contentEncoding;
+    }
+
+    public Request setContentEncoding(String contentEncoding) {
+      this.contentEncoding = contentEncoding;
+      return this;
+    }
+
+    public String getAcceptEncoding() {
+      return acceptEncoding;
+    }
+
+    /**
+     * Set the content encodings the response may use, which the transport
+     * must not decode.
+     *
+     * @param acceptEncoding is the Accept-Encoding header value or null to request an unencoded response
+     * @return this request for chaining
+     */
+    public Request setAcceptEncoding(String acceptEncoding) {
+      this.acceptEncoding = acceptEncoding;
+      return this;
+    }
+
+    public long getTimeout() {
+      return timeout;
+    }
+
+    /**
+     * Set the maximum time to wait for the response.
+     *
+     * @param timeout is the response timeout in milliseconds or 0 to use the connection's response timeout
+     * @return this request for chaining
+     */
+    public Request setTimeout(long timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+  }
+
+  /**
+   * The response to a request, with a streamed or buffered body.
+   */
+  public static class Response implements Closeable {
+
+    private int code;
+    private String reasonPhrase;
+    private String contentEncoding;
+    private InputStream body;
+    private byte[] bodyBytes;
+    private Closeable resource;
+
+    /**
+     * Construct a response with a streamed body.
+     *
+     * @param code is the HTTP status code
+     * @param reasonPhrase is the HTTP reason phrase (optional)
+     * @param contentEncoding is the content encoding of the body (optional)
+     * @param body is the body stream (optional)
+     * @param resource is closed when the response is closed, e.g. to release its connection (optional)
+     */
+    public Response(int code, String reasonPhrase, String contentEncoding, InputStream body, Closeable resource) {
+      this.code = code;
+      this.reasonPhrase = reasonPhrase;
+      this.contentEncoding = contentEncoding;
+      this.body = body;
+      this.resource = resource;
+    }
+
+    /**
+     * Construct a response with a buffered body.
+     *
+     * @param code is the HTTP status code
+     * @param reasonPhrase is the HTTP reason phrase (optional)
+     * @param contentEncoding is the content encoding of the body (optional)
+     * @param body is the body (optional)
+     */
+    public Response(int code, String reasonPhrase, String contentEncoding, byte[] body) {
+      this(code, reasonPhrase, contentEncoding, (InputStream) null, null);
+      this.bodyBytes = body;
+    }
+
+    public int getCode() {
+      return code;
+    }
+
+    public String getReasonPhrase() {
+      return reasonPhrase;
+    }
+
+    public String getContentEncoding() {
+      return contentEncoding;
+    }
+
+    /**
+     * Get the response body as a stream.
+     *
+     * @return the body stream, which is empty if the response has no body
+     */
+    public InputStream getBody() {
+      if (body == null) body = new ByteArrayInputStream(bodyBytes == null ? new byte[0] : bodyBytes);
+      return body;
+    }
+
+    /**
+     * Get the response body, reading the rest of a streamed body.
+     *
+     * @return the body, which is empty if the response has no body
+     * @throws IOException if the body cannot be read
+     */
+    public byte[] getBodyBytes() throws IOException {
+      if (bodyBytes != null) return bodyBytes;
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      InputStream in = getBody();
+      for (int n; (n = in.read(buf)) != -1; ) out.write(buf, 0, n);
+      return out.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (resource != null) resource.close();
+      else if (body != null) body.close();
+    }
+  }
+}
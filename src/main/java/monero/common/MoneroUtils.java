@@ -249,14 +249,33 @@ public class MoneroUtils {
     txs.add(tx);
   }
   
+  /**
+   * Serializes a map to monero's portable storage binary format.
+   * 
+   * @param map is the map to serialize
+   * @return the map in portable storage binary format
+   */
   public static byte[] mapToBinary(Map<String, Object> map) {
-    return jsonToBinaryJni(JsonUtils.serialize(map));
+    return MoneroPortableStorage.serialize(map);
   }
   
+  /**
+   * Deserializes a map from monero's portable storage binary format.
+   * 
+   * @param bin is the map in portable storage binary format
+   * @return the deserialized map
+   */
   public static Map<String, Object> binaryToMap(byte[] bin) {
-    return JsonUtils.deserialize(binaryToJsonJni(bin), new TypeReference<Map<String, Object>>(){});
+    return MoneroPortableStorage.deserialize(bin);
   }
   
+  /**
+   * Converts a get_blocks_by_height.bin response to a map of blocks and txs
+   * with the native library.  MoneroBlobParser parses the blobs directly.
+   * 
+   * @param binBlocks is the binary response
+   * @return a map with the response's status, blocks, and txs per block
+   */
   @SuppressWarnings("unchecked")
   public static Map<String, Object> binaryBlocksToMap(byte[] binBlocks) {
     
@@ -301,6 +320,7 @@ public class MoneroUtils {
   
   // ---------------------------- PRIVATE HELPERS -----------------------------
   
+  // superseded by MoneroPortableStorage but kept to benchmark against
   private native static byte[] jsonToBinaryJni(String json);
   
   private native static String binaryToJsonJni(byte[] bin);
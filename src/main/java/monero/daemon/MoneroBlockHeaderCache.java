@@ -0,0 +1,171 @@
+package monero.daemon;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import monero.common.MoneroError;
+import monero.daemon.model.MoneroBlockHeader;
+
+/**
+ * Caches block headers fetched from a daemon by height and by hash.
+ *
+ * Headers are stored in a fixed number of slots indexed by height modulo the
+ * maximum size, so the cache stays bounded and a header evicts the header
+ * whose height maps to the same slot, which when scanning heights in order
+ * is the oldest header.
+ *
+ * Cached headers which no longer link by previous hash to a header put at an
+ * adjacent height were reorganized out of the chain and are invalidated.
+ * Headers are copied in and out so cached headers cannot be modified, and the
+ * depth of a header returned is relative to the highest tip seen.
+ */
+public class MoneroBlockHeaderCache {
+
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private MoneroBlockHeader[] slots;
+  private Map<String, MoneroBlockHeader> headersByHash;
+  private long tipHeight = -1;
+  private int size;
+  private long numHits;
+  private long numMisses;
+
+  MoneroBlockHeaderCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  MoneroBlockHeaderCache(int maxSize) {
+    setMaxSize(maxSize);
+  }
+
+  /**
+   * Set the maximum number of headers to cache, keeping cached headers which
+   * fit.
+   *
+   * @param maxSize is the maximum number of headers to cache (default 10,000)
+   */
+  public synchronized void setMaxSize(int maxSize) {
+    if (maxSize <= 0) throw new MoneroError("Max size must be greater than 0");
+    MoneroBlockHeader[] oldSlots = slots;
+    slots = new MoneroBlockHeader[maxSize];
+    headersByHash = new HashMap<String, MoneroBlockHeader>();
+    size = 0;
+    if (oldSlots == null) return;
+    for (MoneroBlockHeader header : oldSlots) {
+      if (header == null) continue;
+      MoneroBlockHeader occupant = slots[getSlot(header.getHeight())];
+      if (occupant == null || occupant.getHeight() < header.getHeight()) store(header);
+    }
+  }
+
+  public synchronized int getMaxSize() {
+    return slots.length;
+  }
+
+  public synchronized int getSize() {
+    return size;
+  }
+
+  /**
+   * Get the number of lookups which were served from the cache.
+   *
+   * @return the number of cache hits
+   */
+  public synchronized long getNumHits() {
+    return numHits;
+  }
+
+  /**
+   * Get the number of lookups which were not cached.
+   *
+   * @return the number of cache misses
+   */
+  public synchronized long getNumMisses() {
+    return numMisses;
+  }
+
+  /**
+   * Remove cached headers at and above a height, e.g. when the chain is
+   * reorganized from that height.
+   *
+   * @param fromHeight is the height to remove headers from
+   */
+  public synchronized void invalidate(long fromHeight) {
+    for (MoneroBlockHeader header : slots) {
+      if (header != null && header.getHeight() >= fromHeight) remove(header);
+    }
+    if (tipHeight >= fromHeight) tipHeight = fromHeight - 1;
+  }
+
+  public synchronized void clear() {
+    invalidate(0);
+  }
+
+  synchronized MoneroBlockHeader get(long height) {
+    MoneroBlockHeader header = getCached(height);
+    if (header == null) numMisses++;
+    else numHits++;
+    return header == null ? null : copy(header);
+  }
+
+  synchronized MoneroBlockHeader getByHash(String hash) {
+    MoneroBlockHeader header = headersByHash.get(hash);
+    if (header == null) numMisses++;
+    else numHits++;
+    return header == null ? null : copy(header);
+  }
+
+  /**
+   * Cache a header, invalidating cached headers which do not link to it.
+   */
+  synchronized void put(MoneroBlockHeader header) {
+    if (header == null || header.getHeight() == null || header.getHash() == null) return;
+    long height = header.getHeight();
+
+    // invalidate this and higher headers if replaced, or higher headers if the next does not link to this
+    MoneroBlockHeader existing = getCached(height);
+    MoneroBlockHeader next = getCached(height + 1);
+    if (existing != null && !existing.getHash().equals(header.getHash())) invalidate(height);
+    else if (next != null && !header.getHash().equals(next.getPrevHash())) invalidate(height + 1);
+
+    // remove previous header if this does not link to it
+    MoneroBlockHeader prev = getCached(height - 1);
+    if (prev != null && header.getPrevHash() != null && !header.getPrevHash().equals(prev.getHash())) remove(prev);
+
+    // store copy of header
+    if (header.getDepth() != null) tipHeight = Math.max(tipHeight, height + header.getDepth());
+    store(new MoneroBlockHeader(header));
+  }
+
+  private void store(MoneroBlockHeader header) {
+    int slot = getSlot(header.getHeight());
+    if (slots[slot] != null) remove(slots[slot]);
+    slots[slot] = header;
+    headersByHash.put(header.getHash(), header);
+    size++;
+  }
+
+  private void remove(MoneroBlockHeader header) {
+    int slot = getSlot(header.getHeight());
+    if (slots[slot] != header) return;
+    slots[slot] = null;
+    headersByHash.remove(header.getHash());
+    size--;
+  }
+
+  private MoneroBlockHeader getCached(long height) {
+    if (height < 0) return null;
+    MoneroBlockHeader header = slots[getSlot(height)];
+    return header != null && header.getHeight() == height ? header : null;
+  }
+
+  private int getSlot(long height) {
+    return (int) (height % slots.length);
+  }
+
+  private MoneroBlockHeader copy(MoneroBlockHeader header) {
+    MoneroBlockHeader copy = new MoneroBlockHeader(header);
+    if (copy.getDepth() != null && tipHeight >= header.getHeight()) copy.setDepth(tipHeight - header.getHeight());
+    return copy;
+  }
+}
@@ -0,0 +1,468 @@
+package monero.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import monero.common.MoneroBlobParser;
+import monero.common.MoneroError;
+import monero.daemon.model.MoneroBlock;
+import monero.daemon.model.MoneroBlockHeader;
+
+/**
+ * Persists block headers and raw block and transaction blobs fetched from a
+ * daemon in memory-mapped files, so a process which restarts can read blocks
+ * it fetched before without requesting them again.
+ *
+ * Headers are fixed-width records indexed by height in headers.dat.  Blobs
+ * are appended to segment files blocks-N.dat, and blocks.idx indexes each
+ * height's blobs by segment, offset, and length.
+ *
+ * The store is truncated from a height when a header put at or above it does
+ * not match the stored chain, e.g. after a reorg.  MoneroDaemonRpc also
+ * compares the highest stored heights to the daemon's chain when the store is
+ * set and when polling starts, to find reorgs which happened while the store
+ * was not in use.  Blobs of truncated heights remain in their segments
+ * unreferenced.
+ *
+ * Set on a daemon with MoneroDaemonRpc.setBlockStore().
+ */
+public class MoneroBlockStore {
+
+  private static final int HEADER_RECORD_SIZE = 192;
+  private static final int INDEX_RECORD_SIZE = 16;
+  private static final long SEGMENT_SIZE = 1L << 28; // 256 MB
+  private static final long MIN_CAPACITY = 1 << 16;  // heights mapped at least
+  private static final int HASH_SIZE = 32;
+  private static final int DIFFICULTY_SIZE = 16;
+
+  // header record fields which may be null, indexed in the record's null mask
+  private static final int PREV_HASH = 0;
+  private static final int MINER_TX_HASH = 1;
+  private static final int TIMESTAMP = 2;
+  private static final int SIZE = 3;
+  private static final int WEIGHT = 4;
+  private static final int LONG_TERM_WEIGHT = 5;
+  private static final int DIFFICULTY = 6;
+  private static final int CUMULATIVE_DIFFICULTY = 7;
+  private static final int MAJOR_VERSION = 8;
+  private static final int MINOR_VERSION = 9;
+  private static final int NONCE = 10;
+  private static final int NUM_TXS = 11;
+  private static final int REWARD = 12;
+  private static final int ORPHAN_STATUS = 13;
+
+  private File dir;
+  private MappedFile headers;
+  private MappedFile index;
+  private List<MappedFile> segments;
+  private long segmentPosition; // write position in the last segment
+  private long maxHeight = -1;  // highest height with a stored header or block
+
+  private MoneroBlockStore(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Open or create a store in a directory.
+   *
+   * @param dir is the directory of the store's files, which is created if it does not exist
+   * @return the opened store
+   */
+  public static MoneroBlockStore open(File dir) {
+    if (!dir.isDirectory() && !dir.mkdirs()) throw new MoneroError("Cannot create block store directory: " + dir);
+    MoneroBlockStore store = new MoneroBlockStore(dir);
+    try {
+      store.headers = new MappedFile(new File(dir, "headers.dat"), HEADER_RECORD_SIZE * MIN_CAPACITY);
+      store.index = new MappedFile(new File(dir, "blocks.idx"), INDEX_RECORD_SIZE * MIN_CAPACITY);
+      store.segments = new ArrayList<MappedFile>();
+      for (int i = 0; new File(dir, getSegmentName(i)).exists(); i++) store.segments.add(new MappedFile(new File(dir, getSegmentName(i)), SEGMENT_SIZE));
+      store.segmentPosition = store.getSegmentEnd();
+      store.maxHeight = store.findMaxHeight(Math.max(store.headers.capacity / HEADER_RECORD_SIZE, store.index.capacity / INDEX_RECORD_SIZE) - 1);
+    } catch (IOException e) {
+      store.close();
+      throw new MoneroError(e);
+    }
+    return store;
+  }
+
+  /**
+   * Flush the store's files to disk and close them.
+   */
+  public synchronized void close() {
+    if (headers != null) headers.close();
+    if (index != null) index.close();
+    if (segments != null) for (MappedFile segment : segments) segment.close();
+  }
+
+  /**
+   * Flush the store's files to disk.
+   */
+  public synchronized void flush() {
+    headers.buf.force();
+    index.buf.force();
+    for (MappedFile segment : segments) segment.buf.force();
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * Get the highest height with a stored header or block.
+   *
+   * @return the highest stored height or -1 if the store is empty
+   */
+  public synchronized long getMaxHeight() {
+    return maxHeight;
+  }
+
+  /**
+   * Remove headers and blocks at and above a height.
+   *
+   * @param fromHeight is the height to remove headers and blocks from
+   */
+  public synchronized void truncate(long fromHeight) {
+    fromHeight = Math.max(0, fromHeight);
+    if (fromHeight > maxHeight) return;
+    for (long height = fromHeight; height <= maxHeight; height++) {
+      if (height < headers.capacity / HEADER_RECORD_SIZE) headers.buf.put((int) (height * HEADER_RECORD_SIZE), (byte) 0);
+      if (height < index.capacity / INDEX_RECORD_SIZE) index.buf.putInt((int) (height * INDEX_RECORD_SIZE), 0);
+    }
+    maxHeight = findMaxHeight(fromHeight - 1);
+  }
+
+  /**
+   * Indicates if the stored header or block at a header's height matches the
+   * header of the daemon's chain.
+   *
+   * A stored header matches by hash.  A block stored without its header
+   * matches if its previous hash, timestamp, and nonce equal the header's.
+   *
+   * @param header is a header of the daemon's chain
+   * @return true if the stored header or block matches, false if it does not, null if neither is stored
+   */
+  public synchronized Boolean matches(MoneroBlockHeader header) {
+    long height = header.getHeight();
+    String storedHash = getStoredHash(height, 0);
+    if (storedHash != null) return storedHash.equals(header.getHash());
+    List<byte[]> blobs = getBlobs(height);
+    if (blobs == null) return null;
+    MoneroBlock block = MoneroBlobParser.parseBlock(blobs.get(0));
+    return block.getPrevHash().equals(header.getPrevHash()) && block.getTimestamp().equals(header.getTimestamp()) && block.getNonce().equals(header.getNonce());
+  }
+
+  /**
+   * Indicates if a block's blobs are stored.
+   *
+   * @param height is the height of the block
+   * @return true if the block's blobs are stored, false otherwise
+   */
+  public synchronized boolean hasBlock(long height) {
+    return height >= 0 && height < index.capacity / INDEX_RECORD_SIZE && index.buf.getInt((int) (height * INDEX_RECORD_SIZE)) != 0;
+  }
+
+  /**
+   * Get a stored header.
+   *
+   * @param height is the height of the header
+   * @return the stored header or null if not stored
+   */
+  public synchronized MoneroBlockHeader getHeader(long height) {
+    if (height < 0 || height >= headers.capacity / HEADER_RECORD_SIZE) return null;
+    MappedByteBuffer buf = headers.buf;
+    int pos = (int) (height * HEADER_RECORD_SIZE);
+    if (buf.get(pos) == 0) return null;
+    int nullMask = buf.getShort(pos + 1);
+    pos += 3;
+    MoneroBlockHeader header = new MoneroBlockHeader();
+    header.setHeight(height);
+    header.setHash(readHash(buf, pos));
+    if (!isNull(nullMask, PREV_HASH)) header.setPrevHash(readHash(buf, pos + 32));
+    if (!isNull(nullMask, MINER_TX_HASH)) header.setMinerTxHash(readHash(buf, pos + 64));
+    pos += 3 * HASH_SIZE;
+    if (!isNull(nullMask, TIMESTAMP)) header.setTimestamp(buf.getLong(pos));
+    if (!isNull(nullMask, SIZE)) header.setSize(buf.getLong(pos + 8));
+    if (!isNull(nullMask, WEIGHT)) header.setWeight(buf.getLong(pos + 16));
+    if (!isNull(nullMask, LONG_TERM_WEIGHT)) header.setLongTermWeight(buf.getLong(pos + 24));
+    pos += 32;
+    if (!isNull(nullMask, DIFFICULTY)) header.setDifficulty(readUnsigned(buf, pos, DIFFICULTY_SIZE));
+    if (!isNull(nullMask, CUMULATIVE_DIFFICULTY)) header.setCumulativeDifficulty(readUnsigned(buf, pos + DIFFICULTY_SIZE, DIFFICULTY_SIZE));
+    pos += 2 * DIFFICULTY_SIZE;
+    if (!isNull(nullMask, MAJOR_VERSION)) header.setMajorVersion(buf.getInt(pos));
+    if (!isNull(nullMask, MINOR_VERSION)) header.setMinorVersion(buf.getInt(pos + 4));
+    if (!isNull(nullMask, NONCE)) header.setNonce(buf.getInt(pos + 8));
+    if (!isNull(nullMask, NUM_TXS)) header.setNumTxs(buf.getInt(pos + 12));
+    pos += 16;
+    if (!isNull(nullMask, REWARD)) header.setReward(readUnsigned(buf, pos, 8));
+    if (!isNull(nullMask, ORPHAN_STATUS)) header.setOrphanStatus(buf.get(pos + 8) != 0);
+    return header;
+  }
+
+  /**
+   * Store a header fetched from the daemon, truncating the store first if
+   * the header does not match the stored chain.
+   *
+   * @param header is the header to store
+   */
+  public synchronized void putHeader(MoneroBlockHeader header) {
+    if (header == null || header.getHeight() == null || header.getHash() == null) return;
+    long height = header.getHeight();
+
+    // truncate from the first height which does not match the header
+    String prevHash = getStoredHash(height - 1, 0);
+    String existingHash = getStoredHash(height, 0);
+    String nextPrevHash = getStoredHash(height + 1, HASH_SIZE);
+    if (prevHash != null && header.getPrevHash() != null && !header.getPrevHash().equals(prevHash)) truncate(height - 1);
+    else if (existingHash != null && !existingHash.equals(header.getHash())) truncate(height);
+    else if (nextPrevHash != null && !header.getHash().equals(nextPrevHash)) truncate(height + 1);
+
+    // write record
+    try {
+      headers.ensureCapacity((height + 1) * HEADER_RECORD_SIZE);
+    } catch (IOException e) {
+      throw new MoneroError(e);
+    }
+    MappedByteBuffer buf = headers.buf;
+    int pos = (int) (height * HEADER_RECORD_SIZE);
+    int nullMask = 0;
+    int fieldsPos = pos + 3;
+    writeHash(buf, fieldsPos, header.getHash());
+    if (header.getPrevHash() == null) nullMask |= 1 << PREV_HASH;
+    else writeHash(buf, fieldsPos + 32, header.getPrevHash());
+    if (header.getMinerTxHash() == null) nullMask |= 1 << MINER_TX_HASH;
+    else writeHash(buf, fieldsPos + 64, header.getMinerTxHash());
+    fieldsPos += 3 * HASH_SIZE;
+    nullMask |= writeLong(buf, fieldsPos, header.getTimestamp(), TIMESTAMP);
+    nullMask |= writeLong(buf, fieldsPos + 8, header.getSize(), SIZE);
+    nullMask |= writeLong(buf, fieldsPos + 16, header.getWeight(), WEIGHT);
+    nullMask |= writeLong(buf, fieldsPos + 24, header.getLongTermWeight(), LONG_TERM_WEIGHT);
+    fieldsPos += 32;
+    nullMask |= writeUnsigned(buf, fieldsPos, DIFFICULTY_SIZE, header.getDifficulty(), DIFFICULTY);
+    nullMask |= writeUnsigned(buf, fieldsPos + DIFFICULTY_SIZE, DIFFICULTY_SIZE, header.getCumulativeDifficulty(), CUMULATIVE_DIFFICULTY);
+    fieldsPos += 2 * DIFFICULTY_SIZE;
+    nullMask |= writeInt(buf, fieldsPos, header.getMajorVersion(), MAJOR_VERSION);
+    nullMask |= writeInt(buf, fieldsPos + 4, header.getMinorVersion(), MINOR_VERSION);
+    nullMask |= writeInt(buf, fieldsPos + 8, header.getNonce(), NONCE);
+    nullMask |= writeInt(buf, fieldsPos + 12, header.getNumTxs(), NUM_TXS);
+    fieldsPos += 16;
+    nullMask |= writeUnsigned(buf, fieldsPos, 8, header.getReward(), REWARD);
+    if (header.getOrphanStatus() == null) nullMask |= 1 << ORPHAN_STATUS;
+    else buf.put(fieldsPos + 8, (byte) (header.getOrphanStatus() ? 1 : 0));
+    buf.putShort(pos + 1, (short) nullMask);
+    buf.put(pos, (byte) 1); // mark present last
+    maxHeight = Math.max(maxHeight, height);
+  }
+
+  /**
+   * Get a stored block's blobs.
+   *
+   * @param height is the height of the block
+   * @return the block blob followed by its transaction blobs or null if not stored
+   */
+  synchronized List<byte[]> getBlobs(long height) {
+    if (!hasBlock(height)) return null;
+    int pos = (int) (height * INDEX_RECORD_SIZE);
+    MappedByteBuffer segment = segments.get(index.buf.getInt(pos) - 1).buf;
+    int offset = (int) index.buf.getLong(pos + 8);
+    int numBlobs = segment.getInt(offset);
+    List<byte[]> blobs = new ArrayList<byte[]>(numBlobs);
+    offset += 4;
+    for (int i = 0; i < numBlobs; i++) {
+      byte[] blob = new byte[segment.getInt(offset)];
+      offset += 4;
+      read(segment, offset, blob);
+      offset += blob.length;
+      blobs.add(blob);
+    }
+    return blobs;
+  }
+
+  /**
+   * Append a block's blobs.
+   *
+   * @param height is the height of the block
+   * @param blobs are the block blob followed by its transaction blobs
+   */
+  synchronized void putBlobs(long height, List<byte[]> blobs) {
+    int length = 4;
+    for (byte[] blob : blobs) length += 4 + blob.length;
+    if (length > SEGMENT_SIZE) throw new MoneroError("Block exceeds block store segment size: " + length);
+    try {
+      if (segments.isEmpty() || segmentPosition + length > SEGMENT_SIZE) {
+        segments.add(new MappedFile(new File(dir, getSegmentName(segments.size())), SEGMENT_SIZE));
+        segmentPosition = 0;
+      }
+      index.ensureCapacity((height + 1) * INDEX_RECORD_SIZE);
+    } catch (IOException e) {
+      throw new MoneroError(e);
+    }
+
+    // append blobs to last segment
+    MappedByteBuffer segment = segments.get(segments.size() - 1).buf;
+    int offset = (int) segmentPosition;
+    segment.putInt(offset, blobs.size());
+    int pos = offset + 4;
+    for (byte[] blob : blobs) {
+      segment.putInt(pos, blob.length);
+      pos += 4;
+      write(segment, pos, blob);
+      pos += blob.length;
+    }
+    segmentPosition = pos;
+
+    // index blobs, setting the segment last to mark present
+    int indexPos = (int) (height * INDEX_RECORD_SIZE);
+    index.buf.putInt(indexPos + 4, length);
+    index.buf.putLong(indexPos + 8, offset);
+    index.buf.putInt(indexPos, segments.size());
+    maxHeight = Math.max(maxHeight, height);
+  }
+
+  // ---------------------------- PRIVATE HELPERS -----------------------------
+
+  private static String getSegmentName(int segmentIdx) {
+    return String.format("blocks-%05d.dat", segmentIdx);
+  }
+
+  /**
+   * Get a hash of a stored header without reading the rest of the record.
+   *
+   * @param offset is 0 for the header's hash or 32 for its previous hash
+   */
+  private String getStoredHash(long height, int offset) {
+    if (height < 0 || height >= headers.capacity / HEADER_RECORD_SIZE) return null;
+    int pos = (int) (height * HEADER_RECORD_SIZE);
+    if (headers.buf.get(pos) == 0) return null;
+    if (offset == HASH_SIZE && isNull(headers.buf.getShort(pos + 1), PREV_HASH)) return null;
+    return readHash(headers.buf, pos + 3 + offset);
+  }
+
+  /**
+   * Find the highest height at or below a height with a stored header or block.
+   */
+  private long findMaxHeight(long height) {
+    for (; height >= 0; height--) {
+      if (getStoredHash(height, 0) != null || hasBlock(height)) return height;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the end of the blobs indexed in the last segment.
+   */
+  private long getSegmentEnd() {
+    long end = 0;
+    for (long height = 0; height < index.capacity / INDEX_RECORD_SIZE; height++) {
+      int pos = (int) (height * INDEX_RECORD_SIZE);
+      if (index.buf.getInt(pos) == segments.size()) end = Math.max(end, index.buf.getLong(pos + 8) + index.buf.getInt(pos + 4));
+    }
+    return end;
+  }
+
+  private static boolean isNull(int nullMask, int field) {
+    return (nullMask & 1 << field) != 0;
+  }
+
+  private static String readHash(MappedByteBuffer buf, int pos) {
+    byte[] hash = new byte[HASH_SIZE];
+    read(buf, pos, hash);
+    return MoneroBlobParser.bytesToHex(hash);
+  }
+
+  private static void writeHash(MappedByteBuffer buf, int pos, String hex) {
+    byte[] hash = MoneroBlobParser.hexToBytes(hex);
+    if (hash.length != HASH_SIZE) throw new MoneroError("Hash is not " + HASH_SIZE + " bytes: " + hex);
+    write(buf, pos, hash);
+  }
+
+  private static void read(MappedByteBuffer buf, int pos, byte[] bytes) {
+    ByteBuffer view = buf.duplicate();
+    view.position(pos);
+    view.get(bytes);
+  }
+
+  private static void write(MappedByteBuffer buf, int pos, byte[] bytes) {
+    ByteBuffer view = buf.duplicate();
+    view.position(pos);
+    view.put(bytes);
+  }
+
+  private static int writeLong(MappedByteBuffer buf, int pos, Long value, int field) {
+    if (value == null) return 1 << field;
+    buf.putLong(pos, value);
+    return 0;
+  }
+
+  private static int writeInt(MappedByteBuffer buf, int pos, Integer value, int field) {
+    if (value == null) return 1 << field;
+    buf.putInt(pos, value);
+    return 0;
+  }
+
+  private static BigInteger readUnsigned(MappedByteBuffer buf, int pos, int size) {
+    byte[] bytes = new byte[size];
+    read(buf, pos, bytes);
+    return new BigInteger(1, bytes);
+  }
+
+  private static int writeUnsigned(MappedByteBuffer buf, int pos, int size, BigInteger value, int field) {
+    if (value == null) return 1 << field;
+    if (value.signum() < 0 || value.bitLength() > size * 8) throw new MoneroError("Value does not fit in " + size + " bytes: " + value);
+    byte[] bytes = value.toByteArray(); // big endian with possible sign byte
+    for (int i = 0; i < size; i++) {
+      int srcIdx = bytes.length - size + i;
+      buf.put(pos + i, srcIdx >= 0 ? bytes[srcIdx] : 0);
+    }
+    return 0;
+  }
+
+  /**
+   * A file mapped into memory which grows as needed.
+   */
+  private static class MappedFile {
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private long capacity;
+
+    private MappedFile(File path, long minCapacity) throws IOException {
+      this.file = new RandomAccessFile(path, "rw");
+      this.channel = file.getChannel();
+      map(Math.max(minCapacity, channel.size()));
+    }
+
+    private void ensureCapacity(long minCapacity) throws IOException {
+      if (minCapacity <= capacity) return;
+      long newCapacity = capacity;
+      while (newCapacity < minCapacity) newCapacity *= 2;
+      if (newCapacity > Integer.MAX_VALUE) throw new MoneroError("Block store file exceeds maximum size: " + newCapacity);
+      map(newCapacity);
+    }
+
+    private void map(long newCapacity) throws IOException {
+      if (buf != null) buf.force();
+      buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+      buf.order(ByteOrder.LITTLE_ENDIAN);
+      capacity = newCapacity;
+    }
+
+    private void close() {
+      try {
+        if (buf != null) buf.force();
+        channel.close();
+        file.close();
+      } catch (IOException e) {
+        throw new MoneroError(e);
+      }
+    }
+  }
+}
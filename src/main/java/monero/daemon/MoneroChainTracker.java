@@ -0,0 +1,164 @@
+package monero.daemon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import monero.common.MoneroError;
+import monero.daemon.model.MoneroBlockHeader;
+import monero.daemon.model.MoneroDaemonListener;
+
+/**
+ * Tracks the tip of a daemon's chain as a window of the last headers linked
+ * by previous hash.
+ *
+ * Each refresh fetches the headers added since the last refresh in one range
+ * request and notifies listeners of every added block.  If the headers do
+ * not link to the window, the chain was reorganized, so the window is
+ * compared to the daemon's chain to find the fork height and listeners are
+ * notified of the detached and attached blocks.  A reorg deeper than the
+ * window is reported from the start of the window.
+ */
+public class MoneroChainTracker {
+
+  public static final int DEFAULT_WINDOW_SIZE = 100;
+
+  private MoneroDaemon daemon;
+  private int windowSize;
+  private List<MoneroBlockHeader> headers;
+  private List<MoneroDaemonListener> listeners;
+
+  public MoneroChainTracker(MoneroDaemon daemon) {
+    this(daemon, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Construct a tracker.
+   *
+   * @param daemon is the daemon to track the chain of
+   * @param windowSize is the number of headers to keep to detect reorgs within (default 100)
+   */
+  public MoneroChainTracker(MoneroDaemon daemon, int windowSize) {
+    if (windowSize <= 0) throw new MoneroError("Window size must be greater than 0");
+    this.daemon = daemon;
+    this.windowSize = windowSize;
+    this.headers = new ArrayList<MoneroBlockHeader>();
+    this.listeners = new CopyOnWriteArrayList<MoneroDaemonListener>();
+  }
+
+  public void addListener(MoneroDaemonListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(MoneroDaemonListener listener) {
+    if (!listeners.remove(listener)) throw new MoneroError("Listener is not registered");
+  }
+
+  public List<MoneroDaemonListener> getListeners() {
+    return new ArrayList<MoneroDaemonListener>(listeners);
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  /**
+   * Get copies of the tracked headers in ascending height.
+   *
+   * @return the tracked headers, empty until the first refresh
+   */
+  public synchronized List<MoneroBlockHeader> getHeaders() {
+    List<MoneroBlockHeader> copies = new ArrayList<MoneroBlockHeader>();
+    for (MoneroBlockHeader header : headers) copies.add(new MoneroBlockHeader(header));
+    return copies;
+  }
+
+  /**
+   * Get a copy of the tracked tip.
+   *
+   * @return the header of the last tracked block or null before the first refresh
+   */
+  public synchronized MoneroBlockHeader getTip() {
+    return headers.isEmpty() ? null : new MoneroBlockHeader(headers.get(headers.size() - 1));
+  }
+
+  /**
+   * Forget the tracked headers so the next refresh starts tracking from the
+   * daemon's tip without notifying listeners.
+   */
+  public synchronized void clear() {
+    headers.clear();
+  }
+
+  /**
+   * Fetch the daemon's tip and notify listeners of reorgs and added blocks
+   * since the last refresh.  The first refresh fills the window without
+   * notifying listeners.
+   */
+  public synchronized void refresh() {
+    MoneroBlockHeader tip = daemon.getLastBlockHeader();
+    long tipHeight = tip.getHeight();
+
+    // fill window on first refresh
+    if (headers.isEmpty()) {
+      headers.addAll(daemon.getBlockHeadersByRange(Math.max(0, tipHeight - windowSize + 1), tipHeight));
+      return;
+    }
+
+    // done if tip unchanged
+    MoneroBlockHeader lastHeader = headers.get(headers.size() - 1);
+    if (tip.getHash().equals(lastHeader.getHash())) return;
+
+    // fetch headers since last refresh, or from the tip if the chain did not grow
+    long lastHeight = lastHeader.getHeight();
+    long startHeight = Math.min(lastHeight + 1, tipHeight);
+    List<MoneroBlockHeader> fetched = daemon.getBlockHeadersByRange(startHeight, tipHeight);
+
+    // append headers which link to the window
+    if (startHeight == lastHeight + 1 && lastHeader.getHash().equals(fetched.get(0).getPrevHash())) {
+      append(fetched);
+      for (MoneroBlockHeader header : fetched) notifyBlockHeader(header);
+      return;
+    }
+
+    // otherwise fetch the rest of the window's heights to find the fork
+    long windowStart = headers.get(0).getHeight();
+    List<MoneroBlockHeader> chain = new ArrayList<MoneroBlockHeader>();
+    if (startHeight > windowStart) chain.addAll(daemon.getBlockHeadersByRange(windowStart, startHeight - 1));
+    chain.addAll(fetched);
+    long chainStart = chain.get(0).getHeight();
+    long forkHeight = lastHeight + 1;
+    for (MoneroBlockHeader header : headers) {
+      long height = header.getHeight();
+      MoneroBlockHeader current = height >= chainStart && height - chainStart < chain.size() ? chain.get((int) (height - chainStart)) : null;
+      if (current == null || !current.getHash().equals(header.getHash())) {
+        forkHeight = height;
+        break;
+      }
+    }
+
+    // replace detached headers with attached headers
+    List<MoneroBlockHeader> detached = new ArrayList<MoneroBlockHeader>();
+    while (!headers.isEmpty() && headers.get(headers.size() - 1).getHeight() >= forkHeight) detached.add(0, headers.remove(headers.size() - 1));
+    List<MoneroBlockHeader> attached = new ArrayList<MoneroBlockHeader>();
+    for (MoneroBlockHeader header : chain) {
+      if (header.getHeight() >= forkHeight) attached.add(header);
+    }
+    append(attached);
+
+    // notify listeners
+    if (!detached.isEmpty()) {
+      for (MoneroDaemonListener listener : listeners) listener.onReorg(forkHeight, detached, attached);
+    }
+    for (MoneroBlockHeader header : attached) notifyBlockHeader(header);
+  }
+
+  private void append(List<MoneroBlockHeader> added) {
+    headers.addAll(added);
+    if (headers.size() > windowSize) headers.subList(0, headers.size() - windowSize).clear();
+  }
+
+  private void notifyBlockHeader(MoneroBlockHeader header) {
+    for (MoneroDaemonListener listener : listeners) listener.onBlockHeader(header);
+  }
+}
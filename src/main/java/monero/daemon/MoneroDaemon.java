@@ -24,11 +24,13 @@ package monero.daemon;
 
 import java.math.BigInteger;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import monero.daemon.model.MoneroAltChain;
 import monero.daemon.model.MoneroBan;
 import monero.daemon.model.MoneroBlock;
+import monero.daemon.model.MoneroBlockFetchConfig;
 import monero.daemon.model.MoneroBlockHeader;
 import monero.daemon.model.MoneroBlockTemplate;
 import monero.daemon.model.MoneroDaemonConnection;
@@ -201,6 +203,34 @@ public interface MoneroDaemon {
    */
   public List<MoneroBlock> getBlocksByRangeChunked(Long startHeight, Long endHeight, Long maxChunkSize);
   
+  /**
+   * Stream blocks in the given height range without holding the range in
+   * memory.
+   * 
+   * The next chunks of blocks are fetched in the background while the caller
+   * processes the current chunk.
+   * 
+   * @param startHeight is the start height lower bound inclusive (optional)
+   * @param endHeight is the end height upper bound inclusive (optional)
+   * @return an iterator of the blocks in height order
+   */
+  public Iterator<MoneroBlock> streamBlocks(Long startHeight, Long endHeight);
+  
+  /**
+   * Stream blocks in the given height range without holding the range in
+   * memory.
+   * 
+   * The next chunks of blocks are fetched in the background while the caller
+   * processes the current chunk, up to the configured number of chunks and
+   * buffered bytes.
+   * 
+   * @param startHeight is the start height lower bound inclusive (optional)
+   * @param endHeight is the end height upper bound inclusive (optional)
+   * @param config configures the chunk size, chunks prefetched, and buffered bytes (optional)
+   * @return an iterator of the blocks in height order
+   */
+  public Iterator<MoneroBlock> streamBlocks(Long startHeight, Long endHeight, MoneroBlockFetchConfig config);
+  
   /**
    * Get block hashes as a binary request to the daemon.
    * 
@@ -434,7 +464,7 @@ public interface MoneroDaemon {
    * Creates an output distribution.
    * 
    * @param amounts are amounts of outputs to make the distribution with
-   * @param isCumulative specifies if the results should be cumulative (defaults to TODO)
+   * @param isCumulative specifies if the results should be cumulative (defaults to false)
    * @param startHeight is the start height lower bound inclusive (optional)
    * @param endHeight is the end height upper bound inclusive (optional)
    * @return output distribution entries meeting the parameters
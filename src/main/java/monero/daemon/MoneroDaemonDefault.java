@@ -25,6 +25,7 @@ package monero.daemon;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 import monero.daemon.model.MoneroBan;
@@ -51,6 +52,11 @@ public abstract class MoneroDaemonDefault implements MoneroDaemon {
     return getBlocksByRangeChunked(startHeight, endHeight, null);
   }
   
+  @Override
+  public Iterator<MoneroBlock> streamBlocks(Long startHeight, Long endHeight) {
+    return streamBlocks(startHeight, endHeight, null);
+  }
+  
   @Override
   public MoneroTx getTx(String txHash) {
     return getTx(txHash, null);
@@ -22,29 +22,51 @@
 
 package monero.daemon;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 
 import common.utils.GenUtils;
 import common.utils.JsonUtils;
+import monero.common.MoneroBlobParser;
 import monero.common.MoneroError;
+import monero.common.MoneroPortableStorage;
 import monero.common.MoneroRpcConnection;
 import monero.common.MoneroRpcError;
-import monero.common.MoneroUtils;
+import monero.common.MoneroRpcResponseHandler;
 import monero.daemon.model.ConnectionType;
 import monero.daemon.model.MoneroAltChain;
 import monero.daemon.model.MoneroBan;
 import monero.daemon.model.MoneroBlock;
+import monero.daemon.model.MoneroBlockFetchConfig;
+import monero.daemon.model.MoneroBlockHashes;
 import monero.daemon.model.MoneroBlockHeader;
 import monero.daemon.model.MoneroBlockTemplate;
 import monero.daemon.model.MoneroDaemonConnection;
@@ -56,7 +78,6 @@ import monero.daemon.model.MoneroDaemonSyncInfo;
 import monero.daemon.model.MoneroDaemonUpdateCheckResult;
 import monero.daemon.model.MoneroDaemonUpdateDownloadResult;
 import monero.daemon.model.MoneroHardForkInfo;
-import monero.daemon.model.MoneroKeyImage;
 import monero.daemon.model.MoneroKeyImageSpentStatus;
 import monero.daemon.model.MoneroMinerTxSum;
 import monero.daemon.model.MoneroMiningStatus;
@@ -82,11 +103,19 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
   private static final String DEFAULT_ID = "0000000000000000000000000000000000000000000000000000000000000000";
   private static long MAX_REQ_SIZE = 3000000;  // max request size when fetching blocks from daemon
   private static int NUM_HEADERS_PER_REQ = 750;
+  private static int MAX_OUTPUTS_PER_REQ = 5000;  // max outputs per get_outs request to restricted rpc
+  private static int DEFAULT_OUTPUT_CACHE_SIZE = 250000;
+  private static int DEFAULT_MAX_OUTPUT_CHUNKS_IN_FLIGHT = 4;
+  private static long DISTRIBUTION_REFRESH_DEPTH = 100;  // number of blocks at the end of a cached output distribution to refetch in case of reorg
   
   // instance variables
   private MoneroRpcConnection rpc;
   private MoneroDaemonPoller daemonPoller;
-  private Map<Long, MoneroBlockHeader> cachedHeaders;
+  private MoneroBlockHeaderCache headerCache;
+  private volatile MoneroBlockStore blockStore;
+  private MoneroOutputCache outputCache;
+  private volatile int maxOutputChunksInFlight = DEFAULT_MAX_OUTPUT_CHUNKS_IN_FLIGHT;
+  private Map<BigInteger, MoneroOutputDistributionEntry> cachedDistributions;  // cumulative output distributions to the tip by amount
   
   public MoneroDaemonRpc(URI uri) {
     this(new MoneroRpcConnection(uri));
@@ -104,11 +133,21 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     this(new MoneroRpcConnection(uri, username, password));
   }
 
+  /**
+   * Construct a daemon client which sends requests with the given connection.
+   * 
+   * Pass a MoneroConnectionManager to route requests across multiple daemons
+   * with failover.
+   * 
+   * @param rpc is the connection or connection manager to send requests with
+   */
   public MoneroDaemonRpc(MoneroRpcConnection rpc) {
     GenUtils.assertNotNull(rpc);
     this.rpc = rpc;
     this.daemonPoller = new MoneroDaemonPoller(this);
-    this.cachedHeaders = new HashMap<Long, MoneroBlockHeader>();
+    this.headerCache = new MoneroBlockHeaderCache();
+    this.outputCache = new MoneroOutputCache(DEFAULT_OUTPUT_CACHE_SIZE);
+    this.cachedDistributions = new HashMap<BigInteger, MoneroOutputDistributionEntry>();
   }
   
   /**
@@ -149,12 +188,19 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return !(boolean) resp.get("untrusted");
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public long getHeight() {
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_block_count");
-    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
-    return ((BigInteger) resultMap.get("count")).intValue();
+    return convertRpcHeightResp(rpc.sendJsonRequest("get_block_count"));
+  }
+  
+  /**
+   * Get the number of blocks in the longest chain known to the node without
+   * blocking the calling thread.
+   * 
+   * @return a future which completes with the number of blocks
+   */
+  public CompletableFuture<Long> getHeightAsync() {
+    return rpc.sendJsonRequestAsync("get_block_count").thenApply(MoneroDaemonRpc::convertRpcHeightResp);
   }
 
   @Override
@@ -175,64 +221,80 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return template;
   }
   
-  @SuppressWarnings("unchecked")
   @Override
   public MoneroBlockHeader getLastBlockHeader() {
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_last_block_header");
-    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
-    checkResponseStatus(resultMap);
-    MoneroBlockHeader header = convertRpcBlockHeader((Map<String, Object>) resultMap.get("block_header"));
-    return header;
+    return cacheHeader(convertRpcBlockHeaderResult(rpc.sendJsonRequest("get_last_block_header", null, RpcBlockHeaderResult.class)));
+  }
+  
+  /**
+   * Get the last block's header without blocking the calling thread.
+   * 
+   * @return a future which completes with the last block's header
+   */
+  public CompletableFuture<MoneroBlockHeader> getLastBlockHeaderAsync() {
+    return rpc.sendJsonRequestAsync("get_last_block_header", null, RpcBlockHeaderResult.class).thenApply(result -> cacheHeader(convertRpcBlockHeaderResult(result)));
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * {@inheritDoc}
+   * 
+   * The header is served from the header cache if cached.
+   */
   @Override
   public MoneroBlockHeader getBlockHeaderByHash(String blockHash) {
+    MoneroBlockHeader cachedHeader = headerCache.getByHash(blockHash);
+    if (cachedHeader != null) return cachedHeader;
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("hash", blockHash);
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_block_header_by_hash", params);
-    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
-    MoneroBlockHeader header = convertRpcBlockHeader((Map<String, Object>) resultMap.get("block_header"));
-    return header;
+    return cacheHeader(convertRpcBlockHeaderResult(rpc.sendJsonRequest("get_block_header_by_hash", params, RpcBlockHeaderResult.class)));
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public MoneroBlockHeader getBlockHeaderByHeight(long height) {
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("height", height);
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_block_header_by_height", params);
-    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
-    MoneroBlockHeader header = convertRpcBlockHeader((Map<String, Object>) resultMap.get("block_header"));
-    return header;
+    return cacheHeader(convertRpcBlockHeaderResult(rpc.sendJsonRequest("get_block_header_by_height", params, RpcBlockHeaderResult.class)));
+  }
+  
+  /**
+   * Get a block header by its height without blocking the calling thread.
+   * 
+   * @param height is the height of the block to get the header of
+   * @return a future which completes with the block's header
+   */
+  public CompletableFuture<MoneroBlockHeader> getBlockHeaderByHeightAsync(long height) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("height", height);
+    return rpc.sendJsonRequestAsync("get_block_header_by_height", params, RpcBlockHeaderResult.class).thenApply(result -> cacheHeader(convertRpcBlockHeaderResult(result)));
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public List<MoneroBlockHeader> getBlockHeadersByRange(Long startHeight, Long endHeight) {
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("start_height", startHeight);
     params.put("end_height", endHeight);
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_block_headers_range", params);
-    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
-    List<Map<String, Object>> rpcHeaders = (List<Map<String, Object>>) resultMap.get("headers");
-    List<MoneroBlockHeader> headers = new ArrayList<MoneroBlockHeader>();
-    for (Map<String, Object> rpcHeader : rpcHeaders) {
-      MoneroBlockHeader header = convertRpcBlockHeader(rpcHeader);
-      headers.add(header);
-    }
-    return headers;
+    return cacheHeaders(convertRpcBlockHeadersResult(rpc.sendJsonRequest("get_block_headers_range", params, RpcBlockHeadersResult.class)));
+  }
+  
+  /**
+   * Get block headers for the given range without blocking the calling thread.
+   * 
+   * @param startHeight is the start height lower bound inclusive (optional)
+   * @param endHeight is the end height upper bound inclusive (optional)
+   * @return a future which completes with the block headers in the given range
+   */
+  public CompletableFuture<List<MoneroBlockHeader>> getBlockHeadersByRangeAsync(Long startHeight, Long endHeight) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("start_height", startHeight);
+    params.put("end_height", endHeight);
+    return rpc.sendJsonRequestAsync("get_block_headers_range", params, RpcBlockHeadersResult.class).thenApply(result -> cacheHeaders(convertRpcBlockHeadersResult(result)));
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public MoneroBlock getBlockByHash(String blockHash) {
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("hash", blockHash);
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_block", params);
-    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
-    MoneroBlock block = convertRpcBlock(resultMap);
-    return block;
+    return convertRpcBlockResult(rpc.sendJsonRequest("get_block", params, RpcBlockResult.class));
   }
 
   @Override
@@ -240,69 +302,166 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     throw new RuntimeException("Not implemented");
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public MoneroBlock getBlockByHeight(long height) {
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("height", height);
-    Map<String, Object> respMap = rpc.sendJsonRequest("get_block", params);
-    Map<String, Object> rpcBlock = (Map<String, Object>) respMap.get("result");
-    MoneroBlock block = convertRpcBlock((Map<String, Object>) rpcBlock);
-    return block;
+    return convertRpcBlockResult(rpc.sendJsonRequest("get_block", params, RpcBlockResult.class));
+  }
+  
+  /**
+   * Get a block by height without blocking the calling thread.
+   * 
+   * @param height is the height of the block to get
+   * @return a future which completes with the block at the given height
+   */
+  public CompletableFuture<MoneroBlock> getBlockByHeightAsync(long height) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("height", height);
+    return rpc.sendJsonRequestAsync("get_block", params, RpcBlockResult.class).thenApply(MoneroDaemonRpc::convertRpcBlockResult);
   }
 
-  @SuppressWarnings({ "unchecked" })
+  /**
+   * {@inheritDoc}
+   * 
+   * Blocks in the block store are read from it, and blocks fetched are added
+   * to it.
+   */
   @Override
   public List<MoneroBlock> getBlocksByHeight(List<Long> heights) {
+    if (blockStore == null) return convertRpcBlocksBinary(rpc.sendBinaryRequest("get_blocks_by_height.bin", getBlocksByHeightParams(heights)), heights);
+    List<Long> missingHeights = getMissingHeights(heights);
+    if (!missingHeights.isEmpty()) storeRpcBlocks(rpc.sendBinaryRequest("get_blocks_by_height.bin", getBlocksByHeightParams(missingHeights)), missingHeights);
+    return getStoredBlocks(heights);
+  }
+  
+  /**
+   * Get blocks at the given heights without blocking the calling thread.
+   * 
+   * @param heights are the heights of the blocks to get
+   * @return a future which completes with the blocks at the given heights
+   */
+  public CompletableFuture<List<MoneroBlock>> getBlocksByHeightAsync(List<Long> heights) {
+    return getBlocksByHeightAsync(heights, null);
+  }
+  
+  private CompletableFuture<List<MoneroBlock>> getBlocksByHeightAsync(List<Long> heights, Executor executor) {
+    
+    // fetch and convert blocks without block store
+    if (blockStore == null) {
+      CompletableFuture<byte[]> respBinFuture = rpc.sendBinaryRequestAsync("get_blocks_by_height.bin", getBlocksByHeightParams(heights));
+      if (executor == null) return respBinFuture.thenApply(respBin -> convertRpcBlocksBinary(respBin, heights));
+      return respBinFuture.thenApplyAsync(respBin -> convertRpcBlocksBinary(respBin, heights), executor);
+    }
     
-    // fetch blocks in binary
+    // otherwise fetch blocks missing from block store and read blocks from it
+    List<Long> missingHeights = getMissingHeights(heights);
+    CompletableFuture<Void> storedFuture = missingHeights.isEmpty() ? CompletableFuture.completedFuture(null) : rpc.sendBinaryRequestAsync("get_blocks_by_height.bin", getBlocksByHeightParams(missingHeights)).thenAccept(respBin -> storeRpcBlocks(respBin, missingHeights));
+    if (executor == null) return storedFuture.thenApply(ignored -> getStoredBlocks(heights));
+    return storedFuture.thenApplyAsync(ignored -> getStoredBlocks(heights), executor);
+  }
+  
+  private static Map<String, Object> getBlocksByHeightParams(List<Long> heights) {
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("heights", heights);
-    byte[] respBin = rpc.sendBinaryRequest("get_blocks_by_height.bin", params);
+    return params;
+  }
+  
+  private List<Long> getMissingHeights(List<Long> heights) {
+    List<Long> missingHeights = new ArrayList<Long>();
+    for (Long height : heights) if (!blockStore.hasBlock(height)) missingHeights.add(height);
+    return missingHeights;
+  }
+  
+  private void storeRpcBlocks(byte[] respBin, List<Long> heights) {
+    List<List<byte[]>> rpcBlobs = convertRpcBlockBlobs(respBin);
+    GenUtils.assertEquals(heights.size(), rpcBlobs.size());
+    for (int i = 0; i < heights.size(); i++) blockStore.putBlobs(heights.get(i), rpcBlobs.get(i));
+  }
+  
+  private List<MoneroBlock> getStoredBlocks(List<Long> heights) {
+    List<MoneroBlock> blocks = new ArrayList<MoneroBlock>(heights.size());
+    for (Long height : heights) {
+      List<byte[]> blobs = blockStore.getBlobs(height);
+      if (blobs == null) throw new MoneroError("Block at height " + height + " was removed from the block store");
+      blocks.add(convertBlockBlobs(blobs, height));
+    }
+    return blocks;
+  }
+  
+  /**
+   * Parses the blocks and transactions of a get_blocks_by_height.bin response
+   * directly from their blobs.
+   * 
+   * @param respBin is the binary response
+   * @param heights are the heights of the requested blocks
+   * @return the blocks with their transactions
+   */
+  private static List<MoneroBlock> convertRpcBlocksBinary(byte[] respBin, List<Long> heights) {
+    List<List<byte[]>> rpcBlobs = convertRpcBlockBlobs(respBin);
+    List<MoneroBlock> blocks = new ArrayList<MoneroBlock>(rpcBlobs.size());
+    for (int blockIdx = 0; blockIdx < rpcBlobs.size(); blockIdx++) blocks.add(convertBlockBlobs(rpcBlobs.get(blockIdx), heights.get(blockIdx)));
+    return blocks;
+  }
+  
+  /**
+   * Get the blobs of each block of a get_blocks_by_height.bin response.
+   * 
+   * @param respBin is the binary response
+   * @return the block blob followed by its transaction blobs for each block
+   */
+  @SuppressWarnings("unchecked")
+  private static List<List<byte[]>> convertRpcBlockBlobs(byte[] respBin) {
     
-    // convert binary blocks to map
-    Map<String, Object> rpcResp = MoneroUtils.binaryBlocksToMap(respBin);
-    checkResponseStatus(rpcResp);
+    // deserialize response with strings as bytes to read blobs
+    Map<String, Object> rpcResp = MoneroPortableStorage.deserialize(ByteBuffer.wrap(respBin), true);
+    checkBinaryResponseStatus(rpcResp);
     
-    // build blocks with transactions
-    List<MoneroBlock> blocks = new ArrayList<MoneroBlock>();
+    // collect blobs, whose transaction blobs are in sections with their prunable hash if pruned
+    List<List<byte[]>> blobs = new ArrayList<List<byte[]>>();
     List<Map<String, Object>> rpcBlocks = (List<Map<String, Object>>) rpcResp.get("blocks");
-    List<List<Map<String, Object>>> rpcTxs = (List<List<Map<String, Object>>>) rpcResp.get("txs");
-    GenUtils.assertEquals(rpcBlocks.size(), rpcTxs.size());
-    for (int blockIdx = 0; blockIdx < rpcBlocks.size(); blockIdx++) {
-      
-      // build block
-      MoneroBlock block = convertRpcBlock(rpcBlocks.get(blockIdx));
-      block.setHeight(heights.get(blockIdx));
-      blocks.add(block);
-
-      // build transactions
-      List<MoneroTx> txs = new ArrayList<MoneroTx>();
-      for (int txIdx = 0; txIdx < rpcTxs.get(blockIdx).size(); txIdx++) {
-        MoneroTx tx = new MoneroTx();
-        txs.add(tx);
-        List<String> txHashes = (List<String>) rpcBlocks.get(blockIdx).get("tx_hashes");
-        tx.setHash(txHashes.get(txIdx));
-        tx.setIsConfirmed(true);
-        tx.setInTxPool(false);
-        tx.setIsMinerTx(false);
-        tx.setRelay(true);
-        tx.setIsRelayed(true);
-        tx.setIsFailed(false);
-        tx.setIsDoubleSpendSeen(false);
-        List<Map<String, Object>> blockTxs = (List<Map<String, Object>>) rpcTxs.get(blockIdx);
-        convertRpcTx(blockTxs.get(txIdx), tx);
-      }
-      
-      // merge into one block
-      block.setTxs(new ArrayList<MoneroTx>());
-      for (MoneroTx tx : txs) {
-        if (tx.getBlock() != null) block.merge(tx.getBlock());
-        else block.getTxs().add(tx.setBlock(block));
+    if (rpcBlocks == null) return blobs;
+    for (Map<String, Object> rpcBlock : rpcBlocks) {
+      List<Object> rpcTxs = (List<Object>) rpcBlock.get("txs");
+      List<byte[]> blockBlobs = new ArrayList<byte[]>(rpcTxs == null ? 1 : rpcTxs.size() + 1);
+      blockBlobs.add((byte[]) rpcBlock.get("block"));
+      if (rpcTxs != null) {
+        for (Object rpcTx : rpcTxs) blockBlobs.add((byte[]) (rpcTx instanceof byte[] ? rpcTx : ((Map<String, Object>) rpcTx).get("blob")));
       }
+      blobs.add(blockBlobs);
     }
+    return blobs;
+  }
+  
+  /**
+   * Parse a block and its transactions from their blobs.
+   * 
+   * @param blobs are the block blob followed by its transaction blobs
+   * @param height is the height of the block
+   * @return the block with its transactions
+   */
+  private static MoneroBlock convertBlockBlobs(List<byte[]> blobs, long height) {
     
-    return blocks;
+    // build block
+    MoneroBlock block = MoneroBlobParser.parseBlock(ByteBuffer.wrap(blobs.get(0)));
+    block.setHeight(height);
+    initRpcTx(block.getMinerTx().setIsConfirmed(true), null);
+    
+    // build transactions
+    List<MoneroTx> txs = new ArrayList<MoneroTx>(blobs.size() - 1);
+    if (blobs.size() > 1) GenUtils.assertEquals(block.getTxHashes().size(), blobs.size() - 1);
+    for (int txIdx = 0; txIdx < blobs.size() - 1; txIdx++) {
+      MoneroTx tx = MoneroBlobParser.parseTx(ByteBuffer.wrap(blobs.get(txIdx + 1)));
+      tx.setHash(block.getTxHashes().get(txIdx));
+      tx.setIsConfirmed(true);
+      tx.setInTxPool(false);
+      tx.setIsMinerTx(false);
+      tx.setIsDoubleSpendSeen(false);
+      initRpcTx(tx, null);
+      txs.add(tx.setBlock(block));
+    }
+    block.setTxs(txs);
+    return block;
   }
   
   @Override
@@ -327,12 +486,128 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return blocks;
   }
   
+  /**
+   * Get blocks in the given height range as chunked requests which are
+   * pipelined, so up to a configured number of chunks are requested ahead
+   * while earlier chunks are converted.
+   * 
+   * Chunks are sized ahead from cached block headers.  Blocks are returned in
+   * height order.
+   * 
+   * @param startHeight is the start height lower bound inclusive (optional)
+   * @param endHeight is the end height upper bound inclusive (optional)
+   * @param config configures the chunk size, chunks in flight, and buffered bytes
+   * @return blocks in the given height range
+   */
+  public List<MoneroBlock> getBlocksByRangePipelined(Long startHeight, Long endHeight, MoneroBlockFetchConfig config) {
+    if (startHeight == null) startHeight = 0l;
+    if (endHeight == null) endHeight = getHeight() - 1;
+    List<MoneroBlock> blocks = new ArrayList<MoneroBlock>();
+    Iterator<List<MoneroBlock>> chunks = new BlockChunkIterator(startHeight, endHeight, config);
+    while (chunks.hasNext()) blocks.addAll(chunks.next());
+    return blocks;
+  }
+  
+  @Override
+  public Iterator<MoneroBlock> streamBlocks(Long startHeight, Long endHeight, MoneroBlockFetchConfig config) {
+    if (startHeight == null) startHeight = 0l;
+    if (endHeight == null) endHeight = getHeight() - 1;
+    BlockChunkIterator chunks = new BlockChunkIterator(startHeight, endHeight, config);
+    return new Iterator<MoneroBlock>() {
+      private Iterator<MoneroBlock> chunk = Collections.emptyIterator();
+      
+      @Override
+      public boolean hasNext() {
+        while (!chunk.hasNext() && chunks.hasNext()) chunk = chunks.next().iterator();
+        return chunk.hasNext();
+      }
+      
+      @Override
+      public MoneroBlock next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return chunk.next();
+      }
+    };
+  }
+  
   @Override
   public List<String> getBlockHashes(List<String> blockHashes, Long startHeight) {
-    throw new RuntimeException("Not implemented");
+    MoneroBlockHashes hashes = getBlockHashesBinary(blockHashes, startHeight);
+    List<String> hexes = new ArrayList<String>(hashes.getNumHashes());
+    for (int i = 0; i < hashes.getNumHashes(); i++) hexes.add(hashes.getHash(i));
+    return hexes;
+  }
+  
+  /**
+   * Get block hashes from where the given chain joins the daemon's chain
+   * with one request to get_hashes.bin, keeping them as 32-byte hashes.
+   * 
+   * The daemon returns up to its synchronizing count of hashes, e.g. 10,000,
+   * starting with the most recent given block on its chain.
+   * 
+   * @param blockHashes specify the chain to join; first 10 blocks hash goes
+   *        sequential, next goes in pow(2,n) offset, like 2, 4, 8, 16, 32, 64
+   *        and so on, and the last one is always genesis block
+   * @param startHeight is the starting height of block hashes to return (optional)
+   * @return the block hashes
+   */
+  public MoneroBlockHashes getBlockHashesBinary(List<String> blockHashes, Long startHeight) {
+    return convertRpcBlockHashes(rpc.sendBinaryRequest("get_hashes.bin", getBlockHashesParams(blockHashes, startHeight)));
+  }
+  
+  /**
+   * Get block hashes from where the given chain joins the daemon's chain
+   * without blocking the calling thread.
+   * 
+   * @param blockHashes specify the chain to join, ending with the genesis block
+   * @param startHeight is the starting height of block hashes to return (optional)
+   * @return a future which completes with the block hashes
+   */
+  public CompletableFuture<MoneroBlockHashes> getBlockHashesBinaryAsync(List<String> blockHashes, Long startHeight) {
+    return rpc.sendBinaryRequestAsync("get_hashes.bin", getBlockHashesParams(blockHashes, startHeight)).thenApply(MoneroDaemonRpc::convertRpcBlockHashes);
+  }
+  
+  /**
+   * Stream block hashes from where the given chain joins the daemon's chain
+   * up to the daemon's height.
+   * 
+   * Each chunk is requested when the iterator is advanced and continues from
+   * the last hash of the previous chunk.  A chunk which starts below the end
+   * height of the previous chunk indicates that the daemon's chain was
+   * reorganized in between.
+   * 
+   * @param blockHashes specify the chain to join, ending with the genesis block
+   * @param startHeight is the starting height of block hashes to return (optional)
+   * @return an iterator of consecutive chunks of block hashes
+   */
+  public Iterator<MoneroBlockHashes> streamBlockHashes(List<String> blockHashes, Long startHeight) {
+    return new BlockHashesIterator(blockHashes, startHeight);
+  }
+  
+  private static Map<String, Object> getBlockHashesParams(List<String> blockHashes, Long startHeight) {
+    byte[] blockIds = new byte[blockHashes.size() * MoneroBlockHashes.HASH_SIZE];
+    for (int i = 0; i < blockHashes.size(); i++) {
+      byte[] hash = MoneroBlobParser.hexToBytes(blockHashes.get(i));
+      if (hash.length != MoneroBlockHashes.HASH_SIZE) throw new MoneroError("Invalid block hash: " + blockHashes.get(i));
+      System.arraycopy(hash, 0, blockIds, i * MoneroBlockHashes.HASH_SIZE, hash.length);
+    }
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("block_ids", blockIds);
+    params.put("start_height", startHeight);
+    return params;
+  }
+  
+  private static MoneroBlockHashes convertRpcBlockHashes(byte[] respBin) {
+    Map<String, Object> rpcResp = MoneroPortableStorage.deserialize(ByteBuffer.wrap(respBin), true);
+    checkBinaryResponseStatus(rpcResp);
+    MoneroBlockHashes hashes = new MoneroBlockHashes();
+    hashes.setStartHeight(((Number) rpcResp.get("start_height")).longValue());
+    hashes.setCurrentHeight(((Number) rpcResp.get("current_height")).longValue());
+    byte[] blockIds = (byte[]) rpcResp.get("m_block_ids");
+    hashes.setHashes(blockIds == null ? new byte[0] : blockIds);
+    return hashes;
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public List<MoneroTx> getTxs(Collection<String> txHashes, Boolean prune) {
     
@@ -342,38 +617,55 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     // fetch transactions
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("txs_hashes", txHashes);
-    params.put("decode_as_json", true);
-    params.put("prune", prune);
-    Map<String, Object> respMap = rpc.sendPathRequest("get_transactions", params);
+    params.put("prune", prune); // txs are parsed from their hex instead of decoded as json
+    List<MoneroTx> txs = rpc.sendPathRequest("get_transactions", params, new TxsResponseHandler());
+    
+    // fetch unconfirmed txs from pool and merge additional fields  // TODO monero-daemon-rpc: merge rpc calls so this isn't necessary?
+    //System.out.println("Fetching from pool...");  // TODO monero core: getTxPool() can get stuck under certain conditions (observed it before coordinating tx pool as part of tests, so double spend related?)
+    return mergePoolTxs(txs, getTxPool());
+  }
+  
+  /**
+   * Get transactions by hash without blocking the calling thread.
+   * 
+   * The transactions and the pool are fetched concurrently.
+   * 
+   * @param txHashes are hashes of transactions to get
+   * @param prune specifies if the returned tx hex should be pruned (defaults to false)
+   * @return a future which completes with the found transactions
+   */
+  public CompletableFuture<List<MoneroTx>> getTxsAsync(Collection<String> txHashes, Boolean prune) {
+    
+    // validate input
+    if (txHashes.isEmpty()) {
+      CompletableFuture<List<MoneroTx>> future = new CompletableFuture<List<MoneroTx>>();
+      future.completeExceptionally(new MoneroError("Must provide an array of transaction hashes"));
+      return future;
+    }
+    
+    // fetch transactions and pool
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("txs_hashes", txHashes);
+    params.put("prune", prune); // txs are parsed from their hex instead of decoded as json
+    CompletableFuture<List<MoneroTx>> txsFuture = rpc.sendPathRequestAsync("get_transactions", params, new TxsResponseHandler());
+    return txsFuture.thenCombine(getTxPoolAsync(), MoneroDaemonRpc::mergePoolTxs);
+  }
+  
+  private static void checkTxsResponseStatus(String status) {
     try {
-      checkResponseStatus(respMap);
+      checkResponseStatus(status);
     } catch (MoneroError e) {
       if (e.getMessage().indexOf("Failed to parse hex representation of transaction hash") >= 0) throw new MoneroError("Invalid transaction hash", e.getCode());
       throw e;
     }
-    
-    //  interpret response
-    List<Map<String, Object>> rpcTxs = (List<Map<String, Object>>) respMap.get("txs");
-    
-    // build transaction models
-    List<MoneroTx> txs = new ArrayList<MoneroTx>();
-    if (rpcTxs != null) {
-      for (int i = 0; i < rpcTxs.size(); i++) {
-        MoneroTx tx = new MoneroTx();
-        tx.setIsMinerTx(false);
-        txs.add(convertRpcTx(rpcTxs.get(i), tx));
-      }
-    }
-    
-    // fetch unconfirmed txs from pool and merge additional fields  // TODO monero-daemon-rpc: merge rpc calls so this isn't necessary?
-    //System.out.println("Fetching from pool...");  // TODO monero core: getTxPool() can get stuck under certain conditions (observed it before coordinating tx pool as part of tests, so double spend related?)
-    List<MoneroTx> poolTxs = getTxPool();
+  }
+  
+  private static List<MoneroTx> mergePoolTxs(List<MoneroTx> txs, List<MoneroTx> poolTxs) {
     for (MoneroTx tx : txs) {
       for (MoneroTx poolTx : poolTxs) {
         if (tx.getHash().equals(poolTx.getHash())) tx.merge(poolTx);
       }
     }
-    
     return txs;
   }
 
@@ -438,26 +730,35 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     checkResponseStatus((Map<String, Object>) resp.get("result"));
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public List<MoneroTx> getTxPool() {
-    
-    
-    // send rpc request
-    Map<String, Object> resp = rpc.sendPathRequest("get_transaction_pool");
-    checkResponseStatus(resp);
+    return convertRpcTxPoolResult(rpc.sendPathRequest("get_transaction_pool", null, RpcTxPoolResult.class));
+  }
+  
+  /**
+   * Get valid transactions seen by the node but not yet mined into a block
+   * without blocking the calling thread.
+   * 
+   * @return a future which completes with the transactions in the pool
+   */
+  public CompletableFuture<List<MoneroTx>> getTxPoolAsync() {
+    return rpc.sendPathRequestAsync("get_transaction_pool", null, RpcTxPoolResult.class).thenApply(MoneroDaemonRpc::convertRpcTxPoolResult);
+  }
+  
+  private static List<MoneroTx> convertRpcTxPoolResult(RpcTxPoolResult result) {
+    checkResponseStatus(result.status);
     
     // build txs
     List<MoneroTx> txs = new ArrayList<MoneroTx>();
-    if (resp.containsKey("transactions")) {
-      for (Map<String, Object> rpcTx : (List<Map<String, Object>>) resp.get("transactions")) {
+    if (result.transactions != null) {
+      for (RpcPoolTx rpcTx : result.transactions) {
         MoneroTx tx = new MoneroTx();
         txs.add(tx);
         tx.setIsConfirmed(false);
         tx.setIsMinerTx(false);
         tx.setInTxPool(true);
         tx.setNumConfirmations(0l);
-        convertRpcTx(rpcTx, tx);
+        convertRpcPoolTx(rpcTx, tx);
       }
     }
     
@@ -530,7 +831,192 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
 
   @Override
   public List<MoneroOutput> getOutputs(Collection<MoneroOutput> outputs) {
-    throw new RuntimeException("Not implemented");
+    try {
+      return getOutputsAsync(outputs).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof MoneroError) throw (MoneroError) e.getCause();
+      throw new MoneroError(e.getCause());
+    }
+  }
+  
+  /**
+   * Get outputs identified by amount and index without blocking the calling
+   * thread.
+   * 
+   * Outputs are fetched with get_outs.bin in requests of up to 5,000 outputs,
+   * the limit of restricted RPC, of which at most getMaxOutputChunksInFlight()
+   * are sent at once.  Unlocked
+   * outputs are cached by amount and index since their data no longer
+   * changes, so they are only fetched once.
+   * 
+   * Each output has its key, commitment, and tx with its hash and block
+   * height.
+   * 
+   * @param outputs identify each output by amount (default 0) and non-negative index
+   * @return a future which completes with the identified outputs in the given order
+   */
+  public CompletableFuture<List<MoneroOutput>> getOutputsAsync(Collection<MoneroOutput> outputs) {
+    
+    // read amounts and indices
+    long[] amounts = new long[outputs.size()];
+    long[] indices = new long[outputs.size()];
+    int i = 0;
+    for (MoneroOutput output : outputs) {
+      if (output.getIndex() == null) {
+        CompletableFuture<List<MoneroOutput>> future = new CompletableFuture<List<MoneroOutput>>();
+        future.completeExceptionally(new MoneroError("Must provide the index of each output"));
+        return future;
+      }
+      if (output.getIndex() < 0) {
+        CompletableFuture<List<MoneroOutput>> future = new CompletableFuture<List<MoneroOutput>>();
+        future.completeExceptionally(new MoneroError("Output index must be >= 0: " + output.getIndex()));
+        return future;
+      }
+      amounts[i] = output.getAmount() == null ? 0 : output.getAmount().longValue(); // unsigned
+      indices[i++] = output.getIndex();
+    }
+    
+    // get cached outputs
+    MoneroOutputCache.Entry[] entries = new MoneroOutputCache.Entry[amounts.length];
+    int[] missIdxs = new int[outputCache.getAll(amounts, indices, entries)];
+    int numMisses = 0;
+    for (i = 0; i < entries.length; i++) if (entries[i] == null) missIdxs[numMisses++] = i;
+    
+    // fetch uncached outputs in chunks, each in-flight chunk requesting the next chunk when done
+    AtomicInteger nextStart = new AtomicInteger();
+    int numChunks = (missIdxs.length + MAX_OUTPUTS_PER_REQ - 1) / MAX_OUTPUTS_PER_REQ;
+    List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+    for (int lane = 0; lane < Math.min(maxOutputChunksInFlight, numChunks); lane++) futures.add(getOutputChunks(missIdxs, nextStart, amounts, indices, entries));
+    
+    // build outputs when all chunks are fetched
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored -> {
+      List<MoneroOutput> fetched = new ArrayList<MoneroOutput>(entries.length);
+      for (int j = 0; j < entries.length; j++) fetched.add(convertOutputEntry(amounts[j], indices[j], entries[j]));
+      return fetched;
+    });
+  }
+  
+  /**
+   * Fetch chunks of uncached outputs one after another until none remain.
+   * 
+   * @param missIdxs are the indices of the requested outputs which are not cached
+   * @param nextStart is the position in missIdxs of the next chunk, shared by concurrent calls
+   * @return a future which completes when no chunks remain or a chunk fails
+   */
+  private CompletableFuture<Void> getOutputChunks(int[] missIdxs, AtomicInteger nextStart, long[] amounts, long[] indices, MoneroOutputCache.Entry[] entries) {
+    int start = nextStart.getAndAdd(MAX_OUTPUTS_PER_REQ);
+    if (start >= missIdxs.length) return CompletableFuture.completedFuture(null);
+    int[] chunkIdxs = Arrays.copyOfRange(missIdxs, start, Math.min(start + MAX_OUTPUTS_PER_REQ, missIdxs.length));
+    List<Map<String, Object>> rpcOutputs = new ArrayList<Map<String, Object>>(chunkIdxs.length);
+    for (int idx : chunkIdxs) {
+      Map<String, Object> rpcOutput = new HashMap<String, Object>();
+      rpcOutput.put("amount", toUnsignedBI(amounts[idx]));
+      rpcOutput.put("index", indices[idx]);
+      rpcOutputs.add(rpcOutput);
+    }
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("outputs", rpcOutputs);
+    params.put("get_txid", true);
+    return rpc.sendBinaryRequestAsync("get_outs.bin", params).thenAccept(respBin -> convertRpcOuts(respBin, chunkIdxs, amounts, indices, entries)).whenComplete((ignored, e) -> {
+      if (e != null) nextStart.set(missIdxs.length); // stop requesting chunks after a failure
+    }).thenCompose(ignored -> getOutputChunks(missIdxs, nextStart, amounts, indices, entries));
+  }
+  
+  /**
+   * Set the maximum number of get_outs.bin requests of up to 5,000 outputs
+   * which getOutputs() sends at once.
+   * 
+   * @param maxChunksInFlight is the maximum number of output requests in flight (default 4)
+   */
+  public void setMaxOutputChunksInFlight(int maxChunksInFlight) {
+    if (maxChunksInFlight <= 0) throw new MoneroError("Max chunks in flight must be greater than 0");
+    this.maxOutputChunksInFlight = maxChunksInFlight;
+  }
+  
+  public int getMaxOutputChunksInFlight() {
+    return maxOutputChunksInFlight;
+  }
+  
+  /**
+   * Set the maximum number of unlocked outputs cached by getOutputs(),
+   * evicting the least recently used outputs beyond it.
+   * 
+   * @param maxSize is the maximum number of outputs to cache or 0 to disable caching (default 250,000)
+   */
+  public void setOutputCacheSize(int maxSize) {
+    outputCache.setMaxSize(maxSize);
+  }
+  
+  /**
+   * Get the cache of block headers fetched from the daemon, e.g. to read its
+   * hit and miss statistics or set its maximum size.
+   * 
+   * @return the block header cache
+   */
+  public MoneroBlockHeaderCache getHeaderCache() {
+    return headerCache;
+  }
+  
+  /**
+   * Set a store to persist headers and blocks fetched from the daemon, so
+   * blocks in the store are read from it instead of requested again, e.g.
+   * after a restart.
+   * 
+   * The highest stored heights are compared to the daemon's chain when the
+   * store is set and when polling for listeners starts, and the store is
+   * truncated from the first height which does not match, e.g. after a reorg
+   * while the store was not in use.  The store is also truncated when a
+   * header fetched from the daemon does not match it or when the poller
+   * detects a reorg.
+   * 
+   * @param blockStore is the store to persist headers and blocks in or null to not persist them
+   */
+  public void setBlockStore(MoneroBlockStore blockStore) {
+    if (blockStore != null) verifyBlockStore(blockStore);
+    this.blockStore = blockStore;
+  }
+  
+  public MoneroBlockStore getBlockStore() {
+    return blockStore;
+  }
+  
+  /**
+   * Convert a get_outs.bin response to output data at the requested indices,
+   * caching unlocked outputs.
+   */
+  @SuppressWarnings("unchecked")
+  private void convertRpcOuts(byte[] respBin, int[] idxs, long[] amounts, long[] indices, MoneroOutputCache.Entry[] entries) {
+    Map<String, Object> rpcResp = MoneroPortableStorage.deserialize(ByteBuffer.wrap(respBin), true);
+    checkBinaryResponseStatus(rpcResp);
+    List<Map<String, Object>> rpcOuts = (List<Map<String, Object>>) rpcResp.get("outs");
+    int numOuts = rpcOuts == null ? 0 : rpcOuts.size();
+    if (numOuts != idxs.length) throw new MoneroError("Expected " + idxs.length + " outputs from get_outs but got " + numOuts);
+    for (int i = 0; i < idxs.length; i++) {
+      Map<String, Object> rpcOut = rpcOuts.get(i);
+      Object height = rpcOut.get("height");
+      MoneroOutputCache.Entry entry = new MoneroOutputCache.Entry((byte[]) rpcOut.get("key"), (byte[]) rpcOut.get("mask"), (byte[]) rpcOut.get("txid"), height == null ? 0 : ((Number) height).longValue());
+      entries[idxs[i]] = entry;
+      if (Boolean.TRUE.equals(rpcOut.get("unlocked"))) outputCache.put(amounts[idxs[i]], indices[idxs[i]], entry);
+    }
+  }
+  
+  private static MoneroOutput convertOutputEntry(long amount, long index, MoneroOutputCache.Entry entry) {
+    MoneroOutput output = new MoneroOutput();
+    output.setAmount(toUnsignedBI(amount));
+    output.setIndex(Math.toIntExact(index)); // read from the requested output's int index
+    output.setStealthPublicKey(MoneroBlobParser.bytesToHex(entry.key));
+    output.setCommitment(MoneroBlobParser.bytesToHex(entry.mask));
+    MoneroTx tx = new MoneroTx();
+    if (entry.txHash != null) tx.setHash(MoneroBlobParser.bytesToHex(entry.txHash));
+    tx.setIsConfirmed(true);
+    tx.setInTxPool(false);
+    tx.setOutputs(new ArrayList<MoneroOutput>(Arrays.asList(output.setTx(tx))));
+    tx.setBlock(new MoneroBlock().setHeight(entry.height).setTxs(tx));
+    return output;
+  }
+  
+  private static BigInteger toUnsignedBI(long unsigned) {
+    return unsigned >= 0 ? BigInteger.valueOf(unsigned) : new BigInteger(Long.toUnsignedString(unsigned));
   }
 
   @SuppressWarnings("unchecked")
@@ -559,43 +1045,158 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return entries;
   }
 
+  /**
+   * {@inheritDoc}
+   * 
+   * Distributions are fetched from get_output_distribution.bin compressed.
+   * Distributions from the first height to the tip are cached, so later
+   * requests only fetch the blocks added since plus the last 100 blocks in
+   * case of a reorg.
+   */
   @Override
   public List<MoneroOutputDistributionEntry> getOutputDistribution(Collection<BigInteger> amounts, Boolean isCumulative, Long startHeight, Long endHeight) {
-    throw new RuntimeException("Not implemented (response 'distribution' field is binary)");
-//  let amountStrs = [];
-//  for (let amount of amounts) amountStrs.push(amount.toJSValue());
-//  console.log(amountStrs);
-//  console.log(cumulative);
-//  console.log(startHeight);
-//  console.log(endHeight);
-//  
-//  // send rpc request
-//  console.log("*********** SENDING REQUEST *************");
-//  if (startHeight === undefined) startHeight = 0;
-//  let resp = await this.config.rpc.sendJsonRequest("get_output_distribution", {
-//    amounts: amountStrs,
-//    cumulative: cumulative,
-//    from_height: startHeight,
-//    to_height: endHeight
-//  });
-//  
-//  console.log("RESPONSE");
-//  console.log(resp);
-//  
-//  // build distribution entries from response
-//  let entries = [];
-//  if (!resp.result.distributions) return entries; 
-//  for (let rpcEntry of resp.result.distributions) {
-//    let entry = MoneroDaemonRpc._convertRpcOutputDistributionEntry(rpcEntry);
-//    entries.push(entry);
-//  }
-//  return entries;
+    boolean cumulative = Boolean.TRUE.equals(isCumulative);
+    
+    // fetch distributions of a range uncached
+    if ((startHeight != null && startHeight > 0) || endHeight != null) {
+      List<MoneroOutputDistributionEntry> entries = fetchOutputDistribution(amounts, startHeight == null ? 0 : startHeight, endHeight);
+      if (cumulative) for (MoneroOutputDistributionEntry entry : entries) accumulateDistribution(entry);
+      return entries;
+    }
+    
+    // otherwise refresh cached distributions to the tip
+    synchronized (cachedDistributions) {
+      
+      // group amounts by the height to refresh from
+      Map<Long, List<BigInteger>> amountsByHeight = new HashMap<Long, List<BigInteger>>();
+      for (BigInteger amount : amounts) {
+        MoneroOutputDistributionEntry cached = cachedDistributions.get(amount);
+        long fromHeight = cached == null ? 0 : Math.max(cached.getStartHeight(), cached.getStartHeight() + cached.getDistribution().length - DISTRIBUTION_REFRESH_DEPTH);
+        if (!amountsByHeight.containsKey(fromHeight)) amountsByHeight.put(fromHeight, new ArrayList<BigInteger>());
+        if (!amountsByHeight.get(fromHeight).contains(amount)) amountsByHeight.get(fromHeight).add(amount);
+      }
+      
+      // fetch and append to cached distributions, refetching any which do not line up
+      List<BigInteger> refetchAmounts = new ArrayList<BigInteger>();
+      for (Map.Entry<Long, List<BigInteger>> heightAmounts : amountsByHeight.entrySet()) {
+        for (MoneroOutputDistributionEntry fetched : fetchOutputDistribution(heightAmounts.getValue(), heightAmounts.getKey(), null)) {
+          accumulateDistribution(fetched);
+          MoneroOutputDistributionEntry cached = cachedDistributions.get(fetched.getAmount());
+          if (cached == null || heightAmounts.getKey() == 0) cachedDistributions.put(fetched.getAmount(), fetched);
+          else if (!appendDistribution(cached, fetched)) refetchAmounts.add(fetched.getAmount());
+        }
+      }
+      if (!refetchAmounts.isEmpty()) {
+        for (MoneroOutputDistributionEntry fetched : fetchOutputDistribution(refetchAmounts, 0, null)) {
+          accumulateDistribution(fetched);
+          cachedDistributions.put(fetched.getAmount(), fetched);
+        }
+      }
+      
+      // copy cached distributions in the order requested
+      List<MoneroOutputDistributionEntry> entries = new ArrayList<MoneroOutputDistributionEntry>();
+      for (BigInteger amount : amounts) {
+        MoneroOutputDistributionEntry cached = cachedDistributions.get(amount);
+        if (cached == null) throw new MoneroError("No output distribution returned for amount " + amount);
+        entries.add(copyDistribution(cached, cumulative));
+      }
+      return entries;
+    }
   }
-
+  
+  /**
+   * Clear the cached output distributions, e.g. to free their memory.
+   */
+  public void clearOutputDistributionCache() {
+    synchronized (cachedDistributions) {
+      cachedDistributions.clear();
+    }
+  }
+  
+  /**
+   * Fetch non-cumulative output distributions from get_output_distribution.bin.
+   */
   @SuppressWarnings("unchecked")
+  private List<MoneroOutputDistributionEntry> fetchOutputDistribution(Collection<BigInteger> amounts, long fromHeight, Long toHeight) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("amounts", amounts);
+    params.put("from_height", fromHeight);
+    params.put("to_height", toHeight == null ? 0 : toHeight);
+    params.put("cumulative", false); // per-block counts are small and compress to fewer bytes
+    params.put("binary", true);
+    params.put("compress", true);
+    Map<String, Object> resp = MoneroPortableStorage.deserialize(ByteBuffer.wrap(rpc.sendBinaryRequest("get_output_distribution.bin", params)), true);
+    checkBinaryResponseStatus(resp);
+    List<MoneroOutputDistributionEntry> entries = new ArrayList<MoneroOutputDistributionEntry>();
+    if (!resp.containsKey("distributions")) return entries;
+    for (Map<String, Object> rpcEntry : (List<Map<String, Object>>) resp.get("distributions")) {
+      entries.add(convertRpcOutputDistributionEntry(rpcEntry));
+    }
+    return entries;
+  }
+  
+  /**
+   * Convert a non-cumulative output distribution to cumulative in place.
+   */
+  private static void accumulateDistribution(MoneroOutputDistributionEntry entry) {
+    long[] distribution = entry.getDistribution();
+    long count = entry.getBase();
+    for (int i = 0; i < distribution.length; i++) distribution[i] = count += distribution[i];
+  }
+  
+  /**
+   * Append a cumulative distribution fetched from a height within a cached
+   * cumulative distribution, replacing the cached counts from that height.
+   * 
+   * @return false if the fetched base does not match the cached count before its start height
+   */
+  private static boolean appendDistribution(MoneroOutputDistributionEntry cached, MoneroOutputDistributionEntry fetched) {
+    long offset = fetched.getStartHeight() - cached.getStartHeight();
+    long[] cachedDistribution = cached.getDistribution();
+    if (offset < 0 || offset > cachedDistribution.length) return false;
+    long base = offset == 0 ? cached.getBase() : cachedDistribution[(int) offset - 1];
+    if (base != fetched.getBase()) return false;
+    long[] distribution = Arrays.copyOf(cachedDistribution, (int) offset + fetched.getDistribution().length);
+    System.arraycopy(fetched.getDistribution(), 0, distribution, (int) offset, fetched.getDistribution().length);
+    cached.setDistribution(distribution);
+    return true;
+  }
+  
+  /**
+   * Copy a cached cumulative distribution, converting it to non-cumulative
+   * if not requested cumulative.
+   */
+  private static MoneroOutputDistributionEntry copyDistribution(MoneroOutputDistributionEntry cached, boolean cumulative) {
+    MoneroOutputDistributionEntry entry = new MoneroOutputDistributionEntry();
+    entry.setAmount(cached.getAmount());
+    entry.setBase(cached.getBase());
+    entry.setStartHeight(cached.getStartHeight());
+    long[] distribution = cached.getDistribution().clone();
+    if (!cumulative) {
+      for (int i = distribution.length - 1; i > 0; i--) distribution[i] -= distribution[i - 1];
+      if (distribution.length > 0) distribution[0] -= cached.getBase();
+    }
+    entry.setDistribution(distribution);
+    return entry;
+  }
+
   @Override
   public MoneroDaemonInfo getInfo() {
-    Map<String, Object> resp = rpc.sendJsonRequest("get_info");
+    return convertRpcInfoResp(rpc.sendJsonRequest("get_info"));
+  }
+  
+  /**
+   * Get general information about the state of the node and the network
+   * without blocking the calling thread.
+   * 
+   * @return a future which completes with the daemon info
+   */
+  public CompletableFuture<MoneroDaemonInfo> getInfoAsync() {
+    return rpc.sendJsonRequestAsync("get_info").thenApply(MoneroDaemonRpc::convertRpcInfoResp);
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static MoneroDaemonInfo convertRpcInfoResp(Map<String, Object> resp) {
     Map<String, Object> result = (Map<String, Object>) resp.get("result");
     checkResponseStatus(result);
     return convertRpcInfo(result);
@@ -924,8 +1525,21 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     if (maxHeight == null) maxHeight = getHeight() - 1;
     if (chunkSize == null) chunkSize = MAX_REQ_SIZE;
     
-    // determine end height to fetch
-    int reqSize = 0;
+    long endHeight = getChunkEndHeight(startHeight, maxHeight, chunkSize, null);
+    return endHeight >= startHeight ? getBlocksByRange(startHeight, endHeight) : new ArrayList<MoneroBlock>();
+  }
+  
+  /**
+   * Determine the end height of a chunk of blocks from cached headers.
+   * 
+   * @param startHeight is the start height of the chunk
+   * @param maxHeight is the maximum end height of the chunk
+   * @param chunkSize is the maximum size of the chunk's blocks
+   * @param headers collects the headers of the chunk's blocks (optional)
+   * @return the end height of the chunk inclusive
+   */
+  private long getChunkEndHeight(long startHeight, long maxHeight, long chunkSize, List<MoneroBlockHeader> headers) {
+    long reqSize = 0;
     long endHeight = startHeight - 1;
     while (reqSize < chunkSize && endHeight < maxHeight) {
       
@@ -941,8 +1555,9 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
       // otherwise block is included
       reqSize += header.getSize();
       endHeight++;
+      if (headers != null) headers.add(header);
     }
-    return endHeight >= startHeight ? getBlocksByRange(startHeight, endHeight) : new ArrayList<MoneroBlock>();
+    return endHeight;
   }
   
   /**
@@ -954,28 +1569,98 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
    */
   private MoneroBlockHeader getBlockHeaderByHeightCached(long height, long maxHeight) {
     
-    // get header from cache
-    MoneroBlockHeader cachedHeader = cachedHeaders.get(height);
+    // get header from cache or block store
+    MoneroBlockHeader cachedHeader = headerCache.get(height);
     if (cachedHeader != null) return cachedHeader;
+    MoneroBlockStore store = blockStore;
+    MoneroBlockHeader storedHeader = store == null ? null : store.getHeader(height);
+    if (storedHeader != null) {
+      headerCache.put(storedHeader);
+      return storedHeader;
+    }
     
     // fetch and cache headers if not in cache
     long endHeight = Math.min(maxHeight, height + NUM_HEADERS_PER_REQ - 1);  // TODO: could specify end height to cache to optimize small requests (would like to have time profiling in place though)
     List<MoneroBlockHeader> headers = getBlockHeadersByRange(height, endHeight);
-    for (MoneroBlockHeader header : headers) {
-      cachedHeaders.put(header.getHeight(), header);
-    }
     
-    // return the cached header
-    return cachedHeaders.get(height);
+    // return the fetched header
+    return headers.isEmpty() ? null : headers.get(0);
+  }
+  
+  /**
+   * Truncate a block store from the first stored height which does not match
+   * the daemon's chain.
+   * 
+   * Headers are compared from the highest stored height down until a stored
+   * header or block matches, below which the stored chain is the daemon's.
+   * 
+   * @param store is the block store to verify
+   */
+  private void verifyBlockStore(MoneroBlockStore store) {
+    long maxHeight = store.getMaxHeight();
+    if (maxHeight < 0) return;
+    
+    // remove heights above the daemon's tip
+    long tipHeight = convertRpcBlockHeaderResult(rpc.sendJsonRequest("get_last_block_header", null, RpcBlockHeaderResult.class)).getHeight();
+    if (maxHeight > tipHeight) store.truncate(tipHeight + 1);
+    
+    // compare stored heights to the daemon's headers from the top down until one matches
+    long forkHeight = -1;
+    long endHeight = Math.min(maxHeight, tipHeight);
+    while (endHeight >= 0) {
+      long startHeight = Math.max(0, endHeight - NUM_HEADERS_PER_REQ + 1);
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put("start_height", startHeight);
+      params.put("end_height", endHeight);
+      List<MoneroBlockHeader> headers = convertRpcBlockHeadersResult(rpc.sendJsonRequest("get_block_headers_range", params, RpcBlockHeadersResult.class));
+      boolean matched = false;
+      for (int i = headers.size() - 1; i >= 0; i--) {
+        Boolean matches = store.matches(headers.get(i));
+        if (matches == null) continue;
+        if (matches) {
+          matched = true;
+          break;
+        }
+        forkHeight = headers.get(i).getHeight();
+      }
+      if (matched) break;
+      endHeight = startHeight - 1;
+    }
+    if (forkHeight >= 0) {
+      LOGGER.info("Block store does not match daemon's chain from height " + forkHeight + ", truncating");
+      store.truncate(forkHeight);
+      headerCache.invalidate(forkHeight);
+      outputCache.invalidate(forkHeight);
+    }
+  }
+  
+  private MoneroBlockHeader cacheHeader(MoneroBlockHeader header) {
+    headerCache.put(header);
+    MoneroBlockStore store = blockStore;
+    if (store != null) store.putHeader(header);
+    return header;
+  }
+  
+  private List<MoneroBlockHeader> cacheHeaders(List<MoneroBlockHeader> headers) {
+    for (MoneroBlockHeader header : headers) cacheHeader(header);
+    return headers;
   }
   
   //---------------------------------- PRIVATE STATIC -------------------------------
   
   private static void checkResponseStatus(Map<String, Object> resp) {
-    String status = (String) resp.get("status");
+    checkResponseStatus((String) resp.get("status"));
+  }
+  
+  private static void checkResponseStatus(String status) {
     if (!"OK".equals(status)) throw new MoneroRpcError(status, null, null, null);
   }
   
+  private static void checkBinaryResponseStatus(Map<String, Object> resp) {
+    byte[] status = (byte[]) resp.get("status");  // deserialized with strings as bytes
+    checkResponseStatus(status == null ? null : new String(status, StandardCharsets.UTF_8));
+  }
+  
   private static MoneroBlockTemplate convertRpcBlockTemplate(Map<String, Object> rpcTemplate) {
     MoneroBlockTemplate template = new MoneroBlockTemplate();
     for (String key : rpcTemplate.keySet()) {
@@ -1001,158 +1686,145 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return template;
   }
   
-  private static MoneroBlockHeader convertRpcBlockHeader(Map<String, Object> rpcHeader) {
-    return convertRpcBlockHeader(rpcHeader, null);
+  @SuppressWarnings("unchecked")
+  private static long convertRpcHeightResp(Map<String, Object> respMap) {
+    Map<String, Object> resultMap = (Map<String, Object>) respMap.get("result");
+    return ((BigInteger) resultMap.get("count")).intValue();
+  }
+  
+  private static MoneroBlockHeader convertRpcBlockHeaderResult(RpcBlockHeaderResult result) {
+    checkResponseStatus(result.status);
+    return convertRpcBlockHeader(result.block_header, null);
+  }
+  
+  private static List<MoneroBlockHeader> convertRpcBlockHeadersResult(RpcBlockHeadersResult result) {
+    List<MoneroBlockHeader> headers = new ArrayList<MoneroBlockHeader>();
+    for (RpcBlockHeader rpcHeader : result.headers) headers.add(convertRpcBlockHeader(rpcHeader, null));
+    return headers;
   }
   
-  private static MoneroBlockHeader convertRpcBlockHeader(Map<String, Object> rpcHeader, MoneroBlockHeader header) {
+  private static MoneroBlockHeader convertRpcBlockHeader(RpcBlockHeader rpcHeader, MoneroBlockHeader header) {
     if (header == null) header = new MoneroBlockHeader();
-    for (String key : rpcHeader.keySet()) {
-      Object val = rpcHeader.get(key);
-      if (key.equals("block_size")) header.setSize(GenUtils.reconcile(header.getSize(), ((BigInteger) val).longValue()));
-      else if (key.equals("depth")) header.setDepth(GenUtils.reconcile(header.getDepth(), ((BigInteger) val).longValue()));
-      else if (key.equals("difficulty")) { }  // handled by wide_difficulty
-      else if (key.equals("cumulative_difficulty")) { } // handled by wide_cumulative_difficulty
-      else if (key.equals("difficulty_top64")) { }  // handled by wide_difficulty
-      else if (key.equals("cumulative_difficulty_top64")) { } // handled by wide_cumulative_difficulty
-      else if (key.equals("wide_difficulty")) header.setDifficulty(GenUtils.reconcile(header.getDifficulty(), prefixedHexToBI((String) val)));
-      else if (key.equals("wide_cumulative_difficulty")) header.setCumulativeDifficulty(GenUtils.reconcile(header.getCumulativeDifficulty(), prefixedHexToBI((String) val)));
-      else if (key.equals("hash")) header.setHash(GenUtils.reconcile(header.getHash(), (String) val));
-      else if (key.equals("height")) header.setHeight(GenUtils.reconcile(header.getHeight(), ((BigInteger) val).longValue()));
-      else if (key.equals("major_version")) header.setMajorVersion(GenUtils.reconcile(header.getMajorVersion(), ((BigInteger) val).intValue()));
-      else if (key.equals("minor_version")) header.setMinorVersion(GenUtils.reconcile(header.getMinorVersion(), ((BigInteger) val).intValue()));
-      else if (key.equals("nonce")) header.setNonce(GenUtils.reconcile(header.getNonce(), ((BigInteger) val).intValue()));
-      else if (key.equals("num_txes")) header.setNumTxs(GenUtils.reconcile(header.getNumTxs(), ((BigInteger) val).intValue()));
-      else if (key.equals("orphan_status")) header.setOrphanStatus(GenUtils.reconcile(header.getOrphanStatus(), (Boolean) val));
-      else if (key.equals("prev_hash") || key.equals("prev_id")) header.setPrevHash(GenUtils.reconcile(header.getPrevHash(), (String) val));
-      else if (key.equals("reward")) header.setReward(GenUtils.reconcile(header.getReward(), (BigInteger) val));
-      else if (key.equals("timestamp")) header.setTimestamp(GenUtils.reconcile(header.getTimestamp(), ((BigInteger) val).longValue()));
-      else if (key.equals("block_weight")) header.setWeight(GenUtils.reconcile(header.getWeight(), ((BigInteger) val).longValue()));
-      else if (key.equals("long_term_weight")) header.setLongTermWeight(GenUtils.reconcile(header.getLongTermWeight(), ((BigInteger) val).longValue()));
-      else if (key.equals("pow_hash")) header.setPowHash(GenUtils.reconcile(header.getPowHash(), "".equals(val) ? null : (String) val));
-      else if (key.equals("tx_hashes")) {}  // used in block model, not header model
-      else if (key.equals("miner_tx")) {}   // used in block model, not header model
-      else if (key.equals("miner_tx_hash")) header.setMinerTxHash((String) val);
-      else LOGGER.warning("WARNING: ignoring unexpected block header field: '" + key + "': " + val);
-    }
+    header.setSize(rpcHeader.block_size);
+    header.setDepth(rpcHeader.depth);
+    if (rpcHeader.wide_difficulty != null) header.setDifficulty(prefixedHexToBI(rpcHeader.wide_difficulty));
+    if (rpcHeader.wide_cumulative_difficulty != null) header.setCumulativeDifficulty(prefixedHexToBI(rpcHeader.wide_cumulative_difficulty));
+    header.setHash(rpcHeader.hash);
+    header.setHeight(rpcHeader.height);
+    header.setMajorVersion(rpcHeader.major_version);
+    header.setMinorVersion(rpcHeader.minor_version);
+    header.setNonce((int) rpcHeader.nonce);
+    header.setNumTxs(rpcHeader.num_txes);
+    header.setOrphanStatus(rpcHeader.orphan_status);
+    header.setPrevHash(rpcHeader.prev_hash);
+    header.setReward(rpcHeader.reward);
+    header.setTimestamp(rpcHeader.timestamp);
+    header.setWeight(rpcHeader.block_weight);
+    header.setLongTermWeight(rpcHeader.long_term_weight);
+    header.setPowHash("".equals(rpcHeader.pow_hash) ? null : rpcHeader.pow_hash);
+    header.setMinerTxHash(rpcHeader.miner_tx_hash);
     return header;
   }
   
-  @SuppressWarnings("unchecked")
-  private static MoneroBlock convertRpcBlock(Map<String, Object> rpcBlock) {
+  private static MoneroBlock convertRpcBlockResult(RpcBlockResult result) {
     
     // build block
     MoneroBlock block = new MoneroBlock();
-    convertRpcBlockHeader(rpcBlock.containsKey("block_header") ? (Map<String, Object>) rpcBlock.get("block_header") : rpcBlock, block);
-    block.setHex((String) rpcBlock.get("blob"));
-    block.setTxHashes(rpcBlock.containsKey("tx_hashes") ? (List<String>) rpcBlock.get("tx_hashes") : new ArrayList<String>());
+    convertRpcBlockHeader(result.block_header, block);
+    block.setHex(result.blob);
     
-    // build miner tx
-    Map<String, Object> rpcMinerTx = (Map<String, Object>) (rpcBlock.containsKey("json") ? JsonUtils.deserialize(MoneroRpcConnection.MAPPER, (String) rpcBlock.get("json"), new TypeReference<Map<String, Object>>(){}).get("miner_tx") : rpcBlock.get("miner_tx")); // may need to be parsed from json
-    MoneroTx minerTx = new MoneroTx().setIsConfirmed(true).setIsMinerTx(true);
-    MoneroDaemonRpc.convertRpcTx(rpcMinerTx, minerTx);
-    block.setMinerTx(minerTx);
+    // build miner tx and tx hashes from blob
+    MoneroBlobParser.parseBlock(ByteBuffer.wrap(MoneroBlobParser.hexToBytes(result.blob)), block);
+    initRpcTx(block.getMinerTx().setIsConfirmed(true), null);
     
     return block;
   }
   
   /**
-   * Transfers RPC tx fields to a given MoneroTx without overwriting previous values.
-   * 
-   * TODO: switch from safe set
+   * Transfers get_transactions tx fields to a given MoneroTx.
    * 
-   * @param rpcTx is the RPC map containing transaction fields
-   * @param tx is the MoneroTx to populate with values (optional)
-   * @returns tx is the same tx that was passed in or a new one if none given
+   * @param rpcTx is the RPC tx to convert
+   * @param tx is the MoneroTx to populate with values
+   * @return tx is the same tx that was passed in
    */
-  @SuppressWarnings("unchecked")
-  private static MoneroTx convertRpcTx(Map<String, Object> rpcTx, MoneroTx tx) {
-    if (rpcTx == null) return null;
-    if (tx == null) tx = new MoneroTx();
-    
-//    System.out.println("******** BUILDING TX ***********");
-//    System.out.println(rpcTx);
-//    System.out.println(tx.toString());
+  private static MoneroTx convertRpcTx(RpcTx rpcTx, MoneroTx tx) {
+    tx.setHash(rpcTx.tx_hash);
     
-    // initialize from rpc map
+    // block height and timestamp are max uint64 if tx is in pool
     MoneroBlock block = null;
-    for (String key : rpcTx.keySet()) {
-      Object val = rpcTx.get(key);
-      if (key.equals("tx_hash") || key.equals("id_hash")) tx.setHash(GenUtils.reconcile(tx.getHash(), (String) val));
-      else if (key.equals("block_timestamp")) {
-        if (block == null) block = new MoneroBlock();
-        block.setTimestamp(GenUtils.reconcile(block.getTimestamp(), ((BigInteger) val).longValue()));
-      }
-      else if (key.equals("block_height")) {
-        if (block == null) block = new MoneroBlock();
-        block.setHeight(GenUtils.reconcile(block.getHeight(), ((BigInteger) val).longValue()));
-      }
-      else if (key.equals("last_relayed_time")) tx.setLastRelayedTimestamp(GenUtils.reconcile(tx.getLastRelayedTimestamp(), ((BigInteger) val).longValue()));
-      else if (key.equals("receive_time") || key.equals("received_timestamp")) tx.setReceivedTimestamp(GenUtils.reconcile(tx.getReceivedTimestamp(), ((BigInteger) val).longValue()));
-      else if (key.equals("in_pool")) {
-        tx.setIsConfirmed(GenUtils.reconcile(tx.isConfirmed(), !(Boolean) val));
-        tx.setInTxPool(GenUtils.reconcile(tx.inTxPool(), (Boolean) val));
-      }
-      else if (key.equals("double_spend_seen")) tx.setIsDoubleSpendSeen(GenUtils.reconcile(tx.isDoubleSpendSeen(), (Boolean) val));
-      else if (key.equals("version")) tx.setVersion(GenUtils.reconcile(tx.getVersion(), ((BigInteger) val).intValue()));
-      else if (key.equals("extra")) {
-        List<Integer> ints = new ArrayList<Integer>();
-        for (BigInteger bi : (List<BigInteger>) val) ints.add(bi.intValue());
-        tx.setExtra(GenUtils.reconcile(tx.getExtra(), GenUtils.listToIntArray(ints)));
-      }
-      else if (key.equals("vin")) {
-        List<Map<String, Object>> rpcInputs = (List<Map<String, Object>>) val;
-        if (rpcInputs.size() != 1 || !rpcInputs.get(0).containsKey("gen")) {  // ignore miner input TODO: why? probably needs re-enabled
-          List<MoneroOutput> inputs = new ArrayList<MoneroOutput>();
-          for (Map<String, Object> rpcInput : rpcInputs) inputs.add(convertRpcOutput(rpcInput, tx));
-          tx.setInputs(inputs);
-        }
-      }
-      else if (key.equals("vout")) {
-        List<Map<String, Object>> rpcOutputs = (List<Map<String, Object>>) val;
-        List<MoneroOutput> outputs = new ArrayList<MoneroOutput>();
-        for (Map<String, Object> rpcOutput : rpcOutputs) outputs.add(convertRpcOutput(rpcOutput, tx));
-        tx.setOutputs(outputs);
-      }
-      else if (key.equals("rct_signatures")) tx.setRctSignatures(GenUtils.reconcile(tx.getRctSignatures(), (Map<String, Object>) val));
-      else if (key.equals("rctsig_prunable")) tx.setRctSigPrunable(GenUtils.reconcile(tx.getRctSigPrunable(), val));
-      else if (key.equals("unlock_time")) tx.setUnlockTime(GenUtils.reconcile(tx.getUnlockTime(), ((BigInteger) val).longValue()));
-      else if (key.equals("as_json") || key.equals("tx_json")) { }  // handled last so tx is as initialized as possible
-      else if (key.equals("as_hex") || key.equals("tx_blob")) tx.setFullHex(GenUtils.reconcile(tx.getFullHex(), "".equals((String) val) ? null : (String) val));
-      else if (key.equals("blob_size")) tx.setSize(GenUtils.reconcile(tx.getSize(), ((BigInteger) val).longValue()));
-      else if (key.equals("weight")) tx.setWeight(GenUtils.reconcile(tx.getWeight(), ((BigInteger) val).longValue()));
-      else if (key.equals("fee")) tx.setFee(GenUtils.reconcile(tx.getFee(), (BigInteger) val));
-      else if (key.equals("relayed")) tx.setIsRelayed(GenUtils.reconcile(tx.isRelayed(), (Boolean) val));
-      else if (key.equals("output_indices")) {
-        List<Integer> indices = new ArrayList<Integer>();
-        for (BigInteger bi : (List<BigInteger>) val) indices.add(bi.intValue());
-        tx.setOutputIndices(GenUtils.reconcile(tx.getOutputIndices(), indices));
-      }
-      else if (key.equals("do_not_relay")) tx.setRelay(GenUtils.reconcile(tx.getRelay(), !(Boolean) val));
-      else if (key.equals("kept_by_block")) tx.setIsKeptByBlock(GenUtils.reconcile(tx.isKeptByBlock(), (Boolean) val));
-      else if (key.equals("signatures")) tx.setSignatures(GenUtils.reconcile(tx.getSignatures(), (List<String>) val));
-      else if (key.equals("last_failed_height")) {
-        long lastFailedHeight = ((BigInteger) val).longValue();
-        if (lastFailedHeight == 0) tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), false));
-        else {
-          tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), true));
-          tx.setLastFailedHeight(GenUtils.reconcile(tx.getLastFailedHeight(), lastFailedHeight));
-        }
-      }
-      else if (key.equals("last_failed_id_hash")) {
-        if (DEFAULT_ID.equals((String) val)) tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), false));
-        else {
-          tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), true));
-          tx.setLastFailedHash(GenUtils.reconcile(tx.getLastFailedHash(), (String) val));
-        }
-      }
-      else if (key.equals("max_used_block_height")) tx.setMaxUsedBlockHeight(GenUtils.reconcile(tx.getMaxUsedBlockHeight(), ((BigInteger) val).longValue()));
-      else if (key.equals("max_used_block_id_hash")) tx.setMaxUsedBlockHash(GenUtils.reconcile(tx.getMaxUsedBlockHash(), (String) val));
-      else if (key.equals("prunable_hash")) tx.setPrunableHash(GenUtils.reconcile(tx.getPrunableHash(), "".equals((String) val) ? null : (String) val));
-      else if (key.equals("prunable_as_hex")) tx.setPrunableHex(GenUtils.reconcile(tx.getPrunableHex(), "".equals((String) val) ? null : (String) val));
-      else if (key.equals("pruned_as_hex")) tx.setPrunedHex(GenUtils.reconcile(tx.getPrunedHex(), "".equals((String) val) ? null : (String) val));
-      else LOGGER.warning("WARNING: ignoring unexpected field in rpc tx: " + key + ": " + val);
+    if (rpcTx.block_height != null) block = new MoneroBlock().setHeight(rpcTx.block_height.longValue());
+    if (rpcTx.block_timestamp != null) {
+      if (block == null) block = new MoneroBlock();
+      block.setTimestamp(rpcTx.block_timestamp.longValue());
     }
+    if (rpcTx.received_timestamp != null) tx.setReceivedTimestamp(rpcTx.received_timestamp);
+    tx.setIsConfirmed(!rpcTx.in_pool);
+    tx.setInTxPool(rpcTx.in_pool);
+    tx.setIsDoubleSpendSeen(rpcTx.double_spend_seen);
+    if (rpcTx.relayed != null) tx.setIsRelayed(rpcTx.relayed);
+    tx.setFullHex("".equals(rpcTx.as_hex) ? null : rpcTx.as_hex);
+    if (rpcTx.output_indices != null) tx.setOutputIndices(rpcTx.output_indices);
+    tx.setPrunableHash("".equals(rpcTx.prunable_hash) ? null : rpcTx.prunable_hash);
+    tx.setPrunableHex("".equals(rpcTx.prunable_as_hex) ? null : rpcTx.prunable_as_hex);
+    tx.setPrunedHex("".equals(rpcTx.pruned_as_hex) ? null : rpcTx.pruned_as_hex);
+    parseTxHex(tx);
+    return initRpcTx(tx, block);
+  }
+  
+  /**
+   * Transfers get_transaction_pool tx fields to a given MoneroTx.
+   * 
+   * @param rpcTx is the RPC pool tx to convert
+   * @param tx is the MoneroTx to populate with values
+   * @return tx is the same tx that was passed in
+   */
+  private static MoneroTx convertRpcPoolTx(RpcPoolTx rpcTx, MoneroTx tx) {
+    tx.setHash(rpcTx.id_hash);
+    tx.setSize(rpcTx.blob_size);
+    tx.setWeight(rpcTx.weight);
+    tx.setFee(rpcTx.fee);
+    tx.setRelay(!rpcTx.do_not_relay);
+    tx.setIsRelayed(rpcTx.relayed);
+    tx.setIsDoubleSpendSeen(rpcTx.double_spend_seen);
+    tx.setIsKeptByBlock(rpcTx.kept_by_block);
+    tx.setLastRelayedTimestamp(rpcTx.last_relayed_time);
+    tx.setReceivedTimestamp(rpcTx.receive_time);
+    tx.setMaxUsedBlockHeight(rpcTx.max_used_block_height);
+    tx.setMaxUsedBlockHash(rpcTx.max_used_block_id_hash);
+    tx.setFullHex("".equals(rpcTx.tx_blob) ? null : rpcTx.tx_blob);
+    if (rpcTx.last_failed_height == 0) tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), false));
+    else {
+      tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), true));
+      tx.setLastFailedHeight(rpcTx.last_failed_height);
+    }
+    if (DEFAULT_ID.equals(rpcTx.last_failed_id_hash)) tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), false));
+    else {
+      tx.setIsFailed(GenUtils.reconcile(tx.isFailed(), true));
+      tx.setLastFailedHash(rpcTx.last_failed_id_hash);
+    }
+    parseTxHex(tx);
+    return initRpcTx(tx, null);
+  }
+  
+  /**
+   * Populates a tx with the fields parsed from its full or pruned hex.
+   * 
+   * @param tx is the tx whose hex to parse
+   */
+  private static void parseTxHex(MoneroTx tx) {
+    boolean isPruned = tx.getFullHex() == null;
+    String hex = isPruned ? tx.getPrunedHex() : tx.getFullHex();
+    if (hex != null) MoneroBlobParser.parseTx(ByteBuffer.wrap(MoneroBlobParser.hexToBytes(hex)), tx, isPruned);
+  }
+  
+  /**
+   * Links a converted tx to its block and initializes its remaining fields.
+   * 
+   * @param tx is the tx to initialize
+   * @param block is the block containing the tx (optional)
+   * @return tx is the same tx that was passed in
+   */
+  private static MoneroTx initRpcTx(MoneroTx tx, MoneroBlock block) {
     
     // link block and tx
     if (block != null) tx.setBlock(block.setTxs(Arrays.asList(tx)));
@@ -1178,36 +1850,12 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
         tx.getOutputs().get(i).setIndex(tx.getOutputIndices().get(i));  // transfer output indices to outputs
       }
     }
-    if (rpcTx.containsKey("as_json") && !"".equals(rpcTx.get("as_json"))) convertRpcTx(JsonUtils.deserialize(MoneroRpcConnection.MAPPER, (String) rpcTx.get("as_json"), new TypeReference<Map<String, Object>>(){}), tx);
-    if (rpcTx.containsKey("tx_json") && !"".equals(rpcTx.get("tx_json"))) convertRpcTx(JsonUtils.deserialize(MoneroRpcConnection.MAPPER, (String) rpcTx.get("tx_json"), new TypeReference<Map<String, Object>>(){}), tx);
     if (!Boolean.TRUE.equals(tx.isRelayed())) tx.setLastRelayedTimestamp(null);  // TODO monero-daemon-rpc: returns last_relayed_timestamp despite relayed: false, self inconsistent
     
     // return built transaction
     return tx;
   }
   
-  @SuppressWarnings("unchecked")
-  private static MoneroOutput convertRpcOutput(Map<String, Object> rpcOutput, MoneroTx tx) {
-    MoneroOutput output = new MoneroOutput();
-    output.setTx(tx);
-    for (String key : rpcOutput.keySet()) {
-      Object val = rpcOutput.get(key);
-      if (key.equals("gen")) throw new Error("Output with 'gen' from daemon rpc is miner tx which we ignore (i.e. each miner input is null)");
-      else if (key.equals("key")) {
-        Map<String, Object> rpcKey = (Map<String, Object>) val;
-        output.setAmount(GenUtils.reconcile(output.getAmount(), (BigInteger) rpcKey.get("amount")));
-        output.setKeyImage(GenUtils.reconcile(output.getKeyImage(), new MoneroKeyImage((String) rpcKey.get("k_image"))));
-        List<Integer> ringOutputIndices = new ArrayList<Integer>();
-        for (BigInteger bi : (List<BigInteger>) rpcKey.get("key_offsets")) ringOutputIndices.add(bi.intValue());
-        output.setRingOutputIndices(GenUtils.reconcile(output.getRingOutputIndices(), ringOutputIndices));
-      }
-      else if (key.equals("amount")) output.setAmount(GenUtils.reconcile(output.getAmount(), (BigInteger) val));
-      else if (key.equals("target")) output.setStealthPublicKey(GenUtils.reconcile(output.getStealthPublicKey(), (String) ((Map<String, Object>) val).get("key")));
-      else LOGGER.warning("WARNING: ignoring unexpected field output: " + key + ": " + val);
-    }
-    return output;
-  }
-  
   private static MoneroDaemonUpdateCheckResult convertRpcUpdateCheckResult(Map<String, Object> rpcResult) {
     MoneroDaemonUpdateCheckResult result = new MoneroDaemonUpdateCheckResult();
     for (String key : rpcResult.keySet()) {
@@ -1336,6 +1984,40 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return entry;
   }
   
+  /**
+   * Convert an output distribution from get_output_distribution.bin, whose
+   * distribution is compressed as varints, a blob of little endian uint64s,
+   * or a list if not binary.
+   */
+  @SuppressWarnings("unchecked")
+  private static MoneroOutputDistributionEntry convertRpcOutputDistributionEntry(Map<String, Object> rpcEntry) {
+    MoneroOutputDistributionEntry entry = new MoneroOutputDistributionEntry();
+    for (String key : rpcEntry.keySet()) {
+      Object val = rpcEntry.get(key);
+      if (key.equals("amount")) entry.setAmount(toUnsignedBI(((Number) val).longValue()));
+      else if (key.equals("base")) entry.setBase(((Number) val).longValue());
+      else if (key.equals("start_height")) entry.setStartHeight(((Number) val).longValue());
+      else if (key.equals("compressed_data")) entry.setDistribution(MoneroBlobParser.parseVarints((byte[]) val));
+      else if (key.equals("distribution")) {
+        if (val instanceof byte[]) {
+          LongBuffer buf = ByteBuffer.wrap((byte[]) val).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+          long[] distribution = new long[buf.remaining()];
+          buf.get(distribution);
+          entry.setDistribution(distribution);
+        } else {
+          List<Object> rpcDistribution = (List<Object>) val;
+          long[] distribution = new long[rpcDistribution.size()];
+          for (int i = 0; i < distribution.length; i++) distribution[i] = ((Number) rpcDistribution.get(i)).longValue();
+          entry.setDistribution(distribution);
+        }
+      }
+      else if (key.equals("binary") || key.equals("compress")) { }
+      else LOGGER.warning("WARNING: ignoring unexpected field in output distribution: " + key + ": " + val);
+    }
+    if (entry.getDistribution() == null) entry.setDistribution(new long[0]);
+    return entry;
+  }
+  
   private static MoneroDaemonInfo convertRpcInfo(Map<String, Object> rpcInfo) {
     if (rpcInfo == null) return null;
     MoneroDaemonInfo info = new MoneroDaemonInfo();
@@ -1516,19 +2198,287 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     return new BigInteger(hex.substring(2), 16);
   }
   
+  /**
+   * Converts a get_transactions response to transactions while it is read from
+   * the connection so only one decoded transaction is held at a time.
+   */
+  private static class TxsResponseHandler implements MoneroRpcResponseHandler<List<MoneroTx>> {
+    
+    @Override
+    public List<MoneroTx> handle(JsonParser parser) throws IOException {
+      String status = null;
+      List<MoneroTx> txs = new ArrayList<MoneroTx>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken token = parser.nextToken();
+        if (field.equals("txs") && token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            MoneroTx tx = new MoneroTx();
+            tx.setIsMinerTx(false);
+            txs.add(convertRpcTx(MoneroRpcConnection.MAPPER.readValue(parser, RpcTx.class), tx));
+          }
+        }
+        else if (field.equals("status")) status = parser.getValueAsString();
+        else parser.skipChildren();  // txs_as_hex and missed_tx are not used
+      }
+      checkTxsResponseStatus(status);
+      return txs;
+    }
+  }
+  
+  /**
+   * Requests chunks of blocks ahead of the chunk consumed, up to a maximum
+   * number of chunks and bytes in flight, and returns them in height order.
+   */
+  private class BlockChunkIterator implements Iterator<List<MoneroBlock>> {
+    
+    private long nextHeight; // next height to request
+    private long endHeight;
+    private MoneroBlockFetchConfig config;
+    private Deque<BlockChunk> chunks; // chunks requested but not consumed in height order
+    private long bufferedBytes;
+    private List<Long> nextHeights; // heights of the next chunk if sized but not requested
+    private long nextChunkEndHeight;
+    private long nextChunkSize;
+    
+    private BlockChunkIterator(long startHeight, long endHeight, MoneroBlockFetchConfig config) {
+      this.nextHeight = startHeight;
+      this.endHeight = endHeight;
+      this.config = config == null ? new MoneroBlockFetchConfig() : config;
+      this.chunks = new ArrayDeque<BlockChunk>();
+    }
+    
+    @Override
+    public boolean hasNext() {
+      requestChunks();
+      return !chunks.isEmpty();
+    }
+    
+    @Override
+    public List<MoneroBlock> next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      BlockChunk chunk = chunks.poll();
+      List<MoneroBlock> blocks;
+      try {
+        blocks = chunk.blocks.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof MoneroError) throw (MoneroError) e.getCause();
+        throw new MoneroError(e.getCause());
+      } finally {
+        bufferedBytes -= chunk.size;
+      }
+      requestChunks(); // keep chunks in flight while the caller processes this chunk
+      return blocks;
+    }
+    
+    private void requestChunks() {
+      while (nextHeight <= endHeight && chunks.size() < config.getMaxChunksInFlight()) {
+        
+        // size next chunk from cached headers unless sized when it last exceeded the buffered bytes
+        if (nextHeights == null) sizeNextChunk();
+        
+        // request chunk unless it would exceed the buffered bytes
+        if (!chunks.isEmpty() && bufferedBytes + nextChunkSize > config.getMaxBufferedBytes()) return;
+        chunks.add(new BlockChunk(getBlocksByHeightAsync(nextHeights, config.getExecutor()), nextChunkSize));
+        bufferedBytes += nextChunkSize;
+        nextHeight = nextChunkEndHeight + 1;
+        nextHeights = null;
+      }
+    }
+    
+    private void sizeNextChunk() {
+      List<MoneroBlockHeader> headers = new ArrayList<MoneroBlockHeader>();
+      nextChunkEndHeight = getChunkEndHeight(nextHeight, endHeight, config.getMaxChunkSize(), headers);
+      nextChunkSize = 0;
+      nextHeights = new ArrayList<Long>(headers.size());
+      for (MoneroBlockHeader header : headers) {
+        nextChunkSize += header.getSize();
+        nextHeights.add(header.getHeight());
+      }
+    }
+  }
+  
+  private static class BlockChunk {
+    
+    private final CompletableFuture<List<MoneroBlock>> blocks;
+    private final long size;
+    
+    private BlockChunk(CompletableFuture<List<MoneroBlock>> blocks, long size) {
+      this.blocks = blocks;
+      this.size = size;
+    }
+  }
+  
+  /**
+   * Requests each chunk of block hashes when the previous chunk is consumed.
+   */
+  private class BlockHashesIterator implements Iterator<MoneroBlockHashes> {
+    
+    private List<String> blockHashes;
+    private Long startHeight;
+    private MoneroBlockHashes last; // last chunk returned
+    private MoneroBlockHashes next; // next chunk if fetched
+    private boolean isDone;
+    
+    private BlockHashesIterator(List<String> blockHashes, Long startHeight) {
+      this.blockHashes = blockHashes;
+      this.startHeight = startHeight;
+    }
+    
+    @Override
+    public boolean hasNext() {
+      if (next == null && !isDone) next = fetchNext();
+      return next != null;
+    }
+    
+    @Override
+    public MoneroBlockHashes next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      last = next;
+      next = null;
+      return last;
+    }
+    
+    private MoneroBlockHashes fetchNext() {
+      
+      // request hashes from the given chain or from the last hash fetched
+      MoneroBlockHashes hashes;
+      if (last == null) hashes = getBlockHashesBinary(blockHashes, startHeight);
+      else {
+        int lastIdx = last.getNumHashes() - 1;
+        List<String> chain = new ArrayList<String>(blockHashes.size() + 1);
+        chain.add(last.getHash(lastIdx));
+        chain.addAll(blockHashes);
+        hashes = getBlockHashesBinary(chain, null);
+        
+        // remove last hash fetched which the daemon returns again
+        if (hashes.getStartHeight() == last.getEndHeight() - 1 && hashes.getNumHashes() > 0 && hashes.isHash(0, last.getHashBytes(lastIdx))) {
+          hashes.setStartHeight(hashes.getStartHeight() + 1);
+          hashes.setHashes(Arrays.copyOfRange(hashes.getHashes(), MoneroBlockHashes.HASH_SIZE, hashes.getHashes().length));
+        }
+      }
+      isDone = hashes.getNumHashes() == 0 || hashes.getEndHeight() >= hashes.getCurrentHeight();
+      return hashes.getNumHashes() == 0 ? null : hashes;
+    }
+  }
+  
+  // ----------------------------- RPC RESPONSE TYPES -------------------------
+  
+  // fields are named after the RPC fields they bind; amounts are BigIntegers
+  // like elsewhere since they can exceed a signed long
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcBlockHeader {
+    public long block_size;
+    public long block_weight;
+    public long depth;
+    public String hash;
+    public long height;
+    public long long_term_weight;
+    public int major_version;
+    public String miner_tx_hash;
+    public int minor_version;
+    public long nonce;
+    public int num_txes;
+    public boolean orphan_status;
+    public String pow_hash;
+    public String prev_hash;
+    public BigInteger reward;
+    public long timestamp;
+    public String wide_cumulative_difficulty;
+    public String wide_difficulty;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcBlockHeaderResult {
+    public String status;
+    public RpcBlockHeader block_header;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcBlockHeadersResult {
+    public String status;
+    public List<RpcBlockHeader> headers;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcBlockResult {
+    public String blob;
+    public RpcBlockHeader block_header;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcTx {
+    public String as_hex;
+    public BigInteger block_height;     // max uint64 if in pool
+    public BigInteger block_timestamp;  // max uint64 if in pool
+    public boolean double_spend_seen;
+    public boolean in_pool;
+    public List<Integer> output_indices;
+    public String prunable_as_hex;
+    public String prunable_hash;
+    public String pruned_as_hex;
+    public Long received_timestamp;
+    public Boolean relayed;
+    public String tx_hash;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcPoolTx {
+    public long blob_size;
+    public boolean do_not_relay;
+    public boolean double_spend_seen;
+    public BigInteger fee;
+    public String id_hash;
+    public boolean kept_by_block;
+    public long last_failed_height;
+    public String last_failed_id_hash;
+    public long last_relayed_time;
+    public long max_used_block_height;
+    public String max_used_block_id_hash;
+    public long receive_time;
+    public boolean relayed;
+    public String tx_blob;
+    public long weight;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcTxPoolResult {
+    public String status;
+    public List<RpcPoolTx> transactions;
+  }
+  
   /**
    * Polls a Monero daemon for updates and notifies listeners as they occur.
+   * 
+   * The chain is followed with a chain tracker so listeners are notified of
+   * every block added between polls and of reorgs, which also invalidate the
+   * cached headers and outputs and stored blocks from the fork height.
    */
   private class MoneroDaemonPoller {
     
-    private MoneroDaemon daemon;
+    private MoneroChainTracker tracker;
     private MoneroDaemonPollerRunnable runnable;
     private List<MoneroDaemonListener> listeners;
     private static final long POLL_INTERVAL_MS = 10000; // poll every X ms  TODO: poll interval should come from configuration
     
     public MoneroDaemonPoller(MoneroDaemon daemon) {
-      this.daemon = daemon;
-      this.listeners = new ArrayList<MoneroDaemonListener>();
+      this.listeners = new CopyOnWriteArrayList<MoneroDaemonListener>();
+      this.tracker = new MoneroChainTracker(daemon);
+      tracker.addListener(new MoneroDaemonListener() {
+        @Override
+        public void onBlockHeader(MoneroBlockHeader header) {
+          for (MoneroDaemonListener listener : listeners) listener.onBlockHeader(header);
+        }
+        @Override
+        public void onReorg(long forkHeight, List<MoneroBlockHeader> detached, List<MoneroBlockHeader> attached) {
+          headerCache.invalidate(forkHeight);
+          outputCache.invalidate(forkHeight);
+          MoneroBlockStore store = blockStore;
+          if (store != null) store.truncate(forkHeight);
+          for (MoneroDaemonListener listener : listeners) listener.onReorg(forkHeight, detached, attached);
+        }
+      });
     }
 
     public void addListener(MoneroDaemonListener listener) {
@@ -1538,7 +2488,7 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
       
       // start polling thread
       if (runnable == null) {
-        runnable = new MoneroDaemonPollerRunnable(daemon, POLL_INTERVAL_MS);
+        runnable = new MoneroDaemonPollerRunnable(tracker, POLL_INTERVAL_MS);
         Thread thread = new Thread(runnable);
         thread.setDaemon(true); // daemon thread does not prevent JVM from halting
         thread.start();
@@ -1556,12 +2506,12 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
     
     private class MoneroDaemonPollerRunnable implements Runnable {
       
-      private MoneroDaemon daemon;
+      private MoneroChainTracker tracker;
       private long interval;
-      private boolean isTerminated;
+      private volatile boolean isTerminated;
       
-      public MoneroDaemonPollerRunnable(MoneroDaemon daemon, long interval) {
-        this.daemon = daemon;
+      public MoneroDaemonPollerRunnable(MoneroChainTracker tracker, long interval) {
+        this.tracker = tracker;
         this.interval = interval;
         this.isTerminated = false;
       }
@@ -1569,8 +2519,13 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
       @Override
       public void run() {
         
-        // get header to detect changes while polling
-        MoneroBlockHeader lastHeader = daemon.getLastBlockHeader();
+        // track chain from current tip to detect changes while polling, truncating stored blocks reorganized while not polling
+        synchronized (tracker) {
+          tracker.clear();
+          MoneroBlockStore store = blockStore;
+          if (store != null) verifyBlockStore(store);
+          tracker.refresh();
+        }
         
         // poll until stopped
         while (!isTerminated) {
@@ -1583,14 +2538,8 @@ public class MoneroDaemonRpc extends MoneroDaemonDefault {
             terminate();
           }
           
-          // fetch and compare latest block header
-          MoneroBlockHeader header = daemon.getLastBlockHeader();
-          if (!header.getHash().equals(lastHeader.getHash())) {
-            lastHeader = header;
-            for (MoneroDaemonListener listener : listeners) {
-              listener.onBlockHeader(header); // notify listener
-            }
-          }
+          // fetch new headers and notify listeners
+          if (!isTerminated) tracker.refresh();
         }
       }
       
@@ -0,0 +1,121 @@
+package monero.daemon;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the data of outputs by amount and global index.
+ *
+ * An output's key, commitment, height, and transaction do not change once it
+ * is unlocked unless its block is reorganized, so only unlocked outputs are
+ * cached and outputs are removed from the height of a reorg.  Entries hold the raw
+ * 32-byte values and are converted to new MoneroOutputs on each hit, so
+ * callers cannot modify cached data.  The least recently used outputs are
+ * evicted beyond the maximum size.
+ */
+class MoneroOutputCache {
+
+  private int maxSize;
+  private LinkedHashMap<Key, Entry> entries;
+
+  MoneroOutputCache(int maxSize) {
+    setMaxSize(maxSize);
+  }
+
+  synchronized void setMaxSize(int maxSize) {
+    if (maxSize < 0) throw new IllegalArgumentException("Max size must be >= 0: " + maxSize);
+    this.maxSize = maxSize;
+    LinkedHashMap<Key, Entry> resized = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, MoneroOutputCache.Entry> eldest) {
+        return size() > MoneroOutputCache.this.maxSize;
+      }
+    };
+    if (entries != null) resized.putAll(entries);
+    entries = resized;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Remove cached outputs at and above a height, e.g. when the chain is
+   * reorganized from that height.
+   *
+   * @param fromHeight is the height to remove outputs from
+   */
+  synchronized void invalidate(long fromHeight) {
+    entries.values().removeIf(entry -> entry.height >= fromHeight);
+  }
+
+  /**
+   * Get cached outputs.
+   *
+   * @param amounts are the amounts of the outputs as unsigned longs
+   * @param indices are the global indices of the outputs
+   * @param cached receives each cached output at its index or null if not cached
+   * @return the number of outputs not cached
+   */
+  synchronized int getAll(long[] amounts, long[] indices, Entry[] cached) {
+    int numMisses = 0;
+    for (int i = 0; i < amounts.length; i++) {
+      cached[i] = maxSize == 0 ? null : entries.get(new Key(amounts[i], indices[i]));
+      if (cached[i] == null) numMisses++;
+    }
+    return numMisses;
+  }
+
+  synchronized void put(long amount, long index, Entry entry) {
+    if (maxSize > 0) entries.put(new Key(amount, index), entry);
+  }
+
+  /**
+   * Identifies an output by amount and global index.
+   */
+  private static class Key {
+
+    private final long amount;
+    private final long index;
+
+    private Key(long amount, long index) {
+      this.amount = amount;
+      this.index = index;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(amount) * 31 + Long.hashCode(index);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) return false;
+      Key other = (Key) obj;
+      return amount == other.amount && index == other.index;
+    }
+  }
+
+  /**
+   * The data of an unlocked output.
+   */
+  static class Entry {
+
+    final byte[] key;
+    final byte[] mask;
+    final byte[] txHash; // null if not requested
+    final long height;
+
+    Entry(byte[] key, byte[] mask, byte[] txHash, long height) {
+      this.key = key;
+      this.mask = mask;
+      this.txHash = txHash;
+      this.height = height;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package monero.daemon.model;
+
+import java.util.concurrent.Executor;
+
+import monero.common.MoneroError;
+
+/**
+ * Configures fetching a range of blocks as chunked requests which are
+ * pipelined, so the next chunks are requested while earlier chunks are
+ * converted and consumed.
+ *
+ * Chunk sizes are the sums of the blocks' sizes from their headers.
+ */
+public class MoneroBlockFetchConfig {
+
+  // default configuration
+  public static final long DEFAULT_MAX_CHUNK_SIZE = 3000000;
+  public static final int DEFAULT_MAX_CHUNKS_IN_FLIGHT = 4;
+  public static final long DEFAULT_MAX_BUFFERED_BYTES = 32000000;
+
+  private long maxChunkSize;
+  private int maxChunksInFlight;
+  private long maxBufferedBytes;
+  private Executor executor;
+
+  public MoneroBlockFetchConfig() {
+    this.maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+    this.maxChunksInFlight = DEFAULT_MAX_CHUNKS_IN_FLIGHT;
+    this.maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+  }
+
+  public long getMaxChunkSize() {
+    return maxChunkSize;
+  }
+
+  /**
+   * Set the maximum size of blocks in any one request.
+   *
+   * @param maxChunkSize is the maximum chunk size in bytes (default 3,000,000)
+   * @return this config for chaining
+   */
+  public MoneroBlockFetchConfig setMaxChunkSize(long maxChunkSize) {
+    if (maxChunkSize <= 0) throw new MoneroError("Max chunk size must be greater than 0");
+    this.maxChunkSize = maxChunkSize;
+    return this;
+  }
+
+  public int getMaxChunksInFlight() {
+    return maxChunksInFlight;
+  }
+
+  /**
+   * Set the maximum number of chunks requested but not yet consumed, which
+   * is 1 to request each chunk after the previous is consumed.
+   *
+   * @param maxChunksInFlight is the maximum number of chunks in flight (default 4)
+   * @return this config for chaining
+   */
+  public MoneroBlockFetchConfig setMaxChunksInFlight(int maxChunksInFlight) {
+    if (maxChunksInFlight <= 0) throw new MoneroError("Max chunks in flight must be greater than 0");
+    this.maxChunksInFlight = maxChunksInFlight;
+    return this;
+  }
+
+  public long getMaxBufferedBytes() {
+    return maxBufferedBytes;
+  }
+
+  /**
+   * Set the maximum size of blocks requested but not yet consumed.  One
+   * chunk is always requested regardless.
+   *
+   * @param maxBufferedBytes is the maximum number of bytes in flight (default 32,000,000)
+   * @return this config for chaining
+   */
+  public MoneroBlockFetchConfig setMaxBufferedBytes(long maxBufferedBytes) {
+    if (maxBufferedBytes <= 0) throw new MoneroError("Max buffered bytes must be greater than 0");
+    this.maxBufferedBytes = maxBufferedBytes;
+    return this;
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Set the executor to convert responses to blocks on.
+   *
+   * @param executor converts responses or null to convert on the thread which receives them (default)
+   * @return this config for chaining
+   */
+  public MoneroBlockFetchConfig setExecutor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+}
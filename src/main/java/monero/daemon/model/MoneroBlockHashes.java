@@ -0,0 +1,112 @@
+package monero.daemon.model;
+
+import java.util.Arrays;
+
+/**
+ * Consecutive block hashes of the daemon's chain, stored as one array of
+ * 32-byte hashes instead of a hex string per hash.
+ */
+public class MoneroBlockHashes {
+
+  public static final int HASH_SIZE = 32;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private long startHeight;
+  private long currentHeight;
+  private byte[] hashes;
+
+  /**
+   * Get the height of the first hash.
+   *
+   * @return the height of the first hash
+   */
+  public long getStartHeight() {
+    return startHeight;
+  }
+
+  public void setStartHeight(long startHeight) {
+    this.startHeight = startHeight;
+  }
+
+  /**
+   * Get the daemon's height when the hashes were fetched.
+   *
+   * @return the daemon's height
+   */
+  public long getCurrentHeight() {
+    return currentHeight;
+  }
+
+  public void setCurrentHeight(long currentHeight) {
+    this.currentHeight = currentHeight;
+  }
+
+  /**
+   * Get the hashes, which are concatenated 32-byte hashes.
+   *
+   * @return the hashes
+   */
+  public byte[] getHashes() {
+    return hashes;
+  }
+
+  public void setHashes(byte[] hashes) {
+    if (hashes.length % HASH_SIZE != 0) throw new IllegalArgumentException("Hashes length is not a multiple of " + HASH_SIZE + ": " + hashes.length);
+    this.hashes = hashes;
+  }
+
+  public int getNumHashes() {
+    return hashes.length / HASH_SIZE;
+  }
+
+  /**
+   * Get the height after the last hash.
+   *
+   * @return the start height plus the number of hashes
+   */
+  public long getEndHeight() {
+    return startHeight + getNumHashes();
+  }
+
+  /**
+   * Get a hash as hex.
+   *
+   * @param index is the index of the hash, whose height is the start height plus the index
+   * @return the hash as hex
+   */
+  public String getHash(int index) {
+    char[] hex = new char[HASH_SIZE * 2];
+    for (int i = 0; i < HASH_SIZE; i++) {
+      int b = hashes[index * HASH_SIZE + i] & 0xff;
+      hex[i * 2] = HEX_DIGITS[b >>> 4];
+      hex[i * 2 + 1] = HEX_DIGITS[b & 0xf];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Get a hash as bytes.
+   *
+   * @param index is the index of the hash, whose height is the start height plus the index
+   * @return a copy of the hash's 32 bytes
+   */
+  public byte[] getHashBytes(int index) {
+    return Arrays.copyOfRange(hashes, index * HASH_SIZE, (index + 1) * HASH_SIZE);
+  }
+
+  /**
+   * Indicates if a hash equals the given hash without copying it.
+   *
+   * @param index is the index of the hash
+   * @param hash is the 32-byte hash to compare to
+   * @return true if the hashes are equal, false otherwise
+   */
+  public boolean isHash(int index, byte[] hash) {
+    if (hash.length != HASH_SIZE) return false;
+    int offset = index * HASH_SIZE;
+    for (int i = 0; i < HASH_SIZE; i++) {
+      if (hashes[offset + i] != hash[i]) return false;
+    }
+    return true;
+  }
+}
@@ -1,5 +1,7 @@
 package monero.daemon.model;
 
+import java.util.List;
+
 /**
  * Receives notifications as a daemon is updated.
  */
@@ -16,6 +18,16 @@ public class MoneroDaemonListener {
     lastHeader = header;
   }
   
+  /**
+   * Called when blocks are removed from the chain and replaced, before
+   * onBlockHeader() is called for each attached block.
+   * 
+   * @param forkHeight is the height of the first block removed from the chain
+   * @param detached are the headers of the blocks removed from the chain in ascending height
+   * @param attached are the headers of the blocks which replaced them in ascending height
+   */
+  public void onReorg(long forkHeight, List<MoneroBlockHeader> detached, List<MoneroBlockHeader> attached) { }
+  
   /**
    * Get the last notified block header.
    * 
@@ -1,7 +1,6 @@
 package monero.daemon.model;
 
 import java.math.BigInteger;
-import java.util.List;
 
 /**
  * Monero output distribution entry.
@@ -9,8 +8,8 @@ import java.util.List;
 public class MoneroOutputDistributionEntry {
 
   private BigInteger amount;
-  private Integer base;
-  private List<Integer> distribution;
+  private Long base;
+  private long[] distribution;
   private Long startHeight;
   
   public BigInteger getAmount() {
@@ -21,19 +20,25 @@ public class MoneroOutputDistributionEntry {
     this.amount = amount;
   }
   
-  public Integer getBase() {
+  public Long getBase() {
     return base;
   }
   
-  public void setBase(Integer base) {
+  public void setBase(Long base) {
     this.base = base;
   }
   
-  public List<Integer> getDistribution() {
+  /**
+   * Get the number of outputs per block starting at the start height, or
+   * the number of outputs up to and including each block if cumulative.
+   * 
+   * @return the output counts indexed by height minus the start height
+   */
+  public long[] getDistribution() {
     return distribution;
   }
   
-  public void setDistribution(List<Integer> distribution) {
+  public void setDistribution(long[] distribution) {
     this.distribution = distribution;
   }
   
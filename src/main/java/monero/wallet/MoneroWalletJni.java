@@ -38,6 +38,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 import common.utils.GenUtils;
 import common.utils.JsonUtils;
+import monero.common.MoneroConnectionManager;
+import monero.common.MoneroConnectionManagerListener;
 import monero.common.MoneroError;
 import monero.common.MoneroRpcConnection;
 import monero.daemon.model.MoneroBlock;
@@ -90,6 +92,8 @@ public class MoneroWalletJni extends MoneroWalletBase {
   private WalletJniListener jniListener;        // receives notifications from jni c++
   private Set<MoneroWalletListenerI> listeners; // externally subscribed wallet listeners
   private boolean isClosed;                     // whether or not wallet is closed
+  private MoneroConnectionManager daemonConnectionManager;            // selects the daemon connection if given
+  private MoneroConnectionManagerListener daemonConnectionListener;  // follows the manager's selected connection
   
   /**
    * Private constructor with a handle to the memory address of the wallet in c++.
@@ -459,8 +463,40 @@ public class MoneroWalletJni extends MoneroWalletBase {
     return isViewOnlyJni();
   }
   
+  /**
+   * Set the wallet's daemon connection.
+   * 
+   * If the connection is a MoneroConnectionManager, the wallet connects to
+   * the manager's selected connection and switches as the selection changes.
+   * 
+   * @param daemonConnection is the daemon connection or manager to use
+   */
   public void setDaemonConnection(MoneroRpcConnection daemonConnection) {
     assertNotClosed();
+    
+    // stop following previous connection manager
+    if (daemonConnectionManager != null) {
+      daemonConnectionManager.removeListener(daemonConnectionListener);
+      daemonConnectionManager = null;
+      daemonConnectionListener = null;
+    }
+    
+    // follow connection manager's selected connection
+    if (daemonConnection instanceof MoneroConnectionManager) {
+      daemonConnectionManager = (MoneroConnectionManager) daemonConnection;
+      daemonConnectionListener = new MoneroConnectionManagerListener() {
+        @Override
+        public void onConnectionChanged(MoneroRpcConnection connection) {
+          if (!isClosed) setDaemonConnectionAux(connection);
+        }
+      };
+      daemonConnectionManager.addListener(daemonConnectionListener);
+      daemonConnection = daemonConnectionManager.getConnection();
+    }
+    setDaemonConnectionAux(daemonConnection);
+  }
+  
+  private void setDaemonConnectionAux(MoneroRpcConnection daemonConnection) {
     if (daemonConnection == null) setDaemonConnectionJni("", "", "");
     else {
       try {
@@ -1361,6 +1397,7 @@ public class MoneroWalletJni extends MoneroWalletBase {
     if (isClosed) return; // closing a closed wallet has no effect
     isClosed = true;
     setIsListening(false);
+    if (daemonConnectionManager != null) daemonConnectionManager.removeListener(daemonConnectionListener);
     try {
       closeJni(save);
     } catch (Exception e) {
@@ -22,6 +22,7 @@ x * Copyright (c) 2017-2020 woodser
 
 package monero.wallet;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URI;
 import java.util.ArrayList;
@@ -35,12 +36,19 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import common.utils.GenUtils;
 import monero.common.MoneroError;
 import monero.common.MoneroRpcConnection;
 import monero.common.MoneroRpcError;
+import monero.common.MoneroRpcRequest;
+import monero.common.MoneroRpcResponseHandler;
 import monero.common.MoneroUtils;
 import monero.common.SslOptions;
 import monero.daemon.model.MoneroBlock;
@@ -539,6 +547,20 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     Map<String, Object> result = (Map<String, Object>) resp.get("result");
     return ((BigInteger) result.get("height")).longValue();
   }
+  
+  /**
+   * Get the height of the last block processed by the wallet without blocking
+   * the calling thread.
+   * 
+   * @return a future which completes with the wallet's height
+   */
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<Long> getHeightAsync() {
+    return rpc.sendJsonRequestAsync("get_height").thenApply(resp -> {
+      Map<String, Object> result = (Map<String, Object>) resp.get("result");
+      return ((BigInteger) result.get("height")).longValue();
+    });
+  }
 
   @Override
   public long getDaemonHeight() {
@@ -605,6 +627,48 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     return getBalances(accountIdx, subaddressIdx)[1];
   }
   
+  /**
+   * Get an account's balance without blocking the calling thread.
+   * 
+   * @param accountIdx is the index of the account to get the balance of
+   * @return a future which completes with the account's balance
+   */
+  public CompletableFuture<BigInteger> getBalanceAsync(int accountIdx) {
+    return getBalancesAsync(accountIdx, null).thenApply(balances -> balances[0]);
+  }
+  
+  /**
+   * Get a subaddress's balance without blocking the calling thread.
+   * 
+   * @param accountIdx is the index of the subaddress's account
+   * @param subaddressIdx is the index of the subaddress
+   * @return a future which completes with the subaddress's balance
+   */
+  public CompletableFuture<BigInteger> getBalanceAsync(int accountIdx, int subaddressIdx) {
+    return getBalancesAsync(accountIdx, subaddressIdx).thenApply(balances -> balances[0]);
+  }
+  
+  /**
+   * Get an account's unlocked balance without blocking the calling thread.
+   * 
+   * @param accountIdx is the index of the account to get the unlocked balance of
+   * @return a future which completes with the account's unlocked balance
+   */
+  public CompletableFuture<BigInteger> getUnlockedBalanceAsync(int accountIdx) {
+    return getBalancesAsync(accountIdx, null).thenApply(balances -> balances[1]);
+  }
+  
+  /**
+   * Get a subaddress's unlocked balance without blocking the calling thread.
+   * 
+   * @param accountIdx is the index of the subaddress's account
+   * @param subaddressIdx is the index of the subaddress
+   * @return a future which completes with the subaddress's unlocked balance
+   */
+  public CompletableFuture<BigInteger> getUnlockedBalanceAsync(int accountIdx, int subaddressIdx) {
+    return getBalancesAsync(accountIdx, subaddressIdx).thenApply(balances -> balances[1]);
+  }
+  
   @Override
   public List<MoneroAccount> getAccounts(boolean includeSubaddresses, String tag) {
     return getAccounts(includeSubaddresses, tag, false);
@@ -619,13 +683,25 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     Map<String, Object> resp = rpc.sendJsonRequest("get_accounts", params);
     Map<String, Object> result = (Map<String, Object>) resp.get("result");
     
-    // build account objects and fetch subaddresses per account using get_address
-    // TODO monero-wallet-rpc: get_address should support all_accounts so not called once per account
+    // build account objects
     List<MoneroAccount> accounts = new ArrayList<MoneroAccount>();
     for (Map<String, Object> rpcAccount : (List<Map<String, Object>>) result.get("subaddress_accounts")) {
-      MoneroAccount account = convertRpcAccount(rpcAccount);
-      if (includeSubaddresses) account.setSubaddresses(getSubaddresses(account.getIndex(), null, true));
-      accounts.add(account);
+      accounts.add(convertRpcAccount(rpcAccount));
+    }
+    
+    // fetch subaddresses of all accounts in one batch using get_address
+    // TODO monero-wallet-rpc: get_address should support all_accounts so not called once per account
+    if (includeSubaddresses) {
+      List<MoneroRpcRequest> requests = new ArrayList<MoneroRpcRequest>();
+      for (MoneroAccount account : accounts) {
+        Map<String, Object> addressParams = new HashMap<String, Object>();
+        addressParams.put("account_index", account.getIndex());
+        requests.add(new MoneroRpcRequest("get_address", addressParams));
+      }
+      List<Map<String, Object>> results = sendJsonRequests(requests);
+      for (int i = 0; i < accounts.size(); i++) {
+        accounts.get(i).setSubaddresses(convertRpcAddresses(accounts.get(i).getIndex(), results.get(i)));
+      }
     }
     
     // fetch and merge fields from get_balance across all accounts
@@ -644,11 +720,10 @@ public class MoneroWalletRpc extends MoneroWalletBase {
       // fetch and merge info from get_balance
       params.clear();
       params.put("all_accounts", true);
-      resp = rpc.sendJsonRequest("get_balance", params);
-      result = (Map<String, Object>) resp.get("result");
-      if (result.containsKey("per_subaddress")) {
-        for (Map<String, Object> rpcSubaddress : (List<Map<String, Object>>) result.get("per_subaddress")) {
-          MoneroSubaddress subaddress = convertRpcSubaddress(rpcSubaddress);
+      RpcBalanceResult balanceResult = rpc.sendJsonRequest("get_balance", params, RpcBalanceResult.class);
+      if (balanceResult.per_subaddress != null) {
+        for (RpcSubaddressBalance rpcSubaddress : balanceResult.per_subaddress) {
+          MoneroSubaddress subaddress = convertRpcSubaddressBalance(rpcSubaddress);
           
           // merge info
           MoneroAccount account = accounts.get(subaddress.getAccountIndex());
@@ -711,12 +786,7 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     Map<String, Object> result = (Map<String, Object>) resp.get("result");
     
     // initialize subaddresses
-    List<MoneroSubaddress> subaddresses = new ArrayList<MoneroSubaddress>();
-    for (Map<String, Object> rpcSubaddress : (List<Map<String, Object>>) result.get("addresses")) {
-      MoneroSubaddress subaddress = convertRpcSubaddress(rpcSubaddress);
-      subaddress.setAccountIndex(accountIdx);
-      subaddresses.add(subaddress);
-    }
+    List<MoneroSubaddress> subaddresses = convertRpcAddresses(accountIdx, result);
     
     // fetch and initialize subaddress balances
     if (!skipBalances) {
@@ -730,11 +800,10 @@ public class MoneroWalletRpc extends MoneroWalletBase {
       }
 
       // fetch and initialize balances
-      resp = rpc.sendJsonRequest("get_balance", params);
-      result = (Map<String, Object>) resp.get("result");
-      if (result.containsKey("per_subaddress")) {
-        for (Map<String, Object> rpcSubaddress : (List<Map<String, Object>>) result.get("per_subaddress")) {
-          MoneroSubaddress subaddress = convertRpcSubaddress(rpcSubaddress);
+      RpcBalanceResult balanceResult = rpc.sendJsonRequest("get_balance", params, RpcBalanceResult.class);
+      if (balanceResult.per_subaddress != null) {
+        for (RpcSubaddressBalance rpcSubaddress : balanceResult.per_subaddress) {
+          MoneroSubaddress subaddress = convertRpcSubaddressBalance(rpcSubaddress);
           
           // transfer info to existing subaddress object
           for (MoneroSubaddress tgtSubaddress : subaddresses) {
@@ -748,16 +817,6 @@ public class MoneroWalletRpc extends MoneroWalletBase {
       }
     }
     
-    // cache addresses
-    Map<Integer, String> subaddressMap = addressCache.get(accountIdx);
-    if (subaddressMap == null) {
-      subaddressMap = new HashMap<Integer, String>();
-      addressCache.put(accountIdx, subaddressMap);
-    }
-    for (MoneroSubaddress subaddress : subaddresses) {
-      subaddressMap.put(subaddress.getIndex(), subaddress.getAddress());
-    }
-    
     // return results
     return subaddresses;
   }
@@ -1556,12 +1615,9 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     rpc.sendJsonRequest("stop_mining");
   }
   
-  @SuppressWarnings("unchecked")
   @Override
   public boolean isMultisigImportNeeded() {
-    Map<String, Object> resp = rpc.sendJsonRequest("get_balance");
-    Map<String, Object> result = (Map<String, Object>) resp.get("result");
-    return Boolean.TRUE.equals((Boolean) result.get("multisig_import_needed"));
+    return rpc.sendJsonRequest("get_balance", null, RpcBalanceResult.class).multisig_import_needed;
   }
 
   @Override
@@ -1691,23 +1747,62 @@ public class MoneroWalletRpc extends MoneroWalletBase {
   
   private Map<Integer, List<Integer>> getAccountIndices(boolean getSubaddressIndices) {
     Map<Integer, List<Integer>> indices = new HashMap<Integer, List<Integer>>();
-    for (MoneroAccount account : getAccounts()) {
-      indices.put(account.getIndex(), getSubaddressIndices ? getSubaddressIndices(account.getIndex()) : null);
+    if (!getSubaddressIndices) {
+      for (MoneroAccount account : getAccounts()) indices.put(account.getIndex(), null);
+    } else {
+      for (MoneroAccount account : getAccounts(true)) {
+        List<Integer> subaddressIndices = new ArrayList<Integer>();
+        for (MoneroSubaddress subaddress : account.getSubaddresses()) subaddressIndices.add(subaddress.getIndex());
+        indices.put(account.getIndex(), subaddressIndices);
+      }
     }
     return indices;
   }
   
+  /**
+   * Sends requests in one batch and returns their results.
+   * 
+   * @param requests are the requests to send
+   * @return the result of each request in request order
+   * @throws MoneroRpcError if any request fails
+   */
   @SuppressWarnings("unchecked")
-  private List<Integer> getSubaddressIndices(int accountIdx) {
-    List<Integer> subaddressIndices = new ArrayList<Integer>();
-    Map<String, Object> params = new HashMap<String, Object>();
-    params.put("account_index", accountIdx);
-    Map<String, Object> resp = rpc.sendJsonRequest("get_address", params);
-    Map<String, Object> result = (Map<String, Object>) resp.get("result");
-    for (Map<String, Object> address : (List<Map<String, Object>>) result.get("addresses")) {
-      subaddressIndices.add(((BigInteger) address.get("address_index")).intValue());
+  private List<Map<String, Object>> sendJsonRequests(List<MoneroRpcRequest> requests) {
+    List<Map<String, Object>> resps = rpc.sendJsonRequests(requests);
+    List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+    for (int i = 0; i < resps.size(); i++) {
+      MoneroRpcConnection.validateRpcResponse(resps.get(i), requests.get(i).getMethod(), requests.get(i).getParams());
+      results.add((Map<String, Object>) resps.get(i).get("result"));
     }
-    return subaddressIndices;
+    return results;
+  }
+  
+  /**
+   * Converts a get_address result to subaddresses and caches their addresses.
+   * 
+   * @param accountIdx is the index of the account whose addresses were fetched
+   * @param result is the result of get_address
+   * @return the account's subaddresses without balance info
+   */
+  @SuppressWarnings("unchecked")
+  private List<MoneroSubaddress> convertRpcAddresses(int accountIdx, Map<String, Object> result) {
+    List<MoneroSubaddress> subaddresses = new ArrayList<MoneroSubaddress>();
+    for (Map<String, Object> rpcSubaddress : (List<Map<String, Object>>) result.get("addresses")) {
+      MoneroSubaddress subaddress = convertRpcSubaddress(rpcSubaddress);
+      subaddress.setAccountIndex(accountIdx);
+      subaddresses.add(subaddress);
+    }
+    
+    // cache addresses
+    Map<Integer, String> subaddressMap = addressCache.get(accountIdx);
+    if (subaddressMap == null) {
+      subaddressMap = new HashMap<Integer, String>();
+      addressCache.put(accountIdx, subaddressMap);
+    }
+    for (MoneroSubaddress subaddress : subaddresses) {
+      subaddressMap.put(subaddress.getIndex(), subaddress.getAddress());
+    }
+    return subaddresses;
   }
   
   /**
@@ -1734,27 +1829,29 @@ public class MoneroWalletRpc extends MoneroWalletBase {
   private BigInteger[] getBalances(Integer accountIdx, Integer subaddressIdx) {
     if (accountIdx == null) {
       GenUtils.assertNull("Must provide account index with subaddress index", subaddressIdx);
-      BigInteger balance = BigInteger.valueOf(0);
-      BigInteger unlockedBalance = BigInteger.valueOf(0);
-      for (MoneroAccount account : getAccounts()) {
-        balance = balance.add(account.getBalance());
-        unlockedBalance = unlockedBalance.add(account.getUnlockedBalance());
-      }
-      return new BigInteger[] { balance, unlockedBalance };
+      Map<String, Object> resp = rpc.sendJsonRequest("get_accounts");
+      Map<String, Object> result = (Map<String, Object>) resp.get("result");
+      return new BigInteger[] { (BigInteger) result.get("total_balance"), (BigInteger) result.get("total_unlocked_balance") };
     } else {
       Map<String, Object> params = new HashMap<String, Object>();
       params.put("account_index", accountIdx);
       params.put("address_indices", subaddressIdx == null ? null : new Integer[] { subaddressIdx });
-      Map<String, Object> resp = rpc.sendJsonRequest("get_balance", params);
-      Map<String, Object> result = (Map<String, Object>) resp.get("result");
-      if (subaddressIdx == null) return new BigInteger[] { (BigInteger) result.get("balance"), (BigInteger) result.get("unlocked_balance") };
-      else {
-        List<Map<String, Object>> rpcBalancesPerSubaddress = (List<Map<String, Object>>) result.get("per_subaddress");
-        return new BigInteger[] { (BigInteger) rpcBalancesPerSubaddress.get(0).get("balance"), (BigInteger) rpcBalancesPerSubaddress.get(0).get("unlocked_balance") };
-      }
+      return convertRpcBalances(rpc.sendJsonRequest("get_balance", params, RpcBalanceResult.class), subaddressIdx);
     }
   }
   
+  private CompletableFuture<BigInteger[]> getBalancesAsync(int accountIdx, Integer subaddressIdx) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("account_index", accountIdx);
+    params.put("address_indices", subaddressIdx == null ? null : new Integer[] { subaddressIdx });
+    return rpc.sendJsonRequestAsync("get_balance", params, RpcBalanceResult.class).thenApply(result -> convertRpcBalances(result, subaddressIdx));
+  }
+  
+  private static BigInteger[] convertRpcBalances(RpcBalanceResult result, Integer subaddressIdx) {
+    if (subaddressIdx == null) return new BigInteger[] { result.balance, result.unlocked_balance };
+    else return new BigInteger[] { result.per_subaddress.get(0).balance, result.per_subaddress.get(0).unlocked_balance };
+  }
+  
   @SuppressWarnings("unchecked")
   private List<MoneroTransfer> getTransfersAux(MoneroTransferQuery query) {
     
@@ -1816,32 +1913,36 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     Map<String, MoneroTxWallet> txMap = new HashMap<String, MoneroTxWallet>();
     Map<Long, MoneroBlock> blockMap = new HashMap<Long, MoneroBlock>();
     
-    // build txs using `get_transfers`
-    Map<String, Object> resp = rpc.sendJsonRequest("get_transfers", params);
-    Map<String, Object> result = (Map<String, Object>) resp.get("result");
-    for (String key : result.keySet()) {
-      for (Map<String, Object> rpcTx :((List<Map<String, Object>>) result.get(key))) {
-        MoneroTxWallet tx = convertRpcTxWithTransfer(rpcTx, null, null);
-        if (tx.isConfirmed()) GenUtils.assertTrue(tx.getBlock().getTxs().contains(tx));
-//        if (tx.getId().equals("38436c710dfbebfb24a14cddfd430d422e7282bbe94da5e080643a1bd2880b44")) {
-//          System.out.println(rpcTx);
-//          System.out.println(tx.getOutgoingAmount().compareTo(BigInteger.valueOf(0)) == 0);
-//        }
-        
-        // replace transfer amount with destination sum
-        // TODO monero-wallet-rpc: confirmed tx from/to same account has amount 0 but cached transfers
-        if (tx.getOutgoingTransfer() != null && Boolean.TRUE.equals(tx.isRelayed()) && !Boolean.TRUE.equals(tx.isFailed()) &&
-            tx.getOutgoingTransfer().getDestinations() != null && tx.getOutgoingAmount().compareTo(BigInteger.valueOf(0)) == 0) {
-          MoneroOutgoingTransfer outgoingTransfer = tx.getOutgoingTransfer();
-          BigInteger transferTotal = BigInteger.valueOf(0);
-          for (MoneroDestination destination : outgoingTransfer.getDestinations()) transferTotal = transferTotal.add(destination.getAmount());
-          tx.getOutgoingTransfer().setAmount(transferTotal);
+    // build txs using `get_transfers`, converting each tx as it is read from the response
+    rpc.sendJsonRequest("get_transfers", params, new MoneroRpcResponseHandler<Void>() {
+      @Override
+      public Void handle(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {  // in, out, pending, failed, pool
+          if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            continue;
+          }
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            MoneroTxWallet tx = convertRpcTransfer(MoneroRpcConnection.MAPPER.readValue(parser, RpcTransfer.class));
+            if (tx.isConfirmed()) GenUtils.assertTrue(tx.getBlock().getTxs().contains(tx));
+            
+            // replace transfer amount with destination sum
+            // TODO monero-wallet-rpc: confirmed tx from/to same account has amount 0 but cached transfers
+            if (tx.getOutgoingTransfer() != null && Boolean.TRUE.equals(tx.isRelayed()) && !Boolean.TRUE.equals(tx.isFailed()) &&
+                tx.getOutgoingTransfer().getDestinations() != null && tx.getOutgoingAmount().compareTo(BigInteger.valueOf(0)) == 0) {
+              MoneroOutgoingTransfer outgoingTransfer = tx.getOutgoingTransfer();
+              BigInteger transferTotal = BigInteger.valueOf(0);
+              for (MoneroDestination destination : outgoingTransfer.getDestinations()) transferTotal = transferTotal.add(destination.getAmount());
+              tx.getOutgoingTransfer().setAmount(transferTotal);
+            }
+            
+            // merge tx
+            mergeTx(tx, txMap, blockMap, false);
+          }
         }
-        
-        // merge tx
-        mergeTx(tx, txMap, blockMap, false);
+        return null;
       }
-    }
+    });
     
     // sort txs by block height
     List<MoneroTxWallet> txs = new ArrayList<MoneroTxWallet>(txMap.values());
@@ -1913,17 +2014,18 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     else transferType = "all";
     params.put("transfer_type", transferType);
     params.put("verbose", true);
+    List<MoneroRpcRequest> requests = new ArrayList<MoneroRpcRequest>();
     for (int accountIdx : indices.keySet()) {
-    
-      // send request
-      params.put("account_index", accountIdx);
-      params.put("subaddr_indices", indices.get(accountIdx));
-      Map<String, Object> resp = rpc.sendJsonRequest("incoming_transfers", params);
-      Map<String, Object> result = (Map<String, Object>) resp.get("result");
+      Map<String, Object> accountParams = new HashMap<String, Object>(params);
+      accountParams.put("account_index", accountIdx);
+      accountParams.put("subaddr_indices", indices.get(accountIdx));
+      requests.add(new MoneroRpcRequest("incoming_transfers", accountParams));
+    }
+    for (RpcIncomingTransfersResult result : rpc.sendJsonRequests(requests, RpcIncomingTransfersResult.class)) {
       
       // convert response to txs with outputs and merge
-      if (!result.containsKey("transfers")) continue;
-      for (Map<String, Object> rpcOutput : (List<Map<String, Object>>) result.get("transfers")) {
+      if (result.transfers == null) continue;
+      for (RpcIncomingTransfer rpcOutput : result.transfers) {
         MoneroTxWallet tx = convertRpcTxWithOutput(rpcOutput);
         mergeTx(tx, txMap, blockMap, false);
       }
@@ -2089,6 +2191,19 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     return subaddress;
   }
   
+  private static MoneroSubaddress convertRpcSubaddressBalance(RpcSubaddressBalance rpcSubaddress) {
+    MoneroSubaddress subaddress = new MoneroSubaddress();
+    subaddress.setAccountIndex(rpcSubaddress.account_index);
+    subaddress.setIndex(rpcSubaddress.address_index);
+    subaddress.setAddress(rpcSubaddress.address);
+    subaddress.setBalance(rpcSubaddress.balance);
+    subaddress.setUnlockedBalance(rpcSubaddress.unlocked_balance);
+    subaddress.setNumUnspentOutputs(rpcSubaddress.num_unspent_outputs);
+    if (rpcSubaddress.label != null && !"".equals(rpcSubaddress.label)) subaddress.setLabel(rpcSubaddress.label);
+    subaddress.setNumBlocksToUnlock(rpcSubaddress.blocks_to_unlock);
+    return subaddress;
+  }
+  
   /**
    * Initializes a sent transaction.
    * 
@@ -2357,37 +2472,78 @@ public class MoneroWalletRpc extends MoneroWalletBase {
     return tx;
   }
   
-  @SuppressWarnings("unchecked")
-  private static MoneroTxWallet convertRpcTxWithOutput(Map<String, Object> rpcOutput) {
+  /**
+   * Builds a MoneroTxWallet from a get_transfers entry.
+   * 
+   * @param rpcTx is the get_transfers entry to build from
+   * @return the initialized tx with a transfer
+   */
+  private static MoneroTxWallet convertRpcTransfer(RpcTransfer rpcTx) {
+    MoneroTxWallet tx = new MoneroTxWallet();
+    boolean isOutgoing = decodeRpcType(rpcTx.type, tx);
+    tx.setHash(rpcTx.txid);
+    tx.setFee(rpcTx.fee);
+    if (rpcTx.note != null && !"".equals(rpcTx.note)) tx.setNote(rpcTx.note);
+    tx.setUnlockTime(rpcTx.unlock_time);
+    if (rpcTx.locked != null) tx.setIsLocked(rpcTx.locked);
+    tx.setIsDoubleSpendSeen(rpcTx.double_spend_seen);
+    tx.setNumConfirmations(rpcTx.confirmations);
+    if (rpcTx.payment_id != null && !"".equals(rpcTx.payment_id) && !MoneroTxWallet.DEFAULT_PAYMENT_ID.equals(rpcTx.payment_id)) tx.setPaymentId(rpcTx.payment_id);  // default is undefined
+    
+    // link block and tx; timestamp of unconfirmed tx is current request time
+    if (tx.isConfirmed()) tx.setBlock(new MoneroBlock(new MoneroBlockHeader().setHeight(rpcTx.height).setTimestamp(rpcTx.timestamp)).setTxs(tx));
+    
+    // build transfer
+    if (isOutgoing) {
+      MoneroOutgoingTransfer transfer = new MoneroOutgoingTransfer().setTx(tx);
+      transfer.setAmount(rpcTx.amount);
+      transfer.setAccountIndex(rpcTx.subaddr_indices.get(0).major);
+      List<Integer> subaddressIndices = new ArrayList<Integer>();
+      for (RpcSubaddressIndex rpcIndex : rpcTx.subaddr_indices) subaddressIndices.add(rpcIndex.minor);
+      transfer.setSubaddressIndices(subaddressIndices);
+      if (rpcTx.destinations != null) {
+        List<MoneroDestination> destinations = new ArrayList<MoneroDestination>();
+        for (RpcDestination rpcDestination : rpcTx.destinations) destinations.add(new MoneroDestination(rpcDestination.address, rpcDestination.amount));
+        transfer.setDestinations(destinations);
+      }
+      tx.setIsOutgoing(true);
+      tx.setOutgoingTransfer(transfer);
+    } else {
+      GenUtils.assertTrue("Incoming transfer has destinations", rpcTx.destinations == null);
+      GenUtils.assertEquals(1, rpcTx.subaddr_indices.size());
+      MoneroIncomingTransfer transfer = new MoneroIncomingTransfer().setTx(tx);
+      transfer.setAmount(rpcTx.amount);
+      transfer.setAccountIndex(rpcTx.subaddr_indices.get(0).major);
+      transfer.setSubaddressIndex(rpcTx.subaddr_indices.get(0).minor);
+      transfer.setAddress(rpcTx.address);
+      transfer.setNumSuggestedConfirmations(rpcTx.suggested_confirmations_threshold);
+      tx.setIsIncoming(true);
+      tx.setIncomingTransfers(new ArrayList<MoneroIncomingTransfer>(Arrays.asList(transfer)));
+    }
+    if (!tx.isConfirmed()) tx.setNumConfirmations(0l);
+    return tx;
+  }
+  
+  private static MoneroTxWallet convertRpcTxWithOutput(RpcIncomingTransfer rpcOutput) {
     
     // initialize tx
     MoneroTxWallet tx = new MoneroTxWallet();
     tx.setIsConfirmed(true);
     tx.setIsRelayed(true);
     tx.setIsFailed(false);
+    tx.setHash(rpcOutput.tx_hash);
+    if (rpcOutput.unlocked != null) tx.setIsLocked(!rpcOutput.unlocked);
+    tx.setBlock(new MoneroBlock().setHeight(rpcOutput.block_height).setTxs(tx));
     
     // initialize output
     MoneroOutputWallet output = new MoneroOutputWallet().setTx(tx);
-    for (String key : rpcOutput.keySet()) {
-      Object val = rpcOutput.get(key);
-      if (key.equals("amount")) output.setAmount((BigInteger) val);
-      else if (key.equals("spent")) output.setIsSpent((Boolean) val);
-      else if (key.equals("key_image")) output.setKeyImage(new MoneroKeyImage((String) val));
-      else if (key.equals("global_index")) output.setIndex(((BigInteger) val).intValue());
-      else if (key.equals("tx_hash")) tx.setHash((String) val);
-      else if (key.equals("unlocked")) tx.setIsLocked(!(Boolean) val);
-      else if (key.equals("frozen")) output.setIsFrozen((Boolean) val);
-      else if (key.equals("subaddr_index")) {
-        Map<String, BigInteger> rpcIndices = (Map<String, BigInteger>) val;
-        output.setAccountIndex(rpcIndices.get("major").intValue());
-        output.setSubaddressIndex(rpcIndices.get("minor").intValue());
-      }
-      else if (key.equals("block_height")) {
-        long height = ((BigInteger) val).longValue();
-        tx.setBlock(new MoneroBlock().setHeight(height).setTxs(tx));
-      }
-      else LOGGER.warning("WARNING: ignoring unexpected transaction field with output: " + key + ": " + val);
-    }
+    output.setAmount(rpcOutput.amount);
+    output.setIsSpent(rpcOutput.spent);
+    output.setKeyImage(new MoneroKeyImage(rpcOutput.key_image));
+    output.setIndex((int) rpcOutput.global_index);
+    if (rpcOutput.frozen != null) output.setIsFrozen(rpcOutput.frozen);
+    output.setAccountIndex(rpcOutput.subaddr_index.major);
+    output.setSubaddressIndex(rpcOutput.subaddr_index.minor);
     
     // initialize tx with output
     List<MoneroOutput> outputs = new ArrayList<MoneroOutput>();
@@ -2581,4 +2737,79 @@ public class MoneroWalletRpc extends MoneroWalletBase {
       return 1;
     }
   }
+  
+  // ----------------------------- RPC RESPONSE TYPES -------------------------
+  
+  // fields are named after the RPC fields they bind; amounts are BigIntegers
+  // like elsewhere since they can exceed a signed long
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcBalanceResult {
+    public BigInteger balance;
+    public BigInteger unlocked_balance;
+    public boolean multisig_import_needed;
+    public List<RpcSubaddressBalance> per_subaddress;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcSubaddressBalance {
+    public int account_index;
+    public int address_index;
+    public String address;
+    public BigInteger balance;
+    public BigInteger unlocked_balance;
+    public String label;
+    public long num_unspent_outputs;
+    public long blocks_to_unlock;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcSubaddressIndex {
+    public int major;
+    public int minor;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcDestination {
+    public String address;
+    public BigInteger amount;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcTransfer {
+    public String address;
+    public BigInteger amount;
+    public long confirmations;
+    public List<RpcDestination> destinations;
+    public boolean double_spend_seen;
+    public BigInteger fee;
+    public long height;
+    public Boolean locked;
+    public String note;
+    public String payment_id;
+    public List<RpcSubaddressIndex> subaddr_indices;
+    public long suggested_confirmations_threshold;
+    public long timestamp;
+    public String txid;
+    public String type;
+    public long unlock_time;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcIncomingTransfer {
+    public BigInteger amount;
+    public long block_height;
+    public Boolean frozen;
+    public long global_index;
+    public String key_image;
+    public boolean spent;
+    public RpcSubaddressIndex subaddr_index;
+    public String tx_hash;
+    public Boolean unlocked;
+  }
+  
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private static class RpcIncomingTransfersResult {
+    public List<RpcIncomingTransfer> transfers;
+  }
 }
@@ -0,0 +1,275 @@
+package monero.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends requests with the JDK HTTP client on Java 11 or later.
+ *
+ * Requests to https servers negotiate HTTP/2 and are multiplexed over one
+ * connection if the server or its proxy supports it, otherwise they use
+ * pooled HTTP/1.1 connections.  Requests to http servers use HTTP/1.1 since
+ * monerod does not upgrade cleartext connections.  Blocking requests block
+ * only the calling thread, so they scale with virtual threads.
+ *
+ * The JDK client only supports basic authentication, so this transport
+ * answers digest challenges itself and, if preemptive authentication is
+ * configured, reuses the server's nonce with an incrementing nonce count
+ * until the server challenges again.
+ *
+ * Connection pool limits are managed by the JDK client, e.g. with the
+ * jdk.httpclient.connectionPoolSize system property, instead of the
+ * connection's configuration.
+ */
+public class MoneroJdkHttpTransport implements MoneroRpcTransport {
+
+  public static final MoneroRpcTransport.Factory FACTORY = new MoneroRpcTransport.Factory() {
+    @Override
+    public MoneroRpcTransport create(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
+      return new MoneroJdkHttpTransport(uri, username, password, config);
+    }
+  };
+
+  private static final int UNAUTHORIZED = 401;
+
+  private String uri;
+  private String username;
+  private String password;
+  private MoneroRpcConnectionConfig config;
+  private HttpClient client;
+  private volatile Challenge challenge; // cached challenge to authenticate preemptively
+
+  public MoneroJdkHttpTransport(URI uri, String username, String password, MoneroRpcConnectionConfig config) {
+    this.uri = uri == null ? null : uri.toString();
+    this.username = username;
+    this.password = password;
+    this.config = config;
+    this.client = HttpClient.newBuilder()
+        .version(uri != null && "https".equalsIgnoreCase(uri.getScheme()) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+        .build();
+  }
+
+  /**
+   * Indicates if the transport is available on the running JVM.
+   *
+   * @return true on Java 11 or later, false otherwise
+   */
+  public static boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public Response send(Request request) throws IOException {
+    Challenge challenge = this.challenge;
+    HttpResponse<InputStream> resp = send(buildRequest(request, challenge), HttpResponse.BodyHandlers.ofInputStream());
+    Challenge newChallenge = getChallenge(resp, challenge);
+    if (newChallenge != null) {
+      resp.body().close();
+      resp = send(buildRequest(request, newChallenge), HttpResponse.BodyHandlers.ofInputStream());
+      onAuthenticated(resp, newChallenge);
+    }
+    return new Response(resp.statusCode(), null, resp.headers().firstValue("Content-Encoding").orElse(null), resp.body(), null);
+  }
+
+  @Override
+  public CompletableFuture<Response> sendAsync(Request request) {
+    Challenge challenge = this.challenge;
+    return client.sendAsync(buildRequest(request, challenge), HttpResponse.BodyHandlers.ofByteArray()).thenCompose(resp -> {
+      Challenge newChallenge = getChallenge(resp, challenge);
+      if (newChallenge == null) return CompletableFuture.completedFuture(resp);
+      return client.sendAsync(buildRequest(request, newChallenge), HttpResponse.BodyHandlers.ofByteArray()).thenApply(authResp -> {
+        onAuthenticated(authResp, newChallenge);
+        return authResp;
+      });
+    }).thenApply(resp -> new Response(resp.statusCode(), null, resp.headers().firstValue("Content-Encoding").orElse(null), resp.body()));
+  }
+
+  /**
+   * Closes the client on Java 21 or later, where it holds connections until
+   * it is garbage collected on earlier versions.
+   */
+  @Override
+  public void close() throws IOException {
+    if (client instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) client).close();
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+    try {
+      return client.send(request, bodyHandler);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException e2 = new InterruptedIOException("Request to " + request.uri() + " was interrupted");
+      e2.initCause(e);
+      throw e2;
+    }
+  }
+
+  private HttpRequest buildRequest(Request request, Challenge challenge) {
+    URI requestUri = URI.create(uri + "/" + request.getPath());
+    HttpRequest.Builder builder = HttpRequest.newBuilder(requestUri)
+        .timeout(Duration.ofMillis(request.getTimeout() > 0 ? request.getTimeout() : config.getResponseTimeout()));
+    if (request.getBody() == null) builder.POST(HttpRequest.BodyPublishers.noBody());
+    else {
+      builder.POST(HttpRequest.BodyPublishers.ofByteArray(request.getBody(), request.getOffset(), request.getLength()));
+      builder.header("Content-Type", request.getContentType());
+      if (request.getContentEncoding() != null) builder.header("Content-Encoding", request.getContentEncoding());
+    }
+    if (request.getAcceptEncoding() != null) builder.header("Accept-Encoding", request.getAcceptEncoding());
+    if (challenge != null) builder.header("Authorization", challenge.authorize(username, password, requestUri));
+    return builder.build();
+  }
+
+  /**
+   * Get the challenge to retry a request with if it was not authorized.
+   *
+   * @param resp is the response to the request
+   * @param challenge is the challenge the request was authorized with (optional)
+   * @return the challenge to retry the request with or null if the request is not retried
+   */
+  private Challenge getChallenge(HttpResponse<?> resp, Challenge challenge) {
+    if (resp.statusCode() != UNAUTHORIZED || username == null) return null;
+    Challenge newChallenge = Challenge.parse(resp.headers().allValues("WWW-Authenticate"));
+    if (newChallenge == null) return null;
+    if (challenge != null && !newChallenge.isStale() && newChallenge.isSameNonce(challenge)) return null; // credentials rejected
+    return newChallenge;
+  }
+
+  private void onAuthenticated(HttpResponse<?> resp, Challenge challenge) {
+    if (config.getPreemptiveAuth() && resp.statusCode() != UNAUTHORIZED) this.challenge = challenge;
+  }
+
+  /**
+   * A basic or digest challenge of the server, which authorizes requests
+   * with the next nonce count.
+   */
+  private static class Challenge {
+
+    private static final Pattern PARAM = Pattern.compile("(\\w+)\\s*=\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|([^,\\s]*))");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private boolean digest;
+    private Map<String, String> params;
+    private String cnonce;
+    private AtomicLong nonceCount = new AtomicLong();
+
+    private Challenge(boolean digest, Map<String, String> params) {
+      this.digest = digest;
+      this.params = params;
+      byte[] bytes = new byte[8];
+      RANDOM.nextBytes(bytes);
+      this.cnonce = toHex(bytes);
+    }
+
+    /**
+     * Parse the strongest supported challenge of a response.
+     *
+     * @param headers are the WWW-Authenticate header values
+     * @return the digest or basic challenge or null if neither is offered
+     */
+    private static Challenge parse(List<String> headers) {
+      Challenge basic = null;
+      for (String header : headers) {
+        int index = header.indexOf(' ');
+        String scheme = index == -1 ? header : header.substring(0, index);
+        if ("Digest".equalsIgnoreCase(scheme)) {
+          Map<String, String> params = new HashMap<String, String>();
+          Matcher matcher = PARAM.matcher(header.substring(index + 1));
+          while (matcher.find()) params.put(matcher.group(1).toLowerCase(), matcher.group(2) != null ? matcher.group(2).replaceAll("\\\\(.)", "$1") : matcher.group(3));
+          String algorithm = params.get("algorithm");
+          if (params.get("nonce") != null && (algorithm == null || "MD5".equalsIgnoreCase(algorithm) || "MD5-sess".equalsIgnoreCase(algorithm))) return new Challenge(true, params);
+        } else if ("Basic".equalsIgnoreCase(scheme)) {
+          basic = new Challenge(false, null);
+        }
+      }
+      return basic;
+    }
+
+    private boolean isStale() {
+      return digest && "true".equalsIgnoreCase(params.get("stale"));
+    }
+
+    private boolean isSameNonce(Challenge challenge) {
+      return digest && challenge.digest && params.get("nonce").equals(challenge.params.get("nonce"));
+    }
+
+    /**
+     * Build the Authorization header of a request.
+     */
+    private String authorize(String username, String password, URI requestUri) {
+      if (!digest) return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+      String realm = params.get("realm");
+      String nonce = params.get("nonce");
+      String algorithm = params.get("algorithm");
+      String qop = getQop();
+      String digestUri = requestUri.getRawPath() + (requestUri.getRawQuery() == null ? "" : "?" + requestUri.getRawQuery());
+      String nc = String.format("%08x", nonceCount.incrementAndGet());
+      String ha1 = md5(username + ":" + realm + ":" + password);
+      if ("MD5-sess".equalsIgnoreCase(algorithm)) ha1 = md5(ha1 + ":" + nonce + ":" + cnonce);
+      String ha2 = md5("POST:" + digestUri);
+      String response = qop == null ? md5(ha1 + ":" + nonce + ":" + ha2) : md5(ha1 + ":" + nonce + ":" + nc + ":" + cnonce + ":" + qop + ":" + ha2);
+      StringBuilder sb = new StringBuilder("Digest username=\"").append(username)
+          .append("\", realm=\"").append(realm)
+          .append("\", nonce=\"").append(nonce)
+          .append("\", uri=\"").append(digestUri)
+          .append("\", response=\"").append(response).append('"');
+      if (algorithm != null) sb.append(", algorithm=").append(algorithm);
+      if (qop != null) sb.append(", qop=").append(qop).append(", nc=").append(nc).append(", cnonce=\"").append(cnonce).append('"');
+      if (params.get("opaque") != null) sb.append(", opaque=\"").append(params.get("opaque")).append('"');
+      return sb.toString();
+    }
+
+    /**
+     * Get the quality of protection to authorize with, which is auth if the
+     * server offers it or none for servers predating it.
+     */
+    private String getQop() {
+      String qop = params.get("qop");
+      if (qop == null) return null;
+      for (String option : qop.split(",")) {
+        if ("auth".equalsIgnoreCase(option.trim())) return "auth";
+      }
+      throw new MoneroError("Unsupported digest qop: " + qop);
+    }
+
+    private static String md5(String value) {
+      try {
+        return toHex(MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8)));
+      } catch (NoSuchAlgorithmException e) {
+        throw new MoneroError(e);
+      }
+    }
+
+    private static String toHex(byte[] bytes) {
+      StringBuilder sb = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      return sb.toString();
+    }
+  }
+}
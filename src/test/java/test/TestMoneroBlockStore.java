@@ -0,0 +1,95 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import monero.daemon.MoneroBlockStore;
+import monero.daemon.model.MoneroBlockHeader;
+
+/**
+ * Tests storing block headers with a MoneroBlockStore without a daemon.
+ */
+public class TestMoneroBlockStore {
+
+  private File dir;
+  private MoneroBlockStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("monero-block-store").toFile();
+    store = MoneroBlockStore.open(dir);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+    for (File file : dir.listFiles()) file.delete();
+    dir.delete();
+  }
+
+  // Tracks the highest stored height across truncation and reopening
+  @Test
+  public void testMaxHeight() {
+    assertEquals(-1, store.getMaxHeight());
+    for (long height = 0; height < 10; height++) store.putHeader(getHeader(height, 0));
+    assertEquals(9, store.getMaxHeight());
+    assertFalse(store.hasBlock(9)); // headers are stored without blocks
+    store.truncate(11);
+    assertEquals(9, store.getMaxHeight());
+    store.truncate(5);
+    assertEquals(4, store.getMaxHeight());
+    assertNull(store.getHeader(5));
+    store.close();
+    store = MoneroBlockStore.open(dir);
+    assertEquals(4, store.getMaxHeight());
+    assertEquals(getHeader(4, 0).getHash(), store.getHeader(4).getHash());
+    store.truncate(0);
+    assertEquals(-1, store.getMaxHeight());
+  }
+
+  // Compares stored headers to headers of another chain
+  @Test
+  public void testMatches() {
+    for (long height = 0; height < 10; height++) store.putHeader(getHeader(height, 0));
+    assertTrue(store.matches(getHeader(5, 0)));
+    assertFalse(store.matches(getHeader(5, 1)));
+    assertNull(store.matches(getHeader(10, 0)));
+  }
+
+  // Truncates from a header which replaces a stored header
+  @Test
+  public void testPutReplacingHeader() {
+    for (long height = 0; height < 10; height++) store.putHeader(getHeader(height, 0));
+    store.putHeader(getHeader(6, 1));
+    assertEquals(6, store.getMaxHeight());
+    assertEquals(getHeader(6, 1).getHash(), store.getHeader(6).getHash());
+    assertNull(store.getHeader(7));
+  }
+
+  /**
+   * Get a header of a test chain whose blocks from height 5 differ by fork.
+   */
+  private static MoneroBlockHeader getHeader(long height, int fork) {
+    MoneroBlockHeader header = new MoneroBlockHeader();
+    header.setHeight(height);
+    header.setHash(getHash(height, fork));
+    if (height > 0) header.setPrevHash(getHash(height - 1, fork));
+    header.setTimestamp(height);
+    header.setNonce((int) height);
+    return header;
+  }
+
+  private static String getHash(long height, int fork) {
+    return String.format("%032x%032x", height, height < 5 ? 0 : fork);
+  }
+}
@@ -0,0 +1,234 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import monero.common.MoneroConnectionManager;
+import monero.common.MoneroConnectionManagerListener;
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+import monero.common.MoneroRpcError;
+
+/**
+ * Tests routing requests across connections with a connection manager
+ * using local stub servers.
+ */
+public class TestMoneroConnectionManager {
+
+  private static final String GET_INFO_RESPONSE = "{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"result\":{\"status\":\"OK\",\"height\":100,\"synchronized\":true}}";
+
+  private StubServer server1;
+  private StubServer server2;
+  private MoneroConnectionManager manager;
+
+  @Before
+  public void setUp() throws IOException {
+    server1 = new StubServer();
+    server2 = new StubServer();
+  }
+
+  @After
+  public void tearDown() {
+    if (manager != null) manager.close();
+    server1.stop();
+    server2.stop();
+  }
+
+  // Can fail over from a connection which is not running
+  @Test
+  public void testFailoverOnDeadConnection() throws IOException {
+    MoneroRpcConnection dead = new MoneroRpcConnection("http://127.0.0.1:" + getUnusedPort(), null, null, getConfig());
+    MoneroRpcConnection live = server1.connect();
+    manager = new MoneroConnectionManager(dead, live);
+    assertEquals(dead, manager.getConnection());
+
+    // request is sent to live connection
+    Map<String, Object> resp = manager.sendJsonRequest("get_info");
+    assertTrue(resp.containsKey("result"));
+    assertEquals(1, server1.numRequests.get());
+    assertFalse(manager.isHealthy(dead));
+    assertTrue(manager.isHealthy(live));
+  }
+
+  // Can fail over from a connection which responds with an HTTP error
+  @Test
+  public void testFailoverOnHttpError() {
+    server1.status = 503;
+    MoneroRpcConnection unavailable = server1.connect();
+    MoneroRpcConnection live = server2.connect();
+    manager = new MoneroConnectionManager(unavailable, live);
+    manager.sendJsonRequest("get_info");
+    manager.sendJsonRequestAsync("get_info").join();
+    assertEquals(2, server1.numRequests.get());
+    assertEquals(2, server2.numRequests.get());
+    assertFalse(manager.isHealthy(unavailable));
+  }
+
+  // Can trip a connection's circuit breaker, retry it half open, and close it
+  @Test
+  public void testCircuitBreaker() throws InterruptedException {
+    server1.status = 503;
+    MoneroRpcConnection failing = server1.connect();
+    MoneroRpcConnection live = server2.connect();
+    manager = new MoneroConnectionManager(failing, live).setFailureThreshold(2).setCircuitOpenTime(500);
+    List<MoneroRpcConnection> changes = new CopyOnWriteArrayList<MoneroRpcConnection>();
+    manager.addListener(new MoneroConnectionManagerListener() {
+      @Override
+      public void onConnectionChanged(MoneroRpcConnection connection) {
+        changes.add(connection);
+      }
+    });
+
+    // failing connection is tried until it reaches the failure threshold
+    manager.sendJsonRequest("get_info");
+    assertEquals(failing, manager.getConnection());
+    assertTrue(changes.isEmpty());
+    manager.sendJsonRequest("get_info");
+    assertEquals(2, server1.numRequests.get());
+
+    // tripped connection is skipped and the manager switches connections
+    assertEquals(live, manager.getConnection());
+    assertEquals(1, changes.size());
+    assertEquals(live, changes.get(0));
+    manager.sendJsonRequest("get_info");
+    assertEquals(2, server1.numRequests.get());
+
+    // half open connection is tried once and trips again on failure
+    Thread.sleep(600);
+    manager.sendJsonRequest("get_info");
+    assertEquals(3, server1.numRequests.get());
+    manager.sendJsonRequest("get_info");
+    assertEquals(3, server1.numRequests.get());
+    assertFalse(manager.isHealthy(failing));
+
+    // recovered connection closes its circuit breaker once tried again after the doubled open time
+    server1.status = 200;
+    Thread.sleep(700);
+    manager.sendJsonRequest("get_info");
+    assertEquals(3, server1.numRequests.get());
+    Thread.sleep(500);
+    manager.sendJsonRequest("get_info");
+    assertEquals(4, server1.numRequests.get());
+    assertTrue(manager.isHealthy(failing));
+    assertEquals(failing, changes.get(changes.size() - 1));
+  }
+
+  // Does not fail over on errors returned by the RPC method
+  @Test
+  public void testNoFailoverOnRpcError() {
+    server1.response = "{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"error\":{\"code\":-1,\"message\":\"Test error\"}}";
+    MoneroRpcConnection erroring = server1.connect();
+    MoneroRpcConnection live = server2.connect();
+    manager = new MoneroConnectionManager(erroring, live);
+    try {
+      manager.sendJsonRequest("get_info");
+      fail("Should have thrown RPC error");
+    } catch (MoneroRpcError e) {
+      assertEquals(-1, (int) e.getCode());
+    }
+    assertEquals(0, server2.numRequests.get());
+    assertTrue(manager.isHealthy(erroring));
+  }
+
+  // Does not fail over requests which are not idempotent after they are sent
+  @Test
+  public void testNoFailoverOnNonIdempotentTimeout() {
+    server1.delay = 2000;
+    MoneroRpcConnection slow = server1.connect(getConfig().setResponseTimeout(200));
+    MoneroRpcConnection live = server2.connect();
+    manager = new MoneroConnectionManager(slow, live);
+    try {
+      manager.sendPathRequest("send_raw_transaction", null);
+      fail("Should have thrown timeout");
+    } catch (MoneroRpcError e) {
+      fail("Should not have received RPC error: " + e.getMessage());
+    } catch (Exception e) {
+      // expected
+    }
+    try {
+      manager.sendJsonRequestAsync("relay_tx").join();
+      fail("Should have thrown timeout");
+    } catch (Exception e) {
+      // expected
+    }
+    assertEquals(0, server2.numRequests.get());
+
+    // idempotent requests still fail over
+    manager.sendPathRequest("get_height", null);
+    assertEquals(1, server2.numRequests.get());
+  }
+
+  private static MoneroRpcConnectionConfig getConfig() {
+    return new MoneroRpcConnectionConfig().setMaxRetries(0);
+  }
+
+  private static int getUnusedPort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /**
+   * Serves get_info with a configurable HTTP status and counts requests.
+   */
+  private static class StubServer {
+
+    private HttpServer server;
+    private volatile int status = 200;
+    private volatile String response = GET_INFO_RESPONSE;
+    private volatile long delay;
+    private AtomicInteger numRequests = new AtomicInteger();
+
+    private StubServer() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", exchange -> {
+        exchange.getRequestBody().close();
+        numRequests.incrementAndGet();
+        if (delay > 0) {
+          try {
+            Thread.sleep(delay);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+      });
+      server.start();
+    }
+
+    private MoneroRpcConnection connect() {
+      return connect(getConfig());
+    }
+
+    private MoneroRpcConnection connect(MoneroRpcConnectionConfig config) {
+      return new MoneroRpcConnection("http://127.0.0.1:" + server.getAddress().getPort(), null, null, config);
+    }
+
+    private void stop() {
+      server.stop(0);
+    }
+  }
+}
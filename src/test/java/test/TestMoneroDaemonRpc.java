@@ -8,11 +8,17 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
@@ -24,11 +30,16 @@ import common.utils.JsonUtils;
 import monero.common.MoneroError;
 import monero.common.MoneroRpcError;
 import monero.common.MoneroUtils;
+import monero.daemon.MoneroBlockHeaderCache;
+import monero.daemon.MoneroBlockStore;
+import monero.daemon.MoneroChainTracker;
 import monero.daemon.MoneroDaemon;
 import monero.daemon.MoneroDaemonRpc;
 import monero.daemon.model.MoneroAltChain;
 import monero.daemon.model.MoneroBan;
 import monero.daemon.model.MoneroBlock;
+import monero.daemon.model.MoneroBlockFetchConfig;
+import monero.daemon.model.MoneroBlockHashes;
 import monero.daemon.model.MoneroBlockHeader;
 import monero.daemon.model.MoneroBlockTemplate;
 import monero.daemon.model.MoneroDaemonConnection;
@@ -154,6 +165,31 @@ public class TestMoneroDaemonRpc {
     testBlockHeader(lastHeader, true);
   }
   
+  // Can make requests without blocking
+  @Test
+  public void testAsyncRequests() throws Exception {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS);
+    CompletableFuture<Long> heightFuture = daemon.getHeightAsync();
+    CompletableFuture<MoneroBlockHeader> headerFuture = daemon.getLastBlockHeaderAsync();
+    CompletableFuture<MoneroDaemonInfo> infoFuture = daemon.getInfoAsync();
+    long height = heightFuture.get();
+    MoneroBlockHeader lastHeader = headerFuture.get();
+    testBlockHeader(lastHeader, true);
+    assertTrue(Math.abs(height - (lastHeader.getHeight() + 1)) <= 1); // a block may arrive between concurrent requests
+    testInfo(infoFuture.get());
+    List<MoneroBlock> blocks = daemon.getBlocksByHeightAsync(Arrays.asList(height - 2, height - 1)).get();
+    assertEquals(2, blocks.size());
+    assertEquals(height - 1, (long) blocks.get(1).getHeight());
+    
+    // errors complete the future exceptionally
+    try {
+      daemon.getBlockHeaderByHeightAsync(height + 100).get();
+      fail("Should have failed getting header above chain height");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof MoneroError);
+    }
+  }
+  
   // Can get a block header by hash
   @Test
   public void testGetBlockHeaderByHash() {
@@ -173,6 +209,63 @@ public class TestMoneroDaemonRpc {
     assertEquals(lastHeader.getHeight() - 1, (long) header.getHeight());
   }
   
+  // Can cache block headers
+  @Test
+  public void testBlockHeaderCache() {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS);
+    
+    // fetch headers into cache
+    MoneroBlockHeaderCache cache = daemon.getHeaderCache();
+    long height = daemon.getHeight();
+    List<MoneroBlockHeader> headers = daemon.getBlockHeadersByRange(height - 10, height - 1);
+    
+    // get headers by hash from cache
+    long numHits = cache.getNumHits();
+    for (MoneroBlockHeader header : headers) {
+      MoneroBlockHeader cachedHeader = daemon.getBlockHeaderByHash(header.getHash());
+      testBlockHeader(cachedHeader, true);
+      assertEquals(header.getHash(), cachedHeader.getHash());
+      assertEquals(header.getHeight(), cachedHeader.getHeight());
+    }
+    assertEquals(numHits + headers.size(), cache.getNumHits());
+    
+    // invalidated headers are fetched
+    cache.invalidate(height - 10);
+    long numMisses = cache.getNumMisses();
+    assertEquals(headers.get(0).getHash(), daemon.getBlockHeaderByHash(headers.get(0).getHash()).getHash());
+    assertEquals(numMisses + 1, cache.getNumMisses());
+  }
+  
+  // Can track the chain's tip as a window of linked headers
+  @Test
+  public void testChainTracker() {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS);
+    
+    // fill window from tip
+    MoneroChainTracker tracker = new MoneroChainTracker(daemon, 10);
+    assertNull(tracker.getTip());
+    tracker.refresh();
+    List<MoneroBlockHeader> headers = tracker.getHeaders();
+    assertEquals(10, headers.size());
+    for (int i = 0; i < headers.size(); i++) {
+      testBlockHeader(headers.get(i), true);
+      if (i > 0) assertEquals(headers.get(i - 1).getHash(), headers.get(i).getPrevHash());
+    }
+    
+    // refresh notifies listeners of blocks added since the window was filled
+    List<MoneroBlockHeader> notified = new ArrayList<MoneroBlockHeader>();
+    tracker.addListener(new MoneroDaemonListener() {
+      @Override
+      public void onBlockHeader(MoneroBlockHeader header) {
+        notified.add(header);
+      }
+    });
+    tracker.refresh();
+    MoneroBlockHeader tip = tracker.getTip();
+    assertEquals(tip.getHeight() - headers.get(headers.size() - 1).getHeight(), notified.size());
+    assertEquals(10, tracker.getHeaders().size());
+  }
+  
   // Can get a block header by height
   @Test
   public void testGetBlockHeaderByHeight() {
@@ -351,12 +444,141 @@ public class TestMoneroDaemonRpc {
     testGetBlocksRange(endHeight - numBlocks - 1, null, height, true);
   };
   
+  // Can get blocks by range using pipelined chunked requests
+  @Test
+  public void testGetBlocksByRangePipelined() {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS && !LITE_MODE);
+    
+    // get blocks with small chunks to keep many in flight
+    long numBlocks = 720;
+    long height = daemon.getHeight();
+    long startHeight = height - numBlocks;
+    MoneroBlockFetchConfig config = new MoneroBlockFetchConfig().setMaxChunkSize(100000).setMaxChunksInFlight(8);
+    List<MoneroBlock> blocks = daemon.getBlocksByRangePipelined(startHeight, height - 1, config);
+    
+    // blocks are in height order and equal to chunked requests
+    List<MoneroBlock> chunkedBlocks = daemon.getBlocksByRangeChunked(startHeight, height - 1);
+    assertEquals(numBlocks, blocks.size());
+    for (int i = 0; i < blocks.size(); i++) {
+      assertEquals(startHeight + i, (long) blocks.get(i).getHeight());
+      assertEquals(chunkedBlocks.get(i).getPrevHash(), blocks.get(i).getPrevHash());
+      testBlock(blocks.get(i), BINARY_BLOCK_CTX);
+    }
+  }
+  
+  // Can stream blocks by range
+  @Test
+  public void testStreamBlocks() {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS && !LITE_MODE);
+    
+    // stream blocks with small chunks and buffer
+    long numBlocks = 720;
+    long height = daemon.getHeight();
+    long startHeight = height - numBlocks;
+    MoneroBlockFetchConfig config = new MoneroBlockFetchConfig().setMaxChunkSize(100000).setMaxBufferedBytes(200000);
+    Iterator<MoneroBlock> iter = daemon.streamBlocks(startHeight, height - 1, config);
+    
+    // blocks are streamed in height order
+    long expectedHeight = startHeight;
+    while (iter.hasNext()) {
+      MoneroBlock block = iter.next();
+      assertEquals(expectedHeight++, (long) block.getHeight());
+      testBlock(block, BINARY_BLOCK_CTX);
+    }
+    assertEquals(height, expectedHeight);
+    
+    // stream to the daemon's height by default
+    iter = daemon.streamBlocks(height - 2, null);
+    assertEquals(height - 2, (long) iter.next().getHeight());
+    assertEquals(height - 1, (long) iter.next().getHeight());
+    assertFalse(iter.hasNext());
+  }
+  
+  // Can persist headers and blocks in a block store
+  @Test
+  public void testBlockStore() throws IOException {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS && !LITE_MODE);
+    File dir = Files.createTempDirectory("monero-block-store").toFile();
+    long height = daemon.getHeight();
+    long startHeight = height - 100;
+    MoneroBlockStore store = MoneroBlockStore.open(dir);
+    try {
+      
+      // fetch blocks into store
+      daemon.setBlockStore(store);
+      List<MoneroBlock> blocks = daemon.getBlocksByRangeChunked(startHeight, height - 1);
+      for (long h = startHeight; h < height; h++) {
+        assertTrue(store.hasBlock(h));
+        assertEquals(daemon.getBlockHash(h), store.getHeader(h).getHash());
+      }
+      
+      // blocks read from store after reopening equal blocks fetched
+      store.close();
+      store = MoneroBlockStore.open(dir);
+      daemon.setBlockStore(store);
+      List<MoneroBlock> storedBlocks = daemon.getBlocksByRange(startHeight, height - 1);
+      assertEquals(blocks.size(), storedBlocks.size());
+      for (int i = 0; i < blocks.size(); i++) {
+        assertEquals(blocks.get(i).getHeight(), storedBlocks.get(i).getHeight());
+        assertEquals(blocks.get(i).getPrevHash(), storedBlocks.get(i).getPrevHash());
+        assertEquals(blocks.get(i).getTxHashes(), storedBlocks.get(i).getTxHashes());
+        testBlock(storedBlocks.get(i), BINARY_BLOCK_CTX);
+      }
+      
+      // truncate store
+      store.truncate(startHeight + 50);
+      assertTrue(store.hasBlock(startHeight + 49));
+      assertFalse(store.hasBlock(startHeight + 50));
+      assertNull(store.getHeader(startHeight + 50));
+
+      // store is truncated from a header orphaned while not in use
+      daemon.setBlockStore(null);
+      MoneroBlockHeader orphan = new MoneroBlockHeader(store.getHeader(startHeight + 49));
+      orphan.setHash(new StringBuilder(orphan.getHash()).reverse().toString());
+      store.truncate(startHeight + 49);
+      store.putHeader(orphan);
+      daemon.setBlockStore(store);
+      assertEquals(startHeight + 48, store.getMaxHeight());
+      assertNull(store.getHeader(startHeight + 49));
+    } finally {
+      daemon.setBlockStore(null);
+      store.close();
+    }
+  }
+  
   // Can get block hashes (binary)
   @Test
   public void testGetBlockIdsBinary() {
     org.junit.Assume.assumeTrue(TEST_NON_RELAYS);
-    //get_hashes.bin
-    throw new RuntimeException("Not implemented");
+    
+    // get hashes from genesis
+    String genesisHash = daemon.getBlockHash(0);
+    List<String> hashes = daemon.getBlockHashes(Arrays.asList(genesisHash), null);
+    assertFalse(hashes.isEmpty());
+    assertEquals(genesisHash, hashes.get(0));
+    for (String hash : hashes) assertEquals(64, hash.length());
+    assertEquals(daemon.getBlockHash(hashes.size() - 1), hashes.get(hashes.size() - 1));
+    
+    // get hashes from a recent block as 32-byte hashes
+    long height = daemon.getHeight();
+    long joinHeight = height - 50;
+    String joinHash = daemon.getBlockHash(joinHeight);
+    MoneroBlockHashes blockHashes = daemon.getBlockHashesBinary(Arrays.asList(joinHash, genesisHash), null);
+    assertEquals(joinHeight, blockHashes.getStartHeight());
+    assertTrue(blockHashes.getCurrentHeight() >= height);
+    assertEquals(joinHash, blockHashes.getHash(0));
+    assertEquals(daemon.getBlockHash(joinHeight + 1), blockHashes.getHash(1));
+    
+    // stream hashes from a recent block to the daemon's height
+    long nextHeight = joinHeight;
+    Iterator<MoneroBlockHashes> iter = daemon.streamBlockHashes(Arrays.asList(joinHash, genesisHash), null);
+    while (iter.hasNext()) {
+      MoneroBlockHashes chunk = iter.next();
+      assertEquals(nextHeight, chunk.getStartHeight());
+      assertTrue(chunk.getNumHashes() > 0);
+      nextHeight = chunk.getEndHeight();
+    }
+    assertTrue(nextHeight >= height);
   }
   
   // Can get a transaction by hash with and without pruning
@@ -782,7 +1004,38 @@ public class TestMoneroDaemonRpc {
   @Test
   public void testGetOutputsFromAmountsAndIndicesBinary() {
     org.junit.Assume.assumeTrue(TEST_NON_RELAYS);
-    throw new RuntimeException("Not implemented"); // get_outs.bin
+    
+    // identify more outputs than fit in one request to restricted rpc
+    int numOutputs = 6000;
+    List<MoneroOutput> requested = new ArrayList<MoneroOutput>();
+    for (int i = 0; i < numOutputs; i++) requested.add(new MoneroOutput().setAmount(BigInteger.valueOf(0)).setIndex(i));
+    
+    // get outputs one request at a time
+    List<MoneroOutput> outputs;
+    int maxChunksInFlight = daemon.getMaxOutputChunksInFlight();
+    daemon.setMaxOutputChunksInFlight(1);
+    try {
+      outputs = daemon.getOutputs(requested);
+    } finally {
+      daemon.setMaxOutputChunksInFlight(maxChunksInFlight);
+    }
+    assertEquals(numOutputs, outputs.size());
+    for (int i = 0; i < numOutputs; i++) {
+      MoneroOutput output = outputs.get(i);
+      assertEquals(BigInteger.valueOf(0), output.getAmount());
+      assertEquals(i, (int) output.getIndex());
+      assertEquals(64, output.getStealthPublicKey().length());
+      assertEquals(64, output.getCommitment().length());
+      assertEquals(64, output.getTx().getHash().length());
+      assertTrue(output.getTx().isConfirmed());
+      assertTrue(output.getTx().getHeight() >= 0);
+    }
+    
+    // get outputs again which are cached
+    List<MoneroOutput> cached = daemon.getOutputs(requested);
+    assertEquals(outputs, cached);
+    cached.get(0).setStealthPublicKey(null);
+    assertEquals(outputs.get(0).getStealthPublicKey(), daemon.getOutputs(requested.subList(0, 1)).get(0).getStealthPublicKey());
   }
   
   // Can get an output histogram (binary)
@@ -1750,7 +2003,7 @@ public class TestMoneroDaemonRpc {
   private static void testOutputDistributionEntry(MoneroOutputDistributionEntry entry) {
     TestUtils.testUnsignedBigInteger(entry.getAmount());
     assert(entry.getBase() >= 0);
-    assertFalse(entry.getDistribution().isEmpty());
+    assertTrue(entry.getDistribution().length > 0);
     assertTrue(entry.getStartHeight() >= 0);
   }
   
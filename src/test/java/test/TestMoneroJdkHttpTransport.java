@@ -0,0 +1,325 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+import monero.common.MoneroRpcError;
+import monero.common.MoneroRpcTransport;
+
+/**
+ * Tests authenticating with the Java 11 JDK HTTP transport using a local
+ * stub server.
+ *
+ * The compiled classes resolve MoneroJdkHttpTransport to its Java 8 stub
+ * since they are not loaded from the multi-release jar, so the transport's
+ * Java 11 classes are loaded from META-INF/versions/11 instead.
+ */
+public class TestMoneroJdkHttpTransport {
+
+  private static final String RESULT_RESPONSE = "{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"result\":{\"status\":\"OK\",\"height\":100}}";
+  private static final String USERNAME = "user";
+  private static final String PASSWORD = "pass";
+  private static final String REALM = "monero-rpc";
+
+  private static MoneroRpcTransport.Factory factory;
+
+  private StubServer server;
+  private MoneroRpcConnection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeTrue("Requires Java 11 or later", getJavaVersion() >= 11);
+    if (factory == null) factory = loadFactory();
+    server = new StubServer();
+  }
+
+  @After
+  public void tearDown() {
+    if (connection != null) connection.close();
+    if (server != null) server.stop();
+  }
+
+  // Can authenticate with basic authentication
+  @Test
+  public void testBasicAuth() {
+    server.scheme = "Basic";
+    connection = server.connect(PASSWORD, true);
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(2, server.numRequests.get());
+
+    // cached challenge authorizes requests preemptively
+    assertTrue(connection.sendJsonRequestAsync("get_info").join().containsKey("result"));
+    assertEquals(3, server.numRequests.get());
+  }
+
+  // Can authenticate with MD5 digest authentication with quality of protection
+  @Test
+  public void testDigestAuth() {
+    connection = server.connect(PASSWORD, true);
+    for (int i = 0; i < 3; i++) assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertTrue(connection.sendJsonRequestAsync("get_info").join().containsKey("result"));
+    assertEquals(5, server.numRequests.get());
+    assertEquals(4, server.numAuthorized.get());
+    assertEquals(Arrays.asList("00000001", "00000002", "00000003", "00000004"), server.nonceCounts);
+  }
+
+  // Can authenticate with MD5-sess digest authentication
+  @Test
+  public void testDigestAuthSess() {
+    server.algorithm = "MD5-sess";
+    connection = server.connect(PASSWORD, true);
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(3, server.numRequests.get());
+    assertEquals(Arrays.asList("00000001", "00000002"), server.nonceCounts);
+  }
+
+  // Can authenticate with digest authentication of servers which predate qop
+  @Test
+  public void testDigestAuthWithoutQop() {
+    server.qop = null;
+    connection = server.connect(PASSWORD, false);
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertTrue(connection.sendJsonRequestAsync("get_info").join().containsKey("result"));
+
+    // each request is challenged without preemptive authentication
+    assertEquals(4, server.numRequests.get());
+    assertEquals(2, server.numAuthorized.get());
+    assertTrue(server.nonceCounts.isEmpty());
+  }
+
+  // Answers a new challenge once when the server marks the cached nonce stale
+  @Test
+  public void testStaleNonce() {
+    connection = server.connect(PASSWORD, true);
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(3, server.numRequests.get());
+
+    // stale nonce is replaced and its nonce count restarts
+    server.rotateNonce();
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(5, server.numRequests.get());
+    assertEquals(1, server.numStale.get());
+    assertTrue(connection.sendJsonRequestAsync("get_info").join().containsKey("result"));
+    assertEquals(6, server.numRequests.get());
+    assertEquals(Arrays.asList("00000001", "00000002", "00000001", "00000002"), server.nonceCounts);
+  }
+
+  // Does not retry a challenge again when the server rejects the credentials
+  @Test
+  public void testRejectedCredentials() {
+    connection = server.connect("wrong", true);
+    try {
+      connection.sendJsonRequest("get_info");
+      fail("Should have been unauthorized");
+    } catch (MoneroRpcError e) {
+      assertEquals(401, (int) e.getCode());
+    }
+    assertEquals(2, server.numRequests.get());
+    assertEquals(0, server.numAuthorized.get());
+
+    // rejected challenge is not cached
+    try {
+      connection.sendJsonRequestAsync("get_info").join();
+      fail("Should have been unauthorized");
+    } catch (Exception e) {
+      assertTrue(e.getCause() instanceof MoneroRpcError);
+      assertEquals(401, (int) ((MoneroRpcError) e.getCause()).getCode());
+    }
+    assertEquals(4, server.numRequests.get());
+  }
+
+  private static int getJavaVersion() {
+    String version = System.getProperty("java.specification.version");
+    return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+  }
+
+  /**
+   * Load the factory of the transport's Java 11 classes.
+   */
+  private static MoneroRpcTransport.Factory loadFactory() throws Exception {
+    ClassLoader loader = new VersionedClassLoader(TestMoneroJdkHttpTransport.class.getClassLoader(), 11);
+    Class<?> transportClass = loader.loadClass("monero.common.MoneroJdkHttpTransport");
+    assertTrue("Java 11 transport is not compiled", (Boolean) transportClass.getMethod("isAvailable").invoke(null));
+    return (MoneroRpcTransport.Factory) transportClass.getField("FACTORY").get(null);
+  }
+
+  /**
+   * Loads the transport's classes of a release from META-INF/versions and
+   * other classes from its parent.
+   *
+   * The transport only uses the public API of its package, so it links to
+   * the parent's classes from its own runtime package.
+   */
+  private static class VersionedClassLoader extends ClassLoader {
+
+    private static final String PREFIX = "monero.common.MoneroJdkHttpTransport";
+
+    private int release;
+
+    private VersionedClassLoader(ClassLoader parent, int release) {
+      super(parent);
+      this.release = release;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(PREFIX) && !name.startsWith(PREFIX + "$")) return super.loadClass(name, resolve);
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) loaded = findClass(name);
+        if (resolve) resolveClass(loaded);
+        return loaded;
+      }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      String path = "META-INF/versions/" + release + "/" + name.replace('.', '/') + ".class";
+      try (InputStream in = getParent().getResourceAsStream(path)) {
+        if (in == null) throw new ClassNotFoundException(name + " not found at " + path);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = in.read(buf)) != -1; ) out.write(buf, 0, n);
+        byte[] bytes = out.toByteArray();
+        return defineClass(name, bytes, 0, bytes.length);
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+
+  /**
+   * Stub server which requires basic or digest authentication and verifies
+   * the digest responses and nonce counts of requests.
+   */
+  private static class StubServer {
+
+    private static final Pattern PARAM = Pattern.compile("(\\w+)=(?:\"([^\"]*)\"|([^,\\s]*))");
+
+    private HttpServer server;
+    private volatile String scheme = "Digest";
+    private volatile String algorithm = "MD5";
+    private volatile String qop = "auth,auth-int";
+    private volatile String nonce;
+    private Set<String> staleNonces = ConcurrentHashMap.newKeySet();
+    private AtomicInteger nonceId = new AtomicInteger();
+    private AtomicInteger numRequests = new AtomicInteger();
+    private AtomicInteger numAuthorized = new AtomicInteger();
+    private AtomicInteger numStale = new AtomicInteger();
+    private List<String> nonceCounts = new CopyOnWriteArrayList<String>();
+
+    private StubServer() throws IOException {
+      rotateNonce();
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", exchange -> {
+        exchange.getRequestBody().close();
+        numRequests.incrementAndGet();
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !isAuthorized(exchange, authorization)) respond(exchange, 401, false);
+        else if (authorization.startsWith("Digest ") && staleNonces.contains(parse(authorization).get("nonce"))) {
+          numStale.incrementAndGet();
+          respond(exchange, 401, true);
+        } else {
+          numAuthorized.incrementAndGet();
+          respond(exchange, 200, false);
+        }
+      });
+      server.start();
+    }
+
+    private void rotateNonce() {
+      if (nonce != null) staleNonces.add(nonce);
+      nonce = "nonce" + nonceId.incrementAndGet();
+    }
+
+    private MoneroRpcConnection connect(String password, boolean preemptiveAuth) {
+      MoneroRpcConnectionConfig config = new MoneroRpcConnectionConfig().setTransportFactory(factory).setPreemptiveAuth(preemptiveAuth).setMaxRetries(0);
+      return new MoneroRpcConnection("http://127.0.0.1:" + server.getAddress().getPort(), USERNAME, password, config);
+    }
+
+    private void stop() {
+      server.stop(0);
+    }
+
+    private boolean isAuthorized(HttpExchange exchange, String authorization) {
+      if ("Basic".equals(scheme)) return authorization.equals("Basic " + Base64.getEncoder().encodeToString((USERNAME + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8)));
+      if (!authorization.startsWith("Digest ")) return false;
+      Map<String, String> params = parse(authorization);
+      String ha1 = md5(params.get("username") + ":" + params.get("realm") + ":" + PASSWORD);
+      if ("MD5-sess".equals(algorithm)) ha1 = md5(ha1 + ":" + params.get("nonce") + ":" + params.get("cnonce"));
+      String ha2 = md5(exchange.getRequestMethod() + ":" + exchange.getRequestURI());
+      String expected = qop == null ? md5(ha1 + ":" + params.get("nonce") + ":" + ha2) : md5(ha1 + ":" + params.get("nonce") + ":" + params.get("nc") + ":" + params.get("cnonce") + ":" + params.get("qop") + ":" + ha2);
+      if (!expected.equals(params.get("response")) || !exchange.getRequestURI().toString().equals(params.get("uri"))) return false;
+      if (qop != null) {
+        if (!"auth".equals(params.get("qop"))) return false;
+        if (params.get("nonce").equals(nonce)) nonceCounts.add(params.get("nc"));
+      } else if (params.get("nc") != null) {
+        return false;
+      }
+      return true;
+    }
+
+    private void respond(HttpExchange exchange, int status, boolean stale) throws IOException {
+      if (status == 401) {
+        String challenge = "Basic".equals(scheme) ? "Basic realm=\"" + REALM + "\"" : "Digest realm=\"" + REALM + "\", nonce=\"" + nonce + "\", algorithm=" + algorithm + (qop == null ? "" : ", qop=\"" + qop + "\"") + (stale ? ", stale=true" : "");
+        exchange.getResponseHeaders().add("WWW-Authenticate", challenge);
+      }
+      byte[] body = (status == 200 ? RESULT_RESPONSE : "Unauthorized").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", status == 200 ? "application/json" : "text/plain");
+      exchange.sendResponseHeaders(status, body.length);
+      OutputStream os = exchange.getResponseBody();
+      os.write(body);
+      os.close();
+    }
+
+    private static Map<String, String> parse(String authorization) {
+      Map<String, String> params = new HashMap<String, String>();
+      Matcher matcher = PARAM.matcher(authorization.substring(authorization.indexOf(' ') + 1));
+      while (matcher.find()) params.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+      return params;
+    }
+
+    private static String md5(String value) {
+      try {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8))) sb.append(String.format("%02x", b));
+        return sb.toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,555 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import monero.common.MoneroError;
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+import monero.common.MoneroRpcError;
+import monero.common.MoneroRpcMetrics;
+import monero.common.MoneroRpcRequest;
+
+/**
+ * Tests sending requests with a MoneroRpcConnection using a local stub
+ * server.
+ */
+public class TestMoneroRpcConnection {
+
+  private static final String RESULT_RESPONSE = "{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"result\":{\"status\":\"OK\",\"height\":100}}";
+
+  private StubServer server;
+  private MoneroRpcConnection connection;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new StubServer();
+  }
+
+  @After
+  public void tearDown() {
+    if (connection != null) connection.close();
+    server.close();
+  }
+
+  // Retries idempotent methods on a 503 response
+  @Test
+  public void testRetryOnUnavailable() {
+    connection = server.connect(getRetryConfig());
+    server.respond(Response.UNAVAILABLE, Response.UNAVAILABLE);
+    Map<String, Object> resp = connection.sendJsonRequest("get_info");
+    assertTrue(resp.containsKey("result"));
+    assertEquals(3, server.numRequests.get());
+
+    // async requests are retried too
+    server.respond(Response.UNAVAILABLE);
+    assertTrue(connection.sendJsonRequestAsync("get_info").join().containsKey("result"));
+    assertEquals(5, server.numRequests.get());
+  }
+
+  // Retries idempotent methods when the connection is reset
+  @Test
+  public void testRetryOnConnectionReset() {
+    connection = server.connect(getRetryConfig());
+    server.respond(Response.RESET);
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(2, server.numRequests.get());
+    server.respond(Response.RESET);
+    assertTrue(connection.sendPathRequest("get_height").containsKey("result"));
+    assertEquals(4, server.numRequests.get());
+  }
+
+  // Does not retry methods which change state
+  @Test
+  public void testNoRetryOfNonIdempotentMethods() {
+    connection = server.connect(getRetryConfig());
+    int numRequests = 0;
+    for (String method : Arrays.asList("transfer", "submit_transaction", "relay_tx")) {
+      server.respond(Response.UNAVAILABLE, Response.UNAVAILABLE);
+      try {
+        connection.sendJsonRequest(method);
+        fail("Should have failed without retrying " + method);
+      } catch (MoneroError e) {
+        assertEquals(503, (int) e.getCode());
+      }
+      assertEquals(++numRequests, server.numRequests.get());
+      server.clearScript();
+    }
+
+    // reset connection is not retried either
+    server.respond(Response.RESET);
+    try {
+      connection.sendJsonRequest("transfer");
+      fail("Should have failed without retrying transfer");
+    } catch (MoneroError e) { }
+    assertEquals(++numRequests, server.numRequests.get());
+  }
+
+  // Limits retries to the retry budget
+  @Test
+  public void testRetryBudget() {
+    connection = server.connect(getRetryConfig().setRetryBudgetRatio(0));
+    server.setDefaultResponse(Response.UNAVAILABLE);
+
+    // the budget's reserve of 10 retries is spent by the first 5 requests
+    for (int i = 0; i < 5; i++) {
+      try {
+        connection.sendJsonRequest("get_info");
+        fail("Should have failed");
+      } catch (MoneroError e) { }
+      assertEquals(3 * (i + 1), server.numRequests.get());
+    }
+
+    // further requests are not retried
+    for (int i = 0; i < 3; i++) {
+      try {
+        connection.sendJsonRequest("get_info");
+        fail("Should have failed");
+      } catch (MoneroError e) { }
+    }
+    assertEquals(18, server.numRequests.get());
+  }
+
+  // Can share one request among concurrent identical requests
+  @Test
+  public void testCoalesceConcurrentRequests() {
+    connection = server.connect(getCoalescingConfig(0));
+    server.delay = 200;
+    List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<CompletableFuture<Map<String, Object>>>();
+    for (int i = 0; i < 10; i++) futures.add(connection.sendJsonRequestAsync("get_info"));
+    for (CompletableFuture<Map<String, Object>> future : futures) assertSame(futures.get(0).join(), future.join());
+    assertEquals(1, server.numRequests.get());
+
+    // requests with different params or methods which are not coalesced are sent separately
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("height", 1);
+    CompletableFuture<Map<String, Object>> future1 = connection.sendJsonRequestAsync("get_block_header_by_height", params);
+    params.put("height", 2);
+    CompletableFuture<Map<String, Object>> future2 = connection.sendJsonRequestAsync("get_block_header_by_height", params);
+    CompletableFuture<Map<String, Object>> future3 = connection.sendJsonRequestAsync("make_integrated_address");
+    CompletableFuture<Map<String, Object>> future4 = connection.sendJsonRequestAsync("make_integrated_address");
+    CompletableFuture.allOf(future1, future2, future3, future4).join();
+    assertEquals(5, server.numRequests.get());
+  }
+
+  // Can share an error among concurrent identical requests
+  @Test
+  public void testCoalesceErrors() throws InterruptedException {
+    connection = server.connect(getCoalescingConfig(0).setMaxRetries(0));
+    server.delay = 200;
+    server.respond(Response.UNAVAILABLE);
+    List<MoneroError> errors = new CopyOnWriteArrayList<MoneroError>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 5; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          connection.sendJsonRequest("get_info");
+        } catch (MoneroError e) {
+          errors.add(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertEquals(5, errors.size());
+    for (MoneroError error : errors) assertEquals(503, (int) error.getCode());
+    assertEquals(1, server.numRequests.get());
+
+    // the failed request is not shared afterwards
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(2, server.numRequests.get());
+  }
+
+  // Can share a result within the coalescing window after it completes
+  @Test
+  public void testCoalescingWindow() throws InterruptedException {
+    connection = server.connect(getCoalescingConfig(300));
+    Map<String, Object> resp = connection.sendJsonRequest("get_info");
+    assertSame(resp, connection.sendJsonRequest("get_info"));
+    assertEquals(1, server.numRequests.get());
+    Thread.sleep(400);
+    assertNotSame(resp, connection.sendJsonRequest("get_info"));
+    assertEquals(2, server.numRequests.get());
+  }
+
+  // Releases shared results once the coalescing window passes
+  @Test
+  public void testCoalescingEviction() throws InterruptedException {
+    connection = server.connect(getCoalescingConfig(100));
+    MoneroRpcMetrics metrics = new MoneroRpcMetrics();
+    connection.setMetricsListener(metrics);
+    List<WeakReference<Map<String, Object>>> results = new ArrayList<WeakReference<Map<String, Object>>>();
+    for (int i = 0; i < 100; i++) {
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put("height", i);
+      Map<String, Object> resp = connection.sendJsonRequest("get_block_header_by_height", params);
+      assertSame(resp, connection.sendJsonRequest("get_block_header_by_height", params));
+      results.add(new WeakReference<Map<String, Object>>(resp));
+    }
+    assertEquals(100, server.numRequests.get());
+    assertEquals(100, metrics.getMethodMetrics("get_block_header_by_height").getNumCoalesced());
+    awaitCollected(results);
+  }
+
+  // Does not keep results after their requests complete without a coalescing window
+  @Test
+  public void testCoalescingNoWindow() throws InterruptedException {
+    connection = server.connect(getCoalescingConfig(0));
+    awaitCollected(Arrays.asList(new WeakReference<Map<String, Object>>(connection.sendJsonRequest("get_info"))));
+  }
+
+  // Reports time waiting for admission as queue time instead of network time
+  @Test
+  public void testQueueTimeMetrics() throws InterruptedException {
+    server.delay = 300;
+    connection = server.connect(new MoneroRpcConnectionConfig().setMaxInFlight(1));
+    MoneroRpcMetrics metrics = new MoneroRpcMetrics();
+    connection.setMetricsListener(metrics);
+    CompletableFuture<Map<String, Object>> first = connection.sendJsonRequestAsync("get_info");
+    CompletableFuture<Map<String, Object>> second = connection.sendJsonRequestAsync("get_info");
+    Thread.sleep(100);
+    assertEquals(1, metrics.getMethodMetrics("get_info").getInFlight());
+    first.join();
+    second.join();
+    MoneroRpcMetrics.MethodMetrics methodMetrics = metrics.getMethodMetrics("get_info");
+    assertEquals(0, methodMetrics.getInFlight());
+    assertEquals(2, methodMetrics.getQueueTimes().getCount());
+    assertTrue(methodMetrics.getQueueTimes().getPercentile(100) >= 200000);
+    assertTrue(methodMetrics.getNetworkTimes().getPercentile(100) < 1000000);
+  }
+
+  // Sends no more than the maximum number of requests in flight
+  @Test
+  public void testMaxInFlight() throws InterruptedException {
+    server.gate = new CountDownLatch(1);
+    connection = server.connect(new MoneroRpcConnectionConfig().setMaxInFlight(3));
+    MoneroRpcMetrics metrics = new MoneroRpcMetrics();
+    connection.setMetricsListener(metrics);
+    List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<CompletableFuture<Map<String, Object>>>();
+    for (int i = 0; i < 10; i++) futures.add(connection.sendJsonRequestAsync("get_info"));
+    assertEquals(3, metrics.getMethodMetrics("get_info").getInFlight());
+    assertEquals(3, metrics.getMethodMetrics("get_info").getQueueTimes().getCount());
+
+    // waiting requests are sent as requests complete
+    server.awaitRequests(3);
+    server.gate.countDown();
+    for (CompletableFuture<Map<String, Object>> future : futures) assertTrue(future.join().containsKey("result"));
+    assertEquals(10, server.numRequests.get());
+    assertEquals(3, server.maxActive.get());
+    assertEquals(0, metrics.getMethodMetrics("get_info").getInFlight());
+  }
+
+  // Sends waiting interactive requests before waiting bulk requests
+  @Test
+  public void testPriority() throws InterruptedException {
+    server.gate = new CountDownLatch(1);
+    connection = server.connect(new MoneroRpcConnectionConfig().setMaxInFlight(1));
+    CompletableFuture<Map<String, Object>> first = connection.sendJsonRequestAsync("get_info");
+    server.awaitRequests(1);
+    CompletableFuture<Map<String, Object>> bulk = connection.sendJsonRequestAsync("get_block_headers_range");
+    CompletableFuture<Map<String, Object>> interactive = connection.sendJsonRequestAsync("get_height");
+    server.gate.countDown();
+    CompletableFuture.allOf(first, bulk, interactive).join();
+    assertEquals(Arrays.asList("get_info", "get_height", "get_block_headers_range"), server.methods);
+  }
+
+  // Sends requests beyond the burst as the rate limit refills tokens
+  @Test
+  public void testRateLimit() {
+    connection = server.connect(new MoneroRpcConnectionConfig().setMaxRequestsPerSecond(1).setRequestBurst(2));
+    MoneroRpcMetrics metrics = new MoneroRpcMetrics();
+    connection.setMetricsListener(metrics);
+    List<CompletableFuture<Map<String, Object>>> futures = new ArrayList<CompletableFuture<Map<String, Object>>>();
+    for (int i = 0; i < 3; i++) futures.add(connection.sendJsonRequestAsync("get_info"));
+    assertEquals(2, metrics.getMethodMetrics("get_info").getQueueTimes().getCount()); // third request waits for a token
+    for (CompletableFuture<Map<String, Object>> future : futures) assertTrue(future.join().containsKey("result"));
+    assertEquals(3, server.numRequests.get());
+    assertEquals(3, metrics.getMethodMetrics("get_info").getQueueTimes().getCount());
+  }
+
+  // Times out waiting to send a request and does not send it afterwards
+  @Test
+  public void testAdmissionTimeout() throws InterruptedException {
+    server.gate = new CountDownLatch(1);
+    connection = server.connect(new MoneroRpcConnectionConfig().setMaxInFlight(1).setConnectionRequestTimeout(50));
+    CompletableFuture<Map<String, Object>> first = connection.sendJsonRequestAsync("get_info");
+    server.awaitRequests(1);
+    try {
+      connection.sendJsonRequest("get_height");
+      fail("Should have timed out");
+    } catch (MoneroError e) {
+      assertTrue(e.getMessage().contains("Timed out"));
+    }
+
+    // the timed out request is skipped when the slot is released
+    server.gate.countDown();
+    first.join();
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+    assertEquals(Arrays.asList("get_info", "get_info"), server.methods);
+  }
+
+  // Does not leak admissions when a request is admitted while timing out
+  @Test
+  public void testAdmissionTimeoutRace() {
+    server.delay = 1;
+    connection = server.connect(new MoneroRpcConnectionConfig().setMaxInFlight(1).setConnectionRequestTimeout(1));
+    MoneroRpcMetrics metrics = new MoneroRpcMetrics();
+    connection.setMetricsListener(metrics);
+    for (int i = 0; i < 200; i++) {
+      CompletableFuture<Map<String, Object>> holder = connection.sendJsonRequestAsync("get_info");
+      try {
+        connection.sendJsonRequest("get_height");
+      } catch (MoneroError e) {
+        // timed out before the slot was released
+      }
+      holder.join();
+    }
+
+    // every admission is released so the slot is free
+    assertEquals(0, metrics.getMethodMetrics("get_info").getInFlight());
+    assertTrue(connection.sendJsonRequest("get_info").containsKey("result"));
+  }
+
+  // Resets metrics while a request is in flight without losing its in-flight count
+  @Test
+  public void testResetMetrics() throws InterruptedException {
+    server.delay = 300;
+    connection = server.connect(new MoneroRpcConnectionConfig());
+    MoneroRpcMetrics metrics = new MoneroRpcMetrics();
+    connection.setMetricsListener(metrics);
+    connection.sendJsonRequest("get_info");
+    CompletableFuture<Map<String, Object>> inFlight = connection.sendJsonRequestAsync("get_info");
+    MoneroRpcMetrics.MethodMetrics methodMetrics = metrics.getMethodMetrics("get_info");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (methodMetrics.getInFlight() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    metrics.reset();
+    assertSame(methodMetrics, metrics.getMethodMetrics("get_info"));
+    assertEquals(1, methodMetrics.getInFlight());
+    assertEquals(0, methodMetrics.getNumRequests());
+    assertEquals(0, methodMetrics.getNetworkTimes().getCount());
+    assertEquals(0, methodMetrics.getBytesReceived());
+    inFlight.join();
+    assertEquals(0, methodMetrics.getInFlight());
+    assertEquals(1, methodMetrics.getNumRequests());
+    assertEquals(1, methodMetrics.getNetworkTimes().getCount());
+  }
+
+  // Throws a descriptive error if a batch response cannot be matched to its request
+  @Test
+  public void testBatchResponseIds() {
+    connection = server.connect(new MoneroRpcConnectionConfig());
+    List<MoneroRpcRequest> requests = Arrays.asList(new MoneroRpcRequest("get_info"), new MoneroRpcRequest("get_height"));
+
+    // error without an id
+    server.result = "[{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32600,\"message\":\"Invalid Request\"}},{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":{}}]";
+    try {
+      connection.sendJsonRequests(requests);
+      fail("Should have thrown error without an id");
+    } catch (MoneroRpcError e) {
+      assertEquals(-32600, (int) e.getCode());
+      assertTrue(e.getMessage().contains("without an id"));
+    }
+
+    // unknown and duplicate ids
+    server.result = "[{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"result\":{}},{\"jsonrpc\":\"2.0\",\"id\":\"5\",\"result\":{}}]";
+    try {
+      connection.sendJsonRequests(requests);
+      fail("Should have thrown unknown id");
+    } catch (MoneroError e) {
+      assertEquals("Batch response has unknown id: 5", e.getMessage());
+    }
+    server.result = "[{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"result\":{}},{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"result\":{}}]";
+    try {
+      connection.sendJsonRequests(requests);
+      fail("Should have thrown duplicate id");
+    } catch (MoneroError e) {
+      assertEquals("Batch response has duplicate id: 0", e.getMessage());
+    }
+  }
+
+  /**
+   * Wait until results are no longer referenced and garbage collected.
+   */
+  private static void awaitCollected(List<WeakReference<Map<String, Object>>> results) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (true) {
+      int numReferenced = 0;
+      for (WeakReference<Map<String, Object>> result : results) if (result.get() != null) numReferenced++;
+      if (numReferenced == 0) return;
+      if (System.currentTimeMillis() > deadline) fail(numReferenced + " results are still referenced");
+      System.gc();
+      Thread.sleep(50);
+    }
+  }
+
+  private static MoneroRpcConnectionConfig getCoalescingConfig(long coalescingWindow) {
+    return new MoneroRpcConnectionConfig().setRequestCoalescing(true).setCoalescingWindow(coalescingWindow);
+  }
+
+  private static MoneroRpcConnectionConfig getRetryConfig() {
+    return new MoneroRpcConnectionConfig().setMaxRetries(2).setRetryBackoff(1).setMaxRetryBackoff(1);
+  }
+
+  /**
+   * How the stub server responds to a request.
+   */
+  private enum Response {
+    OK,
+    UNAVAILABLE,
+    RESET
+  }
+
+  /**
+   * Serves scripted responses over raw sockets, closing each connection after
+   * its response, and counts requests.
+   */
+  private static class StubServer {
+
+    private static final Pattern METHOD = Pattern.compile("\"method\"\\s*:\\s*\"([^\"]+)\"");
+
+    private ServerSocket serverSocket;
+    private Queue<Response> script = new ConcurrentLinkedQueue<Response>();
+    private volatile Response defaultResponse = Response.OK;
+    private volatile String result = RESULT_RESPONSE;
+    private volatile long delay; // milliseconds to wait before responding
+    private volatile CountDownLatch gate; // holds responses until counted down if set
+    private AtomicInteger numRequests = new AtomicInteger();
+    private AtomicInteger numActive = new AtomicInteger();
+    private AtomicInteger maxActive = new AtomicInteger();
+    private List<String> methods = new CopyOnWriteArrayList<String>(); // JSON-RPC methods in order received
+
+    private StubServer() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      Thread acceptor = new Thread(() -> {
+        while (!serverSocket.isClosed()) {
+          try {
+            Socket socket = serverSocket.accept();
+            new Thread(() -> handle(socket)).start();
+          } catch (IOException e) {
+            // server closed
+          }
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    private MoneroRpcConnection connect(MoneroRpcConnectionConfig config) {
+      return new MoneroRpcConnection("http://127.0.0.1:" + serverSocket.getLocalPort(), null, null, config);
+    }
+
+    private void respond(Response... responses) {
+      script.addAll(Arrays.asList(responses));
+    }
+
+    private void setDefaultResponse(Response response) {
+      defaultResponse = response;
+    }
+
+    private void clearScript() {
+      script.clear();
+    }
+
+    private void close() {
+      try {
+        serverSocket.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Wait until the server has received a number of requests.
+     */
+    private void awaitRequests(int numRequests) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (this.numRequests.get() < numRequests) {
+        if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + numRequests + " requests, received " + this.numRequests.get());
+        Thread.sleep(10);
+      }
+    }
+
+    private void handle(Socket socket) {
+      try {
+        Matcher matcher = METHOD.matcher(readRequest(socket.getInputStream()));
+        if (matcher.find()) methods.add(matcher.group(1));
+        numRequests.incrementAndGet();
+        maxActive.accumulateAndGet(numActive.incrementAndGet(), Math::max);
+        Response response = script.poll();
+        if (response == null) response = defaultResponse;
+        CountDownLatch gate = this.gate;
+        if (gate != null) gate.await();
+        if (delay > 0) Thread.sleep(delay);
+        numActive.decrementAndGet();
+        if (response == Response.RESET) {
+          socket.setSoLinger(true, 0);
+          socket.close();
+          return;
+        }
+        byte[] body = (response == Response.OK ? result : "Service Unavailable").getBytes(StandardCharsets.UTF_8);
+        String statusLine = response == Response.OK ? "HTTP/1.1 200 OK" : "HTTP/1.1 503 Service Unavailable";
+        String headers = statusLine + "\r\nContent-Type: application/json\r\nContent-Length: " + body.length + "\r\nConnection: close\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(headers.getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+        socket.close();
+      } catch (Exception e) {
+        // client went away
+      }
+    }
+
+    private static String readRequest(InputStream in) throws IOException {
+      ByteArrayOutputStream head = new ByteArrayOutputStream();
+      int numLineBreaks = 0;
+      while (numLineBreaks < 4) {
+        int b = in.read();
+        if (b < 0) throw new IOException("Request ended before headers");
+        head.write(b);
+        numLineBreaks = b == '\r' || b == '\n' ? numLineBreaks + 1 : 0;
+      }
+      int contentLength = 0;
+      for (String line : new String(head.toByteArray(), StandardCharsets.US_ASCII).split("\r\n")) {
+        if (line.toLowerCase().startsWith("content-length:")) contentLength = Integer.parseInt(line.substring(15).trim());
+      }
+      byte[] body = new byte[contentLength];
+      for (int i = 0; i < contentLength; i++) {
+        int b = in.read();
+        if (b < 0) throw new IOException("Request ended before body");
+        body[i] = (byte) b;
+      }
+      return new String(body, StandardCharsets.UTF_8);
+    }
+  }
+}
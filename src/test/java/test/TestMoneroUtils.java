@@ -1,10 +1,16 @@
 package test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -14,9 +20,14 @@ import java.util.UUID;
 
 import org.junit.Test;
 
+import monero.common.MoneroBlobParser;
 import monero.common.MoneroError;
+import monero.common.MoneroPortableStorage;
 import monero.common.MoneroUtils;
+import monero.daemon.model.MoneroBlock;
 import monero.daemon.model.MoneroNetworkType;
+import monero.daemon.model.MoneroOutput;
+import monero.daemon.model.MoneroTx;
 import monero.wallet.MoneroWallet;
 import monero.wallet.MoneroWalletJni;
 import monero.wallet.model.MoneroWalletConfig;
@@ -85,6 +96,289 @@ public class TestMoneroUtils {
     assertEquals(map, map2);
   }
   
+  // Can serialize to the bytes of monero's portable storage
+  @Test
+  public void testSerializePortableStorageBytes() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("heights", Arrays.asList(111, 222, 333));
+    byte[] expected = new byte[] {
+        0x01, 0x11, 0x01, 0x01, 0x01, 0x01, 0x02, 0x01, 0x01, // signature and version
+        0x04, // 1 entry
+        0x07, 'h', 'e', 'i', 'g', 'h', 't', 's', // name
+        (byte) 0x85, 0x0c, // uint64 array of 3 elements
+        0x6f, 0, 0, 0, 0, 0, 0, 0,
+        (byte) 0xde, 0, 0, 0, 0, 0, 0, 0,
+        0x4d, 0x01, 0, 0, 0, 0, 0, 0
+    };
+    assertTrue(Arrays.equals(expected, MoneroUtils.mapToBinary(map)));
+  }
+  
+  // Can serialize nested sections, arrays, and every value type
+  @Test
+  public void testSerializeNested() {
+    Map<String, Object> output = new HashMap<String, Object>();
+    output.put("amount", 0);
+    output.put("index", 4294967296L);
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("outputs", Arrays.asList(output, output));
+    map.put("negative", -5);
+    map.put("uint64_max", new BigInteger("18446744073709551615"));
+    map.put("int64_min", Long.MIN_VALUE);
+    map.put("ratio", 0.25);
+    map.put("get_txid", true);
+    map.put("empty", "");
+    map.put("unicode", "\u00e9\u4e2d");
+    map.put("signed", Arrays.asList(3, -3));
+    map.put("nested", Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")));
+    byte[] binary = MoneroUtils.mapToBinary(map);
+    Map<String, Object> map2 = MoneroUtils.binaryToMap(binary);
+    assertEquals(map, map2);
+    assertEquals(Integer.valueOf(-5), map2.get("negative"));
+    assertEquals(Long.valueOf(4294967296L), ((Map<?, ?>) ((List<?>) map2.get("outputs")).get(1)).get("index"));
+  }
+  
+  // Can omit null values and empty arrays like monerod's JSON loader
+  @Test
+  public void testSerializeOmitted() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("heights", new ArrayList<Long>());
+    map.put("prune", null);
+    map.put("client", "");
+    Map<String, Object> map2 = MoneroUtils.binaryToMap(MoneroUtils.mapToBinary(map));
+    assertEquals(1, map2.size());
+    assertEquals("", map2.get("client"));
+  }
+  
+  // Can serialize an empty array nested in an array with a valid element type
+  @Test
+  public void testSerializeNestedEmptyArray() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("nested", Arrays.asList(Arrays.asList(1), new ArrayList<Integer>()));
+    byte[] expected = new byte[] {
+        0x01, 0x11, 0x01, 0x01, 0x01, 0x01, 0x02, 0x01, 0x01, // signature and version
+        0x04, // 1 entry
+        0x06, 'n', 'e', 's', 't', 'e', 'd', // name
+        (byte) 0x8d, 0x08, // array of 2 arrays
+        (byte) 0x85, 0x04, 0x01, 0, 0, 0, 0, 0, 0, 0, // uint64 array of 1 element
+        (byte) 0x85, 0x00 // empty uint64 array
+    };
+    byte[] binary = MoneroUtils.mapToBinary(map);
+    assertTrue(Arrays.equals(expected, binary));
+    assertEquals(map, MoneroUtils.binaryToMap(binary));
+  }
+  
+  // Can read strings as binary
+  @Test
+  public void testSerializeBinaryStrings() {
+    byte[] blob = new byte[64];
+    for (int i = 0; i < blob.length; i++) blob[i] = (byte) (i * 7 - 128);
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("block_ids", blob);
+    map.put("status", "OK");
+    Map<String, Object> map2 = MoneroPortableStorage.deserialize(ByteBuffer.wrap(MoneroUtils.mapToBinary(map)), true);
+    assertTrue(Arrays.equals(blob, (byte[]) map2.get("block_ids")));
+    assertTrue(Arrays.equals("OK".getBytes(), (byte[]) map2.get("status")));
+  }
+  
+  // Can read every integer width which monerod writes
+  @Test
+  public void testDeserializeIntegerWidths() {
+    ByteBuffer buf = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    buf.putInt(MoneroPortableStorage.SIGNATURE_A).putInt(MoneroPortableStorage.SIGNATURE_B).put(MoneroPortableStorage.FORMAT_VERSION);
+    buf.put((byte) (4 << 2)); // 4 entries
+    buf.put((byte) 1).put((byte) 'a').put((byte) 6).putInt(-1); // uint32
+    buf.put((byte) 1).put((byte) 'b').put((byte) 3).putShort((short) -2); // int16
+    buf.put((byte) 1).put((byte) 'c').put((byte) 8).put((byte) 200); // uint8
+    buf.put((byte) 1).put((byte) 'd').put((byte) (0x80 | 7)).put((byte) (2 << 2)).putShort((short) 65535).putShort((short) 1); // uint16 array
+    byte[] bytes = Arrays.copyOf(buf.array(), buf.position());
+    Map<String, Object> map = MoneroUtils.binaryToMap(bytes);
+    assertEquals(Long.valueOf(4294967295L), map.get("a"));
+    assertEquals(Integer.valueOf(-2), map.get("b"));
+    assertEquals(Integer.valueOf(200), map.get("c"));
+    assertEquals(Arrays.asList(65535, 1), map.get("d"));
+  }
+  
+  // Rejects malformed portable storage
+  @Test
+  public void testDeserializeMalformed() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("height", 5);
+    byte[] binary = MoneroUtils.mapToBinary(map);
+    try {
+      MoneroUtils.binaryToMap(Arrays.copyOf(binary, binary.length - 1));
+      fail("Should have failed on truncated input");
+    } catch (MoneroError e) {
+      assertEquals("Portable storage is truncated", e.getMessage());
+    }
+    byte[] huge = Arrays.copyOf(binary, binary.length);
+    huge[9] = (byte) 0xfe; // entry count far beyond the input
+    try {
+      MoneroUtils.binaryToMap(huge);
+      fail("Should have failed on entry count");
+    } catch (MoneroError e) {
+      assertTrue(e.getMessage().startsWith("Portable storage size exceeds remaining bytes"));
+    }
+    try {
+      MoneroUtils.binaryToMap("{\"msg\":\"Hello\"}".getBytes());
+      fail("Should have failed on signature");
+    } catch (MoneroError e) {
+      assertEquals("Invalid portable storage signature", e.getMessage());
+    }
+  }
+  
+  // Can parse a block blob with its miner tx
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testParseBlock() {
+    BlobBuilder blob = new BlobBuilder();
+    blob.varint(16).varint(16).varint(1700000000).fill(32, 0x11).put(0x01, 0x00, 0x00, 0x80); // header with nonce 0x80000001
+    blob.varint(2).varint(3000060).varint(1).put(0xff).varint(3000000); // miner tx prefix with gen input
+    blob.varint(1).varint(600000000000L).put(0x03).fill(32, 0x22).put(0x7a); // output to tagged key
+    blob.varint(3).put(0x01, 0x02, 0xff).put(0x00); // extra and null RingCT type
+    blob.varint(2).fill(32, 0x33).fill(32, 0x44); // tx hashes
+    ByteBuffer buf = blob.toBuffer();
+    MoneroBlock block = MoneroBlobParser.parseBlock(buf);
+    assertEquals(0, buf.remaining());
+    assertEquals(16, (int) block.getMajorVersion());
+    assertEquals(16, (int) block.getMinorVersion());
+    assertEquals(1700000000L, (long) block.getTimestamp());
+    assertEquals(repeat("11", 32), block.getPrevHash());
+    assertEquals(0x80000001, (int) block.getNonce());
+    assertEquals(Arrays.asList(repeat("33", 32), repeat("44", 32)), block.getTxHashes());
+    MoneroTx minerTx = block.getMinerTx();
+    assertTrue(minerTx.isMinerTx());
+    assertEquals(2, (int) minerTx.getVersion());
+    assertEquals(3000060L, (long) minerTx.getUnlockTime());
+    assertNull(minerTx.getInputs());
+    assertNull(minerTx.getSignatures());
+    assertEquals(1, minerTx.getOutputs().size());
+    assertEquals(BigInteger.valueOf(600000000000L), minerTx.getOutputs().get(0).getAmount());
+    assertEquals(repeat("22", 32), minerTx.getOutputs().get(0).getStealthPublicKey());
+    assertTrue(minerTx == minerTx.getOutputs().get(0).getTx());
+    assertArrayEquals(new int[] {1, 2, 255}, minerTx.getExtra());
+    assertEquals(BigInteger.ZERO, ((Map<String, Object>) minerTx.getRctSignatures()).get("type"));
+  }
+  
+  // Can parse a RingCT tx blob up to its prunable data
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testParseTxRct() {
+    BlobBuilder blob = new BlobBuilder();
+    blob.varint(2).varint(0).varint(2);
+    for (int i = 0; i < 2; i++) {
+      blob.put(0x02).varint(0).varint(3).varint(1000 + i).varint(200).varint(300); // input to key with relative offsets
+      blob.fill(32, 0xa0 + i);
+    }
+    blob.varint(2);
+    for (int i = 0; i < 2; i++) blob.varint(0).put(0x02).fill(32, 0xb0 + i);
+    blob.varint(0); // empty extra
+    blob.put(5).varint(30720000); // CLSAG type and fee
+    blob.fill(8, 0xc0).fill(8, 0xc1); // truncated ecdh amounts
+    blob.fill(32, 0xd0).fill(32, 0xd1); // output commitments
+    blob.fill(10, 0xee); // prunable data
+    ByteBuffer buf = blob.toBuffer();
+    MoneroTx tx = MoneroBlobParser.parseTx(buf);
+    assertEquals(10, buf.remaining());
+    assertEquals(2, (int) tx.getVersion());
+    assertEquals(0L, (long) tx.getUnlockTime());
+    assertEquals(2, tx.getInputs().size());
+    for (int i = 0; i < 2; i++) {
+      MoneroOutput input = tx.getInputs().get(i);
+      assertEquals(BigInteger.ZERO, input.getAmount());
+      assertEquals(Arrays.asList(1000 + i, 200, 300), input.getRingOutputIndices());
+      assertEquals(repeat(Integer.toHexString(0xa0 + i), 32), input.getKeyImage().getHex());
+      assertEquals(repeat(Integer.toHexString(0xb0 + i), 32), tx.getOutputs().get(i).getStealthPublicKey());
+    }
+    assertEquals(0, tx.getExtra().length);
+    assertNull(tx.getSignatures());
+    Map<String, Object> rctBase = (Map<String, Object>) tx.getRctSignatures();
+    assertEquals(BigInteger.valueOf(5), rctBase.get("type"));
+    assertEquals(BigInteger.valueOf(30720000), rctBase.get("txnFee"));
+    assertFalse(rctBase.containsKey("pseudoOuts"));
+    List<Map<String, Object>> ecdhInfo = (List<Map<String, Object>>) rctBase.get("ecdhInfo");
+    assertEquals(repeat("c1", 8), ecdhInfo.get(1).get("amount"));
+    assertFalse(ecdhInfo.get(1).containsKey("mask"));
+    assertEquals(Arrays.asList(repeat("d0", 32), repeat("d1", 32)), rctBase.get("outPk"));
+  }
+  
+  // Can parse a version 1 tx blob with ring signatures
+  @Test
+  public void testParseTxV1() {
+    BlobBuilder blob = new BlobBuilder();
+    blob.varint(1).varint(0).varint(1).put(0x02).varint(1000000).varint(2).varint(5).varint(7).fill(32, 0xa0);
+    blob.varint(1).varint(900000).put(0x02).fill(32, 0xb0);
+    blob.varint(0);
+    blob.fill(2 * 64, 0x55); // signatures of input's ring of 2
+    ByteBuffer buf = blob.toBuffer();
+    MoneroTx tx = MoneroBlobParser.parseTx(buf);
+    assertEquals(0, buf.remaining());
+    assertEquals(BigInteger.valueOf(1000000), tx.getInputs().get(0).getAmount());
+    assertEquals(BigInteger.valueOf(900000), tx.getOutputs().get(0).getAmount());
+    assertEquals(Arrays.asList(repeat("55", 128)), tx.getSignatures());
+    assertNull(tx.getRctSignatures());
+  }
+  
+  // Can parse a tx from its pruned hex
+  @Test
+  public void testParseTxPruned() {
+    BlobBuilder blob = new BlobBuilder();
+    blob.varint(1).varint(0).varint(1).put(0x02).varint(1000000).varint(2).varint(5).varint(7).fill(32, 0xa0);
+    blob.varint(1).varint(900000).put(0x02).fill(32, 0xb0);
+    blob.varint(0); // signatures are pruned
+    ByteBuffer buf = blob.toBuffer();
+    StringBuilder hex = new StringBuilder();
+    while (buf.hasRemaining()) hex.append(String.format("%02X", buf.get()));
+    MoneroTx tx = new MoneroTx().setHash("hash");
+    assertTrue(tx == MoneroBlobParser.parseTx(ByteBuffer.wrap(MoneroBlobParser.hexToBytes(hex.toString())), tx, true));
+    assertEquals("hash", tx.getHash());
+    assertEquals(1, (int) tx.getVersion());
+    assertEquals(Arrays.asList(5, 7), tx.getInputs().get(0).getRingOutputIndices());
+    assertNull(tx.getSignatures());
+    try {
+      MoneroBlobParser.parseTx(MoneroBlobParser.hexToBytes(hex.toString()));
+      fail("Should have failed on missing signatures");
+    } catch (MoneroError e) {
+      assertEquals("Transaction blob is truncated", e.getMessage());
+    }
+    try {
+      MoneroBlobParser.hexToBytes("0g");
+      fail("Should have failed on invalid hex");
+    } catch (MoneroError e) {
+      assertEquals("Invalid hex at index 0", e.getMessage());
+    }
+  }
+  
+  // Rejects truncated and unsupported blobs
+  @Test
+  public void testParseMalformed() {
+    BlobBuilder blob = new BlobBuilder();
+    blob.varint(16).varint(16).varint(1700000000).fill(32, 0x11);
+    try {
+      MoneroBlobParser.parseBlock(blob.toBuffer());
+      fail("Should have failed on truncated block");
+    } catch (MoneroError e) {
+      assertEquals("Block blob is truncated", e.getMessage());
+    }
+    try {
+      MoneroBlobParser.parseTx(new BlobBuilder().varint(3).varint(0).toBuffer());
+      fail("Should have failed on version");
+    } catch (MoneroError e) {
+      assertEquals("Unsupported transaction version: 3", e.getMessage());
+    }
+    try {
+      MoneroBlobParser.parseTx(new BlobBuilder().varint(2).varint(0).varint(1000000).toBuffer());
+      fail("Should have failed on input count");
+    } catch (MoneroError e) {
+      assertTrue(e.getMessage().startsWith("Blob array size exceeds remaining bytes"));
+    }
+    try {
+      MoneroBlobParser.parseTx(new BlobBuilder().varint(2).varint(0).varint(1).put(0x01).toBuffer());
+      fail("Should have failed on input type");
+    } catch (MoneroError e) {
+      assertEquals("Unsupported transaction input type: 1", e.getMessage());
+    }
+  }
+  
   @Test
   public void testAddressValidation() {
     
@@ -157,6 +451,43 @@ public class TestMoneroUtils {
   
   // ---------------------------- PRIVATE HELPERS -----------------------------
   
+  private static String repeat(String str, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) sb.append(str);
+    return sb.toString();
+  }
+  
+  /**
+   * Builds blobs with monero's binary serialization.
+   */
+  private static class BlobBuilder {
+    
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    
+    private BlobBuilder put(int... bytes) {
+      for (int b : bytes) out.write(b);
+      return this;
+    }
+    
+    private BlobBuilder fill(int length, int b) {
+      for (int i = 0; i < length; i++) out.write(b);
+      return this;
+    }
+    
+    private BlobBuilder varint(long value) {
+      while ((value & ~0x7fL) != 0) {
+        out.write((int) (value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      out.write((int) value);
+      return this;
+    }
+    
+    private ByteBuffer toBuffer() {
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+  }
+  
   private static void testInvalidAddress(String address, MoneroNetworkType networkType) {
     try {
       MoneroUtils.validateAddress(address, networkType);
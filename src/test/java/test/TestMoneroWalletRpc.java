@@ -3,13 +3,16 @@ package test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.junit.BeforeClass;
@@ -17,6 +20,9 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import monero.common.MoneroError;
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcError;
+import monero.common.MoneroRpcRequest;
 import monero.common.MoneroUtils;
 import monero.wallet.MoneroWallet;
 import monero.wallet.MoneroWalletRpc;
@@ -288,6 +294,29 @@ public class TestMoneroWalletRpc extends TestMoneroWalletCommon {
     assertNull(address);
   }
   
+  // Can send batch requests with per-request errors
+  @Test
+  public void testBatchRequests() {
+    org.junit.Assume.assumeTrue(TEST_NON_RELAYS);
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("account_index", 0);
+    List<MoneroRpcRequest> requests = new ArrayList<MoneroRpcRequest>();
+    requests.add(new MoneroRpcRequest("get_height"));
+    requests.add(new MoneroRpcRequest("get_address", params));
+    requests.add(new MoneroRpcRequest("unknown_method"));
+    List<Map<String, Object>> resps = wallet.getRpcConnection().sendJsonRequests(requests);
+    assertEquals(3, resps.size());
+    assertNotNull(resps.get(0).get("result"));
+    assertNotNull(resps.get(1).get("result"));
+    assertNotNull(resps.get(2).get("error"));
+    try {
+      MoneroRpcConnection.validateRpcResponse(resps.get(2), "unknown_method", null);
+      fail("Should have thrown error for unknown method");
+    } catch (MoneroRpcError e) {
+      assertEquals("unknown_method", e.getRpcMethod());
+    }
+  }
+  
   // Can rescan spent
   @Test
   public void testRescanSpent() {
@@ -0,0 +1,91 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+import monero.daemon.MoneroDaemonRpc;
+import monero.daemon.model.MoneroBlockHeader;
+
+/**
+ * Compares bytes on the wire and latency of reading a large
+ * get_block_headers_range response with and without response compression.
+ *
+ * Serves a synthetic response from a local http server which gzips it when
+ * the client accepts gzip, like a compressing reverse proxy in front of
+ * monerod.
+ */
+public class BenchmarkCompression {
+
+  private static final int NUM_HEADERS = 20000;
+  private static final int NUM_WARMUPS = 10;
+  private static final int NUM_ITERATIONS = 20;
+
+  public static void main(String[] args) throws Exception {
+
+    // serve synthetic response, gzipped if accepted
+    byte[] response = buildHeadersResponse(NUM_HEADERS);
+    byte[] gzipped = gzip(response);
+    System.out.println("Response size: " + response.length / 1024 + " KB, gzipped: " + gzipped.length / 1024 + " KB");
+    BenchmarkServer.Response plain = BenchmarkServer.Response.json(response);
+    BenchmarkServer.Response compressed = new BenchmarkServer.Response("200 OK", gzipped, "Content-Type", "application/json", "Content-Encoding", "gzip");
+    BenchmarkServer server = new BenchmarkServer(new BenchmarkServer.Handler() {
+      @Override
+      public BenchmarkServer.Response handle(BenchmarkServer.Request request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip") ? compressed : plain;
+      }
+    });
+    String uri = server.getUri();
+
+    measure("Uncompressed", new MoneroRpcConnection(uri, null, null, new MoneroRpcConnectionConfig().setResponseCompression(false)));
+    measure("Gzip", new MoneroRpcConnection(uri, null, null, new MoneroRpcConnectionConfig().setResponseCompression(true)));
+    server.close();
+  }
+
+  private static void measure(String label, MoneroRpcConnection connection) {
+    MoneroDaemonRpc daemon = new MoneroDaemonRpc(connection);
+    for (int i = 0; i < NUM_WARMUPS; i++) daemon.getBlockHeadersByRange(0l, (long) NUM_HEADERS - 1);
+    long startReceived = connection.getBytesReceived();
+    long startUncompressed = connection.getUncompressedBytesReceived();
+    long startTime = System.nanoTime();
+    for (int i = 0; i < NUM_ITERATIONS; i++) {
+      List<MoneroBlockHeader> headers = daemon.getBlockHeadersByRange(0l, (long) NUM_HEADERS - 1);
+      if (headers.size() != NUM_HEADERS) throw new RuntimeException("Expected " + NUM_HEADERS + " headers but got " + headers.size());
+    }
+    long time = System.nanoTime() - startTime;
+    long received = connection.getBytesReceived() - startReceived;
+    long uncompressed = connection.getUncompressedBytesReceived() - startUncompressed;
+    System.out.println(label + ": " + time / NUM_ITERATIONS / 1000 + " us avg, " + received / NUM_ITERATIONS / 1024 + " KB received (" + uncompressed / NUM_ITERATIONS / 1024 + " KB decoded) per call");
+    connection.close();
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(bytes);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] buildHeadersResponse(int numHeaders) {
+    StringBuilder sb = new StringBuilder("{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":{\"credits\":0,\"headers\":[");
+    for (int i = 0; i < numHeaders; i++) {
+      if (i > 0) sb.append(',');
+      sb.append("{\"block_size\":").append(300 + i % 1000).append(",\"block_weight\":").append(300 + i % 1000)
+        .append(",\"depth\":").append(numHeaders - i).append(",\"hash\":\"").append(String.format("%064x", i))
+        .append("\",\"height\":").append(i).append(",\"long_term_weight\":").append(300 + i % 1000)
+        .append(",\"major_version\":14,\"miner_tx_hash\":\"").append(String.format("%064x", i + numHeaders))
+        .append("\",\"minor_version\":14,\"nonce\":").append(3000000000L + i).append(",\"num_txes\":").append(i % 20)
+        .append(",\"orphan_status\":false,\"pow_hash\":\"\",\"prev_hash\":\"").append(String.format("%064x", i == 0 ? 0 : i - 1))
+        .append("\",\"reward\":").append(600000000000L + i).append(",\"timestamp\":").append(1580000000L + i * 120L)
+        .append(",\"wide_cumulative_difficulty\":\"0x").append(Long.toHexString(1000000L * i))
+        .append("\",\"wide_difficulty\":\"0x").append(Long.toHexString(250000 + i)).append("\"}");
+    }
+    sb.append("],\"status\":\"OK\",\"top_hash\":\"\",\"untrusted\":false}}");
+    return sb.toString().getBytes();
+  }
+}
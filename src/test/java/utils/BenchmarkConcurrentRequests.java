@@ -0,0 +1,64 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+import monero.daemon.MoneroDaemonRpc;
+
+/**
+ * Measures requests per second of concurrent daemon requests using the
+ * client's previous default pool (5 connections per route) versus the
+ * default pooled configuration.
+ */
+public class BenchmarkConcurrentRequests {
+
+  private static final int NUM_THREADS = 200;
+  private static final long DURATION_MS = 20000;
+
+  public static void main(String[] args) throws InterruptedException {
+
+    // previous defaults of HttpClients.createDefault() without timeouts
+    MoneroRpcConnectionConfig before = new MoneroRpcConnectionConfig()
+        .setMaxConnections(25)
+        .setMaxConnectionsPerRoute(5)
+        .setConnectTimeout(0)
+        .setResponseTimeout(0)
+        .setConnectionRequestTimeout(0)
+        .setIdleEvictionTime(0);
+    System.out.println("Before: " + benchmark(before) + " requests/sec");
+    System.out.println("After: " + benchmark(new MoneroRpcConnectionConfig()) + " requests/sec");
+  }
+
+  private static long benchmark(MoneroRpcConnectionConfig config) throws InterruptedException {
+    MoneroRpcConnection connection = new MoneroRpcConnection(TestUtils.DAEMON_RPC_URI, TestUtils.DAEMON_RPC_USERNAME, TestUtils.DAEMON_RPC_PASSWORD, config);
+    MoneroDaemonRpc daemon = new MoneroDaemonRpc(connection);
+    AtomicLong numRequests = new AtomicLong();
+    AtomicLong numErrors = new AtomicLong();
+    long endTime = System.currentTimeMillis() + DURATION_MS;
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (System.currentTimeMillis() < endTime) {
+            try {
+              daemon.getHeight();
+              numRequests.incrementAndGet();
+            } catch (Exception e) {
+              numErrors.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) thread.join();
+    connection.close();
+    if (numErrors.get() > 0) System.out.println(numErrors.get() + " requests failed");
+    return numRequests.get() * 1000 / DURATION_MS;
+  }
+}
@@ -0,0 +1,115 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import monero.common.MoneroJdkHttpTransport;
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+
+/**
+ * Measures authenticated requests against a local digest protected server,
+ * like monerod with --rpc-login, with and without preemptive authentication.
+ *
+ * The JDK transport is also measured when running from the multi-release jar
+ * on Java 11 or later.
+ */
+public class BenchmarkDigestAuth {
+
+  private static final String USERNAME = "rpc_user";
+  private static final String PASSWORD = "abc123";
+  private static final String REALM = "monero-rpc";
+  private static final String NONCE = "dcd98b7102dd2f0e8b11d0f600bfb0c093";
+  private static final long SERVER_DELAY = 2; // ms per response to simulate a network round trip
+  private static final int NUM_REQUESTS = 500;
+  private static final Pattern AUTH_PARAM = Pattern.compile("(\\w+)=(?:\"([^\"]*)\"|([^,\\s]*))");
+  private static final BenchmarkServer.Response RESPONSE = BenchmarkServer.Response.json("{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":{\"count\":100,\"status\":\"OK\"}}".getBytes());
+  private static final BenchmarkServer.Response CHALLENGE = new BenchmarkServer.Response("401 Unauthorized", new byte[0], "WWW-Authenticate", "Digest qop=\"auth\",algorithm=MD5,realm=\"" + REALM + "\",nonce=\"" + NONCE + "\",stale=false");
+  private static final AtomicInteger NUM_CHALLENGES = new AtomicInteger();
+  private static final AtomicInteger NUM_AUTHENTICATED = new AtomicInteger();
+  private static final Set<String> USED_NONCE_COUNTS = ConcurrentHashMap.newKeySet(); // rejects replayed cnonce and nonce count pairs
+
+  public static void main(String[] args) throws Exception {
+
+    // serve digest protected requests
+    BenchmarkServer server = new BenchmarkServer(new BenchmarkServer.Handler() {
+      @Override
+      public BenchmarkServer.Response handle(BenchmarkServer.Request request) throws InterruptedException {
+        Thread.sleep(SERVER_DELAY);
+        if (isAuthorized(request.getMethod(), request.getUri(), request.getHeader("Authorization"))) {
+          NUM_AUTHENTICATED.incrementAndGet();
+          return RESPONSE;
+        }
+        NUM_CHALLENGES.incrementAndGet();
+        return CHALLENGE;
+      }
+    });
+    String uri = server.getUri();
+
+    measure("Challenge per request", new MoneroRpcConnection(uri, USERNAME, PASSWORD, new MoneroRpcConnectionConfig().setPreemptiveAuth(false)));
+    measure("Preemptive digest", new MoneroRpcConnection(uri, USERNAME, PASSWORD, new MoneroRpcConnectionConfig()));
+    if (MoneroJdkHttpTransport.isAvailable()) {
+      measure("JDK transport, challenge per request", new MoneroRpcConnection(uri, USERNAME, PASSWORD, new MoneroRpcConnectionConfig().setPreemptiveAuth(false).setTransportFactory(MoneroJdkHttpTransport.FACTORY)));
+      measure("JDK transport, preemptive digest", new MoneroRpcConnection(uri, USERNAME, PASSWORD, new MoneroRpcConnectionConfig().setTransportFactory(MoneroJdkHttpTransport.FACTORY)));
+    }
+    server.close();
+  }
+
+  private static void measure(String label, MoneroRpcConnection connection) throws Exception {
+
+    // warm up
+    for (int i = 0; i < 10; i++) connection.sendJsonRequest("get_block_count");
+    connection.sendJsonRequestAsync("get_block_count").get();
+
+    // measure sequential requests
+    NUM_CHALLENGES.set(0);
+    NUM_AUTHENTICATED.set(0);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < NUM_REQUESTS; i++) connection.sendJsonRequest("get_block_count");
+    long syncTime = (System.nanoTime() - startTime) / 1000000;
+    int syncChallenges = NUM_CHALLENGES.get();
+
+    // measure concurrent asynchronous requests
+    NUM_CHALLENGES.set(0);
+    startTime = System.nanoTime();
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[NUM_REQUESTS];
+    for (int i = 0; i < NUM_REQUESTS; i++) futures[i] = connection.sendJsonRequestAsync("get_block_count");
+    CompletableFuture.allOf(futures).get();
+    long asyncTime = (System.nanoTime() - startTime) / 1000000;
+    int asyncChallenges = NUM_CHALLENGES.get();
+    connection.close();
+    System.out.println(label + ": " + NUM_REQUESTS + " sequential requests in " + syncTime + " ms with " + syncChallenges + " challenges, " +
+        NUM_REQUESTS + " async requests in " + asyncTime + " ms with " + asyncChallenges + " challenges, " + NUM_AUTHENTICATED.get() + " authenticated");
+  }
+
+  private static boolean isAuthorized(String method, String uri, String authorization) {
+    if (authorization == null || !authorization.startsWith("Digest ")) return false;
+    Map<String, String> params = new HashMap<String, String>();
+    Matcher matcher = AUTH_PARAM.matcher(authorization.substring(7));
+    while (matcher.find()) params.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+    if (!USERNAME.equals(params.get("username")) || !NONCE.equals(params.get("nonce")) || !uri.equals(params.get("uri"))) return false;
+    if (!USED_NONCE_COUNTS.add(params.get("cnonce") + ":" + params.get("nc"))) return false;
+    String ha1 = md5(USERNAME + ":" + REALM + ":" + PASSWORD);
+    String ha2 = md5(method + ":" + uri);
+    return md5(ha1 + ":" + NONCE + ":" + params.get("nc") + ":" + params.get("cnonce") + ":" + params.get("qop") + ":" + ha2).equals(params.get("response"));
+  }
+
+  private static String md5(String value) {
+    try {
+      StringBuilder sb = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.ISO_8859_1))) sb.append(String.format("%02x", b));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import common.utils.JsonUtils;
+import monero.common.MoneroPortableStorage;
+import monero.common.MoneroUtils;
+
+/**
+ * Measures throughput and allocation of serializing binary request and
+ * response maps with the pure Java portable storage codec versus the JNI
+ * path, which converts maps to and from JSON and crosses into the native
+ * library.
+ *
+ * The JNI path is measured if libmonero-java is on java.library.path.  The
+ * JSON conversions it requires on the Java side are measured regardless.
+ */
+public class BenchmarkPortableStorage {
+
+  private static final int NUM_HEIGHTS = 1000;
+  private static final int NUM_OUTPUTS = 1000;
+  private static final int NUM_DISTRIBUTION = 100000;
+  private static final int NUM_WARMUPS = 2000;
+  private static final int NUM_ITERATIONS = 1000;
+
+  public static void main(String[] args) throws Exception {
+
+    // build get_blocks_by_height.bin and get_outs.bin requests
+    List<Long> heights = new ArrayList<Long>();
+    for (int i = 0; i < NUM_HEIGHTS; i++) heights.add(2000000L + i);
+    Map<String, Object> heightsParams = new HashMap<String, Object>();
+    heightsParams.put("heights", heights);
+    List<Map<String, Object>> outputs = new ArrayList<Map<String, Object>>();
+    for (int i = 0; i < NUM_OUTPUTS; i++) {
+      Map<String, Object> output = new HashMap<String, Object>();
+      output.put("amount", 0);
+      output.put("index", 30000000L + i * 97);
+      outputs.add(output);
+    }
+    Map<String, Object> outsParams = new HashMap<String, Object>();
+    outsParams.put("outputs", outputs);
+    outsParams.put("get_txid", true);
+
+    // build get_output_distribution.bin response
+    List<Long> distribution = new ArrayList<Long>();
+    for (int i = 0; i < NUM_DISTRIBUTION; i++) distribution.add(20000000L + i * 35);
+    Map<String, Object> distributionMap = new HashMap<String, Object>();
+    distributionMap.put("amount", 0);
+    distributionMap.put("start_height", 1200000);
+    distributionMap.put("base", 0);
+    distributionMap.put("distribution", distribution);
+    Map<String, Object> distributionResp = new HashMap<String, Object>();
+    distributionResp.put("distributions", Arrays.asList(distributionMap));
+    distributionResp.put("status", "OK");
+    distributionResp.put("untrusted", false);
+
+    // load native conversions if available
+    Method jsonToBinary = null;
+    Method binaryToJson = null;
+    try {
+      System.loadLibrary("monero-java");
+      jsonToBinary = getNativeMethod("jsonToBinaryJni", String.class);
+      binaryToJson = getNativeMethod("binaryToJsonJni", byte[].class);
+    } catch (UnsatisfiedLinkError e) {
+      System.out.println("JNI path not measured: " + e.getMessage());
+    }
+
+    measure("get_blocks_by_height.bin request (" + NUM_HEIGHTS + " heights)", heightsParams, jsonToBinary, binaryToJson);
+    measure("get_outs.bin request (" + NUM_OUTPUTS + " outputs)", outsParams, jsonToBinary, binaryToJson);
+    measure("get_output_distribution.bin response (" + NUM_DISTRIBUTION + " offsets)", distributionResp, jsonToBinary, binaryToJson);
+  }
+
+  private static void measure(String label, Map<String, Object> map, Method jsonToBinary, Method binaryToJson) throws Exception {
+    byte[] binary = MoneroPortableStorage.serialize(map);
+    System.out.println(label + ": " + binary.length + " bytes");
+    print("  Java serialize", map, binary, new Codec() {
+      @Override
+      public Object run(Map<String, Object> map, byte[] binary) {
+        return MoneroPortableStorage.serialize(map);
+      }
+    });
+    print("  Java deserialize", map, binary, new Codec() {
+      @Override
+      public Object run(Map<String, Object> map, byte[] binary) {
+        return MoneroPortableStorage.deserialize(binary);
+      }
+    });
+    String json = JsonUtils.serialize(map);
+    print("  JSON serialize (Java side of JNI serialize)", map, binary, new Codec() {
+      @Override
+      public Object run(Map<String, Object> map, byte[] binary) {
+        return JsonUtils.serialize(map);
+      }
+    });
+    print("  JSON deserialize (Java side of JNI deserialize)", map, binary, new Codec() {
+      @Override
+      public Object run(Map<String, Object> map, byte[] binary) {
+        return JsonUtils.deserialize(json, new TypeReference<Map<String, Object>>(){});
+      }
+    });
+    if (jsonToBinary == null) return;
+    print("  JNI serialize", map, binary, new Codec() {
+      @Override
+      public Object run(Map<String, Object> map, byte[] binary) throws Exception {
+        return jsonToBinary.invoke(null, JsonUtils.serialize(map));
+      }
+    });
+    print("  JNI deserialize", map, binary, new Codec() {
+      @Override
+      public Object run(Map<String, Object> map, byte[] binary) throws Exception {
+        return JsonUtils.deserialize((String) binaryToJson.invoke(null, binary), new TypeReference<Map<String, Object>>(){});
+      }
+    });
+  }
+
+  private static void print(String label, Map<String, Object> map, byte[] binary, Codec codec) throws Exception {
+    for (int i = 0; i < NUM_WARMUPS; i++) codec.run(map, binary);
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < NUM_ITERATIONS; i++) {
+      if (codec.run(map, binary) == null) throw new RuntimeException("No result");
+    }
+    long time = System.nanoTime() - startTime;
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
+    System.out.println(label + ": " + time / NUM_ITERATIONS / 1000 + " us avg, " + (long) binary.length * NUM_ITERATIONS * 1000 / time + " MB/s of binary, " + allocated / NUM_ITERATIONS + " bytes allocated");
+  }
+
+  private static Method getNativeMethod(String name, Class<?> paramType) throws NoSuchMethodException {
+    Method method = MoneroUtils.class.getDeclaredMethod(name, paramType);
+    method.setAccessible(true);
+    return method;
+  }
+
+  private interface Codec {
+    Object run(Map<String, Object> map, byte[] binary) throws Exception;
+  }
+}
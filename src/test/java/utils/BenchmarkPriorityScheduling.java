@@ -0,0 +1,75 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcConnectionConfig;
+
+/**
+ * Measures the latency of interactive requests while bulk requests saturate
+ * a local server which handles a few requests at a time, like a restricted
+ * monerod, with and without limiting requests in flight on the client.
+ */
+public class BenchmarkPriorityScheduling {
+
+  private static final int SERVER_CONCURRENCY = 4;
+  private static final long SERVER_DELAY = 20; // ms per request
+  private static final int NUM_BULK_THREADS = 16;
+  private static final int NUM_INTERACTIVE_REQUESTS = 50;
+  private static final BenchmarkServer.Response RESPONSE = BenchmarkServer.Response.json("{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":{\"status\":\"OK\"}}".getBytes());
+  private static final Semaphore SERVER_SLOTS = new Semaphore(SERVER_CONCURRENCY, true);
+
+  public static void main(String[] args) throws Exception {
+
+    // serve requests a few at a time
+    BenchmarkServer server = new BenchmarkServer(new BenchmarkServer.Handler() {
+      @Override
+      public BenchmarkServer.Response handle(BenchmarkServer.Request request) throws InterruptedException {
+        SERVER_SLOTS.acquireUninterruptibly();
+        try {
+          Thread.sleep(SERVER_DELAY);
+        } finally {
+          SERVER_SLOTS.release();
+        }
+        return RESPONSE;
+      }
+    });
+    String uri = server.getUri();
+
+    measure("Unlimited", new MoneroRpcConnection(uri, null, null, new MoneroRpcConnectionConfig()));
+    measure("Max " + SERVER_CONCURRENCY + " in flight", new MoneroRpcConnection(uri, null, null, new MoneroRpcConnectionConfig().setMaxInFlight(SERVER_CONCURRENCY)));
+    server.close();
+  }
+
+  private static void measure(String label, MoneroRpcConnection connection) throws Exception {
+
+    // saturate server with bulk requests
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread[] bulkThreads = new Thread[NUM_BULK_THREADS];
+    for (int i = 0; i < NUM_BULK_THREADS; i++) {
+      bulkThreads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (running.get()) connection.sendJsonRequest("get_block_headers_range");
+        }
+      });
+      bulkThreads[i].start();
+    }
+    Thread.sleep(500);
+
+    // measure interactive requests
+    long[] latencies = new long[NUM_INTERACTIVE_REQUESTS];
+    for (int i = 0; i < NUM_INTERACTIVE_REQUESTS; i++) {
+      long startTime = System.nanoTime();
+      connection.sendJsonRequest("get_info");
+      latencies[i] = (System.nanoTime() - startTime) / 1000000;
+    }
+    running.set(false);
+    for (Thread thread : bulkThreads) thread.join();
+    connection.close();
+    Arrays.sort(latencies);
+    System.out.println(label + ": get_info p50 " + latencies[NUM_INTERACTIVE_REQUESTS / 2] + " ms, p99 " + latencies[NUM_INTERACTIVE_REQUESTS * 99 / 100] + " ms");
+  }
+}
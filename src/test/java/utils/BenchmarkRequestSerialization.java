@@ -0,0 +1,68 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import monero.common.MoneroRpcConnection;
+
+/**
+ * Measures latency and client allocation per request of polling requests
+ * with small and large bodies against a local keep-alive server which
+ * returns a minimal response, so request serialization dominates the
+ * client's cost.
+ */
+public class BenchmarkRequestSerialization {
+
+  private static final int NUM_KEY_IMAGES = 1000;
+  private static final int NUM_WARMUPS = 5000;
+  private static final int NUM_ITERATIONS = 20000;
+  private static final BenchmarkServer.Response RESPONSE = BenchmarkServer.Response.json("{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":{\"status\":\"OK\"}}".getBytes());
+
+  public static void main(String[] args) throws Exception {
+
+    // serve minimal response to every request after reading its body
+    BenchmarkServer server = new BenchmarkServer(new BenchmarkServer.Handler() {
+      @Override
+      public BenchmarkServer.Response handle(BenchmarkServer.Request request) throws IOException {
+        if (request.getBody().length == 0) throw new IOException("Request has no body");
+        return RESPONSE;
+      }
+    });
+    MoneroRpcConnection connection = new MoneroRpcConnection(server.getUri());
+
+    // build key image params like is_key_image_spent polling
+    List<String> keyImages = new ArrayList<String>();
+    for (int i = 0; i < NUM_KEY_IMAGES; i++) keyImages.add(String.format("%064x", i));
+    Map<String, Object> keyImageParams = new HashMap<String, Object>();
+    keyImageParams.put("key_images", keyImages);
+
+    // warm up then measure
+    for (int i = 0; i < NUM_WARMUPS; i++) {
+      connection.sendJsonRequest("get_info");
+      connection.sendPathRequest("is_key_image_spent", keyImageParams);
+    }
+    measure("get_info", connection, "get_info", null);
+    measure("is_key_image_spent (" + NUM_KEY_IMAGES + " key images)", connection, null, keyImageParams);
+
+    connection.close();
+    server.close();
+  }
+
+  private static void measure(String label, MoneroRpcConnection connection, String method, Map<String, Object> pathParams) {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < NUM_ITERATIONS; i++) {
+      if (method != null) connection.sendJsonRequest(method);
+      else connection.sendPathRequest("is_key_image_spent", pathParams);
+    }
+    long time = System.nanoTime() - startTime;
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
+    System.out.println(label + ": " + time / NUM_ITERATIONS / 1000 + " us avg, " + allocated / NUM_ITERATIONS + " bytes allocated per request");
+  }
+}
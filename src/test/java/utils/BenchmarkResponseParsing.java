@@ -0,0 +1,136 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import monero.common.MoneroRpcConnection;
+import monero.common.MoneroRpcResponseHandler;
+
+/**
+ * Compares latency and peak heap of reading a large get_transfers response
+ * as a map versus streaming it tx by tx.
+ *
+ * Serves a recorded response given as the first argument (e.g. captured with
+ * curl from monero-wallet-rpc) or a synthetic response with the given number
+ * of transfers from a local http server.
+ *
+ * Run with a constrained fixed heap (e.g. -Xms400m -Xmx400m) so peaks reflect
+ * live data rather than uncollected garbage.
+ */
+public class BenchmarkResponseParsing {
+
+  private static final int NUM_SYNTHETIC_TRANSFERS = 100000;
+  private static final int NUM_ITERATIONS = 10;
+
+  public static void main(String[] args) throws Exception {
+
+    // load recorded response or build synthetic response
+    byte[] response = args.length > 0 ? Files.readAllBytes(Paths.get(args[0])) : buildTransfersResponse(NUM_SYNTHETIC_TRANSFERS);
+    System.out.println("Response size: " + response.length / 1024 + " KB");
+
+    // serve response to every request
+    BenchmarkServer.Response serverResponse = BenchmarkServer.Response.json(response);
+    BenchmarkServer server = new BenchmarkServer(new BenchmarkServer.Handler() {
+      @Override
+      public BenchmarkServer.Response handle(BenchmarkServer.Request request) {
+        return serverResponse;
+      }
+    });
+    MoneroRpcConnection connection = new MoneroRpcConnection(server.getUri());
+
+    // warm up then measure each path
+    for (int i = 0; i < 2; i++) {
+      readAsMap(connection);
+      readStreaming(connection);
+    }
+    measure("Map", connection, false);
+    measure("Streaming", connection, true);
+
+    connection.close();
+    server.close();
+  }
+
+  private static void measure(String label, MoneroRpcConnection connection, boolean streaming) {
+    long totalTime = 0;
+    long maxPeak = 0;
+    for (int i = 0; i < NUM_ITERATIONS; i++) {
+      System.gc();
+      long baseline = resetPeakHeap();
+      long startTime = System.nanoTime();
+      int numTxs = streaming ? readStreaming(connection) : readAsMap(connection);
+      totalTime += System.nanoTime() - startTime;
+      maxPeak = Math.max(maxPeak, getPeakHeap() - baseline);
+      if (numTxs == 0) throw new RuntimeException("No txs read");
+    }
+    System.out.println(label + ": " + totalTime / NUM_ITERATIONS / 1000000 + " ms avg, " + maxPeak / (1024 * 1024) + " MB peak heap above baseline");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int readAsMap(MoneroRpcConnection connection) {
+    Map<String, Object> resp = connection.sendJsonRequest("get_transfers");
+    Map<String, Object> result = (Map<String, Object>) resp.get("result");
+    int numTxs = 0;
+    for (Object txs : result.values()) numTxs += ((java.util.List<Object>) txs).size();
+    return numTxs;
+  }
+
+  private static int readStreaming(MoneroRpcConnection connection) {
+    return connection.sendJsonRequest("get_transfers", null, new MoneroRpcResponseHandler<Integer>() {
+      @Override
+      public Integer handle(JsonParser parser) throws IOException {
+        int numTxs = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          parser.nextToken();
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            MoneroRpcConnection.MAPPER.readValue(parser, new TypeReference<Map<String, Object>>(){});
+            numTxs++;
+          }
+        }
+        return numTxs;
+      }
+    });
+  }
+
+  private static byte[] buildTransfersResponse(int numTransfers) {
+    StringBuilder sb = new StringBuilder("{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":{\"in\":[");
+    for (int i = 0; i < numTransfers; i++) {
+      if (i > 0) sb.append(',');
+      sb.append("{\"address\":\"5AbcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvwxyzABCD\",")
+        .append("\"amount\":").append(1000000000L + i).append(",\"confirmations\":").append(numTransfers - i)
+        .append(",\"double_spend_seen\":false,\"fee\":").append(30000000 + i).append(",\"height\":").append(1000 + i)
+        .append(",\"note\":\"\",\"payment_id\":\"0000000000000000\",\"subaddr_index\":{\"major\":0,\"minor\":").append(i % 10)
+        .append("},\"subaddr_indices\":[{\"major\":0,\"minor\":").append(i % 10).append("}],\"suggested_confirmations_threshold\":1,")
+        .append("\"timestamp\":").append(1580000000L + i).append(",\"txid\":\"").append(String.format("%064x", i))
+        .append("\",\"type\":\"in\",\"unlock_time\":0}");
+    }
+    sb.append("]}}");
+    return sb.toString().getBytes();
+  }
+
+  private static long resetPeakHeap() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP) continue;
+      pool.resetPeakUsage();
+      used += pool.getUsage().getUsed();
+    }
+    return used;
+  }
+
+  private static long getPeakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+}
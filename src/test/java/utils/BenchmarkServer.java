@@ -0,0 +1,213 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local HTTP/1.1 server for benchmarks which serves keep-alive connections
+ * over raw sockets, so the server adds little overhead to the client being
+ * measured.
+ *
+ * Each connection is served by its own thread, which reads requests with a
+ * Content-Length body and writes the prebuilt response chosen by the
+ * handler.
+ */
+public class BenchmarkServer implements Closeable {
+
+  private ServerSocket serverSocket;
+  private Handler handler;
+
+  /**
+   * Start serving requests on an unused local port.
+   *
+   * @param handler chooses the response to each request
+   * @throws IOException if the server socket cannot be opened
+   */
+  public BenchmarkServer(Handler handler) throws IOException {
+    this.handler = handler;
+    this.serverSocket = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            Socket socket = serverSocket.accept();
+            Thread connectionThread = new Thread(new Runnable() {
+              @Override
+              public void run() {
+                serve(socket);
+              }
+            });
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+          }
+        } catch (IOException e) {
+          // server closed
+        }
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public String getUri() {
+    return "http://127.0.0.1:" + serverSocket.getLocalPort();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+
+  /**
+   * Reads requests from a keep-alive connection and writes the handler's
+   * response to each.
+   */
+  private void serve(Socket socket) {
+    try {
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      StringBuilder line = new StringBuilder();
+      while (true) {
+
+        // read request line and headers
+        String requestLine = null;
+        Map<String, String> headers = new HashMap<String, String>();
+        while (true) {
+          line.setLength(0);
+          int c;
+          while ((c = in.read()) != '\n') {
+            if (c == -1) return;
+            if (c != '\r') line.append((char) c);
+          }
+          if (line.length() == 0) break;
+          String header = line.toString();
+          int colon = header.indexOf(':');
+          if (requestLine == null) requestLine = header;
+          else if (colon > 0) headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+        }
+
+        // read body
+        String contentLength = headers.get("content-length");
+        byte[] body = new byte[contentLength == null ? 0 : Integer.parseInt(contentLength)];
+        for (int n = 0, read; n < body.length; n += read) {
+          if ((read = in.read(body, n, body.length - n)) == -1) return;
+        }
+
+        // respond
+        String[] parts = requestLine.split(" ");
+        Response response;
+        try {
+          response = handler.handle(new Request(parts[0], parts[1], headers, body));
+        } catch (InterruptedException e) {
+          return;
+        }
+        out.write(response.bytes);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // connection closed
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {}
+    }
+  }
+
+  /**
+   * Chooses the response to a request, e.g. after a delay to simulate a
+   * network round trip.
+   */
+  public interface Handler {
+
+    public Response handle(Request request) throws IOException, InterruptedException;
+  }
+
+  /**
+   * A request received by the server.
+   */
+  public static class Request {
+
+    private String method;
+    private String uri;
+    private Map<String, String> headers;
+    private byte[] body;
+
+    private Request(String method, String uri, Map<String, String> headers, byte[] body) {
+      this.method = method;
+      this.uri = uri;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getUri() {
+      return uri;
+    }
+
+    /**
+     * Get the value of a request header.
+     *
+     * @param name is the case insensitive name of the header
+     * @return the header value or null if the request does not have the header
+     */
+    public String getHeader(String name) {
+      return headers.get(name.toLowerCase());
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+
+  /**
+   * A response which is encoded once when built, so it can be written to
+   * every request without allocating.
+   */
+  public static class Response {
+
+    private byte[] bytes;
+
+    /**
+     * Build a response with a Content-Length.
+     *
+     * @param status is the status line after the HTTP version, e.g. "200 OK"
+     * @param body is the response body
+     * @param headers are additional header names and values in pairs
+     */
+    public Response(String status, byte[] body, String... headers) {
+      StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+      for (int i = 0; i < headers.length; i += 2) head.append(headers[i]).append(": ").append(headers[i + 1]).append("\r\n");
+      head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+      ByteArrayOutputStream out = new ByteArrayOutputStream(head.length() + body.length);
+      byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+      out.write(headBytes, 0, headBytes.length);
+      out.write(body, 0, body.length);
+      this.bytes = out.toByteArray();
+    }
+
+    /**
+     * Build a 200 response with a JSON body.
+     *
+     * @param body is the JSON body
+     * @return the response
+     */
+    public static Response json(byte[] body) {
+      return new Response("200 OK", body, "Content-Type", "application/json");
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import monero.common.MoneroRpcConnection;
+import monero.daemon.MoneroDaemonRpc;
+import monero.daemon.model.MoneroBlockHeader;
+
+/**
+ * Compares latency and allocation of converting a get_block_headers_range
+ * response through a Map of BigIntegers versus binding it to typed response
+ * objects.
+ *
+ * Serves a synthetic response with the given number of headers from a local
+ * http server so only parsing and conversion differ between the two paths.
+ */
+public class BenchmarkTypedBinding {
+
+  private static final int NUM_HEADERS = 20000;
+  private static final int NUM_WARMUPS = 10;
+  private static final int NUM_ITERATIONS = 20;
+
+  public static void main(String[] args) throws Exception {
+
+    // serve synthetic response to every request
+    byte[] response = buildHeadersResponse(NUM_HEADERS);
+    System.out.println("Response size: " + response.length / 1024 + " KB");
+    BenchmarkServer.Response serverResponse = BenchmarkServer.Response.json(response);
+    BenchmarkServer server = new BenchmarkServer(new BenchmarkServer.Handler() {
+      @Override
+      public BenchmarkServer.Response handle(BenchmarkServer.Request request) {
+        return serverResponse;
+      }
+    });
+    MoneroRpcConnection connection = new MoneroRpcConnection(server.getUri());
+    MoneroDaemonRpc daemon = new MoneroDaemonRpc(connection);
+
+    // warm up then measure each path
+    for (int i = 0; i < NUM_WARMUPS; i++) {
+      readAsMap(connection);
+      daemon.getBlockHeadersByRange(0l, (long) NUM_HEADERS - 1);
+    }
+    measure("Map", connection, daemon, false);
+    measure("Typed", connection, daemon, true);
+
+    connection.close();
+    server.close();
+  }
+
+  private static void measure(String label, MoneroRpcConnection connection, MoneroDaemonRpc daemon, boolean typed) {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long totalTime = 0;
+    long totalAllocated = 0;
+    for (int i = 0; i < NUM_ITERATIONS; i++) {
+      long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+      long startTime = System.nanoTime();
+      List<MoneroBlockHeader> headers = typed ? daemon.getBlockHeadersByRange(0l, (long) NUM_HEADERS - 1) : readAsMap(connection);
+      totalTime += System.nanoTime() - startTime;
+      totalAllocated += threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
+      if (headers.size() != NUM_HEADERS) throw new RuntimeException("Expected " + NUM_HEADERS + " headers but got " + headers.size());
+    }
+    System.out.println(label + ": " + totalTime / NUM_ITERATIONS / 1000 + " us avg, " + totalAllocated / NUM_ITERATIONS / 1024 + " KB allocated per call");
+  }
+
+  /**
+   * Converts headers the way the map based converter did.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<MoneroBlockHeader> readAsMap(MoneroRpcConnection connection) {
+    Map<String, Object> resp = connection.sendJsonRequest("get_block_headers_range");
+    Map<String, Object> result = (Map<String, Object>) resp.get("result");
+    List<MoneroBlockHeader> headers = new ArrayList<MoneroBlockHeader>();
+    for (Map<String, Object> rpcHeader : (List<Map<String, Object>>) result.get("headers")) {
+      MoneroBlockHeader header = new MoneroBlockHeader();
+      for (String key : rpcHeader.keySet()) {
+        Object val = rpcHeader.get(key);
+        if (key.equals("block_size")) header.setSize(((BigInteger) val).longValue());
+        else if (key.equals("block_weight")) header.setWeight(((BigInteger) val).longValue());
+        else if (key.equals("depth")) header.setDepth(((BigInteger) val).longValue());
+        else if (key.equals("hash")) header.setHash((String) val);
+        else if (key.equals("height")) header.setHeight(((BigInteger) val).longValue());
+        else if (key.equals("long_term_weight")) header.setLongTermWeight(((BigInteger) val).longValue());
+        else if (key.equals("major_version")) header.setMajorVersion(((BigInteger) val).intValue());
+        else if (key.equals("miner_tx_hash")) header.setMinerTxHash((String) val);
+        else if (key.equals("minor_version")) header.setMinorVersion(((BigInteger) val).intValue());
+        else if (key.equals("nonce")) header.setNonce(((BigInteger) val).intValue());
+        else if (key.equals("num_txes")) header.setNumTxs(((BigInteger) val).intValue());
+        else if (key.equals("orphan_status")) header.setOrphanStatus((Boolean) val);
+        else if (key.equals("pow_hash")) header.setPowHash("".equals(val) ? null : (String) val);
+        else if (key.equals("prev_hash")) header.setPrevHash((String) val);
+        else if (key.equals("reward")) header.setReward((BigInteger) val);
+        else if (key.equals("timestamp")) header.setTimestamp(((BigInteger) val).longValue());
+        else if (key.equals("wide_difficulty")) header.setDifficulty(new BigInteger(((String) val).substring(2), 16));
+        else if (key.equals("wide_cumulative_difficulty")) header.setCumulativeDifficulty(new BigInteger(((String) val).substring(2), 16));
+      }
+      headers.add(header);
+    }
+    return headers;
+  }
+
+  private static byte[] buildHeadersResponse(int numHeaders) {
+    StringBuilder sb = new StringBuilder("{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":{\"credits\":0,\"headers\":[");
+    for (int i = 0; i < numHeaders; i++) {
+      if (i > 0) sb.append(',');
+      sb.append("{\"block_size\":").append(300 + i % 1000).append(",\"block_weight\":").append(300 + i % 1000)
+        .append(",\"cumulative_difficulty\":").append(1000000L * i).append(",\"cumulative_difficulty_top64\":0,\"depth\":").append(numHeaders - i)
+        .append(",\"difficulty\":").append(250000 + i).append(",\"difficulty_top64\":0,\"hash\":\"").append(String.format("%064x", i))
+        .append("\",\"height\":").append(i).append(",\"long_term_weight\":").append(300 + i % 1000)
+        .append(",\"major_version\":14,\"miner_tx_hash\":\"").append(String.format("%064x", i + numHeaders))
+        .append("\",\"minor_version\":14,\"nonce\":").append(3000000000L + i).append(",\"num_txes\":").append(i % 20)
+        .append(",\"orphan_status\":false,\"pow_hash\":\"\",\"prev_hash\":\"").append(String.format("%064x", i == 0 ? 0 : i - 1))
+        .append("\",\"reward\":").append(600000000000L + i).append(",\"timestamp\":").append(1580000000L + i * 120L)
+        .append(",\"wide_cumulative_difficulty\":\"0x").append(Long.toHexString(1000000L * i))
+        .append("\",\"wide_difficulty\":\"0x").append(Long.toHexString(250000 + i)).append("\"}");
+    }
+    sb.append("],\"status\":\"OK\",\"top_hash\":\"\",\"untrusted\":false}}");
+    return sb.toString().getBytes();
+  }
+}